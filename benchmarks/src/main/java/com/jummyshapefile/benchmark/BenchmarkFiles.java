@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import com.jummyshapefile.binaryfile.AccessMode;
+import com.jummyshapefile.shapefile.Shapefile;
+import com.jummyshapefile.utils.FileUtils;
+
+/**
+ * Synthetic shapefile generated in a temporary directory for a benchmark.
+ *
+ * @see SyntheticShapefile
+ */
+class BenchmarkFiles {
+	private static final String NAME = "synthetic";
+
+	private final File directory;
+	private FileInputStream shpIS;
+	private FileInputStream shxIS;
+	private FileInputStream dbfIS;
+
+	/**
+	 * Generates a synthetic shapefile in a temporary directory.
+	 *
+	 * @param shapeType
+	 *            the shape type
+	 * @param count
+	 *            the number of entities
+	 * @param pointsPerPart
+	 *            the number of points of each part
+	 * @throws IOException
+	 *             if there is a problem writing the files
+	 */
+	BenchmarkFiles(final int shapeType, final int count,
+			final int pointsPerPart) throws IOException {
+		directory = File.createTempFile("jummyshapefile", "");
+		if (!directory.delete() || !directory.mkdir()) {
+			throw new IOException("Cannot create " + directory);
+		}
+
+		SyntheticShapefile.generate(directory, NAME, shapeType, count,
+				pointsPerPart, 1L);
+	}
+
+	File getSHP() {
+		return new File(directory, NAME + ".shp");
+	}
+
+	File getSHX() {
+		return new File(directory, NAME + ".shx");
+	}
+
+	File getDBF() {
+		return new File(directory, NAME + ".dbf");
+	}
+
+	/**
+	 * Opens the shapefile (closed by delete()).
+	 */
+	Shapefile open(final AccessMode accessMode) throws IOException {
+		shpIS = new FileInputStream(getSHP());
+		shxIS = new FileInputStream(getSHX());
+		dbfIS = new FileInputStream(getDBF());
+
+		return new Shapefile(shpIS, shxIS, dbfIS, null, accessMode);
+	}
+
+	/**
+	 * Closes the shapefile and deletes the files.
+	 */
+	void delete() {
+		FileUtils.closeInputStream(shpIS);
+		FileUtils.closeInputStream(shxIS);
+		FileUtils.closeInputStream(dbfIS);
+
+		getSHP().delete();
+		getSHX().delete();
+		getDBF().delete();
+		directory.delete();
+	}
+}
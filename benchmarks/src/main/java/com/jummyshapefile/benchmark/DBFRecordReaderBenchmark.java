@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.benchmark;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jummyshapefile.dbf.DBFFile;
+import com.jummyshapefile.dbf.DBFRecordReader;
+import com.jummyshapefile.dbf.model.DBFHeader;
+import com.jummyshapefile.dbf.model.DBFRecord;
+
+/**
+ * Benchmarks the decoding of a DBF record (N, C, F and D fields), and the
+ * primitive access to its numeric fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DBFRecordReaderBenchmark {
+	private final DBFRecordReader reader = new DBFRecordReader();
+	private BenchmarkFiles files;
+	private DBFHeader header;
+	private byte[] data;
+	private final int[] noFields = new int[0];
+
+	@Setup
+	public void setup() throws IOException {
+		files = new BenchmarkFiles(1, 1000, 2);
+
+		final DBFFile dbf = new DBFFile();
+		final FileInputStream is = new FileInputStream(files.getDBF());
+		try {
+			dbf.open(is);
+			header = dbf.getHeader();
+		} finally {
+			dbf.close();
+			is.close();
+		}
+
+		data = new byte[header.getRecordSize()];
+		final RandomAccessFile file = new RandomAccessFile(files.getDBF(), "r");
+		try {
+			file.seek(header.getHeaderSize());
+			file.readFully(data);
+		} finally {
+			file.close();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		files.delete();
+	}
+
+	@Benchmark
+	public DBFRecord readRecord() throws IOException {
+		return reader.readRecord(1, data, header);
+	}
+
+	@Benchmark
+	public double readNumericPrimitives() throws IOException {
+		final DBFRecord record = reader.readRecord(1, data, header, noFields);
+
+		// ID N(10,0) and VALUE F(19,8)
+		return record.getLong(0) + record.getDouble(2);
+	}
+}
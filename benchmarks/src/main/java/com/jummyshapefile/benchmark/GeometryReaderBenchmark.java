@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shp.SHPGeometryReader;
+
+/**
+ * Benchmarks the decoding of the geometry of a record, per shape type, into
+ * the object model and into PackedGeometry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryReaderBenchmark {
+	@Param({ "1", "3", "5", "8" })
+	public int shapeType;
+
+	@Param({ "16", "1024" })
+	public int pointsPerPart;
+
+	private final SHPGeometryReader reader = new SHPGeometryReader();
+	private byte[] content;
+
+	@Setup
+	public void setup() {
+		content = SyntheticShapefile.content(shapeType, 1000, 1000, 500,
+				pointsPerPart);
+	}
+
+	@Benchmark
+	public Geometry readGeometry() throws IOException {
+		return reader.readGeometry(content, shapeType);
+	}
+
+	@Benchmark
+	public Geometry readPackedGeometry() throws IOException {
+		return reader.readPackedGeometry(ByteBuffer.wrap(content), shapeType);
+	}
+}
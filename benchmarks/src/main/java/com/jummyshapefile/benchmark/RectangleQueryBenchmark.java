@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jummyshapefile.binaryfile.AccessMode;
+import com.jummyshapefile.shapefile.Shapefile;
+import com.jummyshapefile.shapefile.model.Entity;
+
+/**
+ * Benchmarks Shapefile.getEntitiesInRectangle() over a synthetic polygon
+ * layer, for rectangles covering several fractions (selectivities) of the
+ * extent, with and without spatial index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RectangleQueryBenchmark {
+	private static final int COUNT = 100000;
+
+	@Param({ "0.0001", "0.01", "0.25", "1" })
+	public double selectivity;
+
+	@Param({ "false", "true" })
+	public boolean spatialIndex;
+
+	@Param({ "false", "true" })
+	public boolean data;
+
+	@Param({ "MAPPED" })
+	public AccessMode accessMode;
+
+	private BenchmarkFiles files;
+	private Shapefile shapefile;
+	private double minX;
+	private double minY;
+	private double maxX;
+	private double maxY;
+
+	@Setup
+	public void setup() throws IOException {
+		files = new BenchmarkFiles(5, COUNT, 16);
+
+		shapefile = files.open(accessMode);
+		shapefile.loadIndex();
+		if (spatialIndex) {
+			shapefile.buildSpatialIndex();
+		}
+
+		// A centered square covering the fraction of the extent
+		final double side = SyntheticShapefile.EXTENT * Math.sqrt(selectivity);
+		minX = (SyntheticShapefile.EXTENT - side) / 2;
+		minY = minX;
+		maxX = minX + side;
+		maxY = maxX;
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		shapefile.close();
+		files.delete();
+	}
+
+	@Benchmark
+	public List<Entity> getEntitiesInRectangle() throws IOException {
+		return shapefile.getEntitiesInRectangle(minX, minY, maxX, maxY, data);
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.benchmark;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jummyshapefile.binaryfile.AccessMode;
+import com.jummyshapefile.shx.SHXFile;
+import com.jummyshapefile.shx.model.SHXRecord;
+
+/**
+ * Benchmarks the lookup of random SHX records, per AccessMode and with the
+ * index loaded into memory or not.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SHXBenchmark {
+	private static final int COUNT = 100000;
+
+	@Param({ "STREAM", "POSITIONAL", "MAPPED" })
+	public AccessMode accessMode;
+
+	@Param({ "false", "true" })
+	public boolean loadIndex;
+
+	private BenchmarkFiles files;
+	private FileInputStream is;
+	private SHXFile shx;
+	private int next = 1;
+
+	@Setup
+	public void setup() throws IOException {
+		files = new BenchmarkFiles(1, COUNT, 2);
+
+		is = new FileInputStream(files.getSHX());
+		shx = new SHXFile();
+		shx.open(is, accessMode);
+		if (loadIndex) {
+			shx.loadIndex();
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		shx.close();
+		is.close();
+		files.delete();
+	}
+
+	@Benchmark
+	public SHXRecord getRecordAt() throws IOException {
+		// Pseudo-random walk over every record
+		next = (int) ((next * 48271L) % COUNT) + 1;
+
+		return shx.getRecordAt(next);
+	}
+}
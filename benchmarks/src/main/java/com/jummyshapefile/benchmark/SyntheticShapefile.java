@@ -0,0 +1,364 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * Generator of synthetic shapefiles (SHP, SHX and DBF files) used by the
+ * benchmarks, so they do not depend on external data.
+ * <p>
+ * The entities are laid out in a square grid covering (0, 0) - (EXTENT,
+ * EXTENT), one entity per cell, so a rectangle covering a fraction of the
+ * extent matches roughly the same fraction of the entities. Each entity has
+ * the following fields: ID (N), NAME (C), VALUE (F) and CREATED (D).
+ * <p>
+ * Usage: SyntheticShapefile &lt;directory&gt; &lt;name&gt; &lt;shape
+ * type&gt; &lt;number of entities&gt; [points per part]
+ */
+public final class SyntheticShapefile {
+	/**
+	 * Size of the side of the square covered by the entities.
+	 */
+	public static final double EXTENT = 1000000;
+
+	private static final int SHP_FILE_CODE = 9994;
+	private static final int SHP_VERSION = 1000;
+	private static final int SHP_HEADER_LENGTH = 100;
+	private static final int SHX_RECORD_LENGTH = 8;
+
+	private static final String[] FIELD_NAMES = { "ID", "NAME", "VALUE",
+			"CREATED" };
+	private static final char[] FIELD_TYPES = { 'N', 'C', 'F', 'D' };
+	private static final int[] FIELD_LENGTHS = { 10, 24, 19, 8 };
+	private static final int[] FIELD_DECIMALS = { 0, 0, 8, 0 };
+
+	private SyntheticShapefile() {
+	}
+
+	/**
+	 * Generates a shapefile from the command line.
+	 *
+	 * @param args
+	 *            the directory, the name, the shape type, the number of
+	 *            entities and (optionally) the number of points per part
+	 * @throws IOException
+	 *             if there is a problem writing the files
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 4) {
+			System.err.println("Usage: SyntheticShapefile <directory> <name> "
+					+ "<shape type> <number of entities> [points per part]");
+			System.exit(1);
+		}
+
+		final int pointsPerPart = args.length > 4 ? Integer.parseInt(args[4])
+				: 16;
+		generate(new File(args[0]), args[1], Integer.parseInt(args[2]),
+				Integer.parseInt(args[3]), pointsPerPart, 1L);
+	}
+
+	/**
+	 * Generates the SHP, SHX and DBF files of a synthetic shapefile.
+	 *
+	 * @param directory
+	 *            the directory of the files
+	 * @param name
+	 *            the name of the files (without extension)
+	 * @param shapeType
+	 *            the shape type (1 Point, 3 Polyline, 5 Polygon or 8
+	 *            MultiPoint)
+	 * @param count
+	 *            the number of entities
+	 * @param pointsPerPart
+	 *            the number of points of each part (or of each multipoint)
+	 * @param seed
+	 *            the seed of the random values
+	 * @return the SHP file generated
+	 * @throws IOException
+	 *             if there is a problem writing the files
+	 */
+	public static File generate(final File directory, final String name,
+			final int shapeType, final int count, final int pointsPerPart,
+			final long seed) throws IOException {
+		final File shpFile = new File(directory, name + ".shp");
+		final File shxFile = new File(directory, name + ".shx");
+		final File dbfFile = new File(directory, name + ".dbf");
+
+		final Random random = new Random(seed);
+		final int side = (int) Math.ceil(Math.sqrt(count));
+		final double cell = EXTENT / side;
+
+		final OutputStream shp = new BufferedOutputStream(new FileOutputStream(
+				shpFile), 1 << 16);
+		final OutputStream shx = new BufferedOutputStream(new FileOutputStream(
+				shxFile), 1 << 16);
+		final OutputStream dbf = new BufferedOutputStream(new FileOutputStream(
+				dbfFile), 1 << 16);
+		try {
+			// The lengths are known before writing the records
+			long shpLength = SHP_HEADER_LENGTH;
+			for (int i = 0; i < count; i++) {
+				shpLength += 8 + contentLength(shapeType, pointsPerPart);
+			}
+			final long shxLength = SHP_HEADER_LENGTH + (long) count
+					* SHX_RECORD_LENGTH;
+
+			shp.write(fileHeader(shapeType, shpLength));
+			shx.write(fileHeader(shapeType, shxLength));
+			dbf.write(dbfHeader(count));
+
+			final ByteBuffer recordHeader = ByteBuffer.allocate(8);
+			long offset = SHP_HEADER_LENGTH;
+			for (int i = 0; i < count; i++) {
+				final double centerX = (i % side + 0.5) * cell;
+				final double centerY = (i / side + 0.5) * cell;
+				final byte[] content = content(shapeType, centerX, centerY,
+						cell * 0.4, pointsPerPart);
+
+				recordHeader.clear();
+				recordHeader.putInt(i + 1);
+				recordHeader.putInt(content.length / 2);
+				shp.write(recordHeader.array());
+				shp.write(content);
+
+				recordHeader.clear();
+				recordHeader.putInt((int) (offset / 2));
+				recordHeader.putInt(content.length / 2);
+				shx.write(recordHeader.array());
+				offset += 8 + content.length;
+
+				dbf.write(dbfRecord(i + 1, random));
+			}
+			dbf.write(0x1A);
+		} finally {
+			shp.close();
+			shx.close();
+			dbf.close();
+		}
+
+		return shpFile;
+	}
+
+	/**
+	 * Returns the content of a record (shape type and geometry) of a synthetic
+	 * shape centered in a point.
+	 *
+	 * @param shapeType
+	 *            the shape type (1 Point, 3 Polyline, 5 Polygon or 8
+	 *            MultiPoint)
+	 * @param centerX
+	 *            the X of the center of the shape
+	 * @param centerY
+	 *            the Y of the center of the shape
+	 * @param radius
+	 *            the radius of the shape
+	 * @param pointsPerPart
+	 *            the number of points of each part (or of each multipoint)
+	 * @return the content of the record
+	 */
+	public static byte[] content(final int shapeType, final double centerX,
+			final double centerY, final double radius, final int pointsPerPart) {
+		if (pointsPerPart < (shapeType == 5 ? 4 : 2)) {
+			throw new IllegalArgumentException("Invalid points per part: "
+					+ pointsPerPart);
+		}
+
+		final ByteBuffer output = ByteBuffer.allocate(
+				contentLength(shapeType, pointsPerPart)).order(
+				ByteOrder.LITTLE_ENDIAN);
+		output.putInt(shapeType);
+
+		switch (shapeType) {
+		case 1:
+			output.putDouble(centerX);
+			output.putDouble(centerY);
+			break;
+		case 3:
+		case 5:
+		case 8:
+			output.putDouble(centerX - radius);
+			output.putDouble(centerY - radius);
+			output.putDouble(centerX + radius);
+			output.putDouble(centerY + radius);
+
+			final int numParts = shapeType == 8 ? 0 : 2;
+			if (shapeType != 8) {
+				output.putInt(numParts);
+			}
+			output.putInt(Math.max(numParts, 1) * pointsPerPart);
+			for (int part = 0; part < numParts; part++) {
+				output.putInt(part * pointsPerPart);
+			}
+
+			for (int part = 0; part < Math.max(numParts, 1); part++) {
+				// The second part (a hole of polygons) is half as large
+				final double partRadius = radius / (part + 1);
+				for (int i = 0; i < pointsPerPart; i++) {
+					// Polygon rings are closed
+					final int vertex = shapeType == 5
+							&& i == pointsPerPart - 1 ? 0 : i;
+					final double angle = 2 * Math.PI * vertex
+							/ (shapeType == 5 ? pointsPerPart - 1
+									: pointsPerPart);
+					output.putDouble(centerX + partRadius * Math.cos(angle));
+					output.putDouble(centerY + partRadius * Math.sin(angle));
+				}
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unsupported shape type: "
+					+ shapeType);
+		}
+
+		return output.array();
+	}
+
+	/**
+	 * Returns the length in bytes of the content of a record.
+	 */
+	private static int contentLength(final int shapeType,
+			final int pointsPerPart) {
+		int output;
+
+		switch (shapeType) {
+		case 1:
+			output = 20;
+			break;
+		case 3:
+		case 5:
+			output = 44 + 2 * 4 + 2 * pointsPerPart * 16;
+			break;
+		case 8:
+			output = 40 + pointsPerPart * 16;
+			break;
+		default:
+			throw new IllegalArgumentException("Unsupported shape type: "
+					+ shapeType);
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the header of a SHP or SHX file.
+	 */
+	private static byte[] fileHeader(final int shapeType, final long length) {
+		final ByteBuffer output = ByteBuffer.allocate(SHP_HEADER_LENGTH);
+		output.putInt(0, SHP_FILE_CODE);
+		output.putInt(24, (int) (length / 2));
+
+		output.order(ByteOrder.LITTLE_ENDIAN);
+		output.putInt(28, SHP_VERSION);
+		output.putInt(32, shapeType);
+		output.putDouble(36, 0);
+		output.putDouble(44, 0);
+		output.putDouble(52, EXTENT);
+		output.putDouble(60, EXTENT);
+
+		return output.array();
+	}
+
+	/**
+	 * Returns the header (with the field descriptors) of the DBF file.
+	 */
+	private static byte[] dbfHeader(final int count) {
+		int recordLength = 1;
+		for (final int length : FIELD_LENGTHS) {
+			recordLength += length;
+		}
+		final int headerLength = 32 + 32 * FIELD_NAMES.length + 1;
+
+		final ByteBuffer output = ByteBuffer.allocate(headerLength).order(
+				ByteOrder.LITTLE_ENDIAN);
+		output.put(0, (byte) 0x03);
+		output.put(1, (byte) 115);
+		output.put(2, (byte) 1);
+		output.put(3, (byte) 1);
+		output.putInt(4, count);
+		output.putShort(8, (short) headerLength);
+		output.putShort(10, (short) recordLength);
+
+		for (int i = 0; i < FIELD_NAMES.length; i++) {
+			final int position = 32 + 32 * i;
+			final byte[] name = ascii(FIELD_NAMES[i]);
+			for (int j = 0; j < name.length; j++) {
+				output.put(position + j, name[j]);
+			}
+			output.put(position + 11, (byte) FIELD_TYPES[i]);
+			output.put(position + 16, (byte) FIELD_LENGTHS[i]);
+			output.put(position + 17, (byte) FIELD_DECIMALS[i]);
+		}
+		output.put(headerLength - 1, (byte) 0x0D);
+
+		return output.array();
+	}
+
+	/**
+	 * Returns a record of the DBF file.
+	 */
+	private static byte[] dbfRecord(final int id, final Random random) {
+		final StringBuilder sb = new StringBuilder(" ");
+		append(sb, String.valueOf(id), FIELD_LENGTHS[0], true);
+		append(sb, "Entity " + Integer.toHexString(random.nextInt()),
+				FIELD_LENGTHS[1], false);
+		append(sb, String.valueOf(Math.round(random.nextDouble() * 1e12) / 1e8),
+				FIELD_LENGTHS[2], true);
+		append(sb, String.valueOf(19700000 + random.nextInt(50) * 10000
+				+ (1 + random.nextInt(12)) * 100 + 1 + random.nextInt(28)),
+				FIELD_LENGTHS[3], false);
+
+		return ascii(sb.toString());
+	}
+
+	/**
+	 * Appends a value padded with spaces to a given length.
+	 */
+	private static void append(final StringBuilder sb, final String value,
+			final int length, final boolean rightAligned) {
+		final String trimmed = value.length() > length ? value.substring(0,
+				length) : value;
+		if (!rightAligned) {
+			sb.append(trimmed);
+		}
+		for (int i = trimmed.length(); i < length; i++) {
+			sb.append(' ');
+		}
+		if (rightAligned) {
+			sb.append(trimmed);
+		}
+	}
+
+	/**
+	 * Returns the ASCII bytes of a String.
+	 */
+	private static byte[] ascii(final String value) {
+		final byte[] output = new byte[value.length()];
+		for (int i = 0; i < output.length; i++) {
+			output[i] = (byte) value.charAt(i);
+		}
+
+		return output;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shp.SHPGeometryReader;
+import com.jummyshapefile.utils.WKTUtils;
+import com.jummyshapefile.utils.WKTWriter;
+
+/**
+ * Benchmarks WKTUtils.geometry2WKT() per shape type, for the object model
+ * and for PackedGeometry, and the streaming WKTWriter writing to a reused
+ * byte stream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WKTBenchmark {
+	@Param({ "1", "3", "5", "8" })
+	public int shapeType;
+
+	@Param({ "16", "1024" })
+	public int pointsPerPart;
+
+	private Geometry geometry;
+	private Geometry packed;
+	private ByteArrayOutputStream stream;
+	private WKTWriter writer;
+
+	@Setup
+	public void setup() throws IOException {
+		final byte[] content = SyntheticShapefile.content(shapeType,
+				437717.25, 4470909.5, 1234.5, pointsPerPart);
+
+		final SHPGeometryReader reader = new SHPGeometryReader();
+		geometry = reader.readGeometry(content, shapeType);
+		packed = reader.readPackedGeometry(ByteBuffer.wrap(content), shapeType);
+		stream = new ByteArrayOutputStream();
+		writer = new WKTWriter(stream);
+	}
+
+	@Benchmark
+	public String geometry2WKT() {
+		return WKTUtils.geometry2WKT(geometry);
+	}
+
+	@Benchmark
+	public String packedGeometry2WKT() {
+		return WKTUtils.geometry2WKT(packed);
+	}
+
+	@Benchmark
+	public int writePackedWKT() throws IOException {
+		stream.reset();
+		writer.write(packed);
+
+		return stream.size();
+	}
+}
@@ -19,25 +19,37 @@ package com.jummyshapefile.binaryfile;
 import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import com.jummyshapefile.binaryfile.model.BinaryFileHeader;
+import com.jummyshapefile.io.BinaryFileSource;
+import com.jummyshapefile.io.ChannelFileSource;
+import com.jummyshapefile.io.MappedFileSource;
 import com.jummyshapefile.io.MarkFileInputStream;
+import com.jummyshapefile.io.StreamFileSource;
 import com.jummyshapefile.utils.FileUtils;
 
 /**
  * Class representing a binary file resource.
+ * <p>
+ * The header is always read sequentially. The records are read through a
+ * BinaryFileSource chosen by the AccessMode used to open the file.
  *
  * @see BinaryFileHeader
  * @see BinaryFileHeaderReader
+ * @see AccessMode
  */
 public abstract class AbstractBinaryFile<T extends BinaryFileHeader> implements
 Closeable {
 	protected MarkFileInputStream mfis;
+	protected BinaryFileSource source;
+	protected AccessMode accessMode = AccessMode.STREAM;
 	protected T header;
 	protected BinaryFileHeaderReader headerReader;
 
 	/**
-	 * Opens a binary file and reads its header.
+	 * Opens a binary file and reads its header. The records will be read
+	 * using AccessMode.STREAM.
 	 *
 	 * @param is
 	 *            the InputStream representing the binary file
@@ -46,9 +58,30 @@ Closeable {
 	 *             header
 	 */
 	public void open(final FileInputStream is) throws IOException {
+		open(is, AccessMode.STREAM);
+	}
+
+	/**
+	 * Opens a binary file and reads its header.
+	 *
+	 * @param is
+	 *            the InputStream representing the binary file
+	 * @param accessMode
+	 *            how the records of the file will be read
+	 * @throws IOException
+	 *             if there is a problem opening the binary file or reading the
+	 *             header
+	 *
+	 * @see AccessMode
+	 */
+	public void open(final FileInputStream is, final AccessMode accessMode)
+			throws IOException {
 		if (is == null) {
 			throw new IllegalArgumentException("The FileInputStream is null");
 		}
+		if (accessMode == null) {
+			throw new IllegalArgumentException("The AccessMode is null");
+		}
 
 		this.mfis = new MarkFileInputStream(is);
 		mfis.mark(mfis.available() + 1);
@@ -56,6 +89,9 @@ Closeable {
 
 		init();
 		readHeader();
+
+		this.accessMode = accessMode;
+		this.source = openSource(is, accessMode);
 	}
 
 	/**
@@ -76,13 +112,102 @@ Closeable {
 		return header;
 	}
 
+	/**
+	 * Returns how the records of the binary file are read.
+	 *
+	 * @return how the records of the binary file are read
+	 *
+	 * @see AccessMode
+	 */
+	public AccessMode getAccessMode() {
+		return accessMode;
+	}
+
 	/**
 	 * Closes the binary file releasing all the resources.
 	 */
 	public void close() {
+		if (source != null) {
+			try {
+				source.close();
+			} catch (final IOException ioe) {
+				// Ignore
+			}
+		}
 		FileUtils.closeInputStream(mfis);
 	}
 
+	/**
+	 * Returns a ByteBuffer holding the requested bytes of the binary file.
+	 * <p>
+	 * The returned ByteBuffer may be a view of the mapped file, so it must not
+	 * be modified.
+	 *
+	 * @param position
+	 *            the position in the file of the first byte to read
+	 * @param length
+	 *            the number of bytes to read
+	 * @return a ByteBuffer holding the requested bytes of the binary file
+	 * @throws IOException
+	 *             if the requested bytes cannot be read completely
+	 */
+	protected ByteBuffer read(final long position, final int length)
+			throws IOException {
+		return source.read(position, length);
+	}
+
+	/**
+	 * Fills a ByteBuffer (from its position to its limit) with the bytes of
+	 * the binary file starting at the requested position.
+	 *
+	 * @param position
+	 *            the position in the file of the first byte to read
+	 * @param dst
+	 *            the ByteBuffer to fill
+	 * @throws IOException
+	 *             if the requested bytes cannot be read completely
+	 */
+	protected void read(final long position, final ByteBuffer dst)
+			throws IOException {
+		source.read(position, dst);
+	}
+
+	/**
+	 * Returns the size of the binary file in bytes.
+	 *
+	 * @return the size of the binary file in bytes
+	 * @throws IOException
+	 *             if there is a problem querying the size of the file
+	 */
+	protected long size() throws IOException {
+		return source.size();
+	}
+
+	/**
+	 * Returns a byte array holding the requested bytes of the binary file.
+	 *
+	 * @param position
+	 *            the position in the file of the first byte to read
+	 * @param length
+	 *            the number of bytes to read
+	 * @return a byte array holding the requested bytes of the binary file
+	 * @throws IOException
+	 *             if the requested bytes cannot be read completely
+	 */
+	protected byte[] readBytes(final long position, final int length)
+			throws IOException {
+		final ByteBuffer buffer = source.read(position, length);
+		if (buffer.hasArray() && buffer.arrayOffset() == 0
+				&& buffer.array().length == length) {
+			return buffer.array();
+		}
+
+		final byte[] output = new byte[length];
+		buffer.get(output);
+
+		return output;
+	}
+
 	/**
 	 * Reads the header of the binary file.
 	 *
@@ -96,4 +221,36 @@ Closeable {
 			throw new IOException("The header is null");
 		}
 	}
+
+	/**
+	 * Returns the BinaryFileSource used to read the records of the binary
+	 * file.
+	 *
+	 * @param is
+	 *            the InputStream representing the binary file
+	 * @param accessMode
+	 *            how the records of the file will be read
+	 * @return the BinaryFileSource used to read the records of the binary
+	 *         file
+	 * @throws IOException
+	 *             if there is a problem opening the BinaryFileSource
+	 */
+	private BinaryFileSource openSource(final FileInputStream is,
+			final AccessMode accessMode) throws IOException {
+		BinaryFileSource output = null;
+
+		switch (accessMode) {
+		case MAPPED:
+			output = new MappedFileSource(is.getChannel());
+			break;
+		case POSITIONAL:
+			output = new ChannelFileSource(is.getChannel());
+			break;
+		default:
+			output = new StreamFileSource(mfis);
+			break;
+		}
+
+		return output;
+	}
 }
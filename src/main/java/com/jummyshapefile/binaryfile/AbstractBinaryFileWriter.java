@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.binaryfile;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.jummyshapefile.binaryfile.model.BinaryFileHeader;
+
+/**
+ * Base class of the writers of binary files.
+ * <p>
+ * The records are written in one sequential pass through a large buffer (so
+ * the file is written with few, big writes). Room for the header is left at
+ * the beginning of the file, and the header is written at the end (when the
+ * writer is closed), once the values that depend on the records (lengths,
+ * counts, bounds...) are known. Not thread-safe.
+ *
+ * @see AbstractBinaryFile
+ */
+public abstract class AbstractBinaryFileWriter<T extends BinaryFileHeader>
+		implements Closeable {
+	/**
+	 * Default size in bytes of the buffer of the writers.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	protected final T header;
+	private final FileOutputStream os;
+	private final FileChannel channel;
+	private final long start;
+	private final int headerLength;
+	private ByteBuffer buffer;
+	private long length;
+	private boolean closed;
+
+	/**
+	 * Creates a writer of a binary file, leaving room for its header.
+	 *
+	 * @param os
+	 *            the FileOutputStream representing the binary file (written
+	 *            from its current position)
+	 * @param header
+	 *            the header of the binary file
+	 * @param headerLength
+	 *            the length in bytes of the header
+	 * @param bufferSize
+	 *            the size in bytes of the buffer
+	 * @throws IOException
+	 *             if there is a problem querying the position of the file
+	 */
+	protected AbstractBinaryFileWriter(final FileOutputStream os,
+			final T header, final int headerLength, final int bufferSize)
+			throws IOException {
+		if (os == null) {
+			throw new IllegalArgumentException("The FileOutputStream is null");
+		}
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Invalid buffer size: "
+					+ bufferSize);
+		}
+
+		this.os = os;
+		this.channel = os.getChannel();
+		this.start = channel.position();
+		this.header = header;
+		this.headerLength = headerLength;
+		this.buffer = ByteBuffer.allocate(Math.max(bufferSize, headerLength));
+
+		// Room for the header, written when closing
+		reserve(headerLength).put(new byte[headerLength]);
+	}
+
+	/**
+	 * Returns a BinaryFileHeader object representing the header of the binary
+	 * file (written when the writer is closed).
+	 *
+	 * @return a BinaryFileHeader object representing the header of the binary
+	 *         file
+	 *
+	 * @see BinaryFileHeader
+	 */
+	public T getHeader() {
+		return header;
+	}
+
+	/**
+	 * Returns the number of bytes written to the binary file so far
+	 * (including the header).
+	 *
+	 * @return the number of bytes written to the binary file so far
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Writes the buffered bytes and the header, and closes the binary file.
+	 *
+	 * @throws IOException
+	 *             if there is a problem writing the binary file
+	 */
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			try {
+				flush();
+
+				final ByteBuffer data = ByteBuffer.allocate(headerLength);
+				writeHeader(data);
+				data.clear();
+				long position = start;
+				while (data.hasRemaining()) {
+					position += channel.write(data, position);
+				}
+			} finally {
+				os.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns the buffer with room for the given number of bytes (from its
+	 * position), which are counted as written. The buffer is written to the
+	 * file first if it has not enough room.
+	 *
+	 * @param length
+	 *            the number of bytes to write
+	 * @return the buffer to write the bytes to (the bytes must be written
+	 *         using relative puts, its byte order is undefined)
+	 * @throws IOException
+	 *             if there is a problem writing the buffer to the file
+	 */
+	protected ByteBuffer reserve(final int length) throws IOException {
+		if (closed) {
+			throw new IOException("The writer is closed");
+		}
+
+		if (buffer.remaining() < length) {
+			flush();
+			if (buffer.capacity() < length) {
+				buffer = ByteBuffer.allocate(length);
+			}
+		}
+		this.length += length;
+
+		return buffer;
+	}
+
+	/**
+	 * Writes the header of the binary file.
+	 *
+	 * @param data
+	 *            the ByteBuffer to write the header to (from 0 to the length
+	 *            of the header, using absolute or relative puts)
+	 */
+	protected abstract void writeHeader(ByteBuffer data);
+
+	/**
+	 * Writes the buffered bytes to the file.
+	 *
+	 * @throws IOException
+	 *             if there is a problem writing the buffer to the file
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.binaryfile;
+
+/**
+ * Defines how the records of a binary file are accessed once its header has
+ * been read.
+ *
+ * @see AbstractBinaryFile
+ */
+public enum AccessMode {
+	/**
+	 * Records are read through the mark/reset stream of the file (reset, skip
+	 * and read for every record).
+	 * <p>
+	 * Records must not be read concurrently, as the position of the stream is
+	 * shared.
+	 */
+	STREAM,
+
+	/**
+	 * The file is memory mapped (in windows, so files over 2 GB are
+	 * supported) and records are read directly from memory.
+	 * <p>
+	 * Records can be read concurrently from several threads. The file stays
+	 * mapped (and locked on Windows) until the mapped memory is garbage
+	 * collected, even after closing it.
+	 */
+	MAPPED,
+
+	/**
+	 * Records are read using positional reads on the FileChannel of the file,
+	 * without sharing any stream position.
+	 * <p>
+	 * Records can be read concurrently from several threads.
+	 */
+	POSITIONAL
+}
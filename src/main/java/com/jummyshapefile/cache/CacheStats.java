@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.cache;
+
+/**
+ * Immutable snapshot of the statistics of a cache.
+ *
+ * @see LRUCache
+ */
+public class CacheStats {
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final int entryCount;
+	private final long size;
+	private final long maxSize;
+
+	/**
+	 * Creates a snapshot of the statistics of a cache.
+	 *
+	 * @param hitCount
+	 *            the number of lookups that found a cached value
+	 * @param missCount
+	 *            the number of lookups that did not find a cached value
+	 * @param evictionCount
+	 *            the number of values evicted to make room for others
+	 * @param entryCount
+	 *            the number of values cached
+	 * @param size
+	 *            the estimated size in bytes of the values cached
+	 * @param maxSize
+	 *            the maximum estimated size in bytes of the values
+	 */
+	public CacheStats(final long hitCount, final long missCount,
+			final long evictionCount, final int entryCount, final long size,
+			final long maxSize) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.entryCount = entryCount;
+		this.size = size;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the number of lookups that found a cached value.
+	 *
+	 * @return the number of lookups that found a cached value
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of lookups that did not find a cached value.
+	 *
+	 * @return the number of lookups that did not find a cached value
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the ratio of lookups that found a cached value.
+	 *
+	 * @return the ratio (0-1) of lookups that found a cached value (0 if
+	 *         there has been no lookup)
+	 */
+	public double getHitRate() {
+		final long lookups = hitCount + missCount;
+
+		return lookups > 0 ? (double) hitCount / lookups : 0;
+	}
+
+	/**
+	 * Returns the number of values evicted to make room for others.
+	 *
+	 * @return the number of values evicted to make room for others
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Returns the number of values cached.
+	 *
+	 * @return the number of values cached
+	 */
+	public int getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * Returns the estimated size in bytes of the values cached.
+	 *
+	 * @return the estimated size in bytes of the values cached
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the maximum estimated size in bytes of the values.
+	 *
+	 * @return the maximum estimated size in bytes of the values
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	@Override
+	public String toString() {
+		return "hits " + hitCount + ", misses " + missCount + ", evictions "
+				+ evictionCount + ", entries " + entryCount + ", bytes "
+				+ size + "/" + maxSize;
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of values keyed by an int (usually a record
+ * number), bounded by the estimated size in bytes of its values instead of by
+ * the number of entries.
+ * <p>
+ * When a value is added and the total size exceeds the maximum, the least
+ * recently used values are evicted until it fits. Values larger than the
+ * maximum size are not cached at all.
+ * <p>
+ * Thread-safe: every operation holds the lock of the cache for a few map
+ * operations (values are never computed while holding it).
+ *
+ * @param <V>
+ *            The type of the values
+ *
+ * @see CacheStats
+ */
+public class LRUCache<V> {
+	private final long maxSize;
+	// Access order, so the first entry is the least recently used
+	private final LinkedHashMap<Integer, Entry<V>> entries = new LinkedHashMap<Integer, Entry<V>>(
+			16, 0.75f, true);
+	private long size;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	/**
+	 * Creates a cache bounded by a maximum size in bytes.
+	 *
+	 * @param maxSize
+	 *            the maximum estimated size in bytes of the values (0 disables
+	 *            the cache)
+	 */
+	public LRUCache(final long maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("Invalid maximum size: "
+					+ maxSize);
+		}
+
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the value cached for a key, making it the most recently used.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the value cached for the key (null if it is not cached)
+	 */
+	public synchronized V get(final int key) {
+		V output = null;
+
+		final Entry<V> entry = entries.get(Integer.valueOf(key));
+		if (entry != null) {
+			output = entry.value;
+			hitCount++;
+		} else {
+			missCount++;
+		}
+
+		return output;
+	}
+
+	/**
+	 * Caches a value for a key (replacing the previous one), evicting the least
+	 * recently used values if the maximum size is exceeded.
+	 *
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value
+	 * @param valueSize
+	 *            the estimated size in bytes of the value
+	 */
+	public synchronized void put(final int key, final V value,
+			final long valueSize) {
+		if (value == null) {
+			throw new IllegalArgumentException("The value is null");
+		}
+		if (valueSize < 0) {
+			throw new IllegalArgumentException("Invalid size: " + valueSize);
+		}
+
+		final Entry<V> previous = entries.remove(Integer.valueOf(key));
+		if (previous != null) {
+			size -= previous.size;
+		}
+
+		if (valueSize <= maxSize) {
+			final Iterator<Entry<V>> iterator = entries.values().iterator();
+			while (size + valueSize > maxSize && iterator.hasNext()) {
+				size -= iterator.next().size;
+				iterator.remove();
+				evictionCount++;
+			}
+
+			entries.put(Integer.valueOf(key), new Entry<V>(value, valueSize));
+			size += valueSize;
+		}
+	}
+
+	/**
+	 * Removes the value cached for a key.
+	 *
+	 * @param key
+	 *            the key
+	 */
+	public synchronized void remove(final int key) {
+		final Entry<V> previous = entries.remove(Integer.valueOf(key));
+		if (previous != null) {
+			size -= previous.size;
+		}
+	}
+
+	/**
+	 * Removes all the values of the cache (the statistics are kept).
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * Returns the maximum estimated size in bytes of the values.
+	 *
+	 * @return the maximum estimated size in bytes of the values
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of the cache.
+	 *
+	 * @return a snapshot of the statistics of the cache
+	 *
+	 * @see CacheStats
+	 */
+	public synchronized CacheStats getStats() {
+		return new CacheStats(hitCount, missCount, evictionCount,
+				entries.size(), size, maxSize);
+	}
+
+	/**
+	 * A cached value and its estimated size in bytes.
+	 */
+	private static class Entry<V> {
+		private final V value;
+		private final long size;
+
+		private Entry(final V value, final long size) {
+			this.value = value;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.dbf;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
+import com.jummyshapefile.dbf.model.DBFHeader;
+import com.jummyshapefile.utils.ByteUtils;
+import com.jummyshapefile.utils.DateUtils;
+
+/**
+ * Columnar in-memory table with some fields (columns) of all the records of a
+ * DBF file, loaded in one sequential pass (see DBFFile.loadColumns()).
+ * <p>
+ * Every column is stored in a primitive array with one element per record
+ * (the row i holds the record i + 1):
+ * <ul>
+ * <li>LONG: long[] (N fields without decimals of up to 18 characters)
+ * <li>DOUBLE: double[] (other N fields and F fields)
+ * <li>DATE: int[] with the epoch days (D fields)
+ * <li>STRING: int[] with the codes of the values in a dictionary of distinct
+ * values (C fields)
+ * <p>
+ * Empty values are stored as 0 (LONG and DOUBLE) or DateUtils.INVALID_DATE
+ * (DATE) and flagged as null (see isNull()). As in DBFRecordReader, empty C
+ * fields are empty Strings.
+ * <p>
+ * The arrays returned are not copied, so they must not be modified. Once
+ * loaded, the store can be read concurrently from several threads.
+ *
+ * @see DBFFile
+ * @see DateUtils
+ */
+public class DBFColumnStore {
+	/**
+	 * The type of the array holding a column.
+	 */
+	public enum ColumnType {
+		/**
+		 * long[] (N fields without decimals of up to 18 characters).
+		 */
+		LONG,
+
+		/**
+		 * double[] (other N fields and F fields).
+		 */
+		DOUBLE,
+
+		/**
+		 * int[] with the epoch days (D fields).
+		 */
+		DATE,
+
+		/**
+		 * int[] with the codes of the values in a dictionary (C fields).
+		 */
+		STRING
+	}
+
+	// Characters of an integer that always fits in a long (sign included)
+	private static final int MAX_LONG_LENGTH = 18;
+
+	private final int recordCount;
+	private final DBFFieldDescriptor[] descriptors;
+	private final ColumnType[] types;
+	private final long[][] longs;
+	private final double[][] doubles;
+	private final int[][] ints;
+	private final BitSet[] nulls;
+	private final BitSet deleted = new BitSet();
+	private final List<Map<String, Integer>> codes;
+	private final String[][] dictionaries;
+
+	/**
+	 * Creates an empty store for some fields of a DBF file.
+	 *
+	 * @param header
+	 *            the header of the DBF file
+	 * @param fieldIndexes
+	 *            the indexes (0-based) of the fields to store (all the fields
+	 *            if null)
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no field that matches a requested index
+	 * @throws UnsupportedOperationException
+	 *             if the type of a field is not N, F, D or C
+	 */
+	DBFColumnStore(final DBFHeader header, final int[] fieldIndexes)
+			throws IndexOutOfBoundsException, UnsupportedOperationException {
+		if (header == null) {
+			throw new IllegalArgumentException("The header is null");
+		}
+
+		final List<DBFFieldDescriptor> fields = header.getFields();
+		int[] indexes = fieldIndexes;
+		if (indexes == null) {
+			indexes = new int[fields.size()];
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = i;
+			}
+		}
+
+		recordCount = header.getRecordCount();
+		descriptors = new DBFFieldDescriptor[indexes.length];
+		types = new ColumnType[indexes.length];
+		longs = new long[indexes.length][];
+		doubles = new double[indexes.length][];
+		ints = new int[indexes.length][];
+		nulls = new BitSet[indexes.length];
+		codes = new ArrayList<Map<String, Integer>>(indexes.length);
+		dictionaries = new String[indexes.length][];
+
+		for (int i = 0; i < indexes.length; i++) {
+			if (indexes[i] < 0 || indexes[i] >= fields.size()) {
+				throw new IndexOutOfBoundsException("Number of fields: "
+						+ fields.size() + ". Requested: " + indexes[i]);
+			}
+
+			descriptors[i] = fields.get(indexes[i]);
+			types[i] = getColumnType(descriptors[i]);
+			nulls[i] = new BitSet();
+			codes.add(null);
+
+			switch (types[i]) {
+			case LONG:
+				longs[i] = new long[recordCount];
+				break;
+			case DOUBLE:
+				doubles[i] = new double[recordCount];
+				break;
+			case DATE:
+				ints[i] = new int[recordCount];
+				break;
+			case STRING:
+				ints[i] = new int[recordCount];
+				codes.set(i, new HashMap<String, Integer>());
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of records (rows) of the store.
+	 *
+	 * @return the number of records of the store
+	 */
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Returns the number of columns of the store.
+	 *
+	 * @return the number of columns of the store
+	 */
+	public int getColumnCount() {
+		return descriptors.length;
+	}
+
+	/**
+	 * Returns the index of the column with the given field name (ignoring
+	 * case).
+	 *
+	 * @param name
+	 *            the name of the field
+	 * @return the index of the column (-1 if there is no column with that
+	 *         name)
+	 */
+	public int getColumnIndex(final String name) {
+		int output = -1;
+
+		if (name == null) {
+			throw new IllegalArgumentException("The field name is null");
+		}
+
+		for (int i = 0; i < descriptors.length && output < 0; i++) {
+			if (name.equalsIgnoreCase(descriptors[i].getName())) {
+				output = i;
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the descriptor of the field stored in a column.
+	 *
+	 * @param column
+	 *            the index of the column
+	 * @return the descriptor of the field stored in the column
+	 *
+	 * @see DBFFieldDescriptor
+	 */
+	public DBFFieldDescriptor getDescriptor(final int column) {
+		return descriptors[column];
+	}
+
+	/**
+	 * Returns the type of the array holding a column.
+	 *
+	 * @param column
+	 *            the index of the column
+	 * @return the type of the array holding the column
+	 */
+	public ColumnType getColumnType(final int column) {
+		return types[column];
+	}
+
+	/**
+	 * Returns whether a record is active (not deleted).
+	 *
+	 * @param row
+	 *            the row of the record (0-based)
+	 * @return whether the record is active
+	 */
+	public boolean isActive(final int row) {
+		return !deleted.get(row);
+	}
+
+	/**
+	 * Returns whether the value of a column in a record is empty.
+	 *
+	 * @param column
+	 *            the index of the column
+	 * @param row
+	 *            the row of the record (0-based)
+	 * @return whether the value is empty
+	 */
+	public boolean isNull(final int column, final int row) {
+		return nulls[column].get(row);
+	}
+
+	/**
+	 * Returns the values of a LONG column.
+	 *
+	 * @param column
+	 *            the index of the column
+	 * @return the values of the column (one per row)
+	 * @throws IllegalArgumentException
+	 *             if the column is not a LONG column
+	 */
+	public long[] getLongs(final int column) throws IllegalArgumentException {
+		checkColumnType(column, ColumnType.LONG);
+
+		return longs[column];
+	}
+
+	/**
+	 * Returns the values of a DOUBLE column.
+	 *
+	 * @param column
+	 *            the index of the column
+	 * @return the values of the column (one per row)
+	 * @throws IllegalArgumentException
+	 *             if the column is not a DOUBLE column
+	 */
+	public double[] getDoubles(final int column)
+			throws IllegalArgumentException {
+		checkColumnType(column, ColumnType.DOUBLE);
+
+		return doubles[column];
+	}
+
+	/**
+	 * Returns the epoch days of a DATE column.
+	 *
+	 * @param column
+	 *            the index of the column
+	 * @return the epoch days of the column (one per row)
+	 * @throws IllegalArgumentException
+	 *             if the column is not a DATE column
+	 *
+	 * @see DateUtils
+	 */
+	public int[] getEpochDays(final int column)
+			throws IllegalArgumentException {
+		checkColumnType(column, ColumnType.DATE);
+
+		return ints[column];
+	}
+
+	/**
+	 * Returns the codes of the values of a STRING column (indexes in the
+	 * dictionary of the column).
+	 *
+	 * @param column
+	 *            the index of the column
+	 * @return the codes of the values of the column (one per row)
+	 * @throws IllegalArgumentException
+	 *             if the column is not a STRING column
+	 */
+	public int[] getCodes(final int column) throws IllegalArgumentException {
+		checkColumnType(column, ColumnType.STRING);
+
+		return ints[column];
+	}
+
+	/**
+	 * Returns the distinct values of a STRING column, in order of appearance.
+	 *
+	 * @param column
+	 *            the index of the column
+	 * @return the distinct values of the column
+	 * @throws IllegalArgumentException
+	 *             if the column is not a STRING column
+	 */
+	public String[] getDictionary(final int column)
+			throws IllegalArgumentException {
+		checkColumnType(column, ColumnType.STRING);
+
+		return dictionaries[column];
+	}
+
+	/**
+	 * Returns the value of a STRING column in a record.
+	 *
+	 * @param column
+	 *            the index of the column
+	 * @param row
+	 *            the row of the record (0-based)
+	 * @return the value of the column in the record
+	 * @throws IllegalArgumentException
+	 *             if the column is not a STRING column
+	 */
+	public String getString(final int column, final int row)
+			throws IllegalArgumentException {
+		return getDictionary(column)[getCodes(column)[row]];
+	}
+
+	/**
+	 * Stores the values of a record.
+	 *
+	 * @param row
+	 *            the row of the record (0-based)
+	 * @param data
+	 *            the byte array holding the record
+	 * @param offset
+	 *            the offset of the record in the byte array
+	 */
+	void load(final int row, final byte[] data, final int offset) {
+		if (data[offset] == DBFParameters.DBF_RECORD_DELETED) {
+			deleted.set(row);
+		}
+
+		for (int i = 0; i < descriptors.length; i++) {
+			final int length = descriptors[i].getLength();
+			final int fieldOffset = offset + descriptors[i].getOffset();
+
+			if (types[i] == ColumnType.STRING) {
+				ints[i][row] = encode(i,
+						ByteUtils.readString(data, length, fieldOffset).trim());
+			} else if (ByteUtils.isBlank(data, length, fieldOffset)) {
+				nulls[i].set(row);
+				if (types[i] == ColumnType.DATE) {
+					ints[i][row] = DateUtils.INVALID_DATE;
+				}
+			} else if (types[i] == ColumnType.LONG) {
+				longs[i][row] = ByteUtils.parseLong(data, length, fieldOffset);
+			} else if (types[i] == ColumnType.DOUBLE) {
+				doubles[i][row] = ByteUtils.parseDouble(data, length,
+						fieldOffset);
+			} else {
+				ints[i][row] = DateUtils.parseEpochDay(data, length,
+						fieldOffset);
+				if (ints[i][row] == DateUtils.INVALID_DATE) {
+					nulls[i].set(row);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the dictionaries of the STRING columns once all the records are
+	 * stored.
+	 */
+	void finish() {
+		for (int i = 0; i < descriptors.length; i++) {
+			final Map<String, Integer> columnCodes = codes.get(i);
+			if (columnCodes != null) {
+				dictionaries[i] = new String[columnCodes.size()];
+				for (final Map.Entry<String, Integer> entry : columnCodes
+						.entrySet()) {
+					dictionaries[i][entry.getValue()] = entry.getKey();
+				}
+				codes.set(i, null);
+			}
+		}
+	}
+
+	/**
+	 * Returns the code of a value of a STRING column, adding it to the
+	 * dictionary of the column if it is new.
+	 *
+	 * @param column
+	 *            the index of the column
+	 * @param value
+	 *            the value
+	 * @return the code of the value
+	 */
+	private int encode(final int column, final String value) {
+		final Map<String, Integer> columnCodes = codes.get(column);
+
+		Integer output = columnCodes.get(value);
+		if (output == null) {
+			output = Integer.valueOf(columnCodes.size());
+			columnCodes.put(value, output);
+		}
+
+		return output.intValue();
+	}
+
+	/**
+	 * Checks the type of a column.
+	 *
+	 * @param column
+	 *            the index of the column
+	 * @param type
+	 *            the expected type
+	 * @throws IllegalArgumentException
+	 *             if the column is not of the expected type
+	 */
+	private void checkColumnType(final int column, final ColumnType type)
+			throws IllegalArgumentException {
+		if (types[column] != type) {
+			throw new IllegalArgumentException("The column " + column
+					+ " is " + types[column] + ", not " + type);
+		}
+	}
+
+	/**
+	 * Returns the type of the array holding the values of a field.
+	 *
+	 * @param descriptor
+	 *            the descriptor of the field
+	 * @return the type of the array holding the values of the field
+	 * @throws UnsupportedOperationException
+	 *             if the type of the field is not N, F, D or C
+	 */
+	private static ColumnType getColumnType(final DBFFieldDescriptor descriptor)
+			throws UnsupportedOperationException {
+		ColumnType output = null;
+
+		final String type = descriptor.getType();
+		if ("N".equalsIgnoreCase(type)) {
+			// Longer integers may not fit in a long
+			output = descriptor.getDecimalCount() > 0
+					|| descriptor.getLength() > MAX_LONG_LENGTH ? ColumnType.DOUBLE
+					: ColumnType.LONG;
+		} else if ("F".equalsIgnoreCase(type)) {
+			output = ColumnType.DOUBLE;
+		} else if ("D".equalsIgnoreCase(type)) {
+			output = ColumnType.DATE;
+		} else if ("C".equalsIgnoreCase(type)) {
+			output = ColumnType.STRING;
+		} else {
+			throw new UnsupportedOperationException(
+					"Field type not allowed (not implemented): " + type);
+		}
+
+		return output;
+	}
+}
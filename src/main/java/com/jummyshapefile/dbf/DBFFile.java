@@ -17,7 +17,11 @@
 package com.jummyshapefile.dbf;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import com.jummyshapefile.binaryfile.AbstractBinaryFile;
 import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
@@ -34,6 +38,14 @@ import com.jummyshapefile.dbf.model.DBFRecord;
  * @see DBFRecord
  */
 public class DBFFile extends AbstractBinaryFile<DBFHeader> {
+	/**
+	 * Size in bytes of the chunks of records read while loading columns or
+	 * filtering all the records.
+	 */
+	public static final int LOAD_BUFFER_SIZE = 256 * 1024;
+
+	private volatile Map<String, Integer> fieldIndexes;
+
 	@Override
 	public void init() {
 		headerReader = new DBFHeaderReader();
@@ -61,6 +73,73 @@ public class DBFFile extends AbstractBinaryFile<DBFHeader> {
 		return header.getFields();
 	}
 
+	/**
+	 * Returns the index (0-based) of the field with the given name (ignoring
+	 * case).
+	 *
+	 * @param name
+	 *            the name of the field
+	 * @return the index of the field with the given name (-1 if there is no
+	 *         field with that name)
+	 */
+	public int getFieldIndex(final String name) {
+		int output = -1;
+
+		if (name == null) {
+			throw new IllegalArgumentException("The field name is null");
+		}
+
+		Map<String, Integer> indexes = fieldIndexes;
+		if (indexes == null) {
+			// Built once (a race only builds an equal map twice)
+			indexes = new HashMap<String, Integer>();
+			final List<DBFFieldDescriptor> fields = header.getFields();
+			for (int i = fields.size() - 1; i >= 0; i--) {
+				indexes.put(fields.get(i).getName().toUpperCase(Locale.ENGLISH),
+						Integer.valueOf(i));
+			}
+			fieldIndexes = indexes;
+		}
+
+		final Integer index = indexes.get(name.toUpperCase(Locale.ENGLISH));
+		if (index != null) {
+			output = index.intValue();
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the indexes (0-based) of the fields with the given names
+	 * (ignoring case), to be used with getRecordAt(recordNum, fieldIndexes).
+	 *
+	 * @param names
+	 *            the names of the fields
+	 * @return the indexes of the fields with the given names, in the same
+	 *         order
+	 * @throws IllegalArgumentException
+	 *             if there is no field with one of the names
+	 */
+	public int[] getFieldIndexes(final String... names)
+			throws IllegalArgumentException {
+		int[] output = null;
+
+		if (names == null) {
+			throw new IllegalArgumentException("The field names are null");
+		}
+
+		output = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			output[i] = getFieldIndex(names[i]);
+			if (output[i] < 0) {
+				throw new IllegalArgumentException("Unknown field: "
+						+ names[i]);
+			}
+		}
+
+		return output;
+	}
+
 	/**
 	 * Returns a DBFRecord object representing a record of the DBF file (defined
 	 * by recordNum).
@@ -78,6 +157,33 @@ public class DBFFile extends AbstractBinaryFile<DBFHeader> {
 	 */
 	public DBFRecord getRecordAt(final int recordNum)
 			throws IndexOutOfBoundsException, IOException {
+		return getRecordAt(recordNum, null);
+	}
+
+	/**
+	 * Returns a DBFRecord object representing a record of the DBF file (defined
+	 * by recordNum) with only the requested fields (in the requested order).
+	 * Only the requested fields are decoded, so the cost of reading a record
+	 * depends on the number of fields requested and not on the number of
+	 * fields of the DBF file.
+	 *
+	 * @param recordNum
+	 *            the number of the record to query
+	 * @param fieldIndexes
+	 *            the indexes (0-based) of the fields to read (all the fields
+	 *            if null)
+	 * @return a DBFRecord object representing a record of the DBF file (defined
+	 *         by recordNum)
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no record that matches recordNum or no field
+	 *             that matches a requested index
+	 * @throws IOException
+	 *             if there is a problem reading the record
+	 *
+	 * @see DBFRecord
+	 */
+	public DBFRecord getRecordAt(final int recordNum, final int[] fieldIndexes)
+			throws IndexOutOfBoundsException, IOException {
 		DBFRecord output = null;
 
 		if (recordNum <= 0 || recordNum > header.getRecordCount()) {
@@ -85,19 +191,292 @@ public class DBFFile extends AbstractBinaryFile<DBFHeader> {
 					+ header.getRecordCount() + ". Requested: " + recordNum);
 		}
 
-		mfis.reset();
-		mfis.skip(header.getHeaderSize() + (recordNum - 1)
-				* header.getRecordSize());
+		final byte[] dataRead = readBytes(header.getHeaderSize()
+				+ (long) (recordNum - 1) * header.getRecordSize(),
+				header.getRecordSize());
+
+		final DBFRecordReader recordReader = new DBFRecordReader();
+		output = recordReader.readRecord(recordNum, dataRead, header,
+				fieldIndexes);
 
-		final byte[] dataRead = new byte[header.getRecordSize()];
-		final int bytesRead = mfis.read(dataRead);
+		return output;
+	}
 
-		if (bytesRead != header.getRecordSize()) {
-			throw new IOException("Unexpected data length read");
+	/**
+	 * Returns a forward-only cursor over the records of the DBF file between
+	 * two record numbers, read sequentially in chunks (the cursor stops at
+	 * the last record of the file).
+	 *
+	 * @param firstRecordNum
+	 *            the number of the first record
+	 * @param lastRecordNum
+	 *            the number of the last record
+	 * @return a cursor over the records of the DBF file between the numbers
+	 * @throws IndexOutOfBoundsException
+	 *             if the record numbers are not valid
+	 *
+	 * @see DBFRecordCursor
+	 */
+	public DBFRecordCursor openCursor(final int firstRecordNum,
+			final int lastRecordNum) throws IndexOutOfBoundsException {
+		if (firstRecordNum <= 0 || lastRecordNum < firstRecordNum - 1) {
+			throw new IndexOutOfBoundsException("Requested: "
+					+ firstRecordNum + " - " + lastRecordNum);
 		}
 
-		final DBFRecordReader recordReader = new DBFRecordReader();
-		output = recordReader.readRecord(recordNum, dataRead, header);
+		final int start = Math.min(firstRecordNum - 1,
+				header.getRecordCount());
+		final int end = Math.min(lastRecordNum, header.getRecordCount());
+		// The buffer does not need to hold more than the records requested
+		final int recordSize = header.getRecordSize();
+		final int recordsPerChunk = Math.max(1,
+				Math.min(LOAD_BUFFER_SIZE / recordSize, end - start));
+
+		return new DBFRecordCursor(this, start, end,
+				ByteBuffer.allocate(recordsPerChunk * recordSize));
+	}
+
+	/**
+	 * Loads some fields of all the records of the DBF file into a columnar
+	 * in-memory table, reading the file sequentially in one pass.
+	 *
+	 * @param names
+	 *            the names of the fields to load (ignoring case)
+	 * @return a DBFColumnStore with the fields of all the records
+	 * @throws IllegalArgumentException
+	 *             if there is no field with one of the names
+	 * @throws UnsupportedOperationException
+	 *             if the type of a field is not N, F, D or C
+	 * @throws IOException
+	 *             if there is a problem reading the records
+	 *
+	 * @see DBFColumnStore
+	 */
+	public DBFColumnStore loadColumns(final String... names)
+			throws IllegalArgumentException, UnsupportedOperationException,
+			IOException {
+		return loadColumns(getFieldIndexes(names));
+	}
+
+	/**
+	 * Loads some fields of all the records of the DBF file into a columnar
+	 * in-memory table, reading the file sequentially in one pass.
+	 *
+	 * @param fieldIndexes
+	 *            the indexes (0-based) of the fields to load (all the fields
+	 *            if null)
+	 * @return a DBFColumnStore with the fields of all the records
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no field that matches a requested index
+	 * @throws UnsupportedOperationException
+	 *             if the type of a field is not N, F, D or C
+	 * @throws IOException
+	 *             if there is a problem reading the records
+	 *
+	 * @see DBFColumnStore
+	 */
+	public DBFColumnStore loadColumns(final int[] fieldIndexes)
+			throws IndexOutOfBoundsException, UnsupportedOperationException,
+			IOException {
+		final DBFColumnStore output = new DBFColumnStore(header, fieldIndexes);
+
+		final ByteBuffer buffer = allocateChunk();
+		final byte[] data = buffer.array();
+
+		int row = 0;
+		while (row < header.getRecordCount()) {
+			final int records = readChunk(row, buffer);
+			for (int i = 0; i < records; i++) {
+				output.load(row + i, data, i * header.getRecordSize());
+			}
+			row += records;
+		}
+
+		output.finish();
+
+		return output;
+	}
+
+	/**
+	 * Returns whether a record of the DBF file matches all the given
+	 * predicates, evaluated on the bytes of the record (the record is not
+	 * decoded).
+	 *
+	 * @param recordNum
+	 *            the number of the record to query
+	 * @param predicates
+	 *            the predicates
+	 * @return whether the record matches all the predicates
+	 * @throws IllegalArgumentException
+	 *             if there is no field with the name of a predicate
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no record that matches recordNum
+	 * @throws IOException
+	 *             if there is a problem reading the record
+	 *
+	 * @see DBFPredicate
+	 */
+	public boolean matches(final int recordNum,
+			final DBFPredicate... predicates) throws IllegalArgumentException,
+			IndexOutOfBoundsException, IOException {
+		final DBFFieldDescriptor[] descriptors = getDescriptors(predicates);
+
+		if (recordNum <= 0 || recordNum > header.getRecordCount()) {
+			throw new IndexOutOfBoundsException("Number of records: "
+					+ header.getRecordCount() + ". Requested: " + recordNum);
+		}
+
+		final byte[] dataRead = readBytes(header.getHeaderSize()
+				+ (long) (recordNum - 1) * header.getRecordSize(),
+				header.getRecordSize());
+
+		return matches(dataRead, 0, predicates, descriptors);
+	}
+
+	/**
+	 * Returns the numbers of the records of the DBF file that match all the
+	 * given predicates, reading the file sequentially in one pass. The
+	 * predicates are evaluated on the bytes of the records (the records are
+	 * not decoded).
+	 *
+	 * @param predicates
+	 *            the predicates
+	 * @return the numbers (1-based, ascending) of the records that match all
+	 *         the predicates
+	 * @throws IllegalArgumentException
+	 *             if there is no field with the name of a predicate
+	 * @throws IOException
+	 *             if there is a problem reading the records
+	 *
+	 * @see DBFPredicate
+	 */
+	public int[] filter(final DBFPredicate... predicates)
+			throws IllegalArgumentException, IOException {
+		final DBFFieldDescriptor[] descriptors = getDescriptors(predicates);
+
+		int[] output = new int[16];
+		int count = 0;
+
+		final ByteBuffer buffer = allocateChunk();
+		final byte[] data = buffer.array();
+
+		int row = 0;
+		while (row < header.getRecordCount()) {
+			final int records = readChunk(row, buffer);
+			for (int i = 0; i < records; i++) {
+				if (matches(data, i * header.getRecordSize(), predicates,
+						descriptors)) {
+					if (count == output.length) {
+						final int[] grown = new int[2 * count];
+						System.arraycopy(output, 0, grown, 0, count);
+						output = grown;
+					}
+					output[count++] = row + i + 1;
+				}
+			}
+			row += records;
+		}
+
+		final int[] trimmed = new int[count];
+		System.arraycopy(output, 0, trimmed, 0, count);
+		output = trimmed;
+
+		return output;
+	}
+
+	/**
+	 * Returns whether a record matches all the given predicates.
+	 *
+	 * @param data
+	 *            the byte array holding the record
+	 * @param offset
+	 *            the offset of the record in the byte array
+	 * @param predicates
+	 *            the predicates
+	 * @param descriptors
+	 *            the descriptors of the fields of the predicates
+	 * @return whether the record matches all the predicates
+	 */
+	private boolean matches(final byte[] data, final int offset,
+			final DBFPredicate[] predicates,
+			final DBFFieldDescriptor[] descriptors) {
+		boolean output = true;
+
+		for (int i = 0; i < predicates.length && output; i++) {
+			output = predicates[i].matches(data,
+					offset + descriptors[i].getOffset(), descriptors[i]);
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the descriptors of the fields of several predicates.
+	 *
+	 * @param predicates
+	 *            the predicates
+	 * @return the descriptors of the fields of the predicates
+	 * @throws IllegalArgumentException
+	 *             if there is no field with the name of a predicate
+	 */
+	private DBFFieldDescriptor[] getDescriptors(
+			final DBFPredicate[] predicates) throws IllegalArgumentException {
+		DBFFieldDescriptor[] output = null;
+
+		if (predicates == null) {
+			throw new IllegalArgumentException("The predicates are null");
+		}
+
+		output = new DBFFieldDescriptor[predicates.length];
+		for (int i = 0; i < predicates.length; i++) {
+			if (predicates[i] == null) {
+				throw new IllegalArgumentException("The predicate is null");
+			}
+
+			final int fieldIndex = getFieldIndex(predicates[i].getField());
+			if (fieldIndex < 0) {
+				throw new IllegalArgumentException("Unknown field: "
+						+ predicates[i].getField());
+			}
+			output[i] = header.getFields().get(fieldIndex);
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns a buffer for a chunk of consecutive records (at least one).
+	 *
+	 * @return a buffer for a chunk of consecutive records
+	 */
+	private ByteBuffer allocateChunk() {
+		final int recordSize = header.getRecordSize();
+		final int recordsPerChunk = Math.max(1, LOAD_BUFFER_SIZE / recordSize);
+
+		return ByteBuffer.allocate(recordsPerChunk * recordSize);
+	}
+
+	/**
+	 * Reads a chunk of consecutive records into a buffer (as many as fit in
+	 * the buffer).
+	 *
+	 * @param row
+	 *            the row (0-based) of the first record to read
+	 * @param buffer
+	 *            the buffer to fill
+	 * @return the number of records read
+	 * @throws IOException
+	 *             if there is a problem reading the records
+	 */
+	int readChunk(final int row, final ByteBuffer buffer)
+			throws IOException {
+		final int recordSize = header.getRecordSize();
+		final int output = Math.min(buffer.capacity() / recordSize,
+				header.getRecordCount() - row);
+
+		buffer.clear();
+		buffer.limit(output * recordSize);
+		read(header.getHeaderSize() + (long) row * recordSize, buffer);
 
 		return output;
 	}
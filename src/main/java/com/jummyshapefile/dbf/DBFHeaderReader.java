@@ -18,8 +18,8 @@ package com.jummyshapefile.dbf;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -28,6 +28,7 @@ import com.jummyshapefile.binaryfile.BinaryFileHeaderReader;
 import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
 import com.jummyshapefile.dbf.model.DBFHeader;
 import com.jummyshapefile.utils.ByteUtils;
+import com.jummyshapefile.utils.DateUtils;
 
 /**
  * Class that reads the header of a DBF file.
@@ -37,8 +38,6 @@ import com.jummyshapefile.utils.ByteUtils;
  * @see DBFHeader
  */
 public class DBFHeaderReader implements BinaryFileHeaderReader<DBFHeader> {
-	private final SimpleDateFormat sdf = new SimpleDateFormat("d/M/y");
-
 	/**
 	 * Returns a DBFHeader object representing the header of a DBF file.
 	 *
@@ -60,19 +59,18 @@ public class DBFHeaderReader implements BinaryFileHeaderReader<DBFHeader> {
 		final byte[] headerBytes = new byte[DBFParameters.DBF_HEADER_LENGTH_WITHOUT_FIELDS];
 		final int read = is.read(headerBytes);
 		if (read == DBFParameters.DBF_HEADER_LENGTH_WITHOUT_FIELDS) {
+			final ByteBuffer data = ByteUtils.wrap(headerBytes,
+					ByteOrder.LITTLE_ENDIAN);
+
 			header = new DBFHeader();
-			header.setDateModified(readDateModified(headerBytes));
-			header.setRecordCount(ByteUtils.readIntLeastSignificantFirst(
-					headerBytes, DBFParameters.DBF_HEADER_NUMBEROFRECORDS_SIZE,
-					DBFParameters.DBF_HEADER_NUMBEROFRECORDS_OFFSET));
-			header.setHeaderSize(ByteUtils.readIntLeastSignificantFirst(
-					headerBytes,
-					DBFParameters.DBF_HEADER_NUMBEROFBYTESINHEADER_SIZE,
-					DBFParameters.DBF_HEADER_NUMBEROFBYTESINHEADER_OFFSET));
-			header.setRecordSize(ByteUtils.readIntLeastSignificantFirst(
-					headerBytes,
-					DBFParameters.DBF_HEADER_NUMBEROFBYTESINRECORD_SIZE,
-					DBFParameters.DBF_HEADER_NUMBEROFBYTESINRECORD_OFFSET));
+			header.setDateModified(readDateModified(data));
+			header.setRecordCount(data
+					.getInt(DBFParameters.DBF_HEADER_NUMBEROFRECORDS_OFFSET));
+			// NOTE: Both sizes are unsigned 16-bit values
+			header.setHeaderSize(data
+					.getShort(DBFParameters.DBF_HEADER_NUMBEROFBYTESINHEADER_OFFSET) & 0xFFFF);
+			header.setRecordSize(data
+					.getShort(DBFParameters.DBF_HEADER_NUMBEROFBYTESINRECORD_OFFSET) & 0xFFFF);
 			header.setFieldCount((header.getHeaderSize() - DBFParameters.DBF_HEADER_LENGTH_WITHOUT_FIELDS)
 					/ DBFParameters.DBF_HEADER_FIELD_LENGTH);
 
@@ -85,34 +83,29 @@ public class DBFHeaderReader implements BinaryFileHeaderReader<DBFHeader> {
 	/**
 	 * Returns the modification date stored in the header of the DBF file.
 	 *
-	 * @param headerBytes
-	 *            the byte array of the header of the DBF file
+	 * @param data
+	 *            the ByteBuffer view of the header of the DBF file
 	 * @return the modification date stored in the header of the DBF file.
 	 * @throws IOException
 	 *             if there is a problem reading the date
 	 */
-	private Date readDateModified(final byte[] headerBytes) throws IOException {
+	private Date readDateModified(final ByteBuffer data) throws IOException {
 		Date output = null;
 
-		if (headerBytes == null) {
-			throw new IllegalArgumentException("The byte array is null");
+		if (data == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
 		}
 
-		final int year = ByteUtils.readInt(headerBytes,
-				DBFParameters.DBF_HEADER_DATEOFLASTUPDATEYEAR_SIZE,
-				DBFParameters.DBF_HEADER_DATEOFLASTUPDATEYEAR_OFFSET)
+		// NOTE: The year, month and day are unsigned bytes
+		final int year = (data
+				.get(DBFParameters.DBF_HEADER_DATEOFLASTUPDATEYEAR_OFFSET) & 0xFF)
 				+ DBFParameters.DATEOFLASTUPDATEYEAR_OFFSET;
-		final int month = ByteUtils.readInt(headerBytes,
-				DBFParameters.DBF_HEADER_DATEOFLASTUPDATEMONTH_SIZE,
-				DBFParameters.DBF_HEADER_DATEOFLASTUPDATEMONTH_OFFSET);
-		final int day = ByteUtils.readInt(headerBytes,
-				DBFParameters.DBF_HEADER_DATEOFLASTUPDATEDAY_SIZE,
-				DBFParameters.DBF_HEADER_DATEOFLASTUPDATEDAY_OFFSET);
-
-		try {
-			output = sdf.parse(day + "/" + month + "/" + year);
-		} catch (final ParseException pe) {
-		}
+		final int month = data
+				.get(DBFParameters.DBF_HEADER_DATEOFLASTUPDATEMONTH_OFFSET) & 0xFF;
+		final int day = data
+				.get(DBFParameters.DBF_HEADER_DATEOFLASTUPDATEDAY_OFFSET) & 0xFF;
+
+		output = DateUtils.toDate(year, month, day);
 
 		return output;
 	}
@@ -140,9 +133,13 @@ public class DBFHeaderReader implements BinaryFileHeaderReader<DBFHeader> {
 			throw new IllegalArgumentException("The InputStream is null");
 		}
 
+		// The fields are stored one after the other, after the deletion flag
+		int offset = DBFParameters.DBF_RECORD_DATA_OFFSET;
 		for (int i = 0; i < numFields; i++) {
 			final DBFFieldDescriptor field = readField(is);
 			if (field != null) {
+				field.setOffset(offset);
+				offset += field.getLength();
 				output.add(field);
 			}
 		}
@@ -21,6 +21,11 @@ public final class DBFParameters {
 
 	public static final int DBF_HEADER_LENGTH_WITHOUT_FIELDS = 32;
 	public static final int DBF_HEADER_FIELD_LENGTH = 32;
+	public static final int DBF_HEADER_TERMINATOR_LENGTH = 1;
+	public static final byte DBF_HEADER_TERMINATOR = 0x0D;
+
+	public static final int DBF_HEADER_VERSION_OFFSET = 0;
+	public static final byte DBF_HEADER_VERSION = 0x03;
 
 	public static final int DBF_HEADER_DATEOFLASTUPDATEYEAR_OFFSET = 1;
 	public static final int DBF_HEADER_DATEOFLASTUPDATEYEAR_SIZE = 1;
@@ -51,5 +56,7 @@ public final class DBFParameters {
 	public static final int DBF_HEADERFIELD_DECIMALCOUNT_SIZE = 1;
 
 	public static final byte DBF_RECORD_DELETED = 0x2A;
+	public static final byte DBF_RECORD_NOT_DELETED = 0x20;
+	public static final byte DBF_END_OF_FILE = 0x1A;
 	public static final byte DBF_RECORD_DATA_OFFSET = 1;
 }
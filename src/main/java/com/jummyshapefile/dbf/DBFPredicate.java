@@ -0,0 +1,334 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.dbf;
+
+import java.util.Arrays;
+
+import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
+import com.jummyshapefile.utils.ByteUtils;
+
+/**
+ * Condition on the value of a field of a DBF record, evaluated directly on the
+ * bytes of the record (no DBFField, String or boxed number is created).
+ * <p>
+ * Text conditions (String values) compare the bytes of the field, without the
+ * leading and trailing spaces, with the bytes of the value (in the default
+ * charset, as DBFRecordReader decodes C fields). As D fields are stored as
+ * YYYYMMDD, text ranges also work for dates. Numeric conditions (double
+ * values) parse the field as a number and never match empty fields.
+ * <p>
+ * Predicates are immutable, so they can be shared between threads.
+ *
+ * @see DBFFile
+ */
+public abstract class DBFPredicate {
+	private final String field;
+
+	/**
+	 * Creates a predicate on a field.
+	 *
+	 * @param field
+	 *            the name of the field (ignoring case)
+	 */
+	protected DBFPredicate(final String field) {
+		if (field == null) {
+			throw new IllegalArgumentException("The field name is null");
+		}
+
+		this.field = field;
+	}
+
+	/**
+	 * Returns the name of the field of the predicate.
+	 *
+	 * @return the name of the field of the predicate
+	 */
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * Returns whether the value of the field matches the predicate.
+	 *
+	 * @param data
+	 *            the byte array holding the record
+	 * @param offset
+	 *            the offset of the field in the byte array
+	 * @param descriptor
+	 *            the descriptor of the field
+	 * @return whether the value of the field matches the predicate
+	 */
+	protected abstract boolean matches(byte[] data, int offset,
+			DBFFieldDescriptor descriptor);
+
+	/**
+	 * Returns a predicate that matches the records whose field is equal to a
+	 * text.
+	 *
+	 * @param field
+	 *            the name of the field (ignoring case)
+	 * @param value
+	 *            the text
+	 * @return the predicate
+	 */
+	public static DBFPredicate equalTo(final String field, final String value) {
+		return in(field, value);
+	}
+
+	/**
+	 * Returns a predicate that matches the records whose field is equal to
+	 * any of several texts.
+	 *
+	 * @param field
+	 *            the name of the field (ignoring case)
+	 * @param values
+	 *            the texts
+	 * @return the predicate
+	 */
+	public static DBFPredicate in(final String field, final String... values) {
+		return new TextPredicate(field, toBytes(values), null, null, false);
+	}
+
+	/**
+	 * Returns a predicate that matches the records whose field starts with a
+	 * text.
+	 *
+	 * @param field
+	 *            the name of the field (ignoring case)
+	 * @param prefix
+	 *            the text
+	 * @return the predicate
+	 */
+	public static DBFPredicate startsWith(final String field,
+			final String prefix) {
+		return new TextPredicate(field, toBytes(prefix), null, null, true);
+	}
+
+	/**
+	 * Returns a predicate that matches the records whose field is between two
+	 * texts (both included), comparing the bytes of the texts.
+	 *
+	 * @param field
+	 *            the name of the field (ignoring case)
+	 * @param min
+	 *            the minimum text (no minimum if null)
+	 * @param max
+	 *            the maximum text (no maximum if null)
+	 * @return the predicate
+	 */
+	public static DBFPredicate between(final String field, final String min,
+			final String max) {
+		return new TextPredicate(field, null, toBytes(min)[0],
+				toBytes(max)[0], false);
+	}
+
+	/**
+	 * Returns a predicate that matches the records whose numeric field is
+	 * equal to a number.
+	 *
+	 * @param field
+	 *            the name of the field (ignoring case)
+	 * @param value
+	 *            the number
+	 * @return the predicate
+	 */
+	public static DBFPredicate equalTo(final String field, final double value) {
+		return in(field, value);
+	}
+
+	/**
+	 * Returns a predicate that matches the records whose numeric field is
+	 * equal to any of several numbers.
+	 *
+	 * @param field
+	 *            the name of the field (ignoring case)
+	 * @param values
+	 *            the numbers
+	 * @return the predicate
+	 */
+	public static DBFPredicate in(final String field, final double... values) {
+		if (values == null) {
+			throw new IllegalArgumentException("The values are null");
+		}
+
+		final double[] sorted = new double[values.length];
+		for (int i = 0; i < values.length; i++) {
+			// Adding 0 turns -0.0 into 0.0 for the binary search
+			sorted[i] = values[i] + 0d;
+		}
+		Arrays.sort(sorted);
+
+		return new NumberPredicate(field, sorted, Double.NEGATIVE_INFINITY,
+				Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Returns a predicate that matches the records whose numeric field is
+	 * between two numbers (both included).
+	 *
+	 * @param field
+	 *            the name of the field (ignoring case)
+	 * @param min
+	 *            the minimum number (Double.NEGATIVE_INFINITY for no minimum)
+	 * @param max
+	 *            the maximum number (Double.POSITIVE_INFINITY for no maximum)
+	 * @return the predicate
+	 */
+	public static DBFPredicate between(final String field, final double min,
+			final double max) {
+		return new NumberPredicate(field, null, min, max);
+	}
+
+	/**
+	 * Returns the bytes of several texts (null for a null text).
+	 *
+	 * @param values
+	 *            the texts
+	 * @return the bytes of the texts
+	 */
+	private static byte[][] toBytes(final String... values) {
+		if (values == null) {
+			throw new IllegalArgumentException("The values are null");
+		}
+
+		final byte[][] output = new byte[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				output[i] = values[i].trim().getBytes();
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Predicate on the text of a field (equality, prefix or range).
+	 */
+	private static class TextPredicate extends DBFPredicate {
+		private final byte[][] values;
+		private final byte[] min;
+		private final byte[] max;
+		private final boolean prefix;
+
+		TextPredicate(final String field, final byte[][] values,
+				final byte[] min, final byte[] max, final boolean prefix) {
+			super(field);
+
+			this.values = values;
+			this.min = min;
+			this.max = max;
+			this.prefix = prefix;
+		}
+
+		@Override
+		protected boolean matches(final byte[] data, final int offset,
+				final DBFFieldDescriptor descriptor) {
+			boolean output = false;
+
+			// The same characters removed by String.trim()
+			int start = offset;
+			int end = offset + descriptor.getLength();
+			while (start < end && (data[start] & 0xFF) <= ' ') {
+				start++;
+			}
+			while (end > start && (data[end - 1] & 0xFF) <= ' ') {
+				end--;
+			}
+
+			if (values != null) {
+				for (int i = 0; i < values.length && !output; i++) {
+					final byte[] value = values[i];
+					if (value != null
+							&& (prefix ? value.length <= end - start
+									: value.length == end - start)) {
+						output = compare(data, start, start + value.length,
+								value) == 0;
+					}
+				}
+			} else {
+				output = (min == null || compare(data, start, end, min) >= 0)
+						&& (max == null || compare(data, start, end, max) <= 0);
+			}
+
+			return output;
+		}
+
+		/**
+		 * Compares a range of a byte array with a text (as unsigned bytes).
+		 *
+		 * @return a negative number, zero or a positive number as the range
+		 *         is less than, equal to or greater than the text
+		 */
+		private int compare(final byte[] data, final int start, final int end,
+				final byte[] value) {
+			int output = 0;
+
+			final int length = Math.min(end - start, value.length);
+			for (int i = 0; i < length && output == 0; i++) {
+				output = (data[start + i] & 0xFF) - (value[i] & 0xFF);
+			}
+			if (output == 0) {
+				output = (end - start) - value.length;
+			}
+
+			return output;
+		}
+	}
+
+	/**
+	 * Predicate on the numeric value of a field (equality or range).
+	 */
+	private static class NumberPredicate extends DBFPredicate {
+		private final double[] values;
+		private final double min;
+		private final double max;
+
+		NumberPredicate(final String field, final double[] values,
+				final double min, final double max) {
+			super(field);
+
+			this.values = values;
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		protected boolean matches(final byte[] data, final int offset,
+				final DBFFieldDescriptor descriptor) {
+			boolean output = false;
+
+			final int length = descriptor.getLength();
+			if (!ByteUtils.isBlank(data, length, offset)) {
+				double value = Double.NaN;
+				try {
+					value = ByteUtils.parseDouble(data, length, offset);
+				} catch (final NumberFormatException nfe) {
+					// Not a number, so it does not match
+				}
+
+				if (values != null) {
+					output = Arrays.binarySearch(values, value + 0d) >= 0;
+				} else {
+					output = value >= min && value <= max;
+				}
+			}
+
+			return output;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.dbf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.jummyshapefile.dbf.model.DBFField;
+import com.jummyshapefile.dbf.model.DBFHeader;
+
+/**
+ * Forward-only cursor over consecutive records of a DBF file, read
+ * sequentially in file order.
+ * <p>
+ * The records are read in chunks into a single buffer that is reused for
+ * every chunk, and the fields are decoded directly from it (the bytes of each
+ * record are not copied), so the memory used does not depend on the number of
+ * records. Not thread-safe.
+ *
+ * @see DBFFile#openCursor(int, int)
+ */
+public class DBFRecordCursor implements Closeable {
+	private final DBFFile dbf;
+	private final DBFHeader header;
+	private final DBFRecordReader recordReader = new DBFRecordReader();
+	private ByteBuffer buffer;
+	// Rows (0-based) of the next record and following the last record
+	private int row;
+	private final int end;
+	// Row of the first record of the buffer and number of records read
+	private int chunkRow;
+	private int chunkCount;
+
+	/**
+	 * Creates a cursor over the records of a DBF file between two rows.
+	 *
+	 * @param dbf
+	 *            the DBF file
+	 * @param start
+	 *            the row (0-based) of the first record
+	 * @param end
+	 *            the row following the last record
+	 * @param buffer
+	 *            the buffer used to read the records (at least one record)
+	 */
+	DBFRecordCursor(final DBFFile dbf, final int start, final int end,
+			final ByteBuffer buffer) {
+		this.dbf = dbf;
+		this.header = dbf.getHeader();
+		this.row = start;
+		this.end = end;
+		this.chunkRow = start;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Returns whether there are more records to read.
+	 *
+	 * @return whether there are more records to read
+	 */
+	public boolean hasNext() {
+		return row < end;
+	}
+
+	/**
+	 * Returns the fields of the next record of the DBF file.
+	 *
+	 * @return the fields of the next record of the DBF file
+	 * @throws NoSuchElementException
+	 *             if there are no more records
+	 * @throws IOException
+	 *             if there is a problem reading the record
+	 *
+	 * @see DBFField
+	 */
+	public List<DBFField> next() throws IOException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		if (row >= chunkRow + chunkCount) {
+			chunkRow = row;
+			chunkCount = dbf.readChunk(row, buffer);
+		}
+
+		final List<DBFField> output = recordReader.readFields(buffer.array(),
+				(row - chunkRow) * header.getRecordSize(), header);
+		row++;
+
+		return output;
+	}
+
+	/**
+	 * Returns the number (1-based) of the next record.
+	 *
+	 * @return the number of the next record
+	 */
+	public int getRecordNum() {
+		return row + 1;
+	}
+
+	/**
+	 * Releases the buffer of the cursor. The DBF file is not closed.
+	 */
+	public void close() {
+		buffer = ByteBuffer.allocate(0);
+		row = end;
+	}
+}
@@ -17,8 +17,6 @@
 package com.jummyshapefile.dbf;
 
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -28,6 +26,7 @@ import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
 import com.jummyshapefile.dbf.model.DBFHeader;
 import com.jummyshapefile.dbf.model.DBFRecord;
 import com.jummyshapefile.utils.ByteUtils;
+import com.jummyshapefile.utils.DateUtils;
 
 /**
  * Class that reads a record in a DBF file.
@@ -45,6 +44,9 @@ import com.jummyshapefile.utils.ByteUtils;
  * For more field types, see the documentation:
  * <p>
  * http://www.dbase.com/Knowledgebase/INT/db7_file_fmt.htm
+ * <p>
+ * Stateless and thread-safe, so a single instance can decode records from
+ * several threads.
  *
  * @see DBFRecord
  * @see DBFHeader
@@ -52,8 +54,6 @@ import com.jummyshapefile.utils.ByteUtils;
  * @see DBFFieldDescriptor
  */
 public class DBFRecordReader {
-	private final SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
-
 	/**
 	 * Returns a DBFRecord object representing the byte array.
 	 * <p>
@@ -80,6 +80,33 @@ public class DBFRecordReader {
 	 */
 	public DBFRecord readRecord(final int recordNum, final byte[] data,
 			final DBFHeader header) throws IOException {
+		return readRecord(recordNum, data, header, null);
+	}
+
+	/**
+	 * Returns a DBFRecord object representing the byte array, decoding only
+	 * the requested fields (in the requested order). The bytes of the rest of
+	 * the fields are not read at all.
+	 *
+	 * @param data
+	 *            the byte array representing the record
+	 * @param header
+	 *            the DBFHeader object representing the header of the file
+	 * @param fieldIndexes
+	 *            the indexes (0-based) of the fields to decode (all the fields
+	 *            if null)
+	 * @return a DBFRecord object representing the byte array
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no field that matches a requested index
+	 * @throws IOException
+	 *             if there is a problem reading the record
+	 *
+	 * @see DBFRecord
+	 * @see DBFHeader
+	 */
+	public DBFRecord readRecord(final int recordNum, final byte[] data,
+			final DBFHeader header, final int[] fieldIndexes)
+			throws IndexOutOfBoundsException, IOException {
 		DBFRecord output = null;
 
 		if (data == null) {
@@ -89,16 +116,48 @@ public class DBFRecordReader {
 			throw new IllegalArgumentException("The header is null");
 		}
 
-		final List<DBFField> fields = readFields(data, header.getFields());
+		List<DBFField> fields = null;
+		if (fieldIndexes == null) {
+			fields = readFields(data, 0, header.getFields());
+		} else {
+			fields = readFields(data, header.getFields(), fieldIndexes);
+		}
 
 		output = new DBFRecord();
 		output.setRecordNum(recordNum);
 		output.setActive(isActive(data));
 		output.setFields(fields);
+		output.setData(data);
+		output.setDescriptors(header.getFields());
 
 		return output;
 	}
 
+	/**
+	 * Returns the fields of a record held in a larger byte array (such as a
+	 * chunk of consecutive records), decoded without copying the record.
+	 *
+	 * @param data
+	 *            the byte array holding the record
+	 * @param offset
+	 *            the offset of the record in the byte array
+	 * @param header
+	 *            the DBFHeader object representing the header of the file
+	 * @return a list of the fields of the record
+	 * @throws IOException
+	 *             if there is a problem reading the fields
+	 *
+	 * @see DBFField
+	 */
+	public List<DBFField> readFields(final byte[] data, final int offset,
+			final DBFHeader header) throws IOException {
+		if (header == null) {
+			throw new IllegalArgumentException("The header is null");
+		}
+
+		return readFields(data, offset, header.getFields());
+	}
+
 	/**
 	 * Returns whether the record is active.
 	 *
@@ -120,7 +179,9 @@ public class DBFRecordReader {
 	 * Returns a list of the fields read from the byte array.
 	 *
 	 * @param data
-	 *            the byte array representing the record
+	 *            the byte array holding the record
+	 * @param recordOffset
+	 *            the offset of the record in the byte array
 	 * @param descriptors
 	 *            the list of descriptors for each field
 	 * @return a list of the fields read from the byte array
@@ -131,7 +192,8 @@ public class DBFRecordReader {
 	 * @see DBFFieldDescriptor
 	 */
 	private List<DBFField> readFields(final byte[] data,
-			final List<DBFFieldDescriptor> descriptors) throws IOException {
+			final int recordOffset, final List<DBFFieldDescriptor> descriptors)
+			throws IOException {
 		List<DBFField> output = null;
 
 		if (data == null) {
@@ -144,7 +206,7 @@ public class DBFRecordReader {
 
 		output = new ArrayList<DBFField>();
 
-		int offset = 0;
+		int offset = recordOffset + DBFParameters.DBF_RECORD_DATA_OFFSET;
 		for (final DBFFieldDescriptor descriptor : descriptors) {
 			final DBFField field = readField(data, offset, descriptor);
 			if (field != null) {
@@ -156,6 +218,82 @@ public class DBFRecordReader {
 		return output;
 	}
 
+	/**
+	 * Returns a list of the requested fields read from the byte array (in the
+	 * requested order).
+	 *
+	 * @param data
+	 *            the byte array representing the record
+	 * @param descriptors
+	 *            the list of descriptors for each field
+	 * @param fieldIndexes
+	 *            the indexes (0-based) of the fields to read
+	 * @return a list of the requested fields read from the byte array
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no field that matches a requested index
+	 * @throws IOException
+	 *             if there is a problem reading the fields
+	 *
+	 * @see DBFField
+	 * @see DBFFieldDescriptor
+	 */
+	private List<DBFField> readFields(final byte[] data,
+			final List<DBFFieldDescriptor> descriptors,
+			final int[] fieldIndexes) throws IndexOutOfBoundsException,
+			IOException {
+		List<DBFField> output = null;
+
+		if (data == null) {
+			throw new IllegalArgumentException("The byte array is null");
+		}
+		if (descriptors == null) {
+			throw new IllegalArgumentException(
+					"The list of field descriptors is null");
+		}
+
+		output = new ArrayList<DBFField>(fieldIndexes.length);
+
+		for (final int fieldIndex : fieldIndexes) {
+			if (fieldIndex < 0 || fieldIndex >= descriptors.size()) {
+				throw new IndexOutOfBoundsException("Number of fields: "
+						+ descriptors.size() + ". Requested: " + fieldIndex);
+			}
+
+			final DBFFieldDescriptor descriptor = descriptors.get(fieldIndex);
+			final DBFField field = readField(data,
+					getOffset(descriptors, fieldIndex), descriptor);
+			if (field != null) {
+				output.add(field);
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the offset of a field in the record, as stored in its
+	 * descriptor (or computed from the previous fields if it is not stored).
+	 *
+	 * @param descriptors
+	 *            the list of descriptors for each field
+	 * @param fieldIndex
+	 *            the index (0-based) of the field
+	 * @return the offset of the field in the record
+	 */
+	private int getOffset(final List<DBFFieldDescriptor> descriptors,
+			final int fieldIndex) {
+		int output = descriptors.get(fieldIndex).getOffset();
+
+		if (output < 0) {
+			output = DBFParameters.DBF_RECORD_DATA_OFFSET;
+			for (int i = 0; i < fieldIndex; i++) {
+				output += descriptors.get(i).getLength();
+			}
+		}
+
+		return output;
+	}
+
 	/**
 	 * Returns a DBFField object representing the field read from the byte
 	 * array.
@@ -173,7 +311,8 @@ public class DBFRecordReader {
 	 * @param data
 	 *            the byte array representing the record
 	 * @param offset
-	 *            the offset of the field in the byte array
+	 *            the offset of the field in the byte array (the deletion flag
+	 *            of the record included)
 	 * @param descriptor
 	 *            the descriptor for the field
 	 * @return a DBFField object representing the field read from the byte array
@@ -191,25 +330,22 @@ public class DBFRecordReader {
 			throw new IllegalArgumentException("The byte array is null");
 		}
 
-		final String fieldString = ByteUtils.readString(data,
-				descriptor.getLength(),
-				DBFParameters.DBF_RECORD_DATA_OFFSET + offset).trim();
-
 		// Integer (N), Long Integer (N)
 		if ("N".equalsIgnoreCase(descriptor.getType())) {
-			output = readNField(fieldString, descriptor);
+			output = readNField(data, offset, descriptor);
 		}
 		// Float (F), Double (F)
 		else if ("F".equalsIgnoreCase(descriptor.getType())) {
-			output = readFField(fieldString, descriptor);
+			output = readFField(data, offset, descriptor);
 		}
 		// Text (C)
 		else if ("C".equalsIgnoreCase(descriptor.getType())) {
-			output = readCField(fieldString, descriptor);
+			output = readCField(readString(data, offset, descriptor),
+					descriptor);
 		}
 		// Date (D)
 		else if ("D".equalsIgnoreCase(descriptor.getType())) {
-			output = readDField(fieldString, descriptor);
+			output = readDField(data, offset, descriptor);
 		}
 
 		if (output != null) {
@@ -220,34 +356,61 @@ public class DBFRecordReader {
 	}
 
 	/**
-	 * Returns a DBField<Long> object representing the field.
+	 * Returns the trimmed String value of a field.
 	 *
-	 * @param fieldValue
-	 *            the String value of the field
+	 * @param data
+	 *            the byte array representing the record
+	 * @param offset
+	 *            the offset of the field in the byte array
 	 * @param descriptor
 	 *            the parameters of the field
-	 * @return a DBField<Long> object representing the field
+	 * @return the trimmed String value of the field
+	 */
+	private String readString(final byte[] data, final int offset,
+			final DBFFieldDescriptor descriptor) {
+		return ByteUtils.readString(data, descriptor.getLength(), offset)
+				.trim();
+	}
+
+	/**
+	 * Returns a DBField<Double> object representing the field (null value if
+	 * the field is empty). Integer fields are also read as a Double, so that
+	 * every numeric field has the same value class (see DBFField). The number
+	 * is parsed directly from the bytes of the field.
+	 *
+	 * @param data
+	 *            the byte array representing the record
+	 * @param offset
+	 *            the offset of the field in the byte array
+	 * @param descriptor
+	 *            the parameters of the field
+	 * @return a DBField<Double> object representing the field
 	 *
 	 * @see DBFField
 	 * @see DBFFieldDescriptor
 	 */
-	private DBFField readNField(final String fieldValue,
+	private DBFField readNField(final byte[] data, final int offset,
 			final DBFFieldDescriptor descriptor) {
-		final DBFField output = new DBFField<Long>();
+		final DBFField output = new DBFField<Double>();
 		output.setDescriptor(descriptor);
 
-		if (fieldValue != null) {
-			output.setValue(Double.parseDouble(fieldValue));
+		if (!ByteUtils.isBlank(data, descriptor.getLength(), offset)) {
+			output.setValue(ByteUtils.parseDouble(data, descriptor.getLength(),
+					offset));
 		}
 
 		return output;
 	}
 
 	/**
-	 * Returns a DBField<Double> object representing the field.
+	 * Returns a DBField<Double> object representing the field (null if the
+	 * field is empty). The number is parsed directly from the bytes of the
+	 * field.
 	 *
-	 * @param fieldValue
-	 *            the String value of the field
+	 * @param data
+	 *            the byte array representing the record
+	 * @param offset
+	 *            the offset of the field in the byte array
 	 * @param descriptor
 	 *            the parameters of the field
 	 * @return a DBField<Double> object representing the field
@@ -255,13 +418,14 @@ public class DBFRecordReader {
 	 * @see DBFField
 	 * @see DBFFieldDescriptor
 	 */
-	private DBFField readFField(final String fieldValue,
+	private DBFField readFField(final byte[] data, final int offset,
 			final DBFFieldDescriptor descriptor) {
 		final DBFField output = new DBFField<Double>();
 		output.setDescriptor(descriptor);
 
-		if (fieldValue != null) {
-			output.setValue(Double.parseDouble(fieldValue));
+		if (!ByteUtils.isBlank(data, descriptor.getLength(), offset)) {
+			output.setValue(ByteUtils.parseDouble(data, descriptor.getLength(),
+					offset));
 		}
 
 		return output;
@@ -290,10 +454,14 @@ public class DBFRecordReader {
 	}
 
 	/**
-	 * Returns a DBField<Date> object representing the field.
+	 * Returns a DBField<Date> object representing the field (null if the field
+	 * is empty or is not a valid date). The date is parsed directly from the
+	 * bytes of the field.
 	 *
-	 * @param fieldValue
-	 *            the String value of the field
+	 * @param data
+	 *            the byte array representing the record
+	 * @param offset
+	 *            the offset of the field in the byte array
 	 * @param descriptor
 	 *            the parameters of the field
 	 * @return a DBField<Date> object representing the field
@@ -301,17 +469,15 @@ public class DBFRecordReader {
 	 * @see DBFField
 	 * @see DBFFieldDescriptor
 	 */
-	private DBFField readDField(final String fieldValue,
+	private DBFField readDField(final byte[] data, final int offset,
 			final DBFFieldDescriptor descriptor) {
 		final DBFField output = new DBFField<Date>();
 		output.setDescriptor(descriptor);
 
-		if (fieldValue != null) {
-			try {
-				output.setValue(sdf.parseObject(fieldValue));
-			} catch (final ParseException pe) {
-				// Do nothing
-			}
+		final int epochDay = DateUtils.parseEpochDay(data,
+				descriptor.getLength(), offset);
+		if (epochDay != DateUtils.INVALID_DATE) {
+			output.setValue(DateUtils.toDate(epochDay));
 		}
 
 		return output;
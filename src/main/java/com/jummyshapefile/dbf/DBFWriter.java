@@ -0,0 +1,613 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.dbf;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jummyshapefile.binaryfile.AbstractBinaryFileWriter;
+import com.jummyshapefile.dbf.model.DBFField;
+import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
+import com.jummyshapefile.dbf.model.DBFHeader;
+
+/**
+ * Class that writes a DBF file (dBase III, as in Shapefiles), record by record
+ * (the inverse of DBFFile).
+ * <p>
+ * Takes into account only the following field types:
+ * <ul>
+ * <li>N (Short Integer and Long Integer in Shapefiles): a Number, rounded to
+ * the decimal count of the field
+ * <li>F (Float and Double in Shapefiles): a Number, rounded to the decimal
+ * count of the field
+ * <li>C (Text in Shapefiles): the text of any value, encoded in the charset
+ * of the writer (the default charset unless given, as DBFRecordReader decodes
+ * it) and truncated to the length of the field without splitting a character
+ * <li>D (Date in Shapefiles): a Date (stored as YYYYMMDD)
+ * </ul>
+ * Null values (and NaN or infinite numbers) are written as empty fields. The
+ * number of records is written in the header when the writer is closed.
+ *
+ * @see DBFFile
+ */
+public class DBFWriter extends AbstractBinaryFileWriter<DBFHeader> {
+	private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1000L,
+			10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+			10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+			100000000000000L, 1000000000000000L, 10000000000000000L,
+			100000000000000000L, 1000000000000000000L };
+	// Largest integer represented exactly by a double (2^53)
+	private static final double MAX_EXACT = 9007199254740992d;
+	private static final int DATE_LENGTH = 8;
+	private static final int MAX_FIELD_LENGTH = 254;
+
+	private final DBFFieldDescriptor[] fields;
+	private final Map<String, Integer> fieldIndexes = new HashMap<String, Integer>();
+	private final byte[] record;
+	private final byte[] digits = new byte[32];
+	private final Calendar calendar = new GregorianCalendar();
+	private final CharsetEncoder encoder;
+	private int numRecords;
+	private boolean encoded;
+	private boolean ended;
+
+	/**
+	 * Creates a writer of a DBF file.
+	 *
+	 * @param os
+	 *            the FileOutputStream representing the DBF file
+	 * @param fields
+	 *            the descriptors of the fields (their offsets are not used)
+	 * @throws IllegalArgumentException
+	 *             if a field is not valid
+	 * @throws UnsupportedOperationException
+	 *             if the type of a field is not supported
+	 * @throws IOException
+	 *             if there is a problem creating the writer
+	 */
+	public DBFWriter(final FileOutputStream os,
+			final List<DBFFieldDescriptor> fields)
+			throws IllegalArgumentException, UnsupportedOperationException,
+			IOException {
+		this(os, fields, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a writer of a DBF file.
+	 *
+	 * @param os
+	 *            the FileOutputStream representing the DBF file
+	 * @param fields
+	 *            the descriptors of the fields (their offsets are not used)
+	 * @param bufferSize
+	 *            the size in bytes of the buffer
+	 * @throws IllegalArgumentException
+	 *             if a field is not valid
+	 * @throws UnsupportedOperationException
+	 *             if the type of a field is not supported
+	 * @throws IOException
+	 *             if there is a problem creating the writer
+	 */
+	public DBFWriter(final FileOutputStream os,
+			final List<DBFFieldDescriptor> fields, final int bufferSize)
+			throws IllegalArgumentException, UnsupportedOperationException,
+			IOException {
+		this(os, fields, bufferSize, Charset.defaultCharset());
+	}
+
+	/**
+	 * Creates a writer of a DBF file.
+	 *
+	 * @param os
+	 *            the FileOutputStream representing the DBF file
+	 * @param fields
+	 *            the descriptors of the fields (their offsets are not used)
+	 * @param bufferSize
+	 *            the size in bytes of the buffer
+	 * @param charset
+	 *            the charset of the text of C fields
+	 * @throws IllegalArgumentException
+	 *             if a field is not valid or the charset is null
+	 * @throws UnsupportedOperationException
+	 *             if the type of a field is not supported
+	 * @throws IOException
+	 *             if there is a problem creating the writer
+	 */
+	public DBFWriter(final FileOutputStream os,
+			final List<DBFFieldDescriptor> fields, final int bufferSize,
+			final Charset charset) throws IllegalArgumentException,
+			UnsupportedOperationException, IOException {
+		this(os, createHeader(fields), bufferSize, createEncoder(charset));
+	}
+
+	/**
+	 * Creates a writer of a DBF file with a header and an encoder already
+	 * validated.
+	 *
+	 * @param os
+	 *            the FileOutputStream representing the DBF file
+	 * @param header
+	 *            the header of the DBF file (see createHeader())
+	 * @param bufferSize
+	 *            the size in bytes of the buffer
+	 * @param encoder
+	 *            the encoder of the text of C fields
+	 * @throws IOException
+	 *             if there is a problem creating the writer
+	 */
+	private DBFWriter(final FileOutputStream os, final DBFHeader header,
+			final int bufferSize, final CharsetEncoder encoder)
+			throws IOException {
+		super(os, header, header.getHeaderSize(), bufferSize);
+
+		this.encoder = encoder;
+		this.fields = header.getFields().toArray(
+				new DBFFieldDescriptor[header.getFieldCount()]);
+		for (int i = 0; i < this.fields.length; i++) {
+			fieldIndexes.put(this.fields[i].getName().toUpperCase(), i);
+		}
+		this.record = new byte[header.getRecordSize()];
+	}
+
+	/**
+	 * Returns the number of records written.
+	 *
+	 * @return the number of records written
+	 */
+	public int getNumRecords() {
+		return numRecords;
+	}
+
+	/**
+	 * Writes the next record of the DBF file. Each value is written to the
+	 * field with the name of its descriptor (ignoring case); the values of
+	 * other fields are ignored and the missing fields are left empty.
+	 *
+	 * @param data
+	 *            the fields of the record (null for an empty record)
+	 * @throws IllegalArgumentException
+	 *             if a value is not allowed in its field or does not fit in
+	 *             it
+	 * @throws IOException
+	 *             if there is a problem writing the record
+	 *
+	 * @see DBFField
+	 */
+	public void write(final List<DBFField> data)
+			throws IllegalArgumentException, IOException {
+		encode(data);
+		commit();
+	}
+
+	/**
+	 * Encodes the next record of the DBF file, without writing it (see
+	 * commit()), so that it can be validated before writing the other files
+	 * of a shapefile. Replaces the record encoded before, if not committed.
+	 *
+	 * @param data
+	 *            the fields of the record (null for an empty record)
+	 * @throws IllegalArgumentException
+	 *             if a value is not allowed in its field or does not fit in
+	 *             it
+	 *
+	 * @see #write(List)
+	 */
+	public void encode(final List<DBFField> data)
+			throws IllegalArgumentException {
+		encoded = false;
+		Arrays.fill(record, (byte) ' ');
+		record[0] = DBFParameters.DBF_RECORD_NOT_DELETED;
+
+		if (data != null) {
+			for (int i = 0; i < data.size(); i++) {
+				final DBFField field = data.get(i);
+				if (field != null && field.getDescriptor() != null
+						&& field.getValue() != null) {
+					final int index = getFieldIndex(i, field.getDescriptor()
+							.getName());
+					if (index >= 0) {
+						writeValue(fields[index], field.getValue());
+					}
+				}
+			}
+		}
+
+		encoded = true;
+	}
+
+	/**
+	 * Writes the record encoded by encode() as the next record of the DBF
+	 * file.
+	 *
+	 * @throws IllegalStateException
+	 *             if there is no record encoded
+	 * @throws IOException
+	 *             if there is a problem writing the record
+	 */
+	public void commit() throws IllegalStateException, IOException {
+		if (!encoded) {
+			throw new IllegalStateException("There is no record encoded");
+		}
+
+		reserve(record.length).put(record);
+		encoded = false;
+		numRecords++;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!ended) {
+			ended = true;
+			reserve(1).put(DBFParameters.DBF_END_OF_FILE);
+		}
+
+		super.close();
+	}
+
+	@Override
+	protected void writeHeader(final ByteBuffer data) {
+		data.order(ByteOrder.LITTLE_ENDIAN);
+
+		calendar.setTime(header.getDateModified());
+		data.put(DBFParameters.DBF_HEADER_VERSION_OFFSET,
+				DBFParameters.DBF_HEADER_VERSION);
+		data.put(DBFParameters.DBF_HEADER_DATEOFLASTUPDATEYEAR_OFFSET,
+				(byte) (calendar.get(Calendar.YEAR) - DBFParameters.DATEOFLASTUPDATEYEAR_OFFSET));
+		data.put(DBFParameters.DBF_HEADER_DATEOFLASTUPDATEMONTH_OFFSET,
+				(byte) (calendar.get(Calendar.MONTH) + 1));
+		data.put(DBFParameters.DBF_HEADER_DATEOFLASTUPDATEDAY_OFFSET,
+				(byte) calendar.get(Calendar.DAY_OF_MONTH));
+		data.putInt(DBFParameters.DBF_HEADER_NUMBEROFRECORDS_OFFSET,
+				numRecords);
+		// NOTE: Both sizes are unsigned 16-bit values
+		data.putShort(DBFParameters.DBF_HEADER_NUMBEROFBYTESINHEADER_OFFSET,
+				(short) header.getHeaderSize());
+		data.putShort(DBFParameters.DBF_HEADER_NUMBEROFBYTESINRECORD_OFFSET,
+				(short) header.getRecordSize());
+
+		int position = DBFParameters.DBF_HEADER_LENGTH_WITHOUT_FIELDS;
+		for (final DBFFieldDescriptor field : fields) {
+			final String name = field.getName();
+			for (int i = 0; i < name.length(); i++) {
+				data.put(position + DBFParameters.DBF_HEADERFIELD_NAME_OFFSET
+						+ i, (byte) name.charAt(i));
+			}
+			data.put(position + DBFParameters.DBF_HEADERFIELD_TYPE_OFFSET,
+					(byte) field.getType().charAt(0));
+			data.put(position + DBFParameters.DBF_HEADERFIELD_LENGTH_OFFSET,
+					(byte) field.getLength());
+			data.put(position
+					+ DBFParameters.DBF_HEADERFIELD_DECIMALCOUNT_OFFSET,
+					(byte) field.getDecimalCount());
+			position += DBFParameters.DBF_HEADER_FIELD_LENGTH;
+		}
+		data.put(position, DBFParameters.DBF_HEADER_TERMINATOR);
+	}
+
+	/**
+	 * Returns the index of the field with a given name.
+	 *
+	 * @param position
+	 *            the position of the value in the record written (the field
+	 *            in the same position is checked first)
+	 * @param name
+	 *            the name of the field (ignoring case)
+	 * @return the index of the field (-1 if there is no field with the name)
+	 */
+	private int getFieldIndex(final int position, final String name) {
+		int output = -1;
+
+		if (position < fields.length
+				&& fields[position].getName().equalsIgnoreCase(name)) {
+			output = position;
+		} else if (name != null) {
+			final Integer index = fieldIndexes.get(name.toUpperCase());
+			output = index != null ? index.intValue() : -1;
+		}
+
+		return output;
+	}
+
+	/**
+	 * Writes a value to its field in the record.
+	 *
+	 * @param field
+	 *            the descriptor of the field
+	 * @param value
+	 *            the value (not null)
+	 * @throws IllegalArgumentException
+	 *             if the value is not allowed in the field or does not fit in
+	 *             it
+	 */
+	private void writeValue(final DBFFieldDescriptor field, final Object value)
+			throws IllegalArgumentException {
+		final String type = field.getType();
+
+		if ("N".equalsIgnoreCase(type) || "F".equalsIgnoreCase(type)) {
+			if (!(value instanceof Number)) {
+				throw new IllegalArgumentException("Value not allowed in the "
+						+ field.getName() + " field: " + value);
+			}
+			writeNumber(field, (Number) value);
+		} else if ("D".equalsIgnoreCase(type)) {
+			if (!(value instanceof Date)) {
+				throw new IllegalArgumentException("Value not allowed in the "
+						+ field.getName() + " field: " + value);
+			}
+			calendar.setTime((Date) value);
+			final int year = calendar.get(Calendar.YEAR);
+			if (year > 9999) {
+				throw new IllegalArgumentException("Value not allowed in the "
+						+ field.getName() + " field: " + value);
+			}
+			writeDigits(year, 4, field.getOffset());
+			writeDigits(calendar.get(Calendar.MONTH) + 1, 2,
+					field.getOffset() + 4);
+			writeDigits(calendar.get(Calendar.DAY_OF_MONTH), 2,
+					field.getOffset() + 6);
+		} else {
+			// The encoder stops before the first character that does not fit
+			// (the rest of the field is left blank)
+			final ByteBuffer text = ByteBuffer.wrap(record, field.getOffset(),
+					field.getLength());
+			encoder.reset();
+			encoder.encode(CharBuffer.wrap(value.toString()), text, true);
+			encoder.flush(text);
+		}
+	}
+
+	/**
+	 * Writes a number to its field in the record, right aligned and rounded
+	 * (half up) to the decimal count of the field.
+	 *
+	 * @param field
+	 *            the descriptor of the field
+	 * @param value
+	 *            the number
+	 * @throws IllegalArgumentException
+	 *             if the number does not fit in the field
+	 */
+	private void writeNumber(final DBFFieldDescriptor field, final Number value)
+			throws IllegalArgumentException {
+		final double number = value.doubleValue();
+		final int decimals = field.getDecimalCount();
+		final double scaled = Math.abs(number) * POWERS_OF_TEN[decimals];
+
+		int start = digits.length;
+		if (Double.isNaN(number) || Double.isInfinite(number)) {
+			// Written as an empty field
+		} else if (scaled < MAX_EXACT) {
+			// Digits from the last one
+			long unscaled = (long) (scaled + 0.5);
+			final boolean negative = number < 0 && unscaled != 0;
+			for (int i = 0; i < decimals; i++) {
+				digits[--start] = (byte) ('0' + unscaled % 10);
+				unscaled /= 10;
+			}
+			if (decimals > 0) {
+				digits[--start] = '.';
+			}
+			do {
+				digits[--start] = (byte) ('0' + unscaled % 10);
+				unscaled /= 10;
+			} while (unscaled > 0);
+			if (negative) {
+				digits[--start] = '-';
+			}
+		} else {
+			final String text = BigDecimal.valueOf(number)
+					.setScale(decimals, RoundingMode.HALF_UP).toPlainString();
+			start = digits.length - Math.min(text.length(), digits.length);
+			for (int i = 0; i < text.length() && start + i < digits.length; i++) {
+				digits[start + i] = (byte) text.charAt(i);
+			}
+			if (text.length() > digits.length) {
+				start = -1;
+			}
+		}
+
+		final int length = digits.length - start;
+		if (start < 0 || length > field.getLength()) {
+			throw new IllegalArgumentException("Value too long for the "
+					+ field.getName() + " field: " + value);
+		}
+		System.arraycopy(digits, start, record, field.getOffset()
+				+ field.getLength() - length, length);
+	}
+
+	/**
+	 * Writes a non negative number with a given number of digits (padded with
+	 * zeros) to the record.
+	 *
+	 * @param number
+	 *            the number
+	 * @param length
+	 *            the number of digits
+	 * @param offset
+	 *            the offset in the record
+	 */
+	private void writeDigits(final int number, final int length,
+			final int offset) {
+		int value = number;
+		for (int i = offset + length - 1; i >= offset; i--) {
+			record[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	/**
+	 * Returns the header of a DBF file with the given fields (copies of the
+	 * descriptors, with their offsets in the records). Called before the
+	 * superclass constructor, so it validates the fields before any byte is
+	 * reserved for the header.
+	 *
+	 * @param fields
+	 *            the descriptors of the fields
+	 * @return the header of the DBF file
+	 * @throws IllegalArgumentException
+	 *             if the fields are null, a field is not valid or the header
+	 *             or the records would be too long
+	 * @throws UnsupportedOperationException
+	 *             if the type of a field is not supported
+	 */
+	private static DBFHeader createHeader(
+			final List<DBFFieldDescriptor> fields)
+			throws IllegalArgumentException, UnsupportedOperationException {
+		final int headerLength = getHeaderLength(fields);
+		// NOTE: The header length is stored as an unsigned 16-bit value
+		if (headerLength > 0xFFFF) {
+			throw new IllegalArgumentException("Header too long: "
+					+ headerLength + " (" + fields.size() + " fields)");
+		}
+
+		final DBFHeader output = new DBFHeader();
+
+		final List<DBFFieldDescriptor> descriptors = new ArrayList<DBFFieldDescriptor>();
+		int offset = DBFParameters.DBF_RECORD_DATA_OFFSET;
+		for (final DBFFieldDescriptor field : fields) {
+			if (field == null) {
+				throw new IllegalArgumentException("The field is null");
+			}
+
+			final DBFFieldDescriptor descriptor = new DBFFieldDescriptor();
+			descriptor.setName(field.getName());
+			descriptor.setType(field.getType());
+			descriptor.setLength(field.getLength());
+			descriptor.setDecimalCount(Math.max(field.getDecimalCount(), 0));
+			descriptor.setOffset(offset);
+			checkField(descriptor);
+
+			offset += descriptor.getLength();
+			descriptors.add(descriptor);
+		}
+		if (offset > 0xFFFF) {
+			throw new IllegalArgumentException("Record too long: " + offset);
+		}
+
+		output.setDateModified(new Date());
+		output.setFields(descriptors);
+		output.setFieldCount(descriptors.size());
+		output.setHeaderSize(headerLength);
+		output.setRecordSize(offset);
+		output.setRecordCount(0);
+
+		return output;
+	}
+
+	/**
+	 * Checks that a field can be written to a DBF file.
+	 *
+	 * @param field
+	 *            the descriptor of the field
+	 * @throws IllegalArgumentException
+	 *             if the field is not valid
+	 * @throws UnsupportedOperationException
+	 *             if the type of the field is not supported
+	 */
+	private static void checkField(final DBFFieldDescriptor field)
+			throws IllegalArgumentException, UnsupportedOperationException {
+		final String name = field.getName();
+		if (name == null || name.length() == 0
+				|| name.length() >= DBFParameters.DBF_HEADERFIELD_NAME_SIZE) {
+			throw new IllegalArgumentException("Invalid field name: " + name);
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) <= ' ' || name.charAt(i) > '~') {
+				throw new IllegalArgumentException("Invalid field name: "
+						+ name);
+			}
+		}
+
+		final String type = field.getType();
+		if ("D".equalsIgnoreCase(type)) {
+			if (field.getLength() != DATE_LENGTH) {
+				throw new IllegalArgumentException("Invalid length of the "
+						+ name + " field: " + field.getLength());
+			}
+		} else if ("N".equalsIgnoreCase(type) || "F".equalsIgnoreCase(type)
+				|| "C".equalsIgnoreCase(type)) {
+			if (field.getLength() <= 0 || field.getLength() > MAX_FIELD_LENGTH) {
+				throw new IllegalArgumentException("Invalid length of the "
+						+ name + " field: " + field.getLength());
+			}
+			if (!"C".equalsIgnoreCase(type)
+					&& field.getDecimalCount() > 0
+					&& (field.getDecimalCount() >= POWERS_OF_TEN.length || field
+							.getDecimalCount() >= field.getLength())) {
+				throw new IllegalArgumentException(
+						"Invalid decimal count of the " + name + " field: "
+								+ field.getDecimalCount());
+			}
+		} else {
+			throw new UnsupportedOperationException(
+					"Field type not allowed (not implemented): " + type);
+		}
+	}
+
+	/**
+	 * Returns an encoder of a charset that replaces the characters it cannot
+	 * encode (as String.getBytes() does).
+	 *
+	 * @param charset
+	 *            the charset
+	 * @return an encoder of the charset
+	 */
+	private static CharsetEncoder createEncoder(final Charset charset) {
+		if (charset == null) {
+			throw new IllegalArgumentException("The Charset is null");
+		}
+
+		return charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Returns the length in bytes of the header of a DBF file with the given
+	 * fields.
+	 *
+	 * @param fields
+	 *            the descriptors of the fields
+	 * @return the length in bytes of the header
+	 */
+	private static int getHeaderLength(final List<DBFFieldDescriptor> fields) {
+		if (fields == null) {
+			throw new IllegalArgumentException("The List of fields is null");
+		}
+
+		return DBFParameters.DBF_HEADER_LENGTH_WITHOUT_FIELDS + fields.size()
+				* DBFParameters.DBF_HEADER_FIELD_LENGTH
+				+ DBFParameters.DBF_HEADER_TERMINATOR_LENGTH;
+	}
+}
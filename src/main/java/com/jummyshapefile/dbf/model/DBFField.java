@@ -19,6 +19,14 @@ package com.jummyshapefile.dbf.model;
 /**
  * Represents a DBF Field, including both it's properties (descriptor) and
  * value.
+ * <p>
+ * The class of the values read from a DBF file depends on the type of the
+ * field: a Double for N fields (even for Short Integer and Long Integer
+ * fields, without decimals) and F fields, a String for C fields and a Date for
+ * D fields. An integer field is therefore never a DBFField&lt;Long&gt; or
+ * DBFField&lt;Integer&gt;: use Number.longValue() on its value, or read it
+ * without creating any object with DBFRecord.getLong() (and
+ * DBFRecord.getDouble() for decimal numbers).
  *
  * @param <T>
  *            The Object type stored in the DBFField.
@@ -55,7 +63,8 @@ public class DBFField<T> {
 	}
 
 	/**
-	 * Returns an Object representing the value od the field.
+	 * Returns an Object representing the value od the field (a Double for
+	 * every numeric field read from a DBF file, see above).
 	 *
 	 * @return the value of the field
 	 */
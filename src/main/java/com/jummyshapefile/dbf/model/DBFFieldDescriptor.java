@@ -26,6 +26,7 @@ public class DBFFieldDescriptor {
 	private String type;
 	private int length = -1;
 	private int decimalCount = -1;
+	private int offset = -1;
 
 	/**
 	 * Returns the name of the DBF field.
@@ -107,6 +108,27 @@ public class DBFFieldDescriptor {
 		this.decimalCount = decimalCount;
 	}
 
+	/**
+	 * Returns the offset of the field in the record in bytes (the deletion
+	 * flag of the record included).
+	 *
+	 * @return the offset of the field in the record in bytes
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Sets the offset of the field in the record in bytes (the deletion flag
+	 * of the record included).
+	 *
+	 * @param offset
+	 *            the offset of the field in the record in bytes
+	 */
+	public void setOffset(final int offset) {
+		this.offset = offset;
+	}
+
 	@Override
 	public String toString() {
 		return "--- FIELD DESCRIPTOR: " + name + " / " + type + " / " + length
@@ -18,13 +18,23 @@ package com.jummyshapefile.dbf.model;
 
 import java.util.List;
 
+import com.jummyshapefile.utils.ByteUtils;
+
 /**
  * Represents a record in a DBF file.
+ * <p>
+ * Besides the decoded fields, the record keeps its bytes, so any field of the
+ * DBF file can be read as a primitive number (getLong(), getDouble()) without
+ * creating any object. Reading a record with no decoded fields (an empty
+ * array of field indexes) and using those methods is the fastest way to read
+ * numeric fields.
  */
 public class DBFRecord {
 	private int recordNum;
 	private boolean active = true;
 	private List<DBFField> fields;
+	private byte[] data;
+	private List<DBFFieldDescriptor> descriptors;
 
 	/**
 	 * Returns the number of the record in the DBF file.
@@ -65,7 +75,9 @@ public class DBFRecord {
 	}
 
 	/**
-	 * Returns a list with the fields of the record.
+	 * Returns a list with the fields of the record. The values of numeric
+	 * fields (N and F) are Double objects, even for integer fields; use
+	 * getLong() or getDouble() to read them as primitive numbers.
 	 *
 	 * @return a list with the fields of the record
 	 *
@@ -87,6 +99,143 @@ public class DBFRecord {
 		this.fields = fields;
 	}
 
+	/**
+	 * Returns the bytes of the record.
+	 *
+	 * @return the bytes of the record
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * Sets the bytes of the record.
+	 *
+	 * @param data
+	 *            the bytes of the record
+	 */
+	public void setData(final byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * Returns a list with the descriptors of all the fields of the DBF file.
+	 *
+	 * @return a list with the descriptors of all the fields of the DBF file
+	 *
+	 * @see DBFFieldDescriptor
+	 */
+	public List<DBFFieldDescriptor> getDescriptors() {
+		return descriptors;
+	}
+
+	/**
+	 * Sets a list with the descriptors of all the fields of the DBF file (with
+	 * their offsets in the record).
+	 *
+	 * @param descriptors
+	 *            a list with the descriptors of all the fields of the DBF
+	 *            file
+	 *
+	 * @see DBFFieldDescriptor
+	 */
+	public void setDescriptors(final List<DBFFieldDescriptor> descriptors) {
+		this.descriptors = descriptors;
+	}
+
+	/**
+	 * Returns whether a field of the record is empty (or filled with
+	 * asterisks, as dBase stores the numbers that overflow the field).
+	 *
+	 * @param fieldIndex
+	 *            the index (0-based) of the field in the DBF file
+	 * @return whether the field is empty
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no field that matches fieldIndex
+	 */
+	public boolean isNull(final int fieldIndex)
+			throws IndexOutOfBoundsException {
+		final DBFFieldDescriptor descriptor = getDescriptor(fieldIndex);
+
+		return ByteUtils.isBlank(data, descriptor.getLength(),
+				descriptor.getOffset());
+	}
+
+	/**
+	 * Returns the value of a numeric field of the record as a long (truncated
+	 * if the number has decimals), parsed directly from the bytes of the
+	 * record.
+	 *
+	 * @param fieldIndex
+	 *            the index (0-based) of the field in the DBF file
+	 * @return the value of the field (0 if the field is empty; see isNull())
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no field that matches fieldIndex
+	 * @throws NumberFormatException
+	 *             if the field is not a number
+	 */
+	public long getLong(final int fieldIndex)
+			throws IndexOutOfBoundsException, NumberFormatException {
+		long output = 0;
+
+		final DBFFieldDescriptor descriptor = getDescriptor(fieldIndex);
+		if (!ByteUtils.isBlank(data, descriptor.getLength(),
+				descriptor.getOffset())) {
+			output = ByteUtils.parseLong(data, descriptor.getLength(),
+					descriptor.getOffset());
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the value of a numeric field of the record as a double, parsed
+	 * directly from the bytes of the record.
+	 *
+	 * @param fieldIndex
+	 *            the index (0-based) of the field in the DBF file
+	 * @return the value of the field (0 if the field is empty; see isNull())
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no field that matches fieldIndex
+	 * @throws NumberFormatException
+	 *             if the field is not a number
+	 */
+	public double getDouble(final int fieldIndex)
+			throws IndexOutOfBoundsException, NumberFormatException {
+		double output = 0d;
+
+		final DBFFieldDescriptor descriptor = getDescriptor(fieldIndex);
+		if (!ByteUtils.isBlank(data, descriptor.getLength(),
+				descriptor.getOffset())) {
+			output = ByteUtils.parseDouble(data, descriptor.getLength(),
+					descriptor.getOffset());
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the descriptor of a field of the DBF file.
+	 *
+	 * @param fieldIndex
+	 *            the index (0-based) of the field in the DBF file
+	 * @return the descriptor of the field
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no field that matches fieldIndex
+	 */
+	private DBFFieldDescriptor getDescriptor(final int fieldIndex)
+			throws IndexOutOfBoundsException {
+		if (data == null || descriptors == null) {
+			throw new IllegalStateException("The bytes of the record are null");
+		}
+		if (fieldIndex < 0 || fieldIndex >= descriptors.size()) {
+			throw new IndexOutOfBoundsException("Number of fields: "
+					+ descriptors.size() + ". Requested: " + fieldIndex);
+		}
+
+		return descriptors.get(fieldIndex);
+	}
+
 	@Override
 	public String toString() {
 		return recordNum + " (" + active + ") -- " + fields;
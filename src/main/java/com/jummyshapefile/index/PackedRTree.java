@@ -0,0 +1,718 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.index;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import com.jummyshapefile.utils.GeometryUtils;
+
+/**
+ * Static R-tree packed using the STR (Sort-Tile-Recursive) algorithm and
+ * built from the MBRs (Minimum Bounding Rectangles) of the records of a
+ * shapefile.
+ * <p>
+ * The tree is stored in a single ByteBuffer (little endian), so it can be
+ * written to a sidecar file (see FILE_EXTENSION) and opened again by memory
+ * mapping that file, without parsing it:
+ * <ul>
+ * <li>Header: magic (int), version (int), node size (int), number of items
+ * (int), number of levels (int), number of records (int) and length in bytes
+ * (long) of the SHP file the tree was built from (-1 if unknown) and the end
+ * node index of each level (int)
+ * <li>Nodes, from the leaves (level 0) to the root (last node): minX, minY,
+ * maxX, maxY (double) and a reference (int). The reference of a leaf is the
+ * record number; the reference of any other node is the index of its first
+ * child (children are contiguous)
+ * </ul>
+ * The number of records and the SHP file length let a shapefile reject a tree
+ * built from another shapefile (see checkSource()).
+ * <p>
+ * Thread-safe, as queries only perform absolute reads of the buffer.
+ */
+public class PackedRTree implements SpatialIndex {
+	/**
+	 * Suggested extension for the sidecar file of the tree.
+	 */
+	public static final String FILE_EXTENSION = ".rtree";
+
+	/**
+	 * Default maximum number of children of each node.
+	 */
+	public static final int DEFAULT_NODE_SIZE = 16;
+
+	private static final int MAGIC = 0x4A525458;
+	private static final int VERSION = 2;
+
+	private static final int HEADER_MAGIC_OFFSET = 0;
+	private static final int HEADER_VERSION_OFFSET = 4;
+	private static final int HEADER_NODESIZE_OFFSET = 8;
+	private static final int HEADER_NUMITEMS_OFFSET = 12;
+	private static final int HEADER_NUMLEVELS_OFFSET = 16;
+	private static final int HEADER_NUMRECORDS_OFFSET = 20;
+	private static final int HEADER_SOURCELENGTH_OFFSET = 24;
+	private static final int HEADER_LEVELBOUNDS_OFFSET = 32;
+
+	private static final int NODE_MINX_OFFSET = 0;
+	private static final int NODE_MINY_OFFSET = 8;
+	private static final int NODE_MAXX_OFFSET = 16;
+	private static final int NODE_MAXY_OFFSET = 24;
+	private static final int NODE_REFERENCE_OFFSET = 32;
+	private static final int NODE_LENGTH = 36;
+
+	private final ByteBuffer buffer;
+	private final int nodeSize;
+	private final int numItems;
+	private final int numRecords;
+	private final long sourceLength;
+	private final int[] levelBounds;
+	private final int nodesOffset;
+
+	/**
+	 * Creates a PackedRTree over a ByteBuffer holding a tree.
+	 *
+	 * @param buffer
+	 *            the ByteBuffer holding the tree
+	 * @throws IOException
+	 *             if the ByteBuffer does not hold a valid tree
+	 */
+	private PackedRTree(final ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (buffer.capacity() < HEADER_NODESIZE_OFFSET
+				|| buffer.getInt(HEADER_MAGIC_OFFSET) != MAGIC) {
+			throw new IOException("Not a packed R-tree");
+		}
+		if (buffer.getInt(HEADER_VERSION_OFFSET) != VERSION) {
+			throw new IOException("Unsupported packed R-tree version: "
+					+ buffer.getInt(HEADER_VERSION_OFFSET));
+		}
+		if (buffer.capacity() < HEADER_LEVELBOUNDS_OFFSET) {
+			throw new IOException("Truncated packed R-tree");
+		}
+
+		nodeSize = buffer.getInt(HEADER_NODESIZE_OFFSET);
+		numItems = buffer.getInt(HEADER_NUMITEMS_OFFSET);
+		numRecords = buffer.getInt(HEADER_NUMRECORDS_OFFSET);
+		sourceLength = buffer.getLong(HEADER_SOURCELENGTH_OFFSET);
+		final int numLevels = buffer.getInt(HEADER_NUMLEVELS_OFFSET);
+		if (nodeSize < 2 || numItems < 0 || numLevels < 0 || numRecords < -1
+				|| sourceLength < -1
+				|| numLevels > (buffer.capacity() - HEADER_LEVELBOUNDS_OFFSET) / 4) {
+			throw new IOException("Corrupted packed R-tree header");
+		}
+
+		levelBounds = new int[numLevels];
+		for (int i = 0; i < numLevels; i++) {
+			levelBounds[i] = buffer.getInt(HEADER_LEVELBOUNDS_OFFSET + 4 * i);
+		}
+		nodesOffset = HEADER_LEVELBOUNDS_OFFSET + 4 * numLevels;
+
+		final int numNodes = numLevels == 0 ? 0 : levelBounds[numLevels - 1];
+		if ((long) nodesOffset + (long) numNodes * NODE_LENGTH > buffer
+				.capacity()) {
+			throw new IOException("Truncated packed R-tree");
+		}
+	}
+
+	/**
+	 * Builds a PackedRTree from the MBRs of a set of records, using the
+	 * default node size.
+	 *
+	 * @param minX
+	 *            the minX of the MBR of each record
+	 * @param minY
+	 *            the minY of the MBR of each record
+	 * @param maxX
+	 *            the maxX of the MBR of each record
+	 * @param maxY
+	 *            the maxY of the MBR of each record
+	 * @param recordNums
+	 *            the number of each record
+	 * @param count
+	 *            the number of records (used positions of the arrays)
+	 * @return a PackedRTree indexing the records
+	 */
+	public static PackedRTree build(final double[] minX, final double[] minY,
+			final double[] maxX, final double[] maxY, final int[] recordNums,
+			final int count) {
+		return build(minX, minY, maxX, maxY, recordNums, count,
+				DEFAULT_NODE_SIZE);
+	}
+
+	/**
+	 * Builds a PackedRTree from the MBRs of a set of records.
+	 *
+	 * @param minX
+	 *            the minX of the MBR of each record
+	 * @param minY
+	 *            the minY of the MBR of each record
+	 * @param maxX
+	 *            the maxX of the MBR of each record
+	 * @param maxY
+	 *            the maxY of the MBR of each record
+	 * @param recordNums
+	 *            the number of each record
+	 * @param count
+	 *            the number of records (used positions of the arrays)
+	 * @param nodeSize
+	 *            the maximum number of children of each node
+	 * @return a PackedRTree indexing the records
+	 * @throws IllegalArgumentException
+	 *             if the arguments are not valid or the nodes of the records
+	 *             do not fit in a ByteBuffer (about 2 GB)
+	 */
+	public static PackedRTree build(final double[] minX, final double[] minY,
+			final double[] maxX, final double[] maxY, final int[] recordNums,
+			final int count, final int nodeSize) {
+		return build(minX, minY, maxX, maxY, recordNums, count, nodeSize, -1,
+				-1);
+	}
+
+	/**
+	 * Builds a PackedRTree from the MBRs of the records of a shapefile,
+	 * storing the number of records and the length of the SHP file so that
+	 * the tree cannot be used with another shapefile.
+	 *
+	 * @param minX
+	 *            the minX of the MBR of each record
+	 * @param minY
+	 *            the minY of the MBR of each record
+	 * @param maxX
+	 *            the maxX of the MBR of each record
+	 * @param maxY
+	 *            the maxY of the MBR of each record
+	 * @param recordNums
+	 *            the number of each record
+	 * @param count
+	 *            the number of records (used positions of the arrays)
+	 * @param nodeSize
+	 *            the maximum number of children of each node
+	 * @param numRecords
+	 *            the number of records of the shapefile (-1 if unknown)
+	 * @param sourceLength
+	 *            the length in bytes of the SHP file (-1 if unknown)
+	 * @return a PackedRTree indexing the records
+	 * @throws IllegalArgumentException
+	 *             if the arguments are not valid or the nodes of the records
+	 *             do not fit in a ByteBuffer (about 2 GB)
+	 */
+	public static PackedRTree build(final double[] minX, final double[] minY,
+			final double[] maxX, final double[] maxY, final int[] recordNums,
+			final int count, final int nodeSize, final int numRecords,
+			final long sourceLength) {
+		if (minX == null || minY == null || maxX == null || maxY == null
+				|| recordNums == null) {
+			throw new IllegalArgumentException("The arrays are null");
+		}
+		if (count < 0 || count > minX.length || count > minY.length
+				|| count > maxX.length || count > maxY.length
+				|| count > recordNums.length) {
+			throw new IllegalArgumentException("Invalid count: " + count);
+		}
+		if (nodeSize < 2) {
+			throw new IllegalArgumentException("Invalid node size: "
+					+ nodeSize);
+		}
+		if (numRecords < -1 || (numRecords != -1 && count > numRecords)) {
+			throw new IllegalArgumentException("Invalid number of records: "
+					+ numRecords);
+		}
+		if (sourceLength < -1) {
+			throw new IllegalArgumentException("Invalid source length: "
+					+ sourceLength);
+		}
+
+		// Number of nodes of each level, from the leaves to the root
+		int numLevels = 0;
+		long numNodes = 0;
+		final int[] levelCounts = new int[32];
+		if (count > 0) {
+			int levelCount = count;
+			do {
+				levelCounts[numLevels++] = levelCount;
+				numNodes += levelCount;
+				levelCount = (levelCount + nodeSize - 1) / nodeSize;
+			} while (levelCounts[numLevels - 1] > 1 || numLevels == 1);
+		}
+
+		final int nodesOffset = HEADER_LEVELBOUNDS_OFFSET + 4 * numLevels;
+		final long length = nodesOffset + numNodes * NODE_LENGTH;
+		if (length > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many records for a "
+					+ "PackedRTree (" + count + "): its " + numNodes
+					+ " nodes do not fit in a ByteBuffer");
+		}
+		final ByteBuffer buffer = ByteBuffer.allocate((int) length).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(HEADER_MAGIC_OFFSET, MAGIC);
+		buffer.putInt(HEADER_VERSION_OFFSET, VERSION);
+		buffer.putInt(HEADER_NODESIZE_OFFSET, nodeSize);
+		buffer.putInt(HEADER_NUMITEMS_OFFSET, count);
+		buffer.putInt(HEADER_NUMLEVELS_OFFSET, numLevels);
+		buffer.putInt(HEADER_NUMRECORDS_OFFSET, numRecords);
+		buffer.putLong(HEADER_SOURCELENGTH_OFFSET, sourceLength);
+
+		double[] levelMinX = copy(minX, count);
+		double[] levelMinY = copy(minY, count);
+		double[] levelMaxX = copy(maxX, count);
+		double[] levelMaxY = copy(maxY, count);
+		int[] levelReferences = new int[count];
+		System.arraycopy(recordNums, 0, levelReferences, 0, count);
+
+		int levelStart = 0;
+		for (int level = 0; level < numLevels; level++) {
+			final int levelCount = levelCounts[level];
+			final int[] order = sortTileRecursive(levelMinX, levelMinY,
+					levelMaxX, levelMaxY, levelCount, nodeSize);
+
+			for (int i = 0; i < levelCount; i++) {
+				final int position = nodesOffset + (levelStart + i)
+						* NODE_LENGTH;
+				final int entry = order[i];
+				buffer.putDouble(position + NODE_MINX_OFFSET, levelMinX[entry]);
+				buffer.putDouble(position + NODE_MINY_OFFSET, levelMinY[entry]);
+				buffer.putDouble(position + NODE_MAXX_OFFSET, levelMaxX[entry]);
+				buffer.putDouble(position + NODE_MAXY_OFFSET, levelMaxY[entry]);
+				buffer.putInt(position + NODE_REFERENCE_OFFSET,
+						levelReferences[entry]);
+			}
+			buffer.putInt(HEADER_LEVELBOUNDS_OFFSET + 4 * level, levelStart
+					+ levelCount);
+
+			if (level == numLevels - 1) {
+				break;
+			}
+
+			// The parents group consecutive nodes of the sorted level
+			final int parentCount = levelCounts[level + 1];
+			final double[] parentMinX = new double[parentCount];
+			final double[] parentMinY = new double[parentCount];
+			final double[] parentMaxX = new double[parentCount];
+			final double[] parentMaxY = new double[parentCount];
+			final int[] parentReferences = new int[parentCount];
+			for (int p = 0; p < parentCount; p++) {
+				final int first = p * nodeSize;
+				final int end = Math.min(first + nodeSize, levelCount);
+
+				double nodeMinX = Double.POSITIVE_INFINITY;
+				double nodeMinY = Double.POSITIVE_INFINITY;
+				double nodeMaxX = Double.NEGATIVE_INFINITY;
+				double nodeMaxY = Double.NEGATIVE_INFINITY;
+				for (int i = first; i < end; i++) {
+					// NOTE: NaN values are ignored, as they never intersect
+					final int entry = order[i];
+					if (levelMinX[entry] < nodeMinX) {
+						nodeMinX = levelMinX[entry];
+					}
+					if (levelMinY[entry] < nodeMinY) {
+						nodeMinY = levelMinY[entry];
+					}
+					if (levelMaxX[entry] > nodeMaxX) {
+						nodeMaxX = levelMaxX[entry];
+					}
+					if (levelMaxY[entry] > nodeMaxY) {
+						nodeMaxY = levelMaxY[entry];
+					}
+				}
+
+				parentMinX[p] = nodeMinX;
+				parentMinY[p] = nodeMinY;
+				parentMaxX[p] = nodeMaxX;
+				parentMaxY[p] = nodeMaxY;
+				parentReferences[p] = levelStart + first;
+			}
+
+			levelStart += levelCount;
+			levelMinX = parentMinX;
+			levelMinY = parentMinY;
+			levelMaxX = parentMaxX;
+			levelMaxY = parentMaxY;
+			levelReferences = parentReferences;
+		}
+
+		try {
+			return new PackedRTree(buffer);
+		} catch (final IOException ioe) {
+			throw new IllegalStateException(ioe);
+		}
+	}
+
+	/**
+	 * Opens a PackedRTree stored in a ByteBuffer (as written by write()).
+	 *
+	 * @param buffer
+	 *            the ByteBuffer holding the tree
+	 * @return the PackedRTree stored in the ByteBuffer
+	 * @throws IOException
+	 *             if the ByteBuffer does not hold a valid tree
+	 */
+	public static PackedRTree open(final ByteBuffer buffer)
+			throws IOException {
+		if (buffer == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
+		}
+
+		return new PackedRTree(buffer.slice());
+	}
+
+	/**
+	 * Opens a PackedRTree stored in a file (as written by write()) by memory
+	 * mapping the file. The file stays mapped (and locked on Windows) until
+	 * the tree is garbage collected.
+	 *
+	 * @param is
+	 *            the InputStream representing the file
+	 * @return the PackedRTree stored in the file
+	 * @throws IOException
+	 *             if there is a problem mapping the file or the file does not
+	 *             hold a valid tree
+	 */
+	public static PackedRTree open(final FileInputStream is)
+			throws IOException {
+		if (is == null) {
+			throw new IllegalArgumentException("The FileInputStream is null");
+		}
+
+		final FileChannel channel = is.getChannel();
+		if (channel.size() > Integer.MAX_VALUE) {
+			throw new IOException("The packed R-tree is too large to be mapped");
+		}
+
+		return new PackedRTree(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+				channel.size()));
+	}
+
+	/**
+	 * Writes the tree to an OutputStream (usually a sidecar file of the
+	 * shapefile, see FILE_EXTENSION).
+	 *
+	 * @param os
+	 *            the OutputStream to write the tree to
+	 * @throws IOException
+	 *             if there is a problem writing the tree
+	 */
+	public void write(final OutputStream os) throws IOException {
+		if (os == null) {
+			throw new IllegalArgumentException("The OutputStream is null");
+		}
+
+		final ByteBuffer data = buffer.duplicate();
+		data.clear();
+		if (data.hasArray()) {
+			os.write(data.array(), data.arrayOffset(), data.remaining());
+		} else {
+			final byte[] chunk = new byte[8192];
+			while (data.hasRemaining()) {
+				final int length = Math.min(chunk.length, data.remaining());
+				data.get(chunk, 0, length);
+				os.write(chunk, 0, length);
+			}
+		}
+		os.flush();
+	}
+
+	/**
+	 * Returns the number of records indexed.
+	 *
+	 * @return the number of records indexed
+	 */
+	public int getNumItems() {
+		return numItems;
+	}
+
+	/**
+	 * Returns the number of records of the shapefile the tree was built from.
+	 *
+	 * @return the number of records of the shapefile the tree was built from
+	 *         (-1 if unknown)
+	 */
+	public int getNumRecords() {
+		return numRecords;
+	}
+
+	/**
+	 * Returns the length in bytes of the SHP file the tree was built from.
+	 *
+	 * @return the length in bytes of the SHP file the tree was built from (-1
+	 *         if unknown)
+	 */
+	public long getSourceLength() {
+		return sourceLength;
+	}
+
+	/**
+	 * Checks that the tree was built from a shapefile with the given number
+	 * of records and SHP file length. When they are unknown (trees built
+	 * from plain arrays), only checks that the tree does not index more
+	 * records than the shapefile has.
+	 *
+	 * @param numRecords
+	 *            the number of records of the shapefile
+	 * @param sourceLength
+	 *            the length in bytes of the SHP file
+	 * @throws IllegalArgumentException
+	 *             if the tree was not built from such a shapefile
+	 */
+	public void checkSource(final int numRecords, final long sourceLength) {
+		if (numItems > numRecords
+				|| (this.numRecords != -1 && this.numRecords != numRecords)) {
+			throw new IllegalArgumentException("The packed R-tree indexes "
+					+ (this.numRecords != -1 ? this.numRecords : numItems)
+					+ " records, but the shapefile has " + numRecords);
+		}
+		if (this.sourceLength != -1 && this.sourceLength != sourceLength) {
+			throw new IllegalArgumentException("The packed R-tree was built "
+					+ "from a SHP file of " + this.sourceLength
+					+ " bytes, but the SHP file has " + sourceLength);
+		}
+	}
+
+	/**
+	 * Returns the maximum number of children of each node.
+	 *
+	 * @return the maximum number of children of each node
+	 */
+	public int getNodeSize() {
+		return nodeSize;
+	}
+
+	/**
+	 * Returns the numbers (1-based, in ascending order) of the records whose
+	 * MBR (Minimum Bounding Rectangle) intersects the given rectangle, using
+	 * the same test as GeometryUtils.intersectsRectangle().
+	 *
+	 * @param minX
+	 *            the minX of the rectangle
+	 * @param minY
+	 *            the minY of the rectangle
+	 * @param maxX
+	 *            the maxX of the rectangle
+	 * @param maxY
+	 *            the maxY of the rectangle
+	 * @return the numbers of the records whose MBR intersects the given
+	 *         rectangle
+	 *
+	 * @see GeometryUtils#intersectsRectangle(double, double, double, double,
+	 *      double, double, double, double)
+	 */
+	public int[] query(final double minX, final double minY,
+			final double maxX, final double maxY) {
+		final int numLevels = levelBounds.length;
+		if (numLevels == 0) {
+			return new int[0];
+		}
+
+		int[] output = new int[16];
+		int found = 0;
+
+		// Pairs of (node index, level)
+		int[] stack = new int[2 * nodeSize * numLevels];
+		int stackSize = 0;
+		stack[stackSize++] = levelBounds[numLevels - 1] - 1;
+		stack[stackSize++] = numLevels - 1;
+
+		while (stackSize > 0) {
+			final int level = stack[--stackSize];
+			final int node = stack[--stackSize];
+
+			final int first = reference(node);
+			final int end = Math.min(first + nodeSize, levelBounds[level - 1]);
+			for (int child = first; child < end; child++) {
+				final int position = nodesOffset + child * NODE_LENGTH;
+				final double childMinX = buffer.getDouble(position
+						+ NODE_MINX_OFFSET);
+				final double childMinY = buffer.getDouble(position
+						+ NODE_MINY_OFFSET);
+				final double childMaxX = buffer.getDouble(position
+						+ NODE_MAXX_OFFSET);
+				final double childMaxY = buffer.getDouble(position
+						+ NODE_MAXY_OFFSET);
+
+				if (level == 1) {
+					if (GeometryUtils.intersectsRectangle(childMinX,
+							childMinY, childMaxX, childMaxY, minX, minY, maxX,
+							maxY)) {
+						if (found == output.length) {
+							output = grow(output);
+						}
+						output[found++] = reference(child);
+					}
+				} else if (childMaxX >= minX && childMinX <= maxX
+						&& childMaxY >= minY && childMinY <= maxY) {
+					if (stackSize + 2 > stack.length) {
+						stack = grow(stack);
+					}
+					stack[stackSize++] = child;
+					stack[stackSize++] = level - 1;
+				}
+			}
+		}
+
+		Arrays.sort(output, 0, found);
+		final int[] result = new int[found];
+		System.arraycopy(output, 0, result, 0, found);
+
+		return result;
+	}
+
+	/**
+	 * Returns the reference stored in a node.
+	 *
+	 * @param node
+	 *            the index of the node
+	 * @return the reference stored in the node
+	 */
+	private int reference(final int node) {
+		return buffer.getInt(nodesOffset + node * NODE_LENGTH
+				+ NODE_REFERENCE_OFFSET);
+	}
+
+	/**
+	 * Returns the order of the entries of a level following the STR
+	 * (Sort-Tile-Recursive) algorithm: the entries are sorted by the X of
+	 * their center, split in vertical slices and each slice is sorted by the Y
+	 * of their center.
+	 *
+	 * @param minX
+	 *            the minX of each entry
+	 * @param minY
+	 *            the minY of each entry
+	 * @param maxX
+	 *            the maxX of each entry
+	 * @param maxY
+	 *            the maxY of each entry
+	 * @param count
+	 *            the number of entries
+	 * @param nodeSize
+	 *            the maximum number of children of each node
+	 * @return the indexes of the entries in STR order
+	 */
+	private static int[] sortTileRecursive(final double[] minX,
+			final double[] minY, final double[] maxX, final double[] maxY,
+			final int count, final int nodeSize) {
+		final int[] order = new int[count];
+		final double[] keys = new double[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+			keys[i] = (minX[i] + maxX[i]) / 2;
+		}
+		sort(keys, order, 0, count);
+
+		final int numParents = (count + nodeSize - 1) / nodeSize;
+		final int numSlices = (int) Math.ceil(Math.sqrt(numParents));
+		final int sliceSize = numSlices * nodeSize;
+		for (int from = 0; from < count; from += sliceSize) {
+			final int to = Math.min(from + sliceSize, count);
+			for (int i = from; i < to; i++) {
+				keys[i] = (minY[order[i]] + maxY[order[i]]) / 2;
+			}
+			sort(keys, order, from, to);
+		}
+
+		return order;
+	}
+
+	/**
+	 * Sorts a range of keys (and the values in the same positions) in
+	 * ascending order.
+	 *
+	 * @param keys
+	 *            the keys to sort
+	 * @param values
+	 *            the values to move along with the keys
+	 * @param from
+	 *            the first position of the range (inclusive)
+	 * @param to
+	 *            the last position of the range (exclusive)
+	 */
+	private static void sort(final double[] keys, final int[] values,
+			final int from, final int to) {
+		int low = from;
+		int high = to;
+		while (high - low > 16) {
+			final int middle = (low + high) >>> 1;
+			final double pivot = keys[middle];
+			int i = low;
+			int j = high - 1;
+			while (i <= j) {
+				while (Double.compare(keys[i], pivot) < 0) {
+					i++;
+				}
+				while (Double.compare(keys[j], pivot) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					swap(keys, values, i++, j--);
+				}
+			}
+
+			// Recurse into the smaller half to bound the stack depth
+			if (j + 1 - low < high - i) {
+				sort(keys, values, low, j + 1);
+				low = i;
+			} else {
+				sort(keys, values, i, high);
+				high = j + 1;
+			}
+		}
+
+		for (int i = low + 1; i < high; i++) {
+			for (int j = i; j > low && Double.compare(keys[j - 1], keys[j]) > 0; j--) {
+				swap(keys, values, j - 1, j);
+			}
+		}
+	}
+
+	/**
+	 * Swaps two positions of the keys and the values.
+	 */
+	private static void swap(final double[] keys, final int[] values,
+			final int i, final int j) {
+		final double key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		final int value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+	}
+
+	/**
+	 * Returns a copy of the first positions of an array.
+	 */
+	private static double[] copy(final double[] array, final int count) {
+		final double[] output = new double[count];
+		System.arraycopy(array, 0, output, 0, count);
+
+		return output;
+	}
+
+	/**
+	 * Returns a copy of an array with twice its length.
+	 */
+	private static int[] grow(final int[] array) {
+		final int[] output = new int[array.length * 2];
+		System.arraycopy(array, 0, output, 0, array.length);
+
+		return output;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.index;
+
+import java.io.IOException;
+
+/**
+ * Interface that stablishes the contract for a spatial index of the records
+ * of a shapefile.
+ * <p>
+ * A spatial index narrows the records to check when querying the entities
+ * inside a rectangle. It may return false positives (records that must be
+ * discarded by checking their MBR), but never false negatives.
+ */
+public interface SpatialIndex {
+	/**
+	 * Returns the numbers (1-based, in ascending order) of the records whose
+	 * MBR (Minimum Bounding Rectangle) may intersect the given rectangle.
+	 *
+	 * @param minX
+	 *            the minX of the rectangle
+	 * @param minY
+	 *            the minY of the rectangle
+	 * @param maxX
+	 *            the maxX of the rectangle
+	 * @param maxY
+	 *            the maxY of the rectangle
+	 * @return the numbers of the records whose MBR may intersect the given
+	 *         rectangle
+	 * @throws IOException
+	 *             if there is a problem reading the index
+	 */
+	public int[] query(double minX, double minY, double maxX, double maxY)
+			throws IOException;
+}
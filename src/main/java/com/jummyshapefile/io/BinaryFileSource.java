@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Interface that stablishes the contract for the random access to the bytes
+ * of a binary file.
+ */
+public interface BinaryFileSource extends Closeable {
+	/**
+	 * Returns the size of the file in bytes.
+	 *
+	 * @return the size of the file in bytes
+	 * @throws IOException
+	 *             if there is a problem querying the file
+	 */
+	public long size() throws IOException;
+
+	/**
+	 * Reads bytes from the file into the remaining space of a ByteBuffer.
+	 *
+	 * @param position
+	 *            the position in the file of the first byte to read
+	 * @param dst
+	 *            the ByteBuffer to fill
+	 * @throws IOException
+	 *             if the buffer cannot be filled completely
+	 */
+	public void read(long position, ByteBuffer dst) throws IOException;
+
+	/**
+	 * Returns a ByteBuffer (with position 0 and limit length) holding the
+	 * requested bytes of the file.
+	 * <p>
+	 * The returned ByteBuffer may be a view of the underlying storage, so it
+	 * must not be modified.
+	 *
+	 * @param position
+	 *            the position in the file of the first byte to read
+	 * @param length
+	 *            the number of bytes to read
+	 * @return a ByteBuffer holding the requested bytes of the file
+	 * @throws IOException
+	 *             if the requested bytes cannot be read completely
+	 */
+	public ByteBuffer read(long position, int length) throws IOException;
+}
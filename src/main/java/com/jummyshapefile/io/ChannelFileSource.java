@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * BinaryFileSource that reads the bytes using positional reads on a
+ * FileChannel (FileChannel.read(ByteBuffer, long)).
+ * <p>
+ * Thread-safe and lock-free, as positional reads do not use nor modify the
+ * position of the channel. Note that interrupting a thread blocked in a read
+ * closes the channel (as defined by FileChannel).
+ */
+public class ChannelFileSource implements BinaryFileSource {
+	private final FileChannel channel;
+
+	/**
+	 * Creates a ChannelFileSource over a FileChannel.
+	 *
+	 * @param channel
+	 *            the FileChannel of the file
+	 */
+	public ChannelFileSource(final FileChannel channel) {
+		if (channel == null) {
+			throw new IllegalArgumentException("The FileChannel is null");
+		}
+
+		this.channel = channel;
+	}
+
+	public long size() throws IOException {
+		return channel.size();
+	}
+
+	public void read(final long position, final ByteBuffer dst)
+			throws IOException {
+		if (dst == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
+		}
+		if (position < 0) {
+			throw new IndexOutOfBoundsException("Requested: " + position);
+		}
+
+		long current = position;
+		while (dst.hasRemaining()) {
+			final int bytesRead = channel.read(dst, current);
+			if (bytesRead < 0) {
+				throw new IOException("Unexpected data length read");
+			}
+			current += bytesRead;
+		}
+	}
+
+	public ByteBuffer read(final long position, final int length)
+			throws IOException {
+		final ByteBuffer output = ByteBuffer.allocate(length);
+		read(position, output);
+		output.flip();
+
+		return output;
+	}
+
+	/**
+	 * Does nothing, the channel belongs to the FileInputStream of the file.
+	 */
+	public void close() {
+		// The channel is closed along with its FileInputStream
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * BinaryFileSource that memory maps the whole file.
+ * <p>
+ * As a single MappedByteBuffer cannot address more than 2 GB, the file is
+ * mapped in consecutive windows. Reads contained in a window are returned as
+ * views of the mapped memory (no system calls and no copies). Reads spanning
+ * two windows are copied into a new buffer.
+ * <p>
+ * Thread-safe, as every read works on its own view of the mapped memory.
+ * <p>
+ * The windows are not unmapped when the source is closed: Java has no
+ * supported way to unmap a MappedByteBuffer, and the views returned by read()
+ * may still be in use (reading unmapped memory crashes the JVM). The memory is
+ * unmapped once the windows and every view of them are garbage collected.
+ * Until then the file stays mapped, and on Windows it cannot be deleted,
+ * truncated or replaced: use AccessMode.POSITIONAL for files that must be
+ * modified while the JVM is running.
+ */
+public class MappedFileSource implements BinaryFileSource {
+	/**
+	 * Default size in bytes of each mapped window (1 GB).
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+	private final long size;
+	private final int windowSize;
+	private MappedByteBuffer[] windows;
+
+	/**
+	 * Maps a file using the default window size.
+	 *
+	 * @param channel
+	 *            the FileChannel of the file
+	 * @throws IOException
+	 *             if there is a problem mapping the file
+	 */
+	public MappedFileSource(final FileChannel channel) throws IOException {
+		this(channel, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Maps a file using a given window size.
+	 *
+	 * @param channel
+	 *            the FileChannel of the file
+	 * @param windowSize
+	 *            the size in bytes of each mapped window
+	 * @throws IOException
+	 *             if there is a problem mapping the file
+	 */
+	public MappedFileSource(final FileChannel channel, final int windowSize)
+			throws IOException {
+		if (channel == null) {
+			throw new IllegalArgumentException("The FileChannel is null");
+		}
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("Invalid window size: "
+					+ windowSize);
+		}
+
+		this.size = channel.size();
+		this.windowSize = windowSize;
+
+		final int numWindows = (int) ((size + windowSize - 1) / windowSize);
+		windows = new MappedByteBuffer[numWindows];
+		for (int i = 0; i < numWindows; i++) {
+			final long windowPosition = (long) i * windowSize;
+			windows[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+					windowPosition, Math.min(windowSize, size - windowPosition));
+		}
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public void read(final long position, final ByteBuffer dst)
+			throws IOException {
+		if (dst == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
+		}
+
+		checkRange(position, dst.remaining());
+
+		long current = position;
+		while (dst.hasRemaining()) {
+			final ByteBuffer window = window(current);
+			final int chunk = Math.min(dst.remaining(), window.remaining());
+			window.limit(window.position() + chunk);
+			dst.put(window);
+			current += chunk;
+		}
+	}
+
+	public ByteBuffer read(final long position, final int length)
+			throws IOException {
+		checkRange(position, length);
+
+		if (length == 0) {
+			return ByteBuffer.allocate(0);
+		}
+
+		final ByteBuffer window = window(position);
+		if (length <= window.remaining()) {
+			window.limit(window.position() + length);
+			return window.slice();
+		}
+
+		final ByteBuffer output = ByteBuffer.allocate(length);
+		read(position, output);
+		output.flip();
+
+		return output;
+	}
+
+	/**
+	 * Releases the mapped windows, so that no more reads are allowed. The
+	 * memory is not unmapped (nor the file unlocked on Windows) until the
+	 * windows and their views are garbage collected (see above).
+	 */
+	public void close() {
+		windows = null;
+	}
+
+	/**
+	 * Returns a view of the window that contains the given position, starting
+	 * at that position.
+	 *
+	 * @param position
+	 *            the position in the file
+	 * @return a view of the window that contains the given position
+	 * @throws IOException
+	 *             if the file has been closed
+	 */
+	private ByteBuffer window(final long position) throws IOException {
+		final MappedByteBuffer[] mapped = windows;
+		if (mapped == null) {
+			throw new IOException("The file is closed");
+		}
+
+		final ByteBuffer output = mapped[(int) (position / windowSize)]
+				.duplicate();
+		output.position((int) (position % windowSize));
+
+		return output;
+	}
+
+	/**
+	 * Checks that the requested bytes are inside the file.
+	 *
+	 * @param position
+	 *            the position in the file of the first byte to read
+	 * @param length
+	 *            the number of bytes to read
+	 * @throws IOException
+	 *             if the requested bytes are outside the file
+	 */
+	private void checkRange(final long position, final int length)
+			throws IOException {
+		if (position < 0 || length < 0) {
+			throw new IndexOutOfBoundsException("Requested: " + length
+					+ " bytes @ " + position);
+		}
+		if (position + length > size) {
+			throw new IOException("Unexpected data length read");
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.jummyshapefile.utils.FileUtils;
+
+/**
+ * BinaryFileSource that reads the bytes through a MarkFileInputStream
+ * (resetting to the beginning of the file and skipping to the requested
+ * position for every read).
+ * <p>
+ * Not thread-safe, as the position of the stream is shared.
+ *
+ * @see MarkFileInputStream
+ */
+public class StreamFileSource implements BinaryFileSource {
+	private final MarkFileInputStream mfis;
+
+	/**
+	 * Creates a StreamFileSource over a MarkFileInputStream marked at the
+	 * beginning of the file.
+	 *
+	 * @param mfis
+	 *            the MarkFileInputStream for the file
+	 */
+	public StreamFileSource(final MarkFileInputStream mfis) {
+		if (mfis == null) {
+			throw new IllegalArgumentException(
+					"The MarkFileInputStream is null");
+		}
+
+		this.mfis = mfis;
+	}
+
+	public long size() throws IOException {
+		return mfis.fis.getChannel().size();
+	}
+
+	public void read(final long position, final ByteBuffer dst)
+			throws IOException {
+		if (dst == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
+		}
+
+		final int length = dst.remaining();
+		if (dst.hasArray()) {
+			readFully(position, dst.array(),
+					dst.arrayOffset() + dst.position(), length);
+			dst.position(dst.limit());
+		} else {
+			final byte[] dataRead = new byte[length];
+			readFully(position, dataRead, 0, length);
+			dst.put(dataRead);
+		}
+	}
+
+	public ByteBuffer read(final long position, final int length)
+			throws IOException {
+		final byte[] dataRead = new byte[length];
+		readFully(position, dataRead, 0, length);
+
+		return ByteBuffer.wrap(dataRead);
+	}
+
+	/**
+	 * Closes the underlying stream.
+	 */
+	public void close() {
+		FileUtils.closeInputStream(mfis);
+	}
+
+	/**
+	 * Reads bytes from the given position of the stream into an array.
+	 *
+	 * @param position
+	 *            the position in the file of the first byte to read
+	 * @param data
+	 *            the array to fill
+	 * @param offset
+	 *            the offset in the array
+	 * @param length
+	 *            the number of bytes to read
+	 * @throws IOException
+	 *             if the requested bytes cannot be read completely
+	 */
+	private void readFully(final long position, final byte[] data,
+			final int offset, final int length) throws IOException {
+		if (position < 0) {
+			throw new IndexOutOfBoundsException("Requested: " + position);
+		}
+
+		mfis.reset();
+		mfis.skip(position);
+
+		final int bytesRead = length == 0 ? 0 : mfis.read(data, offset,
+				length);
+
+		if (bytesRead != length) {
+			throw new IOException("Unexpected data length read");
+		}
+	}
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.sbn;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.jummyshapefile.binaryfile.AbstractBinaryFile;
+import com.jummyshapefile.binaryfile.AccessMode;
+import com.jummyshapefile.index.SpatialIndex;
+import com.jummyshapefile.sbn.model.SBNHeader;
+
+/**
+ * Class representing a SBN file resource: the ESRI spatial bin tree of the
+ * shapes of a shapefile (the SBX file is not needed).
+ * <p>
+ * The tree is a binary tree whose nodes are stored as an array (the children
+ * of node i are 2i + 1 and 2i + 2). Each node references the bins holding its
+ * features: the MBR (Minimum bounding rectangle) of a shape in a 256 x 256
+ * grid covering the MBR of all shapes, and its record number.
+ * <p>
+ * The whole tree is loaded into memory when the file is opened, so queries
+ * do not read the file and can run concurrently.
+ */
+public class SBNFile extends AbstractBinaryFile<SBNHeader> implements
+		SpatialIndex {
+	private static final int EMPTY_MIN = SBNParameters.SBN_GRID_MAX + 1;
+	private static final int EMPTY_MAX = -1;
+
+	// Grid MBR of each feature (minX, minY, maxX, maxY, a byte each)
+	private int[] featureBounds;
+	private int[] featureIds;
+	// Features of node i: [nodeFeatureStart[i], nodeFeatureStart[i + 1])
+	private int[] nodeFeatureStart;
+	// Grid MBR (minX, minY, maxX, maxY) of the features of each subtree
+	private int[] nodeBounds;
+
+	@Override
+	public void init() {
+		headerReader = new SBNHeaderReader();
+	}
+
+	/**
+	 * Opens a SBN file, reads its header and loads its tree into memory.
+	 *
+	 * @param is
+	 *            the InputStream representing the SBN file
+	 * @param accessMode
+	 *            how the tree of the file will be read
+	 * @throws IOException
+	 *             if there is a problem opening the SBN file or reading its
+	 *             tree
+	 */
+	@Override
+	public void open(final FileInputStream is, final AccessMode accessMode)
+			throws IOException {
+		super.open(is, accessMode);
+
+		loadTree();
+	}
+
+	/**
+	 * Returns the number of nodes of the tree.
+	 *
+	 * @return the number of nodes of the tree
+	 */
+	public int getNodeCount() {
+		return nodeFeatureStart.length - 1;
+	}
+
+	/**
+	 * Returns the number of features (shapes) stored in the tree.
+	 *
+	 * @return the number of features (shapes) stored in the tree
+	 */
+	public int getFeatureCount() {
+		return featureIds.length;
+	}
+
+	/**
+	 * Returns the numbers (1-based, in ascending order) of the records whose
+	 * MBR (Minimum Bounding Rectangle) may intersect the given rectangle.
+	 * <p>
+	 * The rectangle is widened to the cells of the grid it touches, so the
+	 * output may contain records whose MBR does not intersect it.
+	 *
+	 * @param minX
+	 *            the minX of the rectangle
+	 * @param minY
+	 *            the minY of the rectangle
+	 * @param maxX
+	 *            the maxX of the rectangle
+	 * @param maxY
+	 *            the maxY of the rectangle
+	 * @return the numbers of the records whose MBR may intersect the given
+	 *         rectangle
+	 */
+	public int[] query(final double minX, final double minY,
+			final double maxX, final double maxY) {
+		final int nodeCount = getNodeCount();
+		if (nodeCount == 0 || minX > maxX || minY > maxY) {
+			return new int[0];
+		}
+
+		final int gridMinX = toGrid(minX, header.getMinX(), header.getMaxX(),
+				true);
+		final int gridMinY = toGrid(minY, header.getMinY(), header.getMaxY(),
+				true);
+		final int gridMaxX = toGrid(maxX, header.getMinX(), header.getMaxX(),
+				false);
+		final int gridMaxY = toGrid(maxY, header.getMinY(), header.getMaxY(),
+				false);
+
+		int[] output = new int[16];
+		int found = 0;
+
+		int[] stack = new int[64];
+		int stackSize = 0;
+		stack[stackSize++] = 0;
+		while (stackSize > 0) {
+			final int node = stack[--stackSize];
+			if (!intersects(nodeBounds, 4 * node, gridMinX, gridMinY,
+					gridMaxX, gridMaxY)) {
+				continue;
+			}
+
+			for (int i = nodeFeatureStart[node]; i < nodeFeatureStart[node + 1]; i++) {
+				final int bounds = featureBounds[i];
+				if ((bounds >>> 24) <= gridMaxX
+						&& ((bounds >>> 16) & 0xFF) <= gridMaxY
+						&& ((bounds >>> 8) & 0xFF) >= gridMinX
+						&& (bounds & 0xFF) >= gridMinY) {
+					if (found == output.length) {
+						output = grow(output);
+					}
+					output[found++] = featureIds[i];
+				}
+			}
+
+			for (int child = 2 * node + 1; child <= 2 * node + 2
+					&& child < nodeCount; child++) {
+				if (stackSize == stack.length) {
+					stack = grow(stack);
+				}
+				stack[stackSize++] = child;
+			}
+		}
+
+		Arrays.sort(output, 0, found);
+		int unique = 0;
+		for (int i = 0; i < found; i++) {
+			if (unique == 0 || output[unique - 1] != output[i]) {
+				output[unique++] = output[i];
+			}
+		}
+
+		final int[] result = new int[unique];
+		System.arraycopy(output, 0, result, 0, unique);
+
+		return result;
+	}
+
+	/**
+	 * Reads the node descriptors and the bins of the SBN file at once and
+	 * builds the in-memory tree.
+	 *
+	 * @throws IOException
+	 *             if there is a problem reading the file or it is corrupted
+	 */
+	private void loadTree() throws IOException {
+		final int headerSize = header.getHeaderSize();
+		final ByteBuffer data = read(headerSize,
+				(int) (source.size() - headerSize));
+		final int start = data.position();
+		final int end = data.limit();
+
+		// The first bin holds the node descriptors
+		if (end - start < SBNParameters.SBN_BIN_HEADER_LENGTH
+				|| data.getInt(start + SBNParameters.SBN_BIN_ID_OFFSET) != 1) {
+			throw new IOException("Corrupted SBN file");
+		}
+		// NOTE: The sizes stored are in 16-bit words
+		final int nodesLength = 2 * data.getInt(start
+				+ SBNParameters.SBN_BIN_SIZE_OFFSET);
+		final int nodesStart = start + SBNParameters.SBN_BIN_HEADER_LENGTH;
+		if (nodesLength < 0 || nodesLength > end - nodesStart) {
+			throw new IOException("Corrupted SBN file");
+		}
+		final int nodeCount = nodesLength / SBNParameters.SBN_NODE_LENGTH;
+
+		// Position and number of features of each bin, by bin id
+		int[] binStart = new int[16];
+		int[] binFeatures = new int[16];
+		int binPosition = nodesStart + nodesLength;
+		while (binPosition + SBNParameters.SBN_BIN_HEADER_LENGTH <= end) {
+			final int binId = data.getInt(binPosition
+					+ SBNParameters.SBN_BIN_ID_OFFSET);
+			final int binLength = 2 * data.getInt(binPosition
+					+ SBNParameters.SBN_BIN_SIZE_OFFSET);
+			binPosition += SBNParameters.SBN_BIN_HEADER_LENGTH;
+			if (binId < 0 || binLength < 0 || binLength > end - binPosition) {
+				throw new IOException("Corrupted SBN file");
+			}
+
+			while (binId >= binStart.length) {
+				binStart = grow(binStart);
+				binFeatures = grow(binFeatures);
+			}
+			binStart[binId] = binPosition;
+			binFeatures[binId] = binLength / SBNParameters.SBN_FEATURE_LENGTH;
+			binPosition += binLength;
+		}
+
+		final int[] featureStart = new int[nodeCount + 1];
+		for (int i = 0; i < nodeCount; i++) {
+			final int shapeCount = data.getInt(nodesStart + i
+					* SBNParameters.SBN_NODE_LENGTH
+					+ SBNParameters.SBN_NODE_SHAPECOUNT_OFFSET);
+			if (shapeCount < 0) {
+				throw new IOException("Corrupted SBN file");
+			}
+			featureStart[i + 1] = featureStart[i] + shapeCount;
+		}
+
+		final int featureCount = featureStart[nodeCount];
+		final int[] bounds = new int[featureCount];
+		final int[] ids = new int[featureCount];
+		for (int i = 0; i < nodeCount; i++) {
+			int bin = data.getInt(nodesStart + i
+					* SBNParameters.SBN_NODE_LENGTH
+					+ SBNParameters.SBN_NODE_BINSTART_OFFSET);
+			int feature = featureStart[i];
+			int binFeature = 0;
+			while (feature < featureStart[i + 1]) {
+				if (bin <= 1 || bin >= binStart.length
+						|| binStart[bin] == 0) {
+					throw new IOException("Corrupted SBN file");
+				}
+				if (binFeature == binFeatures[bin]) {
+					bin++;
+					binFeature = 0;
+					continue;
+				}
+
+				final int position = binStart[bin] + binFeature
+						* SBNParameters.SBN_FEATURE_LENGTH;
+				bounds[feature] = data.getInt(position
+						+ SBNParameters.SBN_FEATURE_MINX_OFFSET);
+				ids[feature] = data.getInt(position
+						+ SBNParameters.SBN_FEATURE_SHAPEID_OFFSET);
+				feature++;
+				binFeature++;
+			}
+		}
+
+		// The MBR of each subtree, from the leaves to the root
+		final int[] subtreeBounds = new int[4 * nodeCount];
+		for (int i = nodeCount - 1; i >= 0; i--) {
+			int nodeMinX = EMPTY_MIN;
+			int nodeMinY = EMPTY_MIN;
+			int nodeMaxX = EMPTY_MAX;
+			int nodeMaxY = EMPTY_MAX;
+			for (int f = featureStart[i]; f < featureStart[i + 1]; f++) {
+				nodeMinX = Math.min(nodeMinX, bounds[f] >>> 24);
+				nodeMinY = Math.min(nodeMinY, (bounds[f] >>> 16) & 0xFF);
+				nodeMaxX = Math.max(nodeMaxX, (bounds[f] >>> 8) & 0xFF);
+				nodeMaxY = Math.max(nodeMaxY, bounds[f] & 0xFF);
+			}
+			for (int child = 2 * i + 1; child <= 2 * i + 2
+					&& child < nodeCount; child++) {
+				nodeMinX = Math.min(nodeMinX, subtreeBounds[4 * child]);
+				nodeMinY = Math.min(nodeMinY, subtreeBounds[4 * child + 1]);
+				nodeMaxX = Math.max(nodeMaxX, subtreeBounds[4 * child + 2]);
+				nodeMaxY = Math.max(nodeMaxY, subtreeBounds[4 * child + 3]);
+			}
+			subtreeBounds[4 * i] = nodeMinX;
+			subtreeBounds[4 * i + 1] = nodeMinY;
+			subtreeBounds[4 * i + 2] = nodeMaxX;
+			subtreeBounds[4 * i + 3] = nodeMaxY;
+		}
+
+		featureBounds = bounds;
+		featureIds = ids;
+		nodeFeatureStart = featureStart;
+		nodeBounds = subtreeBounds;
+	}
+
+	/**
+	 * Returns whether a MBR of the grid intersects another one (inclusive).
+	 */
+	private static boolean intersects(final int[] bounds, final int offset,
+			final int minX, final int minY, final int maxX, final int maxY) {
+		return bounds[offset] <= maxX && bounds[offset + 1] <= maxY
+				&& bounds[offset + 2] >= minX && bounds[offset + 3] >= minY;
+	}
+
+	/**
+	 * Returns the cell of the grid holding a coordinate, widened by one cell
+	 * towards the min (floor) or the max (ceiling) to absorb the rounding of
+	 * the tools writing SBN files.
+	 *
+	 * @param value
+	 *            the coordinate
+	 * @param min
+	 *            the min of the coordinate of all shapes
+	 * @param max
+	 *            the max of the coordinate of all shapes
+	 * @param floor
+	 *            whether the coordinate is the min (true) or the max (false)
+	 *            of a rectangle
+	 * @return the cell of the grid holding the coordinate
+	 */
+	private static int toGrid(final double value, final double min,
+			final double max, final boolean floor) {
+		final double extent = max - min;
+		if (!(extent > 0)) {
+			return floor ? 0 : SBNParameters.SBN_GRID_MAX;
+		}
+
+		final double cell = (value - min) / extent * SBNParameters.SBN_GRID_MAX;
+		final double widened = floor ? Math.floor(cell) - 1 : Math
+				.ceil(cell) + 1;
+
+		int output;
+		if (widened < 0) {
+			output = 0;
+		} else if (widened > SBNParameters.SBN_GRID_MAX) {
+			output = SBNParameters.SBN_GRID_MAX;
+		} else {
+			output = (int) widened;
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns a copy of an array with twice its length.
+	 */
+	private static int[] grow(final int[] array) {
+		final int[] output = new int[array.length * 2];
+		System.arraycopy(array, 0, output, 0, array.length);
+
+		return output;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.sbn;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.jummyshapefile.binaryfile.BinaryFileHeaderReader;
+import com.jummyshapefile.sbn.model.SBNHeader;
+import com.jummyshapefile.utils.ByteUtils;
+
+/**
+ * Class that reads the header of a SBN file.
+ *
+ * @see SBNHeader
+ */
+public class SBNHeaderReader implements BinaryFileHeaderReader<SBNHeader> {
+	/**
+	 * Returns a SBNHeader object representing the header of a SBN file.
+	 *
+	 * @param is
+	 *            the InputStream for the file
+	 * @return SBNHeader object representing the header of a SBN file
+	 * @throws IOException
+	 *             if there is any problem reading the header or the file is
+	 *             not a SBN file
+	 *
+	 * @see SBNHeader
+	 */
+	public SBNHeader readHeader(final InputStream is) throws IOException {
+		SBNHeader header = null;
+
+		if (is == null) {
+			throw new IllegalArgumentException("The InputStream is null");
+		}
+
+		final byte[] headerBytes = new byte[SBNParameters.SBN_HEADER_LENGTH];
+		final int read = is.read(headerBytes);
+		if (read == SBNParameters.SBN_HEADER_LENGTH) {
+			final int fileCode = ByteUtils.readInt(headerBytes,
+					SBNParameters.SBN_HEADER_FILECODE_SIZE,
+					SBNParameters.SBN_HEADER_FILECODE_OFFSET);
+			if (fileCode != SBNParameters.SBN_FILECODE) {
+				throw new IOException("Not a SBN file");
+			}
+
+			header = new SBNHeader();
+			// NOTE: The length stored is in 16-bit words
+			header.setFileLength(2 * ByteUtils.readInt(headerBytes,
+					SBNParameters.SBN_HEADER_FILELENGTH_SIZE,
+					SBNParameters.SBN_HEADER_FILELENGTH_OFFSET));
+			header.setShapeCount(ByteUtils.readInt(headerBytes,
+					SBNParameters.SBN_HEADER_SHAPECOUNT_SIZE,
+					SBNParameters.SBN_HEADER_SHAPECOUNT_OFFSET));
+			header.setMinX(ByteUtils.readDouble(headerBytes,
+					SBNParameters.SBN_HEADER_MBRMINX_SIZE,
+					SBNParameters.SBN_HEADER_MBRMINX_OFFSET));
+			header.setMinY(ByteUtils.readDouble(headerBytes,
+					SBNParameters.SBN_HEADER_MBRMINY_SIZE,
+					SBNParameters.SBN_HEADER_MBRMINY_OFFSET));
+			header.setMaxX(ByteUtils.readDouble(headerBytes,
+					SBNParameters.SBN_HEADER_MBRMAXX_SIZE,
+					SBNParameters.SBN_HEADER_MBRMAXX_OFFSET));
+			header.setMaxY(ByteUtils.readDouble(headerBytes,
+					SBNParameters.SBN_HEADER_MBRMAXY_SIZE,
+					SBNParameters.SBN_HEADER_MBRMAXY_OFFSET));
+		}
+
+		return header;
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.sbn;
+
+public final class SBNParameters {
+	public static final int SBN_HEADER_LENGTH = 100;
+	public static final int SBN_FILECODE = 0x0000270A;
+
+	public static final int SBN_HEADER_FILECODE_OFFSET = 0;
+	public static final int SBN_HEADER_FILECODE_SIZE = 4;
+	public static final int SBN_HEADER_FILELENGTH_OFFSET = 24;
+	public static final int SBN_HEADER_FILELENGTH_SIZE = 4;
+	public static final int SBN_HEADER_SHAPECOUNT_OFFSET = 28;
+	public static final int SBN_HEADER_SHAPECOUNT_SIZE = 4;
+
+	public static final int SBN_HEADER_MBRMINX_OFFSET = 32;
+	public static final int SBN_HEADER_MBRMINX_SIZE = 8;
+	public static final int SBN_HEADER_MBRMINY_OFFSET = 40;
+	public static final int SBN_HEADER_MBRMINY_SIZE = 8;
+	public static final int SBN_HEADER_MBRMAXX_OFFSET = 48;
+	public static final int SBN_HEADER_MBRMAXX_SIZE = 8;
+	public static final int SBN_HEADER_MBRMAXY_OFFSET = 56;
+	public static final int SBN_HEADER_MBRMAXY_SIZE = 8;
+
+	public static final int SBN_BIN_HEADER_LENGTH = 8;
+	public static final int SBN_BIN_ID_OFFSET = 0;
+	public static final int SBN_BIN_SIZE_OFFSET = 4;
+
+	public static final int SBN_NODE_LENGTH = 8;
+	public static final int SBN_NODE_BINSTART_OFFSET = 0;
+	public static final int SBN_NODE_SHAPECOUNT_OFFSET = 4;
+
+	public static final int SBN_FEATURE_LENGTH = 8;
+	public static final int SBN_FEATURE_MINX_OFFSET = 0;
+	public static final int SBN_FEATURE_MINY_OFFSET = 1;
+	public static final int SBN_FEATURE_MAXX_OFFSET = 2;
+	public static final int SBN_FEATURE_MAXY_OFFSET = 3;
+	public static final int SBN_FEATURE_SHAPEID_OFFSET = 4;
+
+	public static final int SBN_GRID_MAX = 255;
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.sbn.model;
+
+import com.jummyshapefile.binaryfile.model.BinaryFileHeader;
+import com.jummyshapefile.sbn.SBNParameters;
+
+/**
+ * Represents the header of a SBN (ESRI spatial bin index) file.
+ * <p>
+ * The bin tree divides the MBR (Minimum bounding rectangle) of all shapes, and
+ * the MBR of each shape is stored in a grid of 256 x 256 cells covering it.
+ */
+public class SBNHeader extends BinaryFileHeader {
+	private final int headerSize = SBNParameters.SBN_HEADER_LENGTH;
+	private int fileLength;
+	private int shapeCount;
+	private double minX;
+	private double minY;
+	private double maxX;
+	private double maxY;
+
+	/**
+	 * Returns the size of the header of the file in bytes.
+	 *
+	 * @return the size of the header of the file in bytes
+	 */
+	public int getHeaderSize() {
+		return headerSize;
+	}
+
+	/**
+	 * Returns the length of the file in bytes.
+	 *
+	 * @return the length of the file in bytes
+	 */
+	public int getFileLength() {
+		return fileLength;
+	}
+
+	/**
+	 * Sets the length of the file in bytes.
+	 *
+	 * @param fileLength
+	 *            the length of the file in bytes
+	 */
+	public void setFileLength(final int fileLength) {
+		this.fileLength = fileLength;
+	}
+
+	/**
+	 * Returns the number of shapes indexed.
+	 *
+	 * @return the number of shapes indexed
+	 */
+	public int getShapeCount() {
+		return shapeCount;
+	}
+
+	/**
+	 * Sets the number of shapes indexed.
+	 *
+	 * @param shapeCount
+	 *            the number of shapes indexed
+	 */
+	public void setShapeCount(final int shapeCount) {
+		this.shapeCount = shapeCount;
+	}
+
+	/**
+	 * Returns the min X of the MBR (Minimum bounding rectangle) of all shapes
+	 * indexed.
+	 *
+	 * @return the min X of the MBR (Minimum bounding rectangle) of all shapes
+	 *         indexed
+	 */
+	public double getMinX() {
+		return minX;
+	}
+
+	/**
+	 * Sets the min X of the MBR (Minimum bounding rectangle) of all shapes
+	 * indexed.
+	 *
+	 * @param minX
+	 *            the min X of the MBR (Minimum bounding rectangle) of all
+	 *            shapes indexed
+	 */
+	public void setMinX(final double minX) {
+		this.minX = minX;
+	}
+
+	/**
+	 * Returns the min Y of the MBR (Minimum bounding rectangle) of all shapes
+	 * indexed.
+	 *
+	 * @return the min Y of the MBR (Minimum bounding rectangle) of all shapes
+	 *         indexed
+	 */
+	public double getMinY() {
+		return minY;
+	}
+
+	/**
+	 * Sets the min Y of the MBR (Minimum bounding rectangle) of all shapes
+	 * indexed.
+	 *
+	 * @param minY
+	 *            the min Y of the MBR (Minimum bounding rectangle) of all
+	 *            shapes indexed
+	 */
+	public void setMinY(final double minY) {
+		this.minY = minY;
+	}
+
+	/**
+	 * Returns the max X of the MBR (Minimum bounding rectangle) of all shapes
+	 * indexed.
+	 *
+	 * @return the max X of the MBR (Minimum bounding rectangle) of all shapes
+	 *         indexed
+	 */
+	public double getMaxX() {
+		return maxX;
+	}
+
+	/**
+	 * Sets the max X of the MBR (Minimum bounding rectangle) of all shapes
+	 * indexed.
+	 *
+	 * @param maxX
+	 *            the max X of the MBR (Minimum bounding rectangle) of all
+	 *            shapes indexed
+	 */
+	public void setMaxX(final double maxX) {
+		this.maxX = maxX;
+	}
+
+	/**
+	 * Returns the max Y of the MBR (Minimum bounding rectangle) of all shapes
+	 * indexed.
+	 *
+	 * @return the max Y of the MBR (Minimum bounding rectangle) of all shapes
+	 *         indexed
+	 */
+	public double getMaxY() {
+		return maxY;
+	}
+
+	/**
+	 * Sets the max Y of the MBR (Minimum bounding rectangle) of all shapes
+	 * indexed.
+	 *
+	 * @param maxY
+	 *            the max Y of the MBR (Minimum bounding rectangle) of all
+	 *            shapes indexed
+	 */
+	public void setMaxY(final double maxY) {
+		this.maxY = maxY;
+	}
+}
@@ -0,0 +1,590 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.shapefile;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import com.jummyshapefile.binaryfile.AccessMode;
+import com.jummyshapefile.dbf.DBFColumnStore;
+import com.jummyshapefile.dbf.DBFPredicate;
+import com.jummyshapefile.dbf.model.DBFField;
+import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
+import com.jummyshapefile.index.SpatialIndex;
+import com.jummyshapefile.shapefile.model.Entity;
+import com.jummyshapefile.shp.SHPPointStore;
+import com.jummyshapefile.utils.GeoJSONWriter;
+
+/**
+ * Read-only facade of a shapefile to be shared by many threads.
+ * <p>
+ * Thread-safe and lock-free: every query reads the files using positional
+ * reads (AccessMode.POSITIONAL) or views of the mapped files
+ * (AccessMode.MAPPED), which neither use nor modify a shared position, and
+ * decodes the records with stateless readers. The SHX index is loaded into
+ * memory when the facade is created, and the headers, the projection, the
+ * spatial index and the kind of geometry returned never change afterwards,
+ * so no query needs any synchronization. Every entity returned is a new
+ * object owned by the calling thread (a LazyEntity decodes its content in the
+ * thread that requests it).
+ * <p>
+ * The wrapped Shapefile must be configured (setPackedGeometry(),
+ * setLazyEntities(), buildSpatialIndex(), openSBN(), setEntityCache(),
+ * setOffHeapGeometryCache()...) before creating the facade and must not be
+ * used directly afterwards. Closing the facade closes the shapefile, so it
+ * must not be closed while queries are running.
+ *
+ * @see Shapefile
+ * @see AccessMode
+ */
+public final class ConcurrentShapefile implements Closeable {
+	private final Shapefile shapefile;
+	private final int numEntities;
+	private final String projection;
+	private final boolean packedGeometry;
+	private final boolean lazyEntities;
+	private final SpatialIndex spatialIndex;
+	private final EntityCache entityCache;
+
+	/**
+	 * Opens a shapefile (without spatial index, returning Point, MultiPoint,
+	 * Polyline and Polygon geometries) to be shared by many threads.
+	 *
+	 * @param shpIS
+	 *            InputStream object for the SHP file (mandatory)
+	 * @param shxIS
+	 *            InputStream object for the SHX file (optional, may be null:
+	 *            the index is rebuilt from the SHP file)
+	 * @param dbfIS
+	 *            InputStream object for the DBF file (mandatory)
+	 * @param prjIS
+	 *            InputStream object for the PRJ file (optional, may be null)
+	 * @param accessMode
+	 *            how the records of the SHP, SHX and DBF files are read
+	 *            (AccessMode.POSITIONAL or AccessMode.MAPPED)
+	 * @throws IllegalArgumentException
+	 *             if the access mode does not allow concurrent reads
+	 * @throws IOException
+	 *             if there is a problem opening the shapefile
+	 *
+	 * @see AccessMode
+	 */
+	public ConcurrentShapefile(final FileInputStream shpIS,
+			final FileInputStream shxIS, final FileInputStream dbfIS,
+			final FileInputStream prjIS, final AccessMode accessMode)
+			throws IllegalArgumentException, IOException {
+		this(open(shpIS, shxIS, dbfIS, prjIS, accessMode));
+	}
+
+	/**
+	 * Creates a facade of a configured shapefile to be shared by many
+	 * threads, loading its SHX index into memory.
+	 *
+	 * @param shapefile
+	 *            the shapefile (opened using AccessMode.POSITIONAL or
+	 *            AccessMode.MAPPED)
+	 * @throws IllegalArgumentException
+	 *             if the shapefile is null or its access mode does not allow
+	 *             concurrent reads
+	 * @throws IOException
+	 *             if there is a problem loading the SHX index
+	 */
+	public ConcurrentShapefile(final Shapefile shapefile)
+			throws IllegalArgumentException, IOException {
+		if (shapefile == null) {
+			throw new IllegalArgumentException("The shapefile is null");
+		}
+		checkAccessMode(shapefile.getAccessMode());
+
+		shapefile.loadIndex();
+
+		this.shapefile = shapefile;
+		this.numEntities = shapefile.getNumEntities();
+		this.projection = shapefile.getProjection();
+		this.packedGeometry = shapefile.isPackedGeometry();
+		this.lazyEntities = shapefile.isLazyEntities();
+		this.spatialIndex = shapefile.getSpatialIndex();
+		this.entityCache = shapefile.getEntityCache();
+	}
+
+	/**
+	 * Closes the shapefile releasing all the resources.
+	 */
+	public void close() throws IOException {
+		shapefile.close();
+	}
+
+	/**
+	 * Returns how the records of the SHP, SHX and DBF files are read.
+	 *
+	 * @return how the records of the SHP, SHX and DBF files are read
+	 *
+	 * @see AccessMode
+	 */
+	public AccessMode getAccessMode() {
+		return shapefile.getAccessMode();
+	}
+
+	/**
+	 * Returns the projection of the shapefile.
+	 *
+	 * @return the projection of the shapefile
+	 */
+	public String getProjection() {
+		return projection;
+	}
+
+	/**
+	 * Returns the number of entities stored in the shapefile.
+	 *
+	 * @return the number of entities stored in the shapefile
+	 */
+	public int getNumEntities() {
+		return numEntities;
+	}
+
+	/**
+	 * Returns whether the geometries of the entities are PackedGeometry
+	 * objects.
+	 *
+	 * @return whether the geometries of the entities are PackedGeometry
+	 *         objects
+	 */
+	public boolean isPackedGeometry() {
+		return packedGeometry;
+	}
+
+	/**
+	 * Returns whether the entities looked up (by record number or by
+	 * rectangle) are LazyEntity objects.
+	 *
+	 * @return whether the entities looked up are LazyEntity objects
+	 *
+	 * @see LazyEntity
+	 */
+	public boolean isLazyEntities() {
+		return lazyEntities;
+	}
+
+	/**
+	 * Returns the spatial index used by getEntitiesInRectangle().
+	 *
+	 * @return the spatial index used by getEntitiesInRectangle() (may be null)
+	 */
+	public SpatialIndex getSpatialIndex() {
+		return spatialIndex;
+	}
+
+	/**
+	 * Returns the cache of the entities looked up by record number (set in the
+	 * shapefile before creating the facade).
+	 *
+	 * @return the cache of the entities looked up by record number (may be
+	 *         null)
+	 *
+	 * @see EntityCache
+	 */
+	public EntityCache getEntityCache() {
+		return entityCache;
+	}
+
+	/**
+	 * Returns a copy of the field descriptors of the entity data (the
+	 * descriptors shared by the queries cannot be modified).
+	 *
+	 * @return a copy of the field descriptors of the entity data
+	 *
+	 * @see DBFFieldDescriptor
+	 */
+	public List<DBFFieldDescriptor> getDataFieldDescriptors() {
+		final List<DBFFieldDescriptor> descriptors = shapefile
+				.getDataFieldDescriptors();
+		final List<DBFFieldDescriptor> output = new ArrayList<DBFFieldDescriptor>(
+				descriptors.size());
+
+		for (final DBFFieldDescriptor descriptor : descriptors) {
+			final DBFFieldDescriptor copy = new DBFFieldDescriptor();
+			copy.setName(descriptor.getName());
+			copy.setType(descriptor.getType());
+			copy.setLength(descriptor.getLength());
+			copy.setDecimalCount(descriptor.getDecimalCount());
+			copy.setOffset(descriptor.getOffset());
+			output.add(copy);
+		}
+
+		return Collections.unmodifiableList(output);
+	}
+
+	/**
+	 * Returns the entity that matches a given record number.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @param data
+	 *            whether the record should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data.
+	 *
+	 * @return the entity that matches a given record number
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 *
+	 * @see Shapefile#getEntityByRecordNumber(int, boolean)
+	 */
+	public Entity getEntityByRecordNumber(final int recordNum,
+			final boolean data) throws IOException {
+		return shapefile.getEntityByRecordNumber(recordNum, data);
+	}
+
+	/**
+	 * Returns the entity that matches a given record number, with only the
+	 * requested fields of alphanumeric data (in the requested order).
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @param fields
+	 *            the names of the fields of alphanumeric data (ignoring case)
+	 *
+	 * @return the entity that matches a given record number
+	 *
+	 * @throws IllegalArgumentException
+	 *             if there is no field with one of the names
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 *
+	 * @see Shapefile#getEntityByRecordNumber(int, String...)
+	 */
+	public Entity getEntityByRecordNumber(final int recordNum,
+			final String... fields) throws IllegalArgumentException,
+			IOException {
+		return shapefile.getEntityByRecordNumber(recordNum, fields);
+	}
+
+	/**
+	 * Returns the WKB (little endian) representing the geometry of the entity
+	 * that matches a given record number, transcoded directly from the bytes
+	 * of the SHP record.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 *
+	 * @return the WKB representing the geometry of the entity (null if it is
+	 *         a null shape)
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 *
+	 * @see Shapefile#getGeometryWKBByRecordNumber(int)
+	 */
+	public byte[] getGeometryWKBByRecordNumber(final int recordNum)
+			throws IOException {
+		return shapefile.getGeometryWKBByRecordNumber(recordNum);
+	}
+
+	/**
+	 * Returns a List of DBField representing the entity data that matches the
+	 * given record number.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 *
+	 * @return a List of DBField representing the entity data that matches the
+	 *         given record number
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the data
+	 *
+	 * @see DBFField
+	 */
+	public List<DBFField> getEntityDataByRecordNumber(final int recordNum)
+			throws IOException {
+		return shapefile.getEntityDataByRecordNumber(recordNum);
+	}
+
+	/**
+	 * Returns a List of DBField representing the requested fields of the
+	 * entity data that matches the given record number (in the requested
+	 * order).
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @param fields
+	 *            the names of the fields (ignoring case)
+	 *
+	 * @return a List of DBField representing the requested fields of the
+	 *         entity data that matches the given record number
+	 *
+	 * @throws IllegalArgumentException
+	 *             if there is no field with one of the names
+	 * @throws IOException
+	 *             if there is a problem querying the data
+	 *
+	 * @see DBFField
+	 */
+	public List<DBFField> getEntityDataByRecordNumber(final int recordNum,
+			final String... fields) throws IllegalArgumentException,
+			IOException {
+		return shapefile.getEntityDataByRecordNumber(recordNum, fields);
+	}
+
+	/**
+	 * Returns the List of entities whose MBR (Minimum Bounding Rectangle)
+	 * intersects the given rectangle.
+	 *
+	 * @param minX
+	 *            the minX of the rectangle
+	 * @param minY
+	 *            the minY of the rectangle
+	 * @param maxX
+	 *            the maxX of the rectangle
+	 * @param maxY
+	 *            the maxY of the rectangle
+	 * @param data
+	 *            whether the record should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data.
+	 *
+	 * @return the List of entities whose MBR intersects the given rectangle
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 *
+	 * @see Shapefile#getEntitiesInRectangle(double, double, double, double,
+	 *      boolean)
+	 */
+	public List<Entity> getEntitiesInRectangle(final double minX,
+			final double minY, final double maxX, final double maxY,
+			final boolean data) throws IOException {
+		return shapefile.getEntitiesInRectangle(minX, minY, maxX, maxY, data);
+	}
+
+	/**
+	 * Returns the List of entities whose MBR (Minimum Bounding Rectangle)
+	 * intersects the given rectangle and whose alphanumeric data matches all
+	 * the given predicates.
+	 *
+	 * @param minX
+	 *            the minX of the rectangle
+	 * @param minY
+	 *            the minY of the rectangle
+	 * @param maxX
+	 *            the maxX of the rectangle
+	 * @param maxY
+	 *            the maxY of the rectangle
+	 * @param data
+	 *            whether the record should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data.
+	 * @param predicates
+	 *            the predicates on the alphanumeric data
+	 *
+	 * @return the List of entities whose MBR intersects the given rectangle
+	 *         and whose alphanumeric data matches all the predicates
+	 *
+	 * @throws IllegalArgumentException
+	 *             if there is no field with the name of a predicate
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 *
+	 * @see DBFPredicate
+	 */
+	public List<Entity> getEntitiesInRectangle(final double minX,
+			final double minY, final double maxX, final double maxY,
+			final boolean data, final DBFPredicate... predicates)
+			throws IllegalArgumentException, IOException {
+		return shapefile.getEntitiesInRectangle(minX, minY, maxX, maxY, data,
+				predicates);
+	}
+
+	/**
+	 * Returns a forward-only reader of all the entities of the shapefile, in
+	 * file order. Each reader has its own buffer, so several threads can use
+	 * their own readers at the same time (a reader itself is not
+	 * thread-safe).
+	 *
+	 * @param data
+	 *            whether the entities should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data.
+	 *
+	 * @return a reader of all the entities of the shapefile
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 *
+	 * @see ShapefileReader
+	 */
+	public ShapefileReader openReader(final boolean data) throws IOException {
+		return shapefile.openReader(data);
+	}
+
+	/**
+	 * Writes all the entities of the shapefile (with their alphanumeric data)
+	 * as a GeoJSON FeatureCollection, in one sequential pass with its own
+	 * reader.
+	 *
+	 * @param writer
+	 *            the GeoJSONWriter (not shared with other threads)
+	 *
+	 * @return the number of features written
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile or writing
+	 *             the GeoJSON
+	 *
+	 * @see Shapefile#writeGeoJSON(GeoJSONWriter)
+	 */
+	public int writeGeoJSON(final GeoJSONWriter writer) throws IOException {
+		return shapefile.writeGeoJSON(writer);
+	}
+
+	/**
+	 * Returns the List of all the entities of the shapefile in record order,
+	 * decoding them in parallel.
+	 *
+	 * @param data
+	 *            whether the entities should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data.
+	 * @param executor
+	 *            the ExecutorService running the chunks of records
+	 *
+	 * @return the List of all the entities of the shapefile in record order
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 *
+	 * @see Shapefile#getEntities(boolean, ExecutorService)
+	 */
+	public List<Entity> getEntities(final boolean data,
+			final ExecutorService executor) throws IOException {
+		return shapefile.getEntities(data, executor);
+	}
+
+	/**
+	 * Delivers all the entities of the shapefile to a sink, decoding them in
+	 * parallel.
+	 *
+	 * @param data
+	 *            whether the entities should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data.
+	 * @param executor
+	 *            the ExecutorService running the chunks of records
+	 * @param sink
+	 *            the receiver of the entities (must be thread-safe)
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile or the sink
+	 *             fails
+	 *
+	 * @see EntitySink
+	 */
+	public void scanEntities(final boolean data,
+			final ExecutorService executor, final EntitySink sink)
+			throws IOException {
+		shapefile.scanEntities(data, executor, sink);
+	}
+
+	/**
+	 * Loads some fields of the entity data of all the entities into a
+	 * columnar in-memory table (the row i holds the entity with record number
+	 * i + 1).
+	 *
+	 * @param fields
+	 *            the names of the fields (ignoring case)
+	 *
+	 * @return a DBFColumnStore with the fields of all the entities
+	 *
+	 * @throws IllegalArgumentException
+	 *             if there is no field with one of the names
+	 * @throws IOException
+	 *             if there is a problem querying the data
+	 *
+	 * @see DBFColumnStore
+	 */
+	public DBFColumnStore loadDataColumns(final String... fields)
+			throws IllegalArgumentException, IOException {
+		return shapefile.loadDataColumns(fields);
+	}
+
+	/**
+	 * Loads the coordinates of all the entities of a Point shapefile into
+	 * packed primitive arrays (the record i + 1 at the positions 2 * i and 2 *
+	 * i + 1), reading the SHP file sequentially in one pass without the SHX
+	 * file, and indexes them for rectangle and nearest neighbour queries.
+	 *
+	 * @return a SHPPointStore with the points of all the entities
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if the shapefile is not a Point shapefile
+	 * @throws IOException
+	 *             if there is a problem reading the SHP file
+	 *
+	 * @see SHPPointStore
+	 */
+	public SHPPointStore loadPoints() throws UnsupportedOperationException,
+			IOException {
+		return shapefile.loadPoints();
+	}
+
+	/**
+	 * Opens a shapefile using an access mode that allows concurrent reads.
+	 *
+	 * @param shpIS
+	 *            InputStream object for the SHP file
+	 * @param shxIS
+	 *            InputStream object for the SHX file (may be null)
+	 * @param dbfIS
+	 *            InputStream object for the DBF file
+	 * @param prjIS
+	 *            InputStream object for the PRJ file (may be null)
+	 * @param accessMode
+	 *            how the records of the SHP, SHX and DBF files are read
+	 * @return the shapefile
+	 * @throws IllegalArgumentException
+	 *             if the access mode does not allow concurrent reads
+	 * @throws IOException
+	 *             if there is a problem opening the shapefile
+	 */
+	private static Shapefile open(final FileInputStream shpIS,
+			final FileInputStream shxIS, final FileInputStream dbfIS,
+			final FileInputStream prjIS, final AccessMode accessMode)
+			throws IllegalArgumentException, IOException {
+		checkAccessMode(accessMode);
+
+		return new Shapefile(shpIS, shxIS, dbfIS, prjIS, accessMode);
+	}
+
+	/**
+	 * Checks that an access mode allows concurrent reads.
+	 *
+	 * @param accessMode
+	 *            the access mode
+	 * @throws IllegalArgumentException
+	 *             if the access mode does not allow concurrent reads
+	 */
+	private static void checkAccessMode(final AccessMode accessMode)
+			throws IllegalArgumentException {
+		if (accessMode != AccessMode.POSITIONAL
+				&& accessMode != AccessMode.MAPPED) {
+			throw new IllegalArgumentException(
+					"Concurrent reads not allowed: " + accessMode);
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.shapefile;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.jummyshapefile.cache.CacheStats;
+import com.jummyshapefile.cache.LRUCache;
+import com.jummyshapefile.dbf.model.DBFField;
+import com.jummyshapefile.shapefile.model.Entity;
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shapefile.model.MultiPoint;
+import com.jummyshapefile.shapefile.model.PackedGeometry;
+import com.jummyshapefile.shapefile.model.Point;
+import com.jummyshapefile.shapefile.model.Polyline;
+
+/**
+ * Cache of the entities of a shapefile keyed by record number, with the
+ * geometries and the alphanumeric data in two separate least recently used
+ * caches, each one bounded by the estimated size in bytes of its values.
+ * <p>
+ * Once set in a shapefile (see Shapefile.setEntityCache()), looking up a
+ * cached entity by record number does not read any file nor decode anything.
+ * The cached geometries and fields are shared by all the entities returned,
+ * so they must not be modified.
+ * <p>
+ * Thread-safe, so it can be used by a shapefile queried concurrently.
+ *
+ * @see LRUCache
+ * @see CacheStats
+ */
+public class EntityCache {
+	// Estimated sizes in bytes (64-bit JVM with compressed references)
+	private static final int OBJECT_HEADER_SIZE = 16;
+	private static final int ARRAY_HEADER_SIZE = 16;
+	private static final int REFERENCE_SIZE = 4;
+	private static final int GEOMETRY_SIZE = OBJECT_HEADER_SIZE + 4 * 8;
+	private static final int POINT_SIZE = GEOMETRY_SIZE + 2 * 8;
+	private static final int LIST_SIZE = OBJECT_HEADER_SIZE + 8
+			+ ARRAY_HEADER_SIZE;
+	private static final int ENTITY_SIZE = OBJECT_HEADER_SIZE + 8 + 2
+			* REFERENCE_SIZE;
+	private static final int FIELD_SIZE = OBJECT_HEADER_SIZE + 2
+			* REFERENCE_SIZE;
+	private static final int STRING_SIZE = OBJECT_HEADER_SIZE + 8
+			+ ARRAY_HEADER_SIZE;
+	private static final int NUMBER_SIZE = OBJECT_HEADER_SIZE + 8;
+
+	private final LRUCache<Entity> geometries;
+	private final LRUCache<List<DBFField>> data;
+
+	/**
+	 * Creates a cache of entities.
+	 *
+	 * @param maxGeometrySize
+	 *            the maximum estimated size in bytes of the geometries cached
+	 *            (0 disables the cache of geometries)
+	 * @param maxDataSize
+	 *            the maximum estimated size in bytes of the alphanumeric data
+	 *            cached (0 disables the cache of alphanumeric data)
+	 */
+	public EntityCache(final long maxGeometrySize, final long maxDataSize) {
+		geometries = new LRUCache<Entity>(maxGeometrySize);
+		data = new LRUCache<List<DBFField>>(maxDataSize);
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of the cache of geometries.
+	 *
+	 * @return a snapshot of the statistics of the cache of geometries
+	 *
+	 * @see CacheStats
+	 */
+	public CacheStats getGeometryStats() {
+		return geometries.getStats();
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of the cache of alphanumeric data.
+	 *
+	 * @return a snapshot of the statistics of the cache of alphanumeric data
+	 *
+	 * @see CacheStats
+	 */
+	public CacheStats getDataStats() {
+		return data.getStats();
+	}
+
+	/**
+	 * Removes all the geometries and the alphanumeric data cached.
+	 */
+	public void clear() {
+		geometries.clear();
+		data.clear();
+	}
+
+	/**
+	 * Removes all the geometries cached.
+	 */
+	void clearGeometries() {
+		geometries.clear();
+	}
+
+	/**
+	 * Returns the entity (record number, shape type and geometry, without
+	 * alphanumeric data) cached for a record number.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @return the entity cached for the record number (null if it is not
+	 *         cached)
+	 */
+	Entity getGeometry(final int recordNum) {
+		return geometries.get(recordNum);
+	}
+
+	/**
+	 * Caches the shape type and the geometry of a record.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @param shapeType
+	 *            the shape type of the record
+	 * @param geometry
+	 *            the geometry of the record
+	 */
+	void putGeometry(final int recordNum, final int shapeType,
+			final Geometry geometry) {
+		final Entity entity = new Entity();
+		entity.setRecordNum(recordNum);
+		entity.setShapeType(shapeType);
+		entity.setGeometry(geometry);
+
+		geometries.put(recordNum, entity, ENTITY_SIZE + sizeOf(geometry));
+	}
+
+	/**
+	 * Returns a copy of the list of fields cached for a record number.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @return a copy of the list of fields cached for the record number (null
+	 *         if it is not cached)
+	 */
+	List<DBFField> getData(final int recordNum) {
+		List<DBFField> output = null;
+
+		final List<DBFField> cached = data.get(recordNum);
+		if (cached != null) {
+			output = new ArrayList<DBFField>(cached);
+		}
+
+		return output;
+	}
+
+	/**
+	 * Caches a copy of the list of fields of a record.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @param fields
+	 *            the fields of the record
+	 */
+	void putData(final int recordNum, final List<DBFField> fields) {
+		data.put(recordNum, new ArrayList<DBFField>(fields), sizeOfFields(fields));
+	}
+
+	/**
+	 * Returns the estimated size in bytes of a geometry.
+	 *
+	 * @param geometry
+	 *            the geometry (may be null)
+	 * @return the estimated size in bytes of the geometry
+	 */
+	private static long sizeOf(final Geometry geometry) {
+		long output = 0;
+
+		if (geometry instanceof PackedGeometry) {
+			final PackedGeometry packed = (PackedGeometry) geometry;
+			output = GEOMETRY_SIZE + 4 + 2 * REFERENCE_SIZE + 2
+					* ARRAY_HEADER_SIZE + 16L * packed.getNumPoints() + 4L
+					* packed.getNumParts();
+		} else if (geometry instanceof Point) {
+			output = POINT_SIZE;
+		} else if (geometry instanceof MultiPoint) {
+			output = GEOMETRY_SIZE + REFERENCE_SIZE
+					+ sizeOfPoints(((MultiPoint) geometry).getPoints());
+		} else if (geometry instanceof Polyline) {
+			output = GEOMETRY_SIZE + REFERENCE_SIZE;
+			final List<List<Point>> parts = ((Polyline) geometry).getParts();
+			if (parts != null) {
+				output += LIST_SIZE + REFERENCE_SIZE * parts.size();
+				for (final List<Point> part : parts) {
+					output += sizeOfPoints(part);
+				}
+			}
+		} else if (geometry != null) {
+			output = GEOMETRY_SIZE;
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the estimated size in bytes of a list of points.
+	 *
+	 * @param points
+	 *            the list of points (may be null)
+	 * @return the estimated size in bytes of the list of points
+	 */
+	private static long sizeOfPoints(final List<Point> points) {
+		long output = 0;
+
+		if (points != null) {
+			output = LIST_SIZE + (long) (REFERENCE_SIZE + POINT_SIZE)
+					* points.size();
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the estimated size in bytes of a list of fields (without their
+	 * descriptors, which are shared by all the records).
+	 *
+	 * @param fields
+	 *            the list of fields
+	 * @return the estimated size in bytes of the list of fields
+	 */
+	private static long sizeOfFields(final List<DBFField> fields) {
+		long output = LIST_SIZE;
+
+		for (final DBFField field : fields) {
+			output += REFERENCE_SIZE + FIELD_SIZE;
+
+			final Object value = field.getValue();
+			if (value instanceof String) {
+				output += STRING_SIZE + 2 * ((String) value).length();
+			} else if (value instanceof Number || value instanceof Date) {
+				output += NUMBER_SIZE;
+			} else if (value != null) {
+				output += OBJECT_HEADER_SIZE;
+			}
+		}
+
+		return output;
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.shapefile;
+
+import java.io.IOException;
+
+import com.jummyshapefile.shapefile.model.Entity;
+
+/**
+ * Interface that stablishes the contract for a receiver of the entities of a
+ * parallel scan of a shapefile.
+ *
+ * @see Shapefile#scanEntities(boolean, java.util.concurrent.ExecutorService,
+ *      EntitySink)
+ */
+public interface EntitySink {
+	/**
+	 * Receives an entity of the shapefile.
+	 * <p>
+	 * Called concurrently from the threads of the scan (in record order within
+	 * each chunk of records), so implementations must be thread-safe.
+	 *
+	 * @param entity
+	 *            the entity
+	 * @throws IOException
+	 *             if there is a problem processing the entity (stops the scan)
+	 */
+	public void accept(Entity entity) throws IOException;
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.shapefile;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.jummyshapefile.dbf.model.DBFField;
+import com.jummyshapefile.shapefile.model.Entity;
+import com.jummyshapefile.shapefile.model.Geometry;
+
+/**
+ * Entity of a shapefile that only keeps where its record is (the offset and
+ * length of the SHP record, from the SHX file, and the number of the DBF
+ * record). The geometry (and the shape type) and the alphanumeric data are
+ * decoded the first time they are requested, and then kept. Not thread-safe.
+ * <p>
+ * The shapefile must remain open until the content of the entity is
+ * requested. If it cannot be read, an IllegalStateException is thrown.
+ *
+ * @see Shapefile#setLazyEntities(boolean)
+ */
+public class LazyEntity extends Entity {
+	private final Shapefile shapefile;
+	private final long offset;
+	private final int length;
+	private final int[] fieldIndexes;
+	private boolean shapeTypeLoaded;
+	private boolean geometryLoaded;
+	private boolean dataLoaded;
+
+	/**
+	 * Creates an entity of a shapefile whose content is decoded when
+	 * requested.
+	 *
+	 * @param shapefile
+	 *            the shapefile
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @param offset
+	 *            the offset of the SHP record (-1 if the record is not in the
+	 *            SHX file)
+	 * @param length
+	 *            the length of the content of the SHP record
+	 * @param data
+	 *            whether the entity should contain alphanumeric data
+	 * @param fieldIndexes
+	 *            the indexes (0-based) of the fields of alphanumeric data
+	 *            (all the fields if null)
+	 */
+	LazyEntity(final Shapefile shapefile, final int recordNum,
+			final long offset, final int length, final boolean data,
+			final int[] fieldIndexes) {
+		this.shapefile = shapefile;
+		this.offset = offset;
+		this.length = length;
+		this.fieldIndexes = fieldIndexes;
+		this.dataLoaded = !data;
+		setRecordNum(recordNum);
+	}
+
+	/**
+	 * Returns the offset of the SHP record.
+	 *
+	 * @return the offset of the SHP record (-1 if the record is not in the
+	 *         SHX file)
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the length of the content of the SHP record.
+	 *
+	 * @return the length of the content of the SHP record
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns whether the geometry of the entity has already been decoded.
+	 *
+	 * @return whether the geometry of the entity has already been decoded
+	 */
+	public boolean isGeometryLoaded() {
+		return geometryLoaded;
+	}
+
+	/**
+	 * Returns whether the alphanumeric data of the entity has already been
+	 * decoded.
+	 *
+	 * @return whether the alphanumeric data of the entity has already been
+	 *         decoded
+	 */
+	public boolean isDataLoaded() {
+		return dataLoaded;
+	}
+
+	/**
+	 * Returns the shape type (decoding the geometry if needed).
+	 *
+	 * @return the shape type
+	 * @throws IllegalStateException
+	 *             if the shapefile cannot be read
+	 */
+	@Override
+	public int getShapeType() throws IllegalStateException {
+		if (!shapeTypeLoaded) {
+			loadGeometry();
+		}
+
+		return super.getShapeType();
+	}
+
+	@Override
+	public void setShapeType(final int shapeType) {
+		super.setShapeType(shapeType);
+		shapeTypeLoaded = true;
+	}
+
+	/**
+	 * Returns the geometry of the entity (decoding it if needed).
+	 *
+	 * @return the geometry of the entity
+	 * @throws IllegalStateException
+	 *             if the shapefile cannot be read
+	 */
+	@Override
+	public Geometry getGeometry() throws IllegalStateException {
+		if (!geometryLoaded) {
+			loadGeometry();
+		}
+
+		return super.getGeometry();
+	}
+
+	@Override
+	public void setGeometry(final Geometry geometry) {
+		super.setGeometry(geometry);
+		geometryLoaded = true;
+	}
+
+	/**
+	 * Returns the data of the entity (decoding it if needed).
+	 *
+	 * @return the data of the entity
+	 * @throws IllegalStateException
+	 *             if the shapefile cannot be read
+	 */
+	@Override
+	public List<DBFField> getData() throws IllegalStateException {
+		if (!dataLoaded) {
+			try {
+				setData(shapefile.getEntityData(getRecordNum(), fieldIndexes));
+			} catch (final IOException ioe) {
+				throw new IllegalStateException(ioe);
+			}
+		}
+
+		return super.getData();
+	}
+
+	@Override
+	public void setData(final List<DBFField> data) {
+		super.setData(data);
+		dataLoaded = true;
+	}
+
+	/**
+	 * Decodes the shape type and the geometry of the entity.
+	 *
+	 * @throws IllegalStateException
+	 *             if the shapefile cannot be read
+	 */
+	private void loadGeometry() throws IllegalStateException {
+		try {
+			shapefile.readGeometry(this, getRecordNum(), offset, length);
+		} catch (final IOException ioe) {
+			throw new IllegalStateException(ioe);
+		}
+
+		// Also if the record is not in the SHX file
+		shapeTypeLoaded = true;
+		geometryLoaded = true;
+	}
+}
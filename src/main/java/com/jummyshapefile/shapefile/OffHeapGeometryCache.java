@@ -0,0 +1,276 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.shapefile;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.jummyshapefile.cache.CacheStats;
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shapefile.model.OffHeapGeometry;
+
+/**
+ * Cache of the geometries of a shapefile keyed by record number, stored
+ * outside of the heap, so caching the coordinates of very large layers does
+ * not put pressure on the garbage collector.
+ * <p>
+ * The geometries are copied into segments of direct memory, one after the
+ * other, and returned as OffHeapGeometry views of those segments (only the
+ * view is allocated in the heap). When the maximum size is reached, the
+ * oldest segment is dropped with all its geometries (first in, first out by
+ * segments) and a new segment is allocated. Segments are never reused, so a
+ * view remains valid as long as it is referenced.
+ * <p>
+ * Thread-safe: lookups do not take any lock (the location of each record is
+ * published atomically once its geometry has been copied), and additions are
+ * serialized.
+ *
+ * @see OffHeapGeometry
+ * @see CacheStats
+ */
+public class OffHeapGeometryCache {
+	/**
+	 * Default size in bytes of each segment of direct memory (16 MB).
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	private final int segmentSize;
+	private final int maxSegments;
+	// Generation and offset of the geometry of each record (0 if not cached)
+	private final AtomicLongArray locations;
+	// Live segments, the segment with generation g in the slot g % maxSegments
+	private final AtomicReferenceArray<Segment> segments;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	// Guarded by this
+	private Segment current;
+	private int lastGeneration;
+	private long evictionCount;
+	private int entryCount;
+	private long size;
+
+	/**
+	 * Creates a cache of the geometries of a shapefile using the default
+	 * segment size.
+	 *
+	 * @param numEntities
+	 *            the number of entities of the shapefile
+	 * @param maxSize
+	 *            the maximum size in bytes of the direct memory used (at least
+	 *            one segment)
+	 */
+	public OffHeapGeometryCache(final int numEntities, final long maxSize) {
+		this(numEntities, maxSize, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Creates a cache of the geometries of a shapefile.
+	 *
+	 * @param numEntities
+	 *            the number of entities of the shapefile
+	 * @param maxSize
+	 *            the maximum size in bytes of the direct memory used (at least
+	 *            one segment)
+	 * @param segmentSize
+	 *            the size in bytes of each segment of direct memory (larger
+	 *            geometries are not cached)
+	 */
+	public OffHeapGeometryCache(final int numEntities, final long maxSize,
+			final int segmentSize) {
+		if (numEntities < 0) {
+			throw new IllegalArgumentException("Invalid number of entities: "
+					+ numEntities);
+		}
+		if (segmentSize <= 0) {
+			throw new IllegalArgumentException("Invalid segment size: "
+					+ segmentSize);
+		}
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("Invalid maximum size: "
+					+ maxSize);
+		}
+
+		this.segmentSize = segmentSize;
+		this.maxSegments = (int) Math.min(Integer.MAX_VALUE,
+				Math.max(1, maxSize / segmentSize));
+		this.locations = new AtomicLongArray(numEntities + 1);
+		this.segments = new AtomicReferenceArray<Segment>(maxSegments);
+	}
+
+	/**
+	 * Returns a view of the geometry cached for a record number.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @return a view of the geometry cached for the record number (null if it
+	 *         is not cached)
+	 *
+	 * @see OffHeapGeometry
+	 */
+	public OffHeapGeometry get(final int recordNum) {
+		OffHeapGeometry output = null;
+
+		if (recordNum > 0 && recordNum < locations.length()) {
+			final long location = locations.get(recordNum);
+			final Segment segment = getSegment(location);
+			if (segment != null) {
+				output = new OffHeapGeometry(segment.buffer, (int) location);
+			}
+		}
+
+		if (output != null) {
+			hitCount.incrementAndGet();
+		} else {
+			missCount.incrementAndGet();
+		}
+
+		return output;
+	}
+
+	/**
+	 * Copies the geometry of a record into the cache (unless it is already
+	 * cached, it is larger than a segment or it cannot be stored).
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @param geometry
+	 *            the geometry of the record
+	 * @return a view of the geometry cached for the record number (null if
+	 *         the geometry cannot be cached)
+	 *
+	 * @see OffHeapGeometry
+	 */
+	public synchronized OffHeapGeometry put(final int recordNum,
+			final Geometry geometry) {
+		OffHeapGeometry output = null;
+
+		if (recordNum <= 0 || recordNum >= locations.length()) {
+			throw new IndexOutOfBoundsException("Number of records: "
+					+ (locations.length() - 1) + ". Requested: " + recordNum);
+		}
+
+		final long location = locations.get(recordNum);
+		final Segment segment = getSegment(location);
+		final int length = OffHeapGeometry.getEncodedLength(geometry);
+		if (segment != null) {
+			output = new OffHeapGeometry(segment.buffer, (int) location);
+		} else if (length > 0 && length <= segmentSize) {
+			if (current == null || current.position + length > segmentSize) {
+				newSegment();
+			}
+
+			OffHeapGeometry.encode(geometry, current.buffer, current.position);
+			output = new OffHeapGeometry(current.buffer, current.position);
+			locations.set(recordNum, ((long) current.generation << 32)
+					| current.position);
+
+			current.position += length;
+			current.entries++;
+			entryCount++;
+			size += length;
+		}
+
+		return output;
+	}
+
+	/**
+	 * Drops all the segments (the statistics are kept).
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < maxSegments; i++) {
+			segments.set(i, null);
+		}
+		current = null;
+		entryCount = 0;
+		size = 0;
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of the cache. The size is the
+	 * number of bytes used by the geometries cached.
+	 *
+	 * @return a snapshot of the statistics of the cache
+	 *
+	 * @see CacheStats
+	 */
+	public synchronized CacheStats getStats() {
+		return new CacheStats(hitCount.get(), missCount.get(), evictionCount,
+				entryCount, size, (long) maxSegments * segmentSize);
+	}
+
+	/**
+	 * Returns the live segment referenced by a location.
+	 *
+	 * @param location
+	 *            the generation and offset of a geometry (0 if not cached)
+	 * @return the live segment referenced by the location (null if the
+	 *         location is 0 or its segment has been dropped)
+	 */
+	private Segment getSegment(final long location) {
+		Segment output = null;
+
+		if (location != 0) {
+			final int generation = (int) (location >>> 32);
+			final Segment segment = segments.get(generation % maxSegments);
+			if (segment != null && segment.generation == generation) {
+				output = segment;
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Allocates a new segment, dropping the oldest one if the maximum number
+	 * of segments is reached.
+	 */
+	private void newSegment() {
+		// Generations start at 1 (so a location is never 0) and are never
+		// reused, so stale locations do not match newer segments
+		final int generation = ++lastGeneration;
+		final int slot = generation % maxSegments;
+
+		final Segment oldest = segments.get(slot);
+		if (oldest != null) {
+			evictionCount += oldest.entries;
+			entryCount -= oldest.entries;
+			size -= oldest.position;
+		}
+
+		current = new Segment(generation,
+				ByteBuffer.allocateDirect(segmentSize));
+		segments.set(slot, current);
+	}
+
+	/**
+	 * A segment of direct memory holding geometries one after the other.
+	 */
+	private static class Segment {
+		private final int generation;
+		private final ByteBuffer buffer;
+		private int position;
+		private int entries;
+
+		private Segment(final int generation, final ByteBuffer buffer) {
+			this.generation = generation;
+			this.buffer = buffer;
+		}
+	}
+}
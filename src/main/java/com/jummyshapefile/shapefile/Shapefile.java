@@ -19,45 +19,92 @@ package com.jummyshapefile.shapefile;
 import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.jummyshapefile.binaryfile.AccessMode;
+import com.jummyshapefile.dbf.DBFColumnStore;
 import com.jummyshapefile.dbf.DBFFile;
+import com.jummyshapefile.dbf.DBFPredicate;
 import com.jummyshapefile.dbf.model.DBFField;
 import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
 import com.jummyshapefile.dbf.model.DBFHeader;
 import com.jummyshapefile.dbf.model.DBFRecord;
+import com.jummyshapefile.index.PackedRTree;
+import com.jummyshapefile.index.SpatialIndex;
 import com.jummyshapefile.prj.PRJFile;
+import com.jummyshapefile.sbn.SBNFile;
 import com.jummyshapefile.shapefile.model.Entity;
-import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shapefile.model.OffHeapGeometry;
+import com.jummyshapefile.shapefile.model.PackedGeometry;
 import com.jummyshapefile.shp.SHPFile;
+import com.jummyshapefile.shp.SHPParameters;
+import com.jummyshapefile.shp.SHPPointStore;
+import com.jummyshapefile.shp.SHPRecordCursor;
 import com.jummyshapefile.shp.model.SHPRecord;
+import com.jummyshapefile.shp.model.SHPRecordBounds;
 import com.jummyshapefile.shx.SHXFile;
 import com.jummyshapefile.shx.model.SHXRecord;
+import com.jummyshapefile.utils.GeoJSONWriter;
 import com.jummyshapefile.utils.GeometryUtils;
+import com.jummyshapefile.utils.WKBUtils;
 
 /**
  * Facade class representing a shapefile.
+ * <p>
+ * When opened using AccessMode.POSITIONAL or AccessMode.MAPPED, a single
+ * instance can be queried concurrently from several threads. When opened using
+ * AccessMode.STREAM (the default), queries must not run concurrently.
+ * <p>
+ * Rectangle queries check the MBR of every entity unless a spatial index is
+ * set (see setSpatialIndex(), buildSpatialIndex() and openSBN()). Entities
+ * looked up repeatedly can be served from memory setting an EntityCache and,
+ * for very large layers, an OffHeapGeometryCache. The entities looked up can
+ * also be LazyEntity objects, decoded only when their content is requested.
  *
+ * @see AccessMode
+ * @see SpatialIndex
+ * @see EntityCache
+ * @see OffHeapGeometryCache
+ * @see LazyEntity
  * @see SHPFile
  * @see SHXFile
  * @see DBFFile
  * @see PRJFile
+ * @see SBNFile
  */
 public class Shapefile implements Closeable {
+	/**
+	 * Default number of records of each chunk of a parallel scan.
+	 */
+	public static final int DEFAULT_SCAN_CHUNK_SIZE = 4096;
+
 	private final SHPFile shp;
 	private final SHXFile shx;
 	private final DBFFile dbf;
 	private final PRJFile prj;
+	private SBNFile sbn;
+	private volatile SpatialIndex spatialIndex;
+	private volatile EntityCache entityCache;
+	private volatile OffHeapGeometryCache offHeapGeometryCache;
+	private volatile boolean lazyEntities;
 
 	/**
 	 * Constructor for the shapefile object. Expects several InputStream
-	 * objects, each one for a given file resource.
+	 * objects, each one for a given file resource. The records are read using
+	 * AccessMode.STREAM.
 	 *
 	 * @param shpIS
 	 *            InputStream object for the SHP file (mandatory)
 	 * @param shxIS
-	 *            InputStream object for the SHX file (mandatory)
+	 *            InputStream object for the SHX file (optional, may be null,
+	 *            see loadIndex())
 	 * @param dbfIS
 	 *            InputStream object for the DBF file (mandatory)
 	 * @param prjIS
@@ -67,24 +114,50 @@ public class Shapefile implements Closeable {
 	public Shapefile(final FileInputStream shpIS, final FileInputStream shxIS,
 			final FileInputStream dbfIS, final FileInputStream prjIS)
 					throws IOException {
+		this(shpIS, shxIS, dbfIS, prjIS, AccessMode.STREAM);
+	}
+
+	/**
+	 * Constructor for the shapefile object. Expects several InputStream
+	 * objects, each one for a given file resource, and the AccessMode used to
+	 * read the records of the SHP, SHX and DBF files.
+	 *
+	 * @param shpIS
+	 *            InputStream object for the SHP file (mandatory)
+	 * @param shxIS
+	 *            InputStream object for the SHX file (optional, may be null,
+	 *            see loadIndex())
+	 * @param dbfIS
+	 *            InputStream object for the DBF file (mandatory)
+	 * @param prjIS
+	 *            InputStream object for the PRJ file (optional, may be null)
+	 * @param accessMode
+	 *            how the records of the SHP, SHX and DBF files are read
+	 * @throws IOException
+	 *
+	 * @see AccessMode
+	 */
+	public Shapefile(final FileInputStream shpIS, final FileInputStream shxIS,
+			final FileInputStream dbfIS, final FileInputStream prjIS,
+			final AccessMode accessMode) throws IOException {
 		if (shpIS == null) {
 			throw new IllegalArgumentException("The SHP file is mandatory");
 		}
-		if (shxIS == null) {
-			throw new IllegalArgumentException("The SHX file is mandatory");
-		}
 		if (dbfIS == null) {
 			throw new IllegalArgumentException("The DBF file is mandatory");
 		}
 
 		shp = new SHPFile();
-		shp.open(shpIS);
+		shp.open(shpIS, accessMode);
 
+		// Without SHX file, the index is rebuilt from the SHP file
 		shx = new SHXFile();
-		shx.open(shxIS);
+		if (shxIS != null) {
+			shx.open(shxIS, accessMode);
+		}
 
 		dbf = new DBFFile();
-		dbf.open(dbfIS);
+		dbf.open(dbfIS, accessMode);
 
 		if (prjIS != null) {
 			prj = new PRJFile();
@@ -110,6 +183,274 @@ public class Shapefile implements Closeable {
 		if (prj != null) {
 			prj.close();
 		}
+		if (sbn != null) {
+			sbn.close();
+		}
+	}
+
+	/**
+	 * Returns how the records of the SHP, SHX and DBF files are read.
+	 *
+	 * @return how the records of the SHP, SHX and DBF files are read
+	 *
+	 * @see AccessMode
+	 */
+	public AccessMode getAccessMode() {
+		return shp.getAccessMode();
+	}
+
+	/**
+	 * Loads the whole SHX index (offset and length of every record) into
+	 * memory, so querying an entity does not need to read the SHX file.
+	 * Should be called right after creating the shapefile.
+	 * <p>
+	 * If the shapefile was created without SHX file, the index is rebuilt
+	 * instead from the record headers of the SHP file, read sequentially
+	 * (stopping at the first damaged or truncated record). It must be called
+	 * before looking up entities by record number or rectangle, or scanning
+	 * them in parallel; openReader() does not need it.
+	 *
+	 * @throws IOException
+	 *             if there is a problem reading the SHX or SHP file
+	 *
+	 * @see SHXFile#loadIndex()
+	 * @see SHXFile#loadIndex(SHPRecordCursor)
+	 */
+	public void loadIndex() throws IOException {
+		if (shx.getHeader() != null) {
+			shx.loadIndex();
+		} else {
+			final SHPRecordCursor cursor = shp.openCursor();
+			cursor.setLenient(true);
+			try {
+				shx.loadIndex(cursor);
+			} finally {
+				cursor.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the geometries of the entities are PackedGeometry
+	 * objects.
+	 *
+	 * @return whether the geometries of the entities are PackedGeometry
+	 *         objects
+	 *
+	 * @see PackedGeometry
+	 */
+	public boolean isPackedGeometry() {
+		return shp.isPackedGeometry();
+	}
+
+	/**
+	 * Sets whether the geometries of the entities are PackedGeometry objects
+	 * (coordinates in primitive arrays, 16 bytes per point) instead of Point,
+	 * MultiPoint, Polyline and Polygon objects.
+	 *
+	 * @param packedGeometry
+	 *            whether the geometries of the entities are PackedGeometry
+	 *            objects
+	 *
+	 * @see PackedGeometry
+	 */
+	public void setPackedGeometry(final boolean packedGeometry) {
+		shp.setPackedGeometry(packedGeometry);
+
+		final EntityCache cache = entityCache;
+		if (cache != null) {
+			cache.clearGeometries();
+		}
+	}
+
+	/**
+	 * Returns whether the entities looked up (by record number or by
+	 * rectangle) are LazyEntity objects.
+	 *
+	 * @return whether the entities looked up are LazyEntity objects
+	 *
+	 * @see LazyEntity
+	 */
+	public boolean isLazyEntities() {
+		return lazyEntities;
+	}
+
+	/**
+	 * Sets whether the entities looked up (by record number or by rectangle)
+	 * are LazyEntity objects, which only keep the offset and length of their
+	 * SHP record and decode their geometry and alphanumeric data the first
+	 * time they are requested (using the caches, if set). The entities read
+	 * sequentially (see openReader() and scanEntities()) are always decoded.
+	 *
+	 * @param lazyEntities
+	 *            whether the entities looked up are LazyEntity objects
+	 *
+	 * @see LazyEntity
+	 */
+	public void setLazyEntities(final boolean lazyEntities) {
+		this.lazyEntities = lazyEntities;
+	}
+
+	/**
+	 * Sets the cache of the geometries and the alphanumeric data of the
+	 * entities looked up by record number. A null cache makes every lookup
+	 * read the files.
+	 *
+	 * @param entityCache
+	 *            the cache of the entities of the shapefile (may be null)
+	 *
+	 * @see EntityCache
+	 */
+	public void setEntityCache(final EntityCache entityCache) {
+		this.entityCache = entityCache;
+	}
+
+	/**
+	 * Returns the cache of the entities looked up by record number.
+	 *
+	 * @return the cache of the entities looked up by record number (may be
+	 *         null)
+	 */
+	public EntityCache getEntityCache() {
+		return entityCache;
+	}
+
+	/**
+	 * Sets the cache of the geometries looked up by record number stored
+	 * outside of the heap. The geometries returned keep the type set by
+	 * setPackedGeometry(): if packed, the entities are returned with an
+	 * OffHeapGeometry view of the stored geometry (no copy at all); otherwise
+	 * the stored geometry is converted back to a Point, Polyline, Polygon or
+	 * MultiPoint (no SHP read). It is checked after the EntityCache, which
+	 * does not keep the geometries stored in this cache. A null cache
+	 * disables it.
+	 *
+	 * @param offHeapGeometryCache
+	 *            the cache of the geometries of the shapefile (may be null)
+	 *
+	 * @see OffHeapGeometryCache
+	 */
+	public void setOffHeapGeometryCache(
+			final OffHeapGeometryCache offHeapGeometryCache) {
+		this.offHeapGeometryCache = offHeapGeometryCache;
+	}
+
+	/**
+	 * Returns the cache of the geometries looked up by record number stored
+	 * outside of the heap.
+	 *
+	 * @return the cache of the geometries stored outside of the heap (may be
+	 *         null)
+	 */
+	public OffHeapGeometryCache getOffHeapGeometryCache() {
+		return offHeapGeometryCache;
+	}
+
+	/**
+	 * Sets the spatial index used to narrow the entities checked by
+	 * getEntitiesInRectangle(). A null spatial index makes the queries check
+	 * every entity.
+	 * <p>
+	 * A PackedRTree is checked against the number of records and the length
+	 * of the SHP file, so a tree built from another shapefile is rejected.
+	 *
+	 * @param spatialIndex
+	 *            the spatial index of the records of the shapefile (may be
+	 *            null)
+	 * @throws IllegalArgumentException
+	 *             if the spatial index is a PackedRTree built from another
+	 *             shapefile
+	 * @throws IOException
+	 *             if there is a problem reading the shapefile
+	 *
+	 * @see PackedRTree#open(FileInputStream)
+	 */
+	public void setSpatialIndex(final SpatialIndex spatialIndex)
+			throws IOException {
+		if (spatialIndex instanceof PackedRTree) {
+			((PackedRTree) spatialIndex).checkSource(getNumRecords(),
+					shp.getFileLength());
+		}
+
+		this.spatialIndex = spatialIndex;
+	}
+
+	/**
+	 * Opens the ESRI spatial index (SBN file) of the shapefile and sets it as
+	 * the spatial index used by getEntitiesInRectangle(). The SBN file is
+	 * closed when the shapefile is closed. Should be called right after
+	 * creating the shapefile.
+	 *
+	 * @param sbnIS
+	 *            InputStream object for the SBN file
+	 * @throws IOException
+	 *             if there is a problem reading the SBN file
+	 *
+	 * @see SBNFile
+	 */
+	public void openSBN(final FileInputStream sbnIS) throws IOException {
+		if (sbnIS == null) {
+			throw new IllegalArgumentException("The SBN file is null");
+		}
+
+		final SBNFile output = new SBNFile();
+		output.open(sbnIS);
+
+		if (sbn != null) {
+			sbn.close();
+		}
+		sbn = output;
+		setSpatialIndex(output);
+	}
+
+	/**
+	 * Returns the spatial index used by getEntitiesInRectangle().
+	 *
+	 * @return the spatial index used by getEntitiesInRectangle() (may be null)
+	 */
+	public SpatialIndex getSpatialIndex() {
+		return spatialIndex;
+	}
+
+	/**
+	 * Builds a packed R-tree from the MBR (Minimum Bounding Rectangle) of
+	 * every entity and sets it as the spatial index of the shapefile. The
+	 * returned tree can be written to a sidecar file (see
+	 * PackedRTree.FILE_EXTENSION) and opened in later sessions.
+	 *
+	 * @return the packed R-tree of the entities of the shapefile
+	 * @throws IOException
+	 *             if there is a problem reading the shapefile
+	 *
+	 * @see PackedRTree
+	 */
+	public PackedRTree buildSpatialIndex() throws IOException {
+		final int numEntities = getNumEntities();
+		final double[] minX = new double[numEntities];
+		final double[] minY = new double[numEntities];
+		final double[] maxX = new double[numEntities];
+		final double[] maxY = new double[numEntities];
+		final int[] recordNums = new int[numEntities];
+
+		int count = 0;
+		for (int i = 1; i <= numEntities; i++) {
+			final SHPRecordBounds bounds = getBoundsByRecordNumber(i);
+			if (bounds != null) {
+				minX[count] = bounds.getMinX();
+				minY[count] = bounds.getMinY();
+				maxX[count] = bounds.getMaxX();
+				maxY[count] = bounds.getMaxY();
+				recordNums[count] = i;
+				count++;
+			}
+		}
+
+		final PackedRTree output = PackedRTree.build(minX, minY, maxX, maxY,
+				recordNums, count, PackedRTree.DEFAULT_NODE_SIZE,
+				getNumRecords(), shp.getFileLength());
+		setSpatialIndex(output);
+
+		return output;
 	}
 
 	/**
@@ -157,6 +498,50 @@ public class Shapefile implements Closeable {
 		return output;
 	}
 
+	/**
+	 * Loads some fields of the entity data of all the entities into a
+	 * columnar in-memory table (the row i holds the entity with record number
+	 * i + 1), reading the DBF file sequentially in one pass.
+	 *
+	 * @param fields
+	 *            the names of the fields (ignoring case)
+	 *
+	 * @return a DBFColumnStore with the fields of all the entities
+	 *
+	 * @throws IllegalArgumentException
+	 *             if there is no field with one of the names
+	 * @throws IOException
+	 *             if there is a problem querying the data
+	 *
+	 * @see DBFColumnStore
+	 */
+	public DBFColumnStore loadDataColumns(final String... fields)
+			throws IllegalArgumentException, IOException {
+		return dbf.loadColumns(fields);
+	}
+
+	/**
+	 * Loads the coordinates of all the entities of a Point shapefile into
+	 * packed primitive arrays (the record i + 1 at the positions 2 * i and 2 *
+	 * i + 1), reading the SHP file sequentially in one pass without the SHX
+	 * file, and indexes them for rectangle and nearest neighbour queries. The
+	 * store can also be set as the spatial index of the shapefile (see
+	 * setSpatialIndex()).
+	 *
+	 * @return a SHPPointStore with the points of all the entities
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if the shapefile is not a Point shapefile
+	 * @throws IOException
+	 *             if there is a problem reading the SHP file
+	 *
+	 * @see SHPPointStore
+	 */
+	public SHPPointStore loadPoints() throws UnsupportedOperationException,
+			IOException {
+		return shp.loadPoints();
+	}
+
 	/**
 	 * Returns the entity that matches a given record number.
 	 *
@@ -175,28 +560,255 @@ public class Shapefile implements Closeable {
 	 */
 	public Entity getEntityByRecordNumber(final int recordNum,
 			final boolean data) throws IOException {
-		final Entity output = new Entity();
-		output.setRecordNum(recordNum);
+		Entity output = null;
 
-		final SHXRecord shxRecord = shx.getRecordAt(recordNum);
-		if (shxRecord != null) {
-			final int offset = shxRecord.getOffset();
-			final int length = shxRecord.getLength();
+		if (lazyEntities) {
+			output = createLazyEntity(recordNum, data, null);
+		} else {
+			output = new Entity();
+			output.setRecordNum(recordNum);
+			readGeometry(output, recordNum, -1, -1);
 
-			final SHPRecord shpRecord = shp.getRecord(offset, length);
-			if (shpRecord != null) {
-				output.setShapeType(shpRecord.getShapeType());
-				output.setGeometry(shpRecord.getGeometry());
+			if (data) {
+				output.setData(getEntityDataByRecordNumber(recordNum));
 			}
 		}
 
-		if (data) {
-			output.setData(getEntityDataByRecordNumber(recordNum));
+		return output;
+	}
+
+	/**
+	 * Returns the entity that matches a given record number, with only the
+	 * requested fields of alphanumeric data (in the requested order). Only
+	 * those fields are decoded from the DBF file.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @param fields
+	 *            the names of the fields of alphanumeric data (ignoring case)
+	 *
+	 * @return the entity that matches a given record number
+	 *
+	 * @throws IllegalArgumentException
+	 *             if there is no field with one of the names
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 *
+	 * @see Entity
+	 */
+	public Entity getEntityByRecordNumber(final int recordNum,
+			final String... fields) throws IllegalArgumentException,
+			IOException {
+		final int[] fieldIndexes = dbf.getFieldIndexes(fields);
+
+		Entity output = null;
+		if (lazyEntities) {
+			output = createLazyEntity(recordNum, true, fieldIndexes);
+		} else {
+			output = getEntityByRecordNumber(recordNum, false);
+			output.setData(getEntityData(recordNum, fieldIndexes));
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the WKB (Well-Known Binary, little endian) representing the
+	 * geometry of the entity that matches a given record number, transcoded
+	 * directly from the bytes of the SHP record (no Geometry is built, and the
+	 * caches of geometries are not used).
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 *
+	 * @return the WKB representing the geometry of the entity (null if it is
+	 *         a null shape or the record is not in the SHX file)
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 *
+	 * @see WKBUtils
+	 */
+	public byte[] getGeometryWKBByRecordNumber(final int recordNum)
+			throws IOException {
+		byte[] output = null;
+
+		if (shx.isIndexLoaded()) {
+			output = shp.getRecordWKB(shx.getOffsetAt(recordNum),
+					shx.getLengthAt(recordNum));
+		} else {
+			final SHXRecord shxRecord = shx.getRecordAt(recordNum);
+			if (shxRecord != null) {
+				output = shp.getRecordWKB(shxRecord.getOffset(),
+						shxRecord.getLength());
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns a forward-only reader of all the entities of the shapefile, in
+	 * file order. The SHP file is read sequentially (without the SHX file),
+	 * so the memory used does not depend on the size of the shapefile. If the
+	 * shapefile was created without SHX file, the reader stops at the first
+	 * damaged or truncated record of the SHP file.
+	 * <p>
+	 * The shapefile must remain open while the reader is used.
+	 *
+	 * @param data
+	 *            whether the entities should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data.
+	 *
+	 * @return a reader of all the entities of the shapefile
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 *
+	 * @see ShapefileReader
+	 */
+	public ShapefileReader openReader(final boolean data) throws IOException {
+		final SHPRecordCursor cursor = shp.openCursor();
+		cursor.setLenient(shx.getHeader() == null);
+
+		return new ShapefileReader(cursor, dbf, data);
+	}
+
+	/**
+	 * Writes all the entities of the shapefile (with their alphanumeric data)
+	 * as a GeoJSON FeatureCollection, in one sequential pass (see
+	 * openReader()), so the memory used does not depend on the size of the
+	 * shapefile. The writer is flushed, but its destination is not closed.
+	 *
+	 * @param writer
+	 *            the GeoJSONWriter (its precision is used for the
+	 *            coordinates)
+	 *
+	 * @return the number of features written
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile or writing
+	 *             the GeoJSON
+	 *
+	 * @see GeoJSONWriter
+	 */
+	public int writeGeoJSON(final GeoJSONWriter writer) throws IOException {
+		int output = 0;
+
+		if (writer == null) {
+			throw new IllegalArgumentException("The GeoJSONWriter is null");
+		}
+
+		final ShapefileReader reader = openReader(true);
+		try {
+			writer.writeStart();
+			while (reader.hasNext()) {
+				writer.writeFeature(reader.next());
+			}
+			output = writer.getNumFeatures();
+			writer.writeEnd();
+		} finally {
+			reader.close();
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the List of all the entities of the shapefile in record order,
+	 * decoding them in parallel (see scanEntities()).
+	 *
+	 * @param data
+	 *            whether the entities should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data.
+	 * @param executor
+	 *            the ExecutorService running the chunks of records
+	 *
+	 * @return the List of all the entities of the shapefile in record order
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 *
+	 * @see Entity
+	 */
+	public List<Entity> getEntities(final boolean data,
+			final ExecutorService executor) throws IOException {
+		final List<Entity> output = new ArrayList<Entity>();
+
+		final List<List<Entity>> chunks = scan(data, executor,
+				DEFAULT_SCAN_CHUNK_SIZE, null);
+		for (final List<Entity> chunk : chunks) {
+			output.addAll(chunk);
 		}
 
 		return output;
 	}
 
+	/**
+	 * Delivers all the entities of the shapefile to a sink, decoding them in
+	 * parallel using the default chunk size.
+	 *
+	 * @param data
+	 *            whether the entities should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data.
+	 * @param executor
+	 *            the ExecutorService running the chunks of records
+	 * @param sink
+	 *            the receiver of the entities (must be thread-safe)
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile or the sink
+	 *             fails
+	 *
+	 * @see EntitySink
+	 */
+	public void scanEntities(final boolean data,
+			final ExecutorService executor, final EntitySink sink)
+			throws IOException {
+		scanEntities(data, executor, DEFAULT_SCAN_CHUNK_SIZE, sink);
+	}
+
+	/**
+	 * Delivers all the entities of the shapefile to a sink, decoding them in
+	 * parallel.
+	 * <p>
+	 * The records are split by their SHX offsets into chunks of consecutive
+	 * records. Each chunk is read sequentially (geometry and DBF row) with its
+	 * own buffer by a task submitted to the ExecutorService, and delivers its
+	 * entities to the sink in record order. Returns when every chunk has been
+	 * processed; the first failure cancels the remaining chunks.
+	 * <p>
+	 * Parallel reads need the shapefile to be opened using
+	 * AccessMode.POSITIONAL or AccessMode.MAPPED. Otherwise, the chunks are
+	 * processed sequentially in the calling thread.
+	 *
+	 * @param data
+	 *            whether the entities should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data.
+	 * @param executor
+	 *            the ExecutorService running the chunks of records
+	 * @param chunkSize
+	 *            the number of records of each chunk
+	 * @param sink
+	 *            the receiver of the entities (must be thread-safe)
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile or the sink
+	 *             fails
+	 *
+	 * @see EntitySink
+	 * @see AccessMode
+	 */
+	public void scanEntities(final boolean data,
+			final ExecutorService executor, final int chunkSize,
+			final EntitySink sink) throws IOException {
+		if (sink == null) {
+			throw new IllegalArgumentException("The EntitySink is null");
+		}
+
+		scan(data, executor, chunkSize, sink);
+	}
+
 	/**
 	 * Returns the List of entities whose MBR (Minimum Bounding Rectangle)
 	 * intersects the given rectangle.
@@ -205,6 +817,11 @@ public class Shapefile implements Closeable {
 	 * nine-Intersection Model (DE-9IM).
 	 * <p>
 	 * Note: The rectangle must be in the same projection as the Shapefile.
+	 * <p>
+	 * If a spatial index is set, only the entities returned by the index are
+	 * checked. The MBR of each entity checked is read without decoding its
+	 * geometry, which is only decoded for the entities that match (or only
+	 * when requested, see setLazyEntities()).
 	 *
 	 * @param minX
 	 *            the minX of the rectangle
@@ -229,18 +846,96 @@ public class Shapefile implements Closeable {
 	public List<Entity> getEntitiesInRectangle(final double minX,
 			final double minY, final double maxX, final double maxY,
 			final boolean data) throws IOException {
+		return getEntitiesInRectangle(minX, minY, maxX, maxY, data,
+				new DBFPredicate[0]);
+	}
+
+	/**
+	 * Returns the List of entities whose MBR (Minimum Bounding Rectangle)
+	 * intersects the given rectangle and whose alphanumeric data matches all
+	 * the given predicates.
+	 * <p>
+	 * The predicates are evaluated on the bytes of the DBF records, and the
+	 * geometry (and the data, if requested) is only decoded for the entities
+	 * that pass both filters. The cheaper filter runs first:
+	 * <ul>
+	 * <li>If a spatial index is set, the candidates returned by the index are
+	 * filtered by their MBR and then by the predicates.
+	 * <li>Otherwise, the DBF file is filtered sequentially in one pass and only
+	 * the records that match the predicates are filtered by their MBR.
+	 * <p>
+	 * Note: The rectangle must be in the same projection as the Shapefile.
+	 *
+	 * @param minX
+	 *            the minX of the rectangle
+	 * @param minY
+	 *            the minY of the rectangle
+	 * @param maxX
+	 *            the maxX of the rectangle
+	 * @param maxY
+	 *            the maxY of the rectangle
+	 * @param data
+	 *            whether the record should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data.
+	 * @param predicates
+	 *            the predicates on the alphanumeric data
+	 *
+	 * @return the List of entities whose MBR intersects the given rectangle
+	 *         and whose alphanumeric data matches all the predicates
+	 *
+	 * @throws IllegalArgumentException
+	 *             if there is no field with the name of a predicate
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 *
+	 * @see Entity
+	 * @see DBFPredicate
+	 */
+	public List<Entity> getEntitiesInRectangle(final double minX,
+			final double minY, final double maxX, final double maxY,
+			final boolean data, final DBFPredicate... predicates)
+			throws IllegalArgumentException, IOException {
 		final List<Entity> output = new ArrayList<Entity>();
 
-		final int numEntities = getNumEntities();
-		for (int i = 1; i <= numEntities; i++) {
-			final Entity entity = getEntityByRecordNumber(i, data);
-			if (entity != null && entity.getGeometry() != null) {
-				final Geometry geometry = entity.getGeometry();
-				if (GeometryUtils.intersectsRectangle(geometry.getMinX(),
-						geometry.getMinY(), geometry.getMaxX(),
-						geometry.getMaxY(), minX, minY, maxX, maxY)) {
-					output.add(entity);
-				}
+		if (predicates == null) {
+			throw new IllegalArgumentException("The predicates are null");
+		}
+		// Validate the fields even if no candidate reaches the predicates
+		final String[] fields = new String[predicates.length];
+		for (int i = 0; i < predicates.length; i++) {
+			if (predicates[i] == null) {
+				throw new IllegalArgumentException("The predicate is null");
+			}
+			fields[i] = predicates[i].getField();
+		}
+		dbf.getFieldIndexes(fields);
+
+		final SpatialIndex index = spatialIndex;
+		int[] candidates = null;
+		boolean matched = predicates.length == 0;
+		if (index != null) {
+			candidates = index.query(minX, minY, maxX, maxY);
+		} else if (!matched) {
+			candidates = dbf.filter(predicates);
+			matched = true;
+		}
+		final int numRecords = getNumRecords();
+		final int numCandidates = candidates != null ? candidates.length
+				: numRecords;
+
+		for (int i = 0; i < numCandidates; i++) {
+			final int recordNum = candidates != null ? candidates[i] : i + 1;
+			// The DBF file may have more records than the SHX index
+			if (recordNum > numRecords) {
+				continue;
+			}
+			final SHPRecordBounds bounds = getBoundsByRecordNumber(recordNum);
+			if (bounds != null
+					&& GeometryUtils.intersectsRectangle(bounds.getMinX(),
+							bounds.getMinY(), bounds.getMaxX(),
+							bounds.getMaxY(), minX, minY, maxX, maxY)
+					&& (matched || dbf.matches(recordNum, predicates))) {
+				output.add(getEntityByRecordNumber(recordNum, data));
 			}
 		}
 
@@ -264,12 +959,425 @@ public class Shapefile implements Closeable {
 	 */
 	public List<DBFField> getEntityDataByRecordNumber(final int recordNum)
 			throws IOException {
+		return getEntityData(recordNum, null);
+	}
+
+	/**
+	 * Returns a List of DBField representing the requested fields of the
+	 * entity data that matches the given record number (in the requested
+	 * order). Only those fields are decoded from the DBF file.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @param fields
+	 *            the names of the fields (ignoring case)
+	 *
+	 * @return a List of DBField representing the requested fields of the
+	 *         entity data that matches the given record number
+	 *
+	 * @throws IllegalArgumentException
+	 *             if there is no field with one of the names
+	 * @throws IOException
+	 *             if there is a problem querying the data
+	 *
+	 * @see DBFField
+	 */
+	public List<DBFField> getEntityDataByRecordNumber(final int recordNum,
+			final String... fields) throws IllegalArgumentException,
+			IOException {
+		return getEntityData(recordNum, dbf.getFieldIndexes(fields));
+	}
+
+	/**
+	 * Returns a List of DBField representing the entity data that matches the
+	 * given record number.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @param fieldIndexes
+	 *            the indexes (0-based) of the fields to read (all the fields
+	 *            if null)
+	 *
+	 * @return a List of DBField representing the entity data that matches the
+	 *         given record number
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the data
+	 */
+	List<DBFField> getEntityData(final int recordNum,
+			final int[] fieldIndexes) throws IOException {
 		List<DBFField> output = new ArrayList<DBFField>();
 
-		final DBFRecord dbfRecord = dbf.getRecordAt(recordNum);
-		if (dbfRecord != null) {
-			output = dbfRecord.getFields();
+		// Only the records with all the fields are cached
+		final EntityCache cache = fieldIndexes == null ? entityCache : null;
+		final List<DBFField> cached = cache != null ? cache
+				.getData(recordNum) : null;
+		if (cached != null) {
+			output = cached;
+		} else {
+			final DBFRecord dbfRecord = dbf.getRecordAt(recordNum,
+					fieldIndexes);
+			if (dbfRecord != null) {
+				output = dbfRecord.getFields();
+				if (cache != null) {
+					cache.putData(recordNum, output);
+				}
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Decodes the shape type and the geometry of the entity that matches a
+	 * given record number (from the caches, if set).
+	 *
+	 * @param output
+	 *            the entity
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @param offset
+	 *            the offset of the SHP record (-1 to read it from the SHX
+	 *            file)
+	 * @param length
+	 *            the length of the content of the SHP record
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 */
+	void readGeometry(final Entity output, final int recordNum,
+			final long offset, final int length) throws IOException {
+		final EntityCache cache = entityCache;
+		final OffHeapGeometryCache offHeapCache = offHeapGeometryCache;
+		final Entity cached = cache != null ? cache.getGeometry(recordNum)
+				: null;
+		final OffHeapGeometry offHeap = cached == null && offHeapCache != null ? offHeapCache
+				.get(recordNum) : null;
+		if (cached != null) {
+			output.setShapeType(cached.getShapeType());
+			output.setGeometry(cached.getGeometry());
+		} else if (offHeap != null) {
+			output.setShapeType(offHeap.getShapeType());
+			output.setGeometry(shp.isPackedGeometry() ? offHeap : offHeap
+					.toGeometry());
+		} else {
+			SHPRecord shpRecord = null;
+			if (offset >= 0) {
+				shpRecord = shp.getRecord(offset, length);
+			} else if (shx.isIndexLoaded()) {
+				shpRecord = shp.getRecord(shx.getOffsetAt(recordNum),
+						shx.getLengthAt(recordNum));
+			} else {
+				final SHXRecord shxRecord = shx.getRecordAt(recordNum);
+				if (shxRecord != null) {
+					shpRecord = shp.getRecord(shxRecord.getOffset(),
+							shxRecord.getLength());
+				}
+			}
+
+			if (shpRecord != null) {
+				output.setShapeType(shpRecord.getShapeType());
+				output.setGeometry(shpRecord.getGeometry());
+
+				final OffHeapGeometry stored = offHeapCache != null ? offHeapCache
+						.put(recordNum, shpRecord.getGeometry()) : null;
+				if (stored != null) {
+					if (shp.isPackedGeometry()) {
+						output.setGeometry(stored);
+					}
+				} else if (cache != null) {
+					cache.putGeometry(recordNum, shpRecord.getShapeType(),
+							shpRecord.getGeometry());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a LazyEntity for a given record number, with the offset and
+	 * length of its SHP record.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @param data
+	 *            whether the entity should contain alphanumeric data
+	 * @param fieldIndexes
+	 *            the indexes (0-based) of the fields of alphanumeric data
+	 *            (all the fields if null)
+	 *
+	 * @return a LazyEntity for the given record number
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the SHX file
+	 */
+	private LazyEntity createLazyEntity(final int recordNum,
+			final boolean data, final int[] fieldIndexes) throws IOException {
+		long offset = -1;
+		int length = -1;
+
+		if (shx.isIndexLoaded()) {
+			offset = shx.getOffsetAt(recordNum);
+			length = shx.getLengthAt(recordNum);
+		} else {
+			final SHXRecord shxRecord = shx.getRecordAt(recordNum);
+			if (shxRecord != null) {
+				offset = shxRecord.getOffset();
+				length = shxRecord.getLength();
+			}
+		}
+
+		return new LazyEntity(this, recordNum, offset, length, data,
+				fieldIndexes);
+	}
+
+	/**
+	 * Returns the number of entities that can be looked up (the records of
+	 * the SHX index may be less than the entities of a truncated shapefile).
+	 *
+	 * @return the number of entities that can be looked up
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the SHX file
+	 */
+	private int getNumRecords() throws IOException {
+		return Math.min(getNumEntities(), shx.getRecordCount());
+	}
+
+	/**
+	 * Returns the shape type and the MBR (Minimum Bounding Rectangle) of the
+	 * entity that matches a given record number, without decoding its
+	 * geometry.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 *
+	 * @return the shape type and the MBR of the entity that matches a given
+	 *         record number (null if the record is not in the SHX file)
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile
+	 */
+	private SHPRecordBounds getBoundsByRecordNumber(final int recordNum)
+			throws IOException {
+		SHPRecordBounds output = null;
+
+		if (shx.isIndexLoaded()) {
+			output = shp.getRecordBounds(shx.getOffsetAt(recordNum),
+					shx.getLengthAt(recordNum));
+		} else {
+			final SHXRecord shxRecord = shx.getRecordAt(recordNum);
+			if (shxRecord != null) {
+				output = shp.getRecordBounds(shxRecord.getOffset(),
+						shxRecord.getLength());
+			}
 		}
+
 		return output;
 	}
+
+	/**
+	 * Reads all the entities of the shapefile in chunks of consecutive records
+	 * (in parallel if the AccessMode allows it).
+	 *
+	 * @param data
+	 *            whether the entities should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data.
+	 * @param executor
+	 *            the ExecutorService running the chunks of records
+	 * @param chunkSize
+	 *            the number of records of each chunk
+	 * @param sink
+	 *            the receiver of the entities (null to return them)
+	 *
+	 * @return the entities of each chunk, in record order (empty Lists if a
+	 *         sink is given)
+	 *
+	 * @throws IOException
+	 *             if there is a problem querying the shapefile or the sink
+	 *             fails
+	 */
+	private List<List<Entity>> scan(final boolean data,
+			final ExecutorService executor, final int chunkSize,
+			final EntitySink sink) throws IOException {
+		if (executor == null) {
+			throw new IllegalArgumentException("The ExecutorService is null");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Invalid chunk size: "
+					+ chunkSize);
+		}
+
+		final AtomicBoolean aborted = new AtomicBoolean();
+		final List<Callable<List<Entity>>> tasks = new ArrayList<Callable<List<Entity>>>();
+		final int numEntities = getNumRecords();
+		for (int first = 1; first <= numEntities; first += chunkSize) {
+			final int last = Math.min(first + chunkSize - 1, numEntities);
+			tasks.add(new ScanTask(first, last, data, sink, aborted));
+		}
+
+		final List<List<Entity>> output = new ArrayList<List<Entity>>();
+
+		if (shp.getAccessMode() == AccessMode.STREAM) {
+			for (final Callable<List<Entity>> task : tasks) {
+				output.add(call(task));
+			}
+			return output;
+		}
+
+		final List<Future<List<Entity>>> futures = new ArrayList<Future<List<Entity>>>();
+		try {
+			for (final Callable<List<Entity>> task : tasks) {
+				futures.add(executor.submit(task));
+			}
+			for (final Future<List<Entity>> future : futures) {
+				output.add(future.get());
+			}
+		} catch (final InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("The scan was interrupted");
+		} catch (final ExecutionException ee) {
+			throw toIOException(ee.getCause());
+		} finally {
+			// The running chunks are stopped through the flag instead of
+			// interrupting them, as an interrupted read would close the
+			// FileChannel shared by the POSITIONAL mode
+			aborted.set(true);
+			for (final Future<List<Entity>> future : futures) {
+				future.cancel(false);
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Runs a chunk of a scan in the calling thread.
+	 */
+	private static List<Entity> call(final Callable<List<Entity>> task)
+			throws IOException {
+		try {
+			return task.call();
+		} catch (final Exception e) {
+			throw toIOException(e);
+		}
+	}
+
+	/**
+	 * Returns the IOException to throw for the failure of a chunk of a scan.
+	 */
+	private static IOException toIOException(final Throwable cause) {
+		if (cause instanceof IOException) {
+			return (IOException) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+
+		final IOException output = new IOException(String.valueOf(cause));
+		output.initCause(cause);
+
+		return output;
+	}
+
+	/**
+	 * Task reading a chunk of consecutive records of a scan.
+	 * <p>
+	 * The records are read sequentially while each one is at the offset of
+	 * its SHX record. From the first one that is not (an SHX file with gaps,
+	 * reordered or with records of the SHP file not indexed), the rest of the
+	 * chunk is read by record number, so the entities keep their numbers and
+	 * data.
+	 */
+	private class ScanTask implements Callable<List<Entity>> {
+		private final int first;
+		private final int last;
+		private final boolean data;
+		private final EntitySink sink;
+		private final AtomicBoolean aborted;
+
+		/**
+		 * Creates a task reading the records between two numbers (1-based,
+		 * inclusive), stopping as soon as the scan is aborted.
+		 */
+		ScanTask(final int first, final int last, final boolean data,
+				final EntitySink sink, final AtomicBoolean aborted) {
+			this.first = first;
+			this.last = last;
+			this.data = data;
+			this.sink = sink;
+			this.aborted = aborted;
+		}
+
+		public List<Entity> call() throws IOException {
+			final List<Entity> output = new ArrayList<Entity>();
+			if (aborted.get()) {
+				return output;
+			}
+
+			final long start = shx.getOffsetAt(first);
+			final long end = shx.getOffsetAt(last)
+					+ SHPParameters.SHP_RECORDHEADER_LENGTH
+					+ shx.getLengthAt(last);
+
+			final SHPRecordCursor cursor = shp.openCursor(start, end);
+			final ShapefileReader reader = new ShapefileReader(cursor, dbf,
+					data, first, last);
+			boolean completed = false;
+			try {
+				int recordNum = first;
+				while (!aborted.get() && recordNum <= last
+						&& cursor.getPosition() == shx.getOffsetAt(recordNum)
+						&& reader.hasNext()) {
+					accept(reader.next(), output);
+					recordNum++;
+				}
+				for (; !aborted.get() && recordNum <= last; recordNum++) {
+					accept(readEntity(recordNum), output);
+				}
+				completed = true;
+			} finally {
+				if (!completed) {
+					aborted.set(true);
+				}
+				reader.close();
+			}
+
+			return output;
+		}
+
+		/**
+		 * Passes an entity to the sink (or adds it to the output if there is
+		 * no sink).
+		 */
+		private void accept(final Entity entity, final List<Entity> output)
+				throws IOException {
+			if (sink != null) {
+				sink.accept(entity);
+			} else {
+				output.add(entity);
+			}
+		}
+
+		/**
+		 * Reads the entity of a record by its number, with a positional read
+		 * of the SHP record (and of the DBF record, if any).
+		 */
+		private Entity readEntity(final int recordNum) throws IOException {
+			final Entity output = new Entity();
+			output.setRecordNum(recordNum);
+
+			final SHPRecord shpRecord = shp.getRecord(
+					shx.getOffsetAt(recordNum), shx.getLengthAt(recordNum));
+			output.setShapeType(shpRecord.getShapeType());
+			output.setGeometry(shpRecord.getGeometry());
+
+			if (data && recordNum <= dbf.getRecordCount()) {
+				output.setData(dbf.getRecordAt(recordNum).getFields());
+			}
+
+			return output;
+		}
+	}
 }
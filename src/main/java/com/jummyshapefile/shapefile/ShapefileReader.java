@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.shapefile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import com.jummyshapefile.dbf.DBFFile;
+import com.jummyshapefile.dbf.DBFRecordCursor;
+import com.jummyshapefile.shapefile.model.Entity;
+import com.jummyshapefile.shp.SHPRecordCursor;
+import com.jummyshapefile.shp.model.SHPRecord;
+
+/**
+ * Forward-only reader of the entities of a shapefile, in file order.
+ * <p>
+ * The SHP file is read sequentially (without the SHX file) through a single
+ * reused buffer, as is the DBF file if the data is requested, and each entity
+ * is built only when requested, so the memory used does not depend on the
+ * size of the shapefile. The entities beyond the last record of the DBF file
+ * have no data. Not thread-safe.
+ *
+ * @see Shapefile#openReader(boolean)
+ * @see SHPRecordCursor
+ * @see DBFRecordCursor
+ */
+public class ShapefileReader implements Closeable {
+	private final SHPRecordCursor cursor;
+	private final DBFRecordCursor records;
+	private int recordNum;
+
+	/**
+	 * Creates a reader of the entities of a shapefile.
+	 *
+	 * @param cursor
+	 *            the cursor over the records of the SHP file
+	 * @param dbf
+	 *            the DBF file
+	 * @param data
+	 *            whether the entities should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data
+	 */
+	ShapefileReader(final SHPRecordCursor cursor, final DBFFile dbf,
+			final boolean data) {
+		this(cursor, dbf, data, 1, dbf.getRecordCount());
+	}
+
+	/**
+	 * Creates a reader of the entities of a shapefile between two records.
+	 *
+	 * @param cursor
+	 *            the cursor over the records of the SHP file, starting at the
+	 *            given record
+	 * @param dbf
+	 *            the DBF file
+	 * @param data
+	 *            whether the entities should (slower) or shouldn't (faster)
+	 *            contain alphanumeric data
+	 * @param firstRecordNum
+	 *            the number (1-based) of the first record of the cursor
+	 * @param lastRecordNum
+	 *            the number of the last record of the cursor (the last DBF
+	 *            record read)
+	 */
+	ShapefileReader(final SHPRecordCursor cursor, final DBFFile dbf,
+			final boolean data, final int firstRecordNum,
+			final int lastRecordNum) {
+		this.cursor = cursor;
+		this.records = data ? dbf.openCursor(firstRecordNum, lastRecordNum)
+				: null;
+		this.recordNum = firstRecordNum - 1;
+	}
+
+	/**
+	 * Returns whether there are more entities to read.
+	 *
+	 * @return whether there are more entities to read
+	 * @throws IOException
+	 *             if there is a problem reading the shapefile
+	 */
+	public boolean hasNext() throws IOException {
+		return cursor.hasNext();
+	}
+
+	/**
+	 * Returns the next entity of the shapefile.
+	 *
+	 * @return the next entity of the shapefile
+	 * @throws NoSuchElementException
+	 *             if there are no more entities
+	 * @throws IOException
+	 *             if there is a problem reading the shapefile
+	 *
+	 * @see Entity
+	 */
+	public Entity next() throws IOException {
+		final Entity output = new Entity();
+
+		final SHPRecord shpRecord = cursor.next();
+		recordNum++;
+
+		output.setRecordNum(recordNum);
+		output.setShapeType(shpRecord.getShapeType());
+		output.setGeometry(shpRecord.getGeometry());
+
+		if (records != null && records.hasNext()) {
+			output.setData(records.next());
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the number (1-based) of the last entity returned by next().
+	 *
+	 * @return the number of the last entity returned by next()
+	 */
+	public int getRecordNum() {
+		return recordNum;
+	}
+
+	/**
+	 * Closes the reader releasing its buffer. The shapefile is not closed.
+	 */
+	public void close() {
+		cursor.close();
+		if (records != null) {
+			records.close();
+		}
+	}
+}
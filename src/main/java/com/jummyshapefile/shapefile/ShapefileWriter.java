@@ -0,0 +1,249 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.shapefile;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import com.jummyshapefile.binaryfile.AbstractBinaryFileWriter;
+import com.jummyshapefile.dbf.DBFWriter;
+import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
+import com.jummyshapefile.shapefile.model.Entity;
+import com.jummyshapefile.shp.SHPWriter;
+import com.jummyshapefile.shp.model.SHPHeader;
+import com.jummyshapefile.shx.SHXWriter;
+import com.jummyshapefile.shx.model.SHXHeader;
+
+/**
+ * Writer of the entities of a shapefile (the SHP, SHX and DBF files), in one
+ * sequential pass.
+ * <p>
+ * Each file is written through its own large buffer, and the headers (MBR,
+ * lengths and number of records) are written when the writer is closed, so
+ * the memory used does not depend on the size of the shapefile. Not
+ * thread-safe.
+ *
+ * @see SHPWriter
+ * @see SHXWriter
+ * @see DBFWriter
+ */
+public class ShapefileWriter implements Closeable {
+	private final SHPWriter shp;
+	private final SHXWriter shx;
+	private final DBFWriter dbf;
+
+	/**
+	 * Creates a writer of a shapefile.
+	 *
+	 * @param shpOS
+	 *            the FileOutputStream representing the SHP file
+	 * @param shxOS
+	 *            the FileOutputStream representing the SHX file
+	 * @param dbfOS
+	 *            the FileOutputStream representing the DBF file
+	 * @param shapeType
+	 *            the shape type of the geometries (1, 3, 5 or 8)
+	 * @param fields
+	 *            the descriptors of the fields of the entity data
+	 * @throws IllegalArgumentException
+	 *             if a field is not valid
+	 * @throws UnsupportedOperationException
+	 *             if the shape type or the type of a field is not supported
+	 * @throws IOException
+	 *             if there is a problem creating the writer
+	 */
+	public ShapefileWriter(final FileOutputStream shpOS,
+			final FileOutputStream shxOS, final FileOutputStream dbfOS,
+			final int shapeType, final List<DBFFieldDescriptor> fields)
+			throws IllegalArgumentException,
+			UnsupportedOperationException, IOException {
+		this(shpOS, shxOS, dbfOS, shapeType, fields,
+				AbstractBinaryFileWriter.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a writer of a shapefile.
+	 *
+	 * @param shpOS
+	 *            the FileOutputStream representing the SHP file
+	 * @param shxOS
+	 *            the FileOutputStream representing the SHX file
+	 * @param dbfOS
+	 *            the FileOutputStream representing the DBF file
+	 * @param shapeType
+	 *            the shape type of the geometries (1, 3, 5 or 8)
+	 * @param fields
+	 *            the descriptors of the fields of the entity data
+	 * @param bufferSize
+	 *            the size in bytes of the buffer of each file
+	 * @throws IllegalArgumentException
+	 *             if a field is not valid
+	 * @throws UnsupportedOperationException
+	 *             if the shape type or the type of a field is not supported
+	 * @throws IOException
+	 *             if there is a problem creating the writer
+	 */
+	public ShapefileWriter(final FileOutputStream shpOS,
+			final FileOutputStream shxOS, final FileOutputStream dbfOS,
+			final int shapeType, final List<DBFFieldDescriptor> fields,
+			final int bufferSize) throws IllegalArgumentException,
+			UnsupportedOperationException, IOException {
+		this(shpOS, shxOS, dbfOS, shapeType, fields, bufferSize, Charset
+				.defaultCharset());
+	}
+
+	/**
+	 * Creates a writer of a shapefile.
+	 *
+	 * @param shpOS
+	 *            the FileOutputStream representing the SHP file
+	 * @param shxOS
+	 *            the FileOutputStream representing the SHX file
+	 * @param dbfOS
+	 *            the FileOutputStream representing the DBF file
+	 * @param shapeType
+	 *            the shape type of the geometries (1, 3, 5 or 8)
+	 * @param fields
+	 *            the descriptors of the fields of the entity data
+	 * @param bufferSize
+	 *            the size in bytes of the buffer of each file
+	 * @param charset
+	 *            the charset of the text of C fields of the DBF file
+	 * @throws IllegalArgumentException
+	 *             if a field is not valid
+	 * @throws UnsupportedOperationException
+	 *             if the shape type or the type of a field is not supported
+	 * @throws IOException
+	 *             if there is a problem creating the writer
+	 */
+	public ShapefileWriter(final FileOutputStream shpOS,
+			final FileOutputStream shxOS, final FileOutputStream dbfOS,
+			final int shapeType, final List<DBFFieldDescriptor> fields,
+			final int bufferSize, final Charset charset)
+			throws IllegalArgumentException, UnsupportedOperationException,
+			IOException {
+		if (shpOS == null) {
+			throw new IllegalArgumentException("The SHP FileOutputStream is null");
+		}
+		if (shxOS == null) {
+			throw new IllegalArgumentException("The SHX FileOutputStream is null");
+		}
+		if (dbfOS == null) {
+			throw new IllegalArgumentException("The DBF FileOutputStream is null");
+		}
+
+		this.shp = new SHPWriter(shpOS, shapeType, bufferSize);
+		SHXWriter shx = null;
+		try {
+			shx = new SHXWriter(shxOS, shapeType, bufferSize);
+			this.dbf = new DBFWriter(dbfOS, fields, bufferSize, charset);
+		} catch (final IOException ioe) {
+			abort(shx);
+			throw ioe;
+		} catch (final RuntimeException re) {
+			abort(shx);
+			throw re;
+		}
+		this.shx = shx;
+	}
+
+	/**
+	 * Returns the number of entities written.
+	 *
+	 * @return the number of entities written
+	 */
+	public int getNumEntities() {
+		return shp.getNumRecords();
+	}
+
+	/**
+	 * Writes the next entity of the shapefile (its record number is the
+	 * number of entities written plus one). Its geometry and data are
+	 * validated before writing any file, so an entity rejected is not
+	 * written to any of them.
+	 *
+	 * @param entity
+	 *            the entity to write (its geometry must be of the shape type
+	 *            of the shapefile or a null shape)
+	 * @throws IllegalArgumentException
+	 *             if the entity is null or its geometry or data are not
+	 *             allowed in the shapefile
+	 * @throws UnsupportedOperationException
+	 *             if the class of its geometry is not supported
+	 * @throws IOException
+	 *             if there is a problem writing the entity
+	 *
+	 * @see Entity
+	 */
+	public void write(final Entity entity) throws IllegalArgumentException,
+			UnsupportedOperationException, IOException {
+		if (entity == null) {
+			throw new IllegalArgumentException("The Entity is null");
+		}
+
+		shp.checkGeometry(entity.getGeometry());
+		dbf.encode(entity.getData());
+
+		final long offset = shp.getLength();
+		final int length = shp.write(entity.getGeometry());
+		shx.write(offset, length);
+		dbf.commit();
+	}
+
+	public void close() throws IOException {
+		// The SHX header has the same shape type and MBR as the SHP header
+		final SHPHeader shpHeader = shp.getHeader();
+		final SHXHeader shxHeader = shx.getHeader();
+		shxHeader.setMinX(shpHeader.getMinX());
+		shxHeader.setMinY(shpHeader.getMinY());
+		shxHeader.setMaxX(shpHeader.getMaxX());
+		shxHeader.setMaxY(shpHeader.getMaxY());
+
+		try {
+			shp.close();
+		} finally {
+			try {
+				shx.close();
+			} finally {
+				dbf.close();
+			}
+		}
+	}
+
+	/**
+	 * Closes the writers created before a constructor fails (the files are
+	 * left incomplete).
+	 */
+	private void abort(final SHXWriter shx) {
+		try {
+			shp.close();
+		} catch (final IOException ioe) {
+			// Ignore
+		}
+		if (shx != null) {
+			try {
+				shx.close();
+			} catch (final IOException ioe) {
+				// Ignore
+			}
+		}
+	}
+}
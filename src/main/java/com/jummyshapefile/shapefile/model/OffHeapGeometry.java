@@ -0,0 +1,425 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.shapefile.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Class representing a PackedGeometry whose coordinates are read from a
+ * ByteBuffer (usually direct or mapped memory, outside of the heap) instead
+ * of from primitive arrays.
+ * <p>
+ * The object is a lightweight view: only the shape type and the MBR are held
+ * in the heap, and every coordinate is read from the buffer when requested,
+ * so it can be used wherever a PackedGeometry is read through its accessors
+ * (getX(), getY(), getPartStart()...) without copying the coordinates back
+ * onto the heap. getXY() and getPartOffsets() return copies. The view cannot
+ * be modified.
+ * <p>
+ * The geometry is stored in the native byte order as follows:
+ * <ul>
+ * <li>Byte 0: shape type (int)
+ * <li>Byte 4: number of parts (int)
+ * <li>Byte 8: number of points (int)
+ * <li>Byte 16: MBR (minX, minY, maxX, maxY, doubles)
+ * <li>Byte 48: index of the first point of each part (ints)
+ * <li>Next multiple of 8: coordinates of every point (x0, y0, x1, y1...,
+ * doubles)
+ * </ul>
+ *
+ * @see PackedGeometry
+ */
+public class OffHeapGeometry extends PackedGeometry {
+	private static final int SHAPETYPE_OFFSET = 0;
+	private static final int NUMPARTS_OFFSET = 4;
+	private static final int NUMPOINTS_OFFSET = 8;
+	private static final int MINX_OFFSET = 16;
+	private static final int MINY_OFFSET = 24;
+	private static final int MAXX_OFFSET = 32;
+	private static final int MAXY_OFFSET = 40;
+	private static final int PARTS_OFFSET = 48;
+
+	private final ByteBuffer buffer;
+	private final int partsOffset;
+	private final int pointsOffset;
+	private final int numParts;
+	private final int numPoints;
+
+	/**
+	 * Creates a view of a geometry stored in a ByteBuffer.
+	 *
+	 * @param buffer
+	 *            the ByteBuffer holding the geometry (only absolute reads are
+	 *            performed, so it can be shared by several views and threads)
+	 * @param offset
+	 *            the offset of the geometry in the ByteBuffer
+	 */
+	public OffHeapGeometry(final ByteBuffer buffer, final int offset) {
+		if (buffer == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
+		}
+
+		this.buffer = buffer.duplicate().order(ByteOrder.nativeOrder());
+		this.numParts = this.buffer.getInt(offset + NUMPARTS_OFFSET);
+		this.numPoints = this.buffer.getInt(offset + NUMPOINTS_OFFSET);
+		this.partsOffset = offset + PARTS_OFFSET;
+		this.pointsOffset = offset + getPointsOffset(numParts);
+
+		super.setShapeType(this.buffer.getInt(offset + SHAPETYPE_OFFSET));
+		minX = this.buffer.getDouble(offset + MINX_OFFSET);
+		minY = this.buffer.getDouble(offset + MINY_OFFSET);
+		maxX = this.buffer.getDouble(offset + MAXX_OFFSET);
+		maxY = this.buffer.getDouble(offset + MAXY_OFFSET);
+	}
+
+	/**
+	 * Returns the number of bytes needed to store a geometry.
+	 *
+	 * @param geometry
+	 *            the geometry (Point, MultiPoint, Polyline, Polygon or
+	 *            PackedGeometry)
+	 * @return the number of bytes needed to store the geometry (-1 if the
+	 *         geometry cannot be stored)
+	 */
+	public static int getEncodedLength(final Geometry geometry) {
+		int output = -1;
+
+		if (getShapeType(geometry) > 0) {
+			output = getPointsOffset(getNumParts(geometry)) + 16
+					* getNumPoints(geometry);
+		}
+
+		return output;
+	}
+
+	/**
+	 * Stores a geometry in a ByteBuffer (see getEncodedLength() for the
+	 * number of bytes written).
+	 *
+	 * @param geometry
+	 *            the geometry (Point, MultiPoint, Polyline, Polygon or
+	 *            PackedGeometry)
+	 * @param buffer
+	 *            the ByteBuffer (only absolute writes are performed)
+	 * @param offset
+	 *            the offset of the geometry in the ByteBuffer
+	 * @throws UnsupportedOperationException
+	 *             if the geometry cannot be stored
+	 */
+	public static void encode(final Geometry geometry, final ByteBuffer buffer,
+			final int offset) throws UnsupportedOperationException {
+		if (buffer == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
+		}
+
+		final int shapeType = getShapeType(geometry);
+		if (shapeType <= 0) {
+			throw new UnsupportedOperationException(
+					"Geometry not allowed (not implemented): " + geometry);
+		}
+
+		final ByteBuffer data = buffer.duplicate().order(
+				ByteOrder.nativeOrder());
+		final int numParts = getNumParts(geometry);
+		final int numPoints = getNumPoints(geometry);
+		data.putInt(offset + SHAPETYPE_OFFSET, shapeType);
+		data.putInt(offset + NUMPARTS_OFFSET, numParts);
+		data.putInt(offset + NUMPOINTS_OFFSET, numPoints);
+		data.putDouble(offset + MINX_OFFSET, geometry.getMinX());
+		data.putDouble(offset + MINY_OFFSET, geometry.getMinY());
+		data.putDouble(offset + MAXX_OFFSET, geometry.getMaxX());
+		data.putDouble(offset + MAXY_OFFSET, geometry.getMaxY());
+
+		int position = offset + getPointsOffset(numParts);
+		if (geometry instanceof PackedGeometry) {
+			final PackedGeometry packed = (PackedGeometry) geometry;
+			for (int i = 0; i < numParts; i++) {
+				data.putInt(offset + PARTS_OFFSET + 4 * i,
+						packed.getPartStart(i));
+			}
+			for (int i = 0; i < numPoints; i++) {
+				data.putDouble(position, packed.getX(i));
+				data.putDouble(position + 8, packed.getY(i));
+				position += 16;
+			}
+		} else if (geometry instanceof Point) {
+			data.putDouble(position, ((Point) geometry).getX());
+			data.putDouble(position + 8, ((Point) geometry).getY());
+		} else if (geometry instanceof MultiPoint) {
+			position = putPoints(data, position,
+					((MultiPoint) geometry).getPoints());
+		} else {
+			final List<List<Point>> parts = ((Polyline) geometry).getParts();
+			int start = 0;
+			for (int i = 0; i < numParts; i++) {
+				data.putInt(offset + PARTS_OFFSET + 4 * i, start);
+				final List<Point> part = parts.get(i);
+				if (part != null) {
+					position = putPoints(data, position, part);
+					start += part.size();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Not allowed, as the view cannot be modified.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void setShapeType(final int shapeType)
+			throws UnsupportedOperationException {
+		throw new UnsupportedOperationException(
+				"Modification not allowed (not implemented): " + shapeType);
+	}
+
+	/**
+	 * Returns a copy of the coordinates of every point (x0, y0, x1, y1...).
+	 *
+	 * @return a copy of the coordinates of every point
+	 */
+	@Override
+	public double[] getXY() {
+		final double[] output = new double[2 * numPoints];
+
+		for (int i = 0; i < output.length; i++) {
+			output[i] = buffer.getDouble(pointsOffset + 8 * i);
+		}
+
+		return output;
+	}
+
+	/**
+	 * Not allowed, as the view cannot be modified.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void setXY(final double[] xy) throws UnsupportedOperationException {
+		throw new UnsupportedOperationException(
+				"Modification not allowed (not implemented): coordinates");
+	}
+
+	/**
+	 * Returns a copy of the index of the first point of each part.
+	 *
+	 * @return a copy of the index of the first point of each part
+	 */
+	@Override
+	public int[] getPartOffsets() {
+		final int[] output = new int[numParts];
+
+		for (int i = 0; i < output.length; i++) {
+			output[i] = getPartStart(i);
+		}
+
+		return output;
+	}
+
+	/**
+	 * Not allowed, as the view cannot be modified.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void setPartOffsets(final int[] partOffsets)
+			throws UnsupportedOperationException {
+		throw new UnsupportedOperationException(
+				"Modification not allowed (not implemented): part offsets");
+	}
+
+	@Override
+	public int getNumPoints() {
+		return numPoints;
+	}
+
+	@Override
+	public int getNumParts() {
+		return numParts;
+	}
+
+	@Override
+	public double getX(final int index) {
+		checkPoint(index);
+
+		return buffer.getDouble(pointsOffset + 16 * index);
+	}
+
+	@Override
+	public double getY(final int index) {
+		checkPoint(index);
+
+		return buffer.getDouble(pointsOffset + 16 * index + 8);
+	}
+
+	@Override
+	public int getPartStart(final int part) {
+		if (part < 0 || part >= numParts) {
+			throw new IndexOutOfBoundsException("Number of parts: "
+					+ numParts + ". Requested: " + part);
+		}
+
+		return buffer.getInt(partsOffset + 4 * part);
+	}
+
+	@Override
+	public int getPartEnd(final int part) {
+		int output = numPoints;
+
+		if (part < numParts - 1) {
+			output = getPartStart(part + 1);
+		}
+
+		return output;
+	}
+
+	@Override
+	public String toString() {
+		return "OFFHEAP " + getShapeType() + " (MBR " + minX + " " + minY
+				+ " " + maxX + " " + maxY + ") " + numParts + " parts, "
+				+ numPoints + " points";
+	}
+
+	/**
+	 * Checks that a point exists (the buffer may hold other geometries after
+	 * this one).
+	 *
+	 * @param index
+	 *            the index of the point (0-based)
+	 */
+	private void checkPoint(final int index) {
+		if (index < 0 || index >= numPoints) {
+			throw new IndexOutOfBoundsException("Number of points: "
+					+ numPoints + ". Requested: " + index);
+		}
+	}
+
+	/**
+	 * Returns the offset of the coordinates from the start of a stored
+	 * geometry (aligned to 8 bytes).
+	 *
+	 * @param numParts
+	 *            the number of parts of the geometry
+	 * @return the offset of the coordinates from the start of the geometry
+	 */
+	private static int getPointsOffset(final int numParts) {
+		return (PARTS_OFFSET + 4 * numParts + 7) & ~7;
+	}
+
+	/**
+	 * Stores the coordinates of a list of points.
+	 *
+	 * @param data
+	 *            the ByteBuffer
+	 * @param position
+	 *            the position of the first coordinate
+	 * @param points
+	 *            the points
+	 * @return the position following the last coordinate
+	 */
+	private static int putPoints(final ByteBuffer data, final int position,
+			final List<Point> points) {
+		int output = position;
+
+		if (points != null) {
+			for (final Point point : points) {
+				data.putDouble(output, point.getX());
+				data.putDouble(output + 8, point.getY());
+				output += 16;
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the shape type of a geometry that can be stored.
+	 *
+	 * @param geometry
+	 *            the geometry
+	 * @return the shape type of the geometry (-1 if it cannot be stored)
+	 */
+	private static int getShapeType(final Geometry geometry) {
+		int output = -1;
+
+		if (geometry instanceof PackedGeometry) {
+			output = ((PackedGeometry) geometry).getShapeType();
+		} else if (geometry instanceof Point) {
+			output = 1;
+		} else if (geometry instanceof Polygon) {
+			output = ((Polygon) geometry).getParts() != null ? 5 : -1;
+		} else if (geometry instanceof Polyline) {
+			output = ((Polyline) geometry).getParts() != null ? 3 : -1;
+		} else if (geometry instanceof MultiPoint) {
+			output = 8;
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the number of parts of a geometry that can be stored.
+	 *
+	 * @param geometry
+	 *            the geometry
+	 * @return the number of parts of the geometry
+	 */
+	private static int getNumParts(final Geometry geometry) {
+		int output = 0;
+
+		if (geometry instanceof PackedGeometry) {
+			output = ((PackedGeometry) geometry).getNumParts();
+		} else if (geometry instanceof Polyline) {
+			output = ((Polyline) geometry).getParts().size();
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the number of points of a geometry that can be stored.
+	 *
+	 * @param geometry
+	 *            the geometry
+	 * @return the number of points of the geometry
+	 */
+	private static int getNumPoints(final Geometry geometry) {
+		int output = 0;
+
+		if (geometry instanceof PackedGeometry) {
+			output = ((PackedGeometry) geometry).getNumPoints();
+		} else if (geometry instanceof Point) {
+			output = 1;
+		} else if (geometry instanceof MultiPoint) {
+			final List<Point> points = ((MultiPoint) geometry).getPoints();
+			output = points != null ? points.size() : 0;
+		} else if (geometry instanceof Polyline) {
+			for (final List<Point> part : ((Polyline) geometry).getParts()) {
+				output += part != null ? part.size() : 0;
+			}
+		}
+
+		return output;
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.shapefile.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class representing a geometry whose coordinates are stored in primitive
+ * arrays, mirroring the layout of the SHP file: the coordinates of every
+ * point (x0, y0, x1, y1...) and the index of the first point of each part.
+ * <p>
+ * Uses 16 bytes per point, instead of a Point object per point. Represents
+ * the following shape types (defined by the ESRI Shapefile format):
+ * <ul>
+ * <li>1 Point (one point, no parts)
+ * <li>3 Polyline
+ * <li>5 Polygon
+ * <li>8 MultiPoint (no parts)
+ * </ul>
+ *
+ * @see Point
+ * @see Polyline
+ * @see Polygon
+ * @see MultiPoint
+ */
+public class PackedGeometry extends Geometry {
+	private static final int[] NO_PARTS = new int[0];
+
+	private int shapeType;
+	private double[] xy = new double[0];
+	private int[] partOffsets = NO_PARTS;
+
+	/**
+	 * Returns the type of the shape (1 Point, 3 Polyline, 5 Polygon or 8
+	 * MultiPoint).
+	 *
+	 * @return the type of the shape
+	 */
+	public int getShapeType() {
+		return shapeType;
+	}
+
+	/**
+	 * Sets the type of the shape (1 Point, 3 Polyline, 5 Polygon or 8
+	 * MultiPoint).
+	 *
+	 * @param shapeType
+	 *            the type of the shape
+	 */
+	public void setShapeType(final int shapeType) {
+		this.shapeType = shapeType;
+	}
+
+	/**
+	 * Returns the coordinates of every point (x0, y0, x1, y1...). The array is
+	 * not copied, so it must not be modified.
+	 *
+	 * @return the coordinates of every point
+	 */
+	public double[] getXY() {
+		return xy;
+	}
+
+	/**
+	 * Sets the coordinates of every point (x0, y0, x1, y1...).
+	 *
+	 * @param xy
+	 *            the coordinates of every point
+	 */
+	public void setXY(final double[] xy) {
+		if (xy == null) {
+			throw new IllegalArgumentException("The coordinates are null");
+		}
+
+		this.xy = xy;
+	}
+
+	/**
+	 * Returns the index of the first point of each part. The array is not
+	 * copied, so it must not be modified.
+	 *
+	 * @return the index of the first point of each part
+	 */
+	public int[] getPartOffsets() {
+		return partOffsets;
+	}
+
+	/**
+	 * Sets the index of the first point of each part.
+	 *
+	 * @param partOffsets
+	 *            the index of the first point of each part
+	 */
+	public void setPartOffsets(final int[] partOffsets) {
+		if (partOffsets == null) {
+			throw new IllegalArgumentException("The part offsets are null");
+		}
+
+		this.partOffsets = partOffsets;
+	}
+
+	/**
+	 * Returns the number of points.
+	 *
+	 * @return the number of points
+	 */
+	public int getNumPoints() {
+		return xy.length / 2;
+	}
+
+	/**
+	 * Returns the number of parts.
+	 *
+	 * @return the number of parts
+	 */
+	public int getNumParts() {
+		return partOffsets.length;
+	}
+
+	/**
+	 * Returns the X coordinate of a point.
+	 *
+	 * @param index
+	 *            the index of the point (0-based)
+	 * @return the X coordinate of the point
+	 */
+	public double getX(final int index) {
+		return xy[2 * index];
+	}
+
+	/**
+	 * Returns the Y coordinate of a point.
+	 *
+	 * @param index
+	 *            the index of the point (0-based)
+	 * @return the Y coordinate of the point
+	 */
+	public double getY(final int index) {
+		return xy[2 * index + 1];
+	}
+
+	/**
+	 * Returns the index of the first point of a part.
+	 *
+	 * @param part
+	 *            the index of the part (0-based)
+	 * @return the index of the first point of the part
+	 */
+	public int getPartStart(final int part) {
+		return partOffsets[part];
+	}
+
+	/**
+	 * Returns the index following the last point of a part.
+	 *
+	 * @param part
+	 *            the index of the part (0-based)
+	 * @return the index following the last point of the part
+	 */
+	public int getPartEnd(final int part) {
+		int output = getNumPoints();
+
+		if (part < partOffsets.length - 1) {
+			output = partOffsets[part + 1];
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the Point, Polyline, Polygon or MultiPoint with the same shape
+	 * type, MBR and coordinates as this geometry.
+	 *
+	 * @return the geometry with the same coordinates as this geometry
+	 * @throws UnsupportedOperationException
+	 *             if the shape type is not 1, 3, 5 or 8
+	 */
+	public Geometry toGeometry() throws UnsupportedOperationException {
+		Geometry output = null;
+
+		switch (getShapeType()) {
+		case 1:
+			output = createPoint(0);
+			break;
+		case 3:
+		case 5:
+			final Polyline polyline = getShapeType() == 5 ? new Polygon()
+					: new Polyline();
+			final List<List<Point>> parts = new ArrayList<List<Point>>(
+					getNumParts());
+			for (int part = 0; part < getNumParts(); part++) {
+				parts.add(createPoints(getPartStart(part), getPartEnd(part)));
+			}
+			polyline.setParts(parts);
+			output = polyline;
+			break;
+		case 8:
+			final MultiPoint multiPoint = new MultiPoint();
+			multiPoint.setPoints(createPoints(0, getNumPoints()));
+			output = multiPoint;
+			break;
+		default:
+			throw new UnsupportedOperationException(
+					"Geometry type not allowed (not implemented): "
+							+ getShapeType());
+		}
+
+		output.setMinX(getMinX());
+		output.setMinY(getMinY());
+		output.setMaxX(getMaxX());
+		output.setMaxY(getMaxY());
+
+		return output;
+	}
+
+	@Override
+	public String toString() {
+		return "PACKED " + shapeType + " (MBR " + minX + " " + minY + " "
+				+ maxX + " " + maxY + ") " + getNumParts() + " parts, "
+				+ getNumPoints() + " points";
+	}
+
+	/**
+	 * Returns a Point with the coordinates of a point (its MBR is the point).
+	 */
+	private Point createPoint(final int index) {
+		final Point output = new Point();
+		output.setX(getX(index));
+		output.setY(getY(index));
+		output.setMinX(output.getX());
+		output.setMinY(output.getY());
+		output.setMaxX(output.getX());
+		output.setMaxY(output.getY());
+
+		return output;
+	}
+
+	/**
+	 * Returns the Points between two indexes (the second one excluded).
+	 */
+	private List<Point> createPoints(final int start, final int end) {
+		final List<Point> output = new ArrayList<Point>(Math.max(end - start,
+				0));
+		for (int i = start; i < end; i++) {
+			output.add(createPoint(i));
+		}
+
+		return output;
+	}
+}
@@ -17,10 +17,14 @@
 package com.jummyshapefile.shp;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import com.jummyshapefile.binaryfile.AbstractBinaryFile;
+import com.jummyshapefile.shapefile.model.PackedGeometry;
 import com.jummyshapefile.shp.model.SHPHeader;
 import com.jummyshapefile.shp.model.SHPRecord;
+import com.jummyshapefile.shp.model.SHPRecordBounds;
 import com.jummyshapefile.shp.model.SHPRecordHeader;
 import com.jummyshapefile.shx.SHXFile;
 
@@ -44,13 +48,62 @@ import com.jummyshapefile.shx.SHXFile;
  * This class only takes into a
  */
 public class SHPFile extends AbstractBinaryFile<SHPHeader> {
+	/**
+	 * Size in bytes of the buffer used to load the points of the file.
+	 */
+	public static final int LOAD_BUFFER_SIZE = 1024 * 1024;
+
+	// Length of a Point record (header and content)
+	private static final int POINT_RECORD_LENGTH = SHPParameters.SHP_RECORDHEADER_LENGTH
+			+ SHPParameters.SHP_POINT_LENGTH;
+
 	private final SHPRecordReader recordReader = new SHPRecordReader();
+	private volatile boolean packedGeometry = false;
 
 	@Override
 	public void init() {
 		headerReader = new SHPHeaderReader();
 	}
 
+	/**
+	 * Returns whether the geometries of the records are read as PackedGeometry
+	 * objects.
+	 *
+	 * @return whether the geometries of the records are read as PackedGeometry
+	 *         objects
+	 *
+	 * @see PackedGeometry
+	 */
+	public boolean isPackedGeometry() {
+		return packedGeometry;
+	}
+
+	/**
+	 * Sets whether the geometries of the records are read as PackedGeometry
+	 * objects (coordinates in primitive arrays) instead of Point, MultiPoint,
+	 * Polyline and Polygon objects.
+	 *
+	 * @param packedGeometry
+	 *            whether the geometries of the records are read as
+	 *            PackedGeometry objects
+	 *
+	 * @see PackedGeometry
+	 */
+	public void setPackedGeometry(final boolean packedGeometry) {
+		this.packedGeometry = packedGeometry;
+	}
+
+	/**
+	 * Returns the length of the SHP file in bytes.
+	 *
+	 * @return the length of the SHP file in bytes
+	 * @throws IOException
+	 *             if there is a problem querying the size of the file
+	 */
+	public long getFileLength() throws IOException {
+		return size();
+	}
+
 	/**
 	 * Returns a SHPRecord object representing a record of the SHP file (defined
 	 * by offset and length as the records in the SHP file has variable
@@ -75,7 +128,7 @@ public class SHPFile extends AbstractBinaryFile<SHPHeader> {
 	 * @see SHPRecord
 	 * @see SHXFile
 	 */
-	public SHPRecord getRecord(final int offset, final int length)
+	public SHPRecord getRecord(final long offset, final int length)
 			throws IndexOutOfBoundsException, IOException {
 		SHPRecord output = null;
 
@@ -84,21 +137,153 @@ public class SHPFile extends AbstractBinaryFile<SHPHeader> {
 					+ " bytes @ " + offset);
 		}
 
-		mfis.reset();
-		mfis.skip(offset);
-
 		final SHPRecordHeader recordHeader = getRecordHeader(offset);
 
-		final byte[] dataRead = new byte[length];
-		final int bytesRead = mfis.read(dataRead);
+		final ByteBuffer dataRead = read(offset
+				+ SHPParameters.SHP_RECORDHEADER_LENGTH, length);
 
-		if (bytesRead != length) {
-			throw new IOException("Unexpected data length read");
+		output = readRecord(dataRead);
+
+		output.setRecordHeader(recordHeader);
+
+		return output;
+	}
+
+	/**
+	 * Returns the WKB (little endian) representing the geometry of a record of
+	 * the SHP file, transcoded directly from the bytes of the record without
+	 * decoding it (defined by offset and length as the records in the SHP
+	 * file has variable lengths).
+	 *
+	 * @param offset
+	 *            the offset in bytes of the record to query (can be obtained
+	 *            using the SHX file)
+	 * @param length
+	 *            the length in bytes of the record to query (can be obtained
+	 *            using the SHX file)
+	 *
+	 * @return the WKB representing the geometry of the record (null for a
+	 *         null shape)
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no record that matches the given offset and
+	 *             length
+	 * @throws IOException
+	 *             if there is a problem reading the record
+	 *
+	 * @see SHPRecordReader#readRecordWKB(ByteBuffer)
+	 * @see SHXFile
+	 */
+	public byte[] getRecordWKB(final long offset, final int length)
+			throws IndexOutOfBoundsException, IOException {
+		if (offset < 0 || length <= 0) {
+			throw new IndexOutOfBoundsException("Requested: " + length
+					+ " bytes @ " + offset);
 		}
 
-		output = recordReader.readRecord(dataRead);
+		final ByteBuffer dataRead = read(offset
+				+ SHPParameters.SHP_RECORDHEADER_LENGTH, length);
 
-		output.setRecordHeader(recordHeader);
+		return recordReader.readRecordWKB(dataRead);
+	}
+
+	/**
+	 * Returns a forward-only cursor over all the records of the SHP file, read
+	 * sequentially in file order (without the SHX file).
+	 *
+	 * @return a cursor over all the records of the SHP file
+	 * @throws IOException
+	 *             if there is a problem querying the size of the file
+	 *
+	 * @see SHPRecordCursor
+	 */
+	public SHPRecordCursor openCursor() throws IOException {
+		return openCursor(SHPParameters.SHP_HEADER_LENGTH, size());
+	}
+
+	/**
+	 * Returns a forward-only cursor over the records of the SHP file between
+	 * two offsets, read sequentially in file order (without the SHX file).
+	 *
+	 * @param start
+	 *            the offset in bytes of the first record
+	 * @param end
+	 *            the offset in bytes following the last record
+	 * @return a cursor over the records of the SHP file between the offsets
+	 * @throws IOException
+	 *             if there is a problem querying the size of the file
+	 *
+	 * @see SHPRecordCursor
+	 */
+	public SHPRecordCursor openCursor(final long start, final long end)
+			throws IOException {
+		return openCursor(start, end, SHPRecordCursor.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Returns a forward-only cursor over the records of the SHP file between
+	 * two offsets, read sequentially in file order (without the SHX file).
+	 *
+	 * @param start
+	 *            the offset in bytes of the first record
+	 * @param end
+	 *            the offset in bytes following the last record
+	 * @param bufferSize
+	 *            the initial size in bytes of the buffer of the cursor
+	 * @return a cursor over the records of the SHP file between the offsets
+	 * @throws IOException
+	 *             if there is a problem querying the size of the file
+	 *
+	 * @see SHPRecordCursor
+	 */
+	public SHPRecordCursor openCursor(final long start, final long end,
+			final int bufferSize) throws IOException {
+		if (start < SHPParameters.SHP_HEADER_LENGTH || end < start
+				|| end > size()) {
+			throw new IndexOutOfBoundsException("Requested: " + start + " - "
+					+ end);
+		}
+
+		return new SHPRecordCursor(this, start, end, bufferSize);
+	}
+
+	/**
+	 * Returns a SHPRecordBounds object representing the shape type and the MBR
+	 * (Minimum bounding rectangle) of a record of the SHP file, reading only
+	 * the first bytes of its content and without decoding its geometry.
+	 *
+	 * @param offset
+	 *            the offset in bytes of the record to query (can be obtained
+	 *            using the SHX file)
+	 * @param length
+	 *            the length in bytes of the record to query (can be obtained
+	 *            using the SHX file)
+	 *
+	 * @return a SHPRecordBounds object representing the shape type and the MBR
+	 *         of a record of the SHP file
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no record that matches the given offset and
+	 *             length
+	 * @throws IOException
+	 *             if there is a problem reading the record
+	 *
+	 * @see SHPRecordBounds
+	 * @see SHXFile
+	 */
+	public SHPRecordBounds getRecordBounds(final long offset,
+			final int length)
+			throws IndexOutOfBoundsException, IOException {
+		SHPRecordBounds output = null;
+
+		if (offset < 0 || length <= 0) {
+			throw new IndexOutOfBoundsException("Requested: " + length
+					+ " bytes @ " + offset);
+		}
+
+		final ByteBuffer dataRead = read(offset
+				+ SHPParameters.SHP_RECORDHEADER_LENGTH, Math.min(length,
+				SHPParameters.SHP_RECORDBOUNDS_LENGTH));
+
+		output = recordReader.readRecordBounds(dataRead);
 
 		return output;
 	}
@@ -122,7 +307,7 @@ public class SHPFile extends AbstractBinaryFile<SHPHeader> {
 	 * @see SHPRecordHeader
 	 * @see SHXFile
 	 */
-	private SHPRecordHeader getRecordHeader(final int offset)
+	private SHPRecordHeader getRecordHeader(final long offset)
 			throws IndexOutOfBoundsException, IOException {
 		SHPRecordHeader output = null;
 
@@ -130,14 +315,145 @@ public class SHPFile extends AbstractBinaryFile<SHPHeader> {
 			throw new IndexOutOfBoundsException("Requested: " + offset);
 		}
 
-		final byte[] dataRead = new byte[SHPParameters.SHP_RECORDHEADER_LENGTH];
-		final int bytesRead = mfis.read(dataRead);
+		final ByteBuffer dataRead = read(offset,
+				SHPParameters.SHP_RECORDHEADER_LENGTH);
+
+		output = recordReader.readRecordHeader(dataRead);
 
-		if (bytesRead != SHPParameters.SHP_RECORDHEADER_LENGTH) {
-			throw new IOException("Unexpected data length read");
+		return output;
+	}
+
+	/**
+	 * Loads the coordinates of all the records of a Point SHP file (shape type
+	 * 1) into an in-memory store, reading the file sequentially in one pass
+	 * (without the SHX file and without building any record or geometry
+	 * object). The records are expected in file order, so the i-th record
+	 * read is the record number i. The bytes after the length stored in the
+	 * header (padding) are ignored.
+	 *
+	 * @return a SHPPointStore with the points of all the records
+	 * @throws UnsupportedOperationException
+	 *             if the shape type of the file is not Point
+	 * @throws IOException
+	 *             if there is a problem reading the records or the file or a
+	 *             record is truncated
+	 *
+	 * @see SHPPointStore
+	 */
+	public SHPPointStore loadPoints() throws UnsupportedOperationException,
+			IOException {
+		if (header.getShapeType() != 1) {
+			throw new UnsupportedOperationException(
+					"Shape type not allowed (not implemented): "
+							+ header.getShapeType());
 		}
 
-		output = recordReader.readRecordHeader(dataRead);
+		final long fileLength = header.getFileLength();
+		if (fileLength > size()) {
+			throw new IOException("Truncated SHP file: " + size()
+					+ " bytes instead of " + fileLength);
+		}
+		// A length shorter than the header is not valid (the file size is used)
+		final long size = fileLength >= SHPParameters.SHP_HEADER_LENGTH ? fileLength
+				: size();
+		// Exact if there are no null shapes
+		final SHPPointStore output = new SHPPointStore((int) Math.min(
+				(size - SHPParameters.SHP_HEADER_LENGTH) / POINT_RECORD_LENGTH,
+				Integer.MAX_VALUE / 2));
+
+		// The headers are big endian and the content is little endian
+		final ByteBuffer buffer = ByteBuffer
+				.allocate(LOAD_BUFFER_SIZE - LOAD_BUFFER_SIZE
+						% POINT_RECORD_LENGTH);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		long position = SHPParameters.SHP_HEADER_LENGTH;
+		while (position < size) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), size - position));
+			read(position, buffer);
+			final int limit = buffer.limit();
+
+			int offset = 0;
+			while (offset + SHPParameters.SHP_RECORDHEADER_LENGTH <= limit) {
+				// NOTE: The value stored is in 16-bit words
+				final int length = 2 * Integer.reverseBytes(buffer
+						.getInt(offset
+								+ SHPParameters.SHP_RECORDHEADER_RECORDLENGTH_OFFSET));
+				final int content = offset
+						+ SHPParameters.SHP_RECORDHEADER_LENGTH;
+				if (length < SHPParameters.SHP_INT_LENGTH) {
+					throw new IOException("Invalid record length: " + length);
+				}
+				if (content + length > limit) {
+					break;
+				}
+
+				final int shapeType = buffer.getInt(content);
+				if (shapeType == 1 && length < SHPParameters.SHP_POINT_LENGTH) {
+					throw new IOException("Truncated record: " + length
+							+ " bytes for a point");
+				} else if (shapeType == 1) {
+					output.add(buffer.getDouble(content
+							+ SHPParameters.SHP_POINT_X_OFFSET), buffer
+							.getDouble(content
+									+ SHPParameters.SHP_POINT_Y_OFFSET));
+				} else if (shapeType == 0) {
+					output.add(Double.NaN, Double.NaN);
+				} else {
+					throw new UnsupportedOperationException(
+							"Shape type not allowed (not implemented): "
+									+ shapeType);
+				}
+				offset = content + length;
+			}
+
+			// A record that does not fit in the rest of the file
+			if (offset == 0) {
+				throw new IOException("Unexpected data length read");
+			}
+			position += offset;
+		}
+
+		output.finish();
+
+		return output;
+	}
+
+	/**
+	 * Fills a ByteBuffer (from its position to its limit) with the bytes of
+	 * the SHP file starting at the requested position.
+	 *
+	 * @param position
+	 *            the position in the file of the first byte to read
+	 * @param dst
+	 *            the ByteBuffer to fill
+	 * @throws IOException
+	 *             if the requested bytes cannot be read completely
+	 */
+	void readChunk(final long position, final ByteBuffer dst)
+			throws IOException {
+		read(position, dst);
+	}
+
+	/**
+	 * Returns a SHPRecord object representing the content of a record (from
+	 * the position to the limit of the ByteBuffer).
+	 *
+	 * @param content
+	 *            the ByteBuffer holding the content of the record
+	 * @return a SHPRecord object representing the content of a record
+	 * @throws IOException
+	 *             if there is a problem reading the record
+	 */
+	SHPRecord readRecord(final ByteBuffer content) throws IOException {
+		SHPRecord output = null;
+
+		if (packedGeometry) {
+			output = recordReader.readPackedRecord(content);
+		} else {
+			output = recordReader.readRecord(content);
+		}
 
 		return output;
 	}
@@ -17,16 +17,19 @@
 package com.jummyshapefile.shp;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
 
 import com.jummyshapefile.shapefile.model.Geometry;
 import com.jummyshapefile.shapefile.model.MultiPoint;
 import com.jummyshapefile.shapefile.model.NullShape;
+import com.jummyshapefile.shapefile.model.PackedGeometry;
 import com.jummyshapefile.shapefile.model.Point;
 import com.jummyshapefile.shapefile.model.Polygon;
 import com.jummyshapefile.shapefile.model.Polyline;
-import com.jummyshapefile.utils.ByteUtils;
+import com.jummyshapefile.utils.WKBUtils;
 
 /**
  * Class that reads a geometry in a record of a SHP file.
@@ -45,6 +48,8 @@ import com.jummyshapefile.utils.ByteUtils;
  * https://en.m.wikipedia.org/wiki/Shapefile
  *
  * @see Geometry
+ * @see PackedGeometry
+ * @see WKBUtils
  */
 public class SHPGeometryReader {
 	/**
@@ -61,32 +66,56 @@ public class SHPGeometryReader {
 	 */
 	public Geometry readGeometry(final byte[] data, final int geometryType)
 			throws IOException {
+		if (data == null) {
+			throw new IllegalArgumentException("The byte array is null");
+		}
+
+		return readGeometry(ByteBuffer.wrap(data), geometryType);
+	}
+
+	/**
+	 * Returns a Geometry object representing the content of a record, reading
+	 * the coordinates directly from the ByteBuffer (using absolute positions,
+	 * so its position is not modified).
+	 *
+	 * @param data
+	 *            the ByteBuffer holding the content of the record (from its
+	 *            position to its limit); its byte order is changed to little
+	 *            endian
+	 *
+	 * @return a Geometry object representing the content of the record
+	 * @throws IOException
+	 *             if there is a problem reading the geometry
+	 *
+	 * @see Geometry
+	 */
+	public Geometry readGeometry(final ByteBuffer data, final int geometryType)
+			throws IOException {
 		Geometry output = null;
 
 		if (data == null) {
-			throw new IllegalArgumentException("The byte array is null");
+			throw new IllegalArgumentException("The ByteBuffer is null");
 		}
 
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		final int position = data.position()
+				+ SHPParameters.SHP_RECORDHEADER_SHAPETYPE_SIZE;
+
 		switch (geometryType) {
 		case 0:
-			output = readNullShape(data,
-					SHPParameters.SHP_RECORDHEADER_SHAPETYPE_SIZE);
+			output = readNullShape(data, position);
 			break;
 		case 1:
-			output = readPoint(data,
-					SHPParameters.SHP_RECORDHEADER_SHAPETYPE_SIZE);
+			output = readPoint(data, position);
 			break;
 		case 3:
-			output = readPolyline(data,
-					SHPParameters.SHP_RECORDHEADER_SHAPETYPE_SIZE);
+			output = readPolyline(data, position);
 			break;
 		case 5:
-			output = readPolygon(data,
-					SHPParameters.SHP_RECORDHEADER_SHAPETYPE_SIZE);
+			output = readPolygon(data, position);
 			break;
 		case 8:
-			output = readMultiPoint(data,
-					SHPParameters.SHP_RECORDHEADER_SHAPETYPE_SIZE);
+			output = readMultiPoint(data, position);
 			break;
 		default:
 			throw new UnsupportedOperationException(
@@ -98,139 +127,118 @@ public class SHPGeometryReader {
 	}
 
 	/**
-	 * Reads a null shape from a byte array.
+	 * Reads a null shape from a ByteBuffer.
 	 *
 	 * @param data
-	 *            the byte array
+	 *            the ByteBuffer (little endian)
 	 * @param offset
-	 *            the initial offset in the byte array
+	 *            the initial offset in the ByteBuffer
 	 *
-	 * @return a NullShape object representing the byte array
+	 * @return a NullShape object representing the ByteBuffer
 	 * @throws IOException
 	 *             if there is a problem reading the null shape
 	 *
 	 * @see Geometry
 	 * @see NullShape
 	 */
-	private Geometry readNullShape(final byte[] data, final int offset)
+	private Geometry readNullShape(final ByteBuffer data, final int offset)
 			throws IOException {
 		final Geometry output = new NullShape();
 
 		if (data == null) {
-			throw new IllegalArgumentException("The byte array is null");
+			throw new IllegalArgumentException("The ByteBuffer is null");
 		}
 
 		return output;
 	}
 
 	/**
-	 * Reads a point from a byte array.
+	 * Reads a point from a ByteBuffer.
 	 *
 	 * @param data
-	 *            the byte array
+	 *            the ByteBuffer (little endian)
 	 * @param offset
-	 *            the initial offset in the byte array
+	 *            the initial offset in the ByteBuffer
 	 *
-	 * @return a Point object representing the byte array
+	 * @return a Point object representing the ByteBuffer
 	 * @throws IOException
 	 *             if there is a problem reading the point
 	 *
 	 * @see Geometry
 	 * @see Point
 	 */
-	private Geometry readPoint(final byte[] data, final int offset)
+	private Geometry readPoint(final ByteBuffer data, final int offset)
 			throws IOException {
 		final Point output = new Point();
 
 		if (data == null) {
-			throw new IllegalArgumentException("The byte array is null");
+			throw new IllegalArgumentException("The ByteBuffer is null");
 		}
 
-		int off = offset;
+		final double x = data.getDouble(offset);
+		final double y = data.getDouble(offset
+				+ SHPParameters.SHP_DOUBLE_LENGTH);
 
-		output.setX(ByteUtils.readDoubleLeastSignificantFirst(data,
-				SHPParameters.SHP_DOUBLE_LENGTH, off));
-		off += SHPParameters.SHP_DOUBLE_LENGTH;
-
-		output.setY(ByteUtils.readDoubleLeastSignificantFirst(data,
-				SHPParameters.SHP_DOUBLE_LENGTH, off));
-
-		output.setMinX(output.getX());
-		output.setMinY(output.getY());
-		output.setMaxX(output.getX());
-		output.setMaxY(output.getY());
+		output.setX(x);
+		output.setY(y);
+		output.setMinX(x);
+		output.setMinY(y);
+		output.setMaxX(x);
+		output.setMaxY(y);
 
 		return output;
 	}
 
 	/**
-	 * Reads a polyline from a byte array.
+	 * Reads a polyline from a ByteBuffer.
 	 *
 	 * @param data
-	 *            the byte array
+	 *            the ByteBuffer (little endian)
 	 * @param offset
-	 *            the initial offset in the byte array
+	 *            the initial offset in the ByteBuffer
 	 *
-	 * @return a Polyline object representing the byte array
+	 * @return a Polyline object representing the ByteBuffer
 	 * @throws IOException
 	 *             if there is a problem reading the polyline
 	 *
 	 * @see Geometry
 	 * @see Polyline
 	 */
-	private Geometry readPolyline(final byte[] data, final int offset)
+	private Geometry readPolyline(final ByteBuffer data, final int offset)
 			throws IOException {
 		final Polyline output = new Polyline();
 
 		if (data == null) {
-			throw new IllegalArgumentException("The byte array is null");
+			throw new IllegalArgumentException("The ByteBuffer is null");
 		}
 
-		int off = offset;
-
-		output.setMinX(ByteUtils.readDoubleLeastSignificantFirst(data,
-				SHPParameters.SHP_DOUBLE_LENGTH, off));
-		off += SHPParameters.SHP_DOUBLE_LENGTH;
-
-		output.setMinY(ByteUtils.readDoubleLeastSignificantFirst(data,
-				SHPParameters.SHP_DOUBLE_LENGTH, off));
-		off += SHPParameters.SHP_DOUBLE_LENGTH;
-
-		output.setMaxX(ByteUtils.readDoubleLeastSignificantFirst(data,
-				SHPParameters.SHP_DOUBLE_LENGTH, off));
-		off += SHPParameters.SHP_DOUBLE_LENGTH;
-
-		output.setMaxY(ByteUtils.readDoubleLeastSignificantFirst(data,
-				SHPParameters.SHP_DOUBLE_LENGTH, off));
-		off += SHPParameters.SHP_DOUBLE_LENGTH;
+		int off = readBounds(data, offset, output);
 
-		final int numberOfParts = ByteUtils.readIntLeastSignificantFirst(data,
-				SHPParameters.SHP_INT_LENGTH, off);
+		final int numberOfParts = data.getInt(off);
 		off += SHPParameters.SHP_INT_LENGTH;
 
-		final int numberOfPoints = ByteUtils.readIntLeastSignificantFirst(data,
-				SHPParameters.SHP_INT_LENGTH, off);
+		final int numberOfPoints = data.getInt(off);
 		off += SHPParameters.SHP_INT_LENGTH;
 
 		final int[] partsArray = new int[numberOfParts];
 		for (int i = 0; i < numberOfParts; i++) {
-			final int numPointsPart = ByteUtils.readIntLeastSignificantFirst(
-					data, SHPParameters.SHP_INT_LENGTH, off);
+			partsArray[i] = data.getInt(off);
 			off += SHPParameters.SHP_INT_LENGTH;
-			partsArray[i] = numPointsPart;
 		}
 
-		final List<List<Point>> parts = new ArrayList<List<Point>>();
+		final List<List<Point>> parts = new ArrayList<List<Point>>(
+				numberOfParts);
 		int numberOfPointsRead = 0;
 
 		for (int i = 0; i < partsArray.length; i++) {
-			final List<Point> points = new ArrayList<Point>();
-
 			int numberOfPointsInPart = numberOfPoints - numberOfPointsRead;
 			if (i < partsArray.length - 1) {
 				numberOfPointsInPart = partsArray[i + 1] - partsArray[i];
 			}
 
+			final List<Point> points = new ArrayList<Point>(
+					Math.max(numberOfPointsInPart, 0));
+
 			for (int j = 0; j < numberOfPointsInPart; j++) {
 				points.add((Point) readPoint(data, off));
 				numberOfPointsRead++;
@@ -246,26 +254,26 @@ public class SHPGeometryReader {
 	}
 
 	/**
-	 * Reads a polygon from a byte array.
+	 * Reads a polygon from a ByteBuffer.
 	 *
 	 * @param data
-	 *            the byte array
+	 *            the ByteBuffer (little endian)
 	 * @param offset
-	 *            the initial offset in the byte array
+	 *            the initial offset in the ByteBuffer
 	 *
-	 * @return a Polygon object representing the byte array
+	 * @return a Polygon object representing the ByteBuffer
 	 * @throws IOException
 	 *             if there is a problem reading the polygon
 	 *
 	 * @see Geometry
 	 * @see Polygon
 	 */
-	private Geometry readPolygon(final byte[] data, final int offset)
+	private Geometry readPolygon(final ByteBuffer data, final int offset)
 			throws IOException {
 		final Polygon output = new Polygon();
 
 		if (data == null) {
-			throw new IllegalArgumentException("The byte array is null");
+			throw new IllegalArgumentException("The ByteBuffer is null");
 		}
 
 		final Polyline polyline = (Polyline) readPolyline(data, offset);
@@ -279,58 +287,400 @@ public class SHPGeometryReader {
 	}
 
 	/**
-	 * Reads a multipoint from a byte array.
+	 * Reads a multipoint from a ByteBuffer.
 	 *
 	 * @param data
-	 *            the byte array
+	 *            the ByteBuffer (little endian)
 	 * @param offset
-	 *            the initial offset in the byte array
+	 *            the initial offset in the ByteBuffer
 	 *
-	 * @return a MultiPoint object representing the byte array
+	 * @return a MultiPoint object representing the ByteBuffer
 	 * @throws IOException
 	 *             if there is a problem reading the multipoint
 	 *
 	 * @see Geometry
 	 * @see MultiPoint
 	 */
-	private Geometry readMultiPoint(final byte[] data, final int offset)
+	private Geometry readMultiPoint(final ByteBuffer data, final int offset)
 			throws IOException {
 		final MultiPoint output = new MultiPoint();
 
 		if (data == null) {
-			throw new IllegalArgumentException("The byte array is null");
+			throw new IllegalArgumentException("The ByteBuffer is null");
+		}
+
+		int off = readBounds(data, offset, output);
+
+		final int numberOfPoints = data.getInt(off);
+		off += SHPParameters.SHP_INT_LENGTH;
+
+		final List<Point> points = new ArrayList<Point>(Math.max(
+				numberOfPoints, 0));
+
+		for (int i = 0; i < numberOfPoints; i++) {
+			points.add((Point) readPoint(data, off));
+			off += 2 * SHPParameters.SHP_DOUBLE_LENGTH;
 		}
 
+		output.setPoints(points);
+
+		return output;
+	}
+
+	/**
+	 * Reads the MBR (minX, minY, maxX, maxY) of a geometry from a ByteBuffer.
+	 *
+	 * @param data
+	 *            the ByteBuffer (little endian)
+	 * @param offset
+	 *            the initial offset in the ByteBuffer
+	 * @param geometry
+	 *            the Geometry to set the MBR to
+	 *
+	 * @return the offset in the ByteBuffer after the MBR
+	 */
+	private int readBounds(final ByteBuffer data, final int offset,
+			final Geometry geometry) {
 		int off = offset;
 
-		output.setMinX(ByteUtils.readDoubleLeastSignificantFirst(data,
-				SHPParameters.SHP_DOUBLE_LENGTH, off));
+		geometry.setMinX(data.getDouble(off));
 		off += SHPParameters.SHP_DOUBLE_LENGTH;
 
-		output.setMinY(ByteUtils.readDoubleLeastSignificantFirst(data,
-				SHPParameters.SHP_DOUBLE_LENGTH, off));
+		geometry.setMinY(data.getDouble(off));
 		off += SHPParameters.SHP_DOUBLE_LENGTH;
 
-		output.setMaxX(ByteUtils.readDoubleLeastSignificantFirst(data,
-				SHPParameters.SHP_DOUBLE_LENGTH, off));
+		geometry.setMaxX(data.getDouble(off));
 		off += SHPParameters.SHP_DOUBLE_LENGTH;
 
-		output.setMaxY(ByteUtils.readDoubleLeastSignificantFirst(data,
-				SHPParameters.SHP_DOUBLE_LENGTH, off));
+		geometry.setMaxY(data.getDouble(off));
 		off += SHPParameters.SHP_DOUBLE_LENGTH;
 
-		final int numberOfPoints = ByteUtils.readIntLeastSignificantFirst(data,
-				SHPParameters.SHP_INT_LENGTH, off);
-		off += SHPParameters.SHP_INT_LENGTH;
+		return off;
+	}
 
-		final List<Point> points = new ArrayList<Point>();
+	/**
+	 * Returns a PackedGeometry object (or a NullShape object for a null shape)
+	 * representing the content of a record, copying all the coordinates at
+	 * once.
+	 *
+	 * @param data
+	 *            the ByteBuffer holding the content of the record (from its
+	 *            position to its limit); its byte order is changed to little
+	 *            endian
+	 * @param geometryType
+	 *            the shape type of the record
+	 *
+	 * @return a PackedGeometry object representing the content of the record
+	 * @throws IOException
+	 *             if the ByteBuffer is too short for the geometry
+	 *
+	 * @see PackedGeometry
+	 */
+	public Geometry readPackedGeometry(final ByteBuffer data,
+			final int geometryType) throws IOException {
+		Geometry output = null;
 
-		for (int i = 0; i < numberOfPoints; i++) {
-			points.add((Point) readPoint(data, off));
-			off += 2 * SHPParameters.SHP_DOUBLE_LENGTH;
+		if (data == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
 		}
 
-		output.setPoints(points);
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		final int start = data.position();
+		final int length = data.remaining();
+		int off = SHPParameters.SHP_RECORDHEADER_SHAPETYPE_SIZE;
+
+		switch (geometryType) {
+		case 0:
+			output = new NullShape();
+			break;
+		case 1:
+			final PackedGeometry point = new PackedGeometry();
+			point.setShapeType(geometryType);
+			point.setXY(readCoordinates(data, start + off, 1, length - off));
+			point.setMinX(point.getX(0));
+			point.setMinY(point.getY(0));
+			point.setMaxX(point.getX(0));
+			point.setMaxY(point.getY(0));
+			output = point;
+			break;
+		case 3:
+		case 5:
+		case 8:
+			if (length < SHPParameters.SHP_RECORDBOUNDS_LENGTH
+					+ SHPParameters.SHP_INT_LENGTH) {
+				throw new IOException("Unexpected data length read");
+			}
+
+			final PackedGeometry geometry = new PackedGeometry();
+			geometry.setShapeType(geometryType);
+			geometry.setMinX(data.getDouble(start + off));
+			off += SHPParameters.SHP_DOUBLE_LENGTH;
+			geometry.setMinY(data.getDouble(start + off));
+			off += SHPParameters.SHP_DOUBLE_LENGTH;
+			geometry.setMaxX(data.getDouble(start + off));
+			off += SHPParameters.SHP_DOUBLE_LENGTH;
+			geometry.setMaxY(data.getDouble(start + off));
+			off += SHPParameters.SHP_DOUBLE_LENGTH;
+
+			int numberOfParts = 0;
+			if (geometryType != 8) {
+				numberOfParts = data.getInt(start + off);
+				off += SHPParameters.SHP_INT_LENGTH;
+			}
+			if (length < off + SHPParameters.SHP_INT_LENGTH) {
+				throw new IOException("Unexpected data length read");
+			}
+			final int numberOfPoints = data.getInt(start + off);
+			off += SHPParameters.SHP_INT_LENGTH;
+
+			if (numberOfParts < 0
+					|| numberOfParts > (length - off)
+							/ SHPParameters.SHP_INT_LENGTH) {
+				throw new IOException("Unexpected data length read");
+			}
+			// The parts must start at the first point, not overlap and not
+			// start past the last point
+			final int[] partOffsets = new int[numberOfParts];
+			int previous = 0;
+			for (int i = 0; i < numberOfParts; i++) {
+				final int partOffset = data.getInt(start + off);
+				if (partOffset < previous || partOffset >= numberOfPoints
+						|| (i == 0 && partOffset != 0)) {
+					throw new IOException("Unexpected part offset read: "
+							+ partOffset);
+				}
+				partOffsets[i] = partOffset;
+				previous = partOffset;
+				off += SHPParameters.SHP_INT_LENGTH;
+			}
+
+			geometry.setPartOffsets(partOffsets);
+			geometry.setXY(readCoordinates(data, start + off, numberOfPoints,
+					length - off));
+			output = geometry;
+			break;
+		default:
+			throw new UnsupportedOperationException(
+					"Geometry type not allowed (not implemented): "
+							+ geometryType);
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the WKB (little endian) representing the content of a record,
+	 * transcoded directly from the ByteBuffer without decoding the geometry:
+	 * as both formats store the coordinates as little endian doubles, they
+	 * are copied in bulk.
+	 * <p>
+	 * The WKB is the same returned by WKBUtils.geometry2WKB() for the decoded
+	 * geometry.
+	 *
+	 * @param data
+	 *            the ByteBuffer holding the content of the record (from its
+	 *            position to its limit); its byte order is changed to little
+	 *            endian
+	 * @param geometryType
+	 *            the shape type of the record
+	 *
+	 * @return the WKB representing the content of the record (null for a null
+	 *         shape)
+	 * @throws IOException
+	 *             if the ByteBuffer is too short for the geometry or its
+	 *             parts are not valid
+	 *
+	 * @see WKBUtils
+	 */
+	public byte[] readWKB(final ByteBuffer data, final int geometryType)
+			throws IOException {
+		byte[] output = null;
+
+		if (data == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
+		}
+
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		final int start = data.position();
+		final int length = data.remaining();
+		int off = SHPParameters.SHP_RECORDHEADER_SHAPETYPE_SIZE;
+
+		switch (geometryType) {
+		case 0:
+			break;
+		case 1:
+			if (length < SHPParameters.SHP_POINT_LENGTH) {
+				throw new IOException("Unexpected data length read");
+			}
+
+			output = new byte[WKBUtils.WKB_POINT_LENGTH];
+			final ByteBuffer point = ByteBuffer.wrap(output).order(
+					ByteOrder.LITTLE_ENDIAN);
+			WKBUtils.writeHeader(point, WKBUtils.WKB_POINT);
+			copyCoordinates(data, start + off, 1, point);
+			break;
+		case 3:
+		case 5:
+		case 8:
+			if (length < SHPParameters.SHP_RECORDBOUNDS_LENGTH
+					+ SHPParameters.SHP_INT_LENGTH) {
+				throw new IOException("Unexpected data length read");
+			}
+			off = SHPParameters.SHP_RECORDBOUNDS_LENGTH;
+
+			int numberOfParts = 0;
+			if (geometryType != 8) {
+				numberOfParts = data.getInt(start + off);
+				off += SHPParameters.SHP_INT_LENGTH;
+			}
+			if (length < off + SHPParameters.SHP_INT_LENGTH) {
+				throw new IOException("Unexpected data length read");
+			}
+			final int numberOfPoints = data.getInt(start + off);
+			off += SHPParameters.SHP_INT_LENGTH;
+
+			if (numberOfParts < 0
+					|| numberOfParts > (length - off)
+							/ SHPParameters.SHP_INT_LENGTH) {
+				throw new IOException("Unexpected data length read");
+			}
+			final int parts = start + off;
+			off += numberOfParts * SHPParameters.SHP_INT_LENGTH;
+
+			if (numberOfPoints < 0
+					|| numberOfPoints > (length - off)
+							/ (2 * SHPParameters.SHP_DOUBLE_LENGTH)) {
+				throw new IOException("Unexpected data length read");
+			}
+			final int points = start + off;
+
+			// The parts must start at the first point and not overlap
+			int previous = 0;
+			for (int i = 0; i < numberOfParts; i++) {
+				final int partOffset = data.getInt(parts + i
+						* SHPParameters.SHP_INT_LENGTH);
+				if (partOffset < previous || partOffset > numberOfPoints
+						|| (i == 0 && partOffset != 0)) {
+					throw new IOException("Unexpected part offset read: "
+							+ partOffset);
+				}
+				previous = partOffset;
+			}
+
+			output = new byte[WKBUtils.getWKBLength(geometryType,
+					numberOfParts, numberOfPoints)];
+			final ByteBuffer wkb = ByteBuffer.wrap(output).order(
+					ByteOrder.LITTLE_ENDIAN);
+
+			if (geometryType == 8) {
+				WKBUtils.writeHeader(wkb, WKBUtils.WKB_MULTIPOINT);
+				wkb.putInt(numberOfPoints);
+				for (int i = 0; i < numberOfPoints; i++) {
+					WKBUtils.writeHeader(wkb, WKBUtils.WKB_POINT);
+					copyCoordinates(data, points + i * 2
+							* SHPParameters.SHP_DOUBLE_LENGTH, 1, wkb);
+				}
+			} else if (numberOfParts == 0 || numberOfPoints == 0) {
+				WKBUtils.writeHeader(wkb,
+						geometryType == 3 ? WKBUtils.WKB_LINESTRING
+								: WKBUtils.WKB_POLYGON);
+				wkb.putInt(0);
+			} else if (geometryType == 3 && numberOfParts == 1) {
+				WKBUtils.writeHeader(wkb, WKBUtils.WKB_LINESTRING);
+				wkb.putInt(numberOfPoints);
+				copyCoordinates(data, points, numberOfPoints, wkb);
+			} else {
+				WKBUtils.writeHeader(wkb,
+						geometryType == 3 ? WKBUtils.WKB_MULTILINESTRING
+								: WKBUtils.WKB_POLYGON);
+				wkb.putInt(numberOfParts);
+				for (int i = 0; i < numberOfParts; i++) {
+					final int first = data.getInt(parts + i
+							* SHPParameters.SHP_INT_LENGTH);
+					final int last = i < numberOfParts - 1 ? data.getInt(parts
+							+ (i + 1) * SHPParameters.SHP_INT_LENGTH)
+							: numberOfPoints;
+
+					if (geometryType == 3) {
+						WKBUtils.writeHeader(wkb, WKBUtils.WKB_LINESTRING);
+					}
+					wkb.putInt(last - first);
+					copyCoordinates(data, points + first * 2
+							* SHPParameters.SHP_DOUBLE_LENGTH, last - first,
+							wkb);
+				}
+			}
+			break;
+		default:
+			throw new UnsupportedOperationException(
+					"Geometry type not allowed (not implemented): "
+							+ geometryType);
+		}
+
+		return output;
+	}
+
+	/**
+	 * Copies the coordinates of several points (x0, y0, x1, y1...) from a
+	 * ByteBuffer to another one, as they are (both little endian).
+	 *
+	 * @param data
+	 *            the ByteBuffer to copy the coordinates from
+	 * @param position
+	 *            the position of the first coordinate in the ByteBuffer
+	 * @param numberOfPoints
+	 *            the number of points to copy
+	 * @param dst
+	 *            the ByteBuffer to copy the coordinates to (from its
+	 *            position, which is advanced)
+	 */
+	private void copyCoordinates(final ByteBuffer data, final int position,
+			final int numberOfPoints, final ByteBuffer dst) {
+		if (numberOfPoints == 1) {
+			// Cheaper than a duplicate for a single point
+			dst.putLong(data.getLong(position));
+			dst.putLong(data.getLong(position
+					+ SHPParameters.SHP_DOUBLE_LENGTH));
+		} else if (numberOfPoints > 1) {
+			final ByteBuffer coordinates = data.duplicate();
+			coordinates.limit(position + numberOfPoints * 2
+					* SHPParameters.SHP_DOUBLE_LENGTH);
+			coordinates.position(position);
+			dst.put(coordinates);
+		}
+	}
+
+	/**
+	 * Reads the coordinates of several points (x0, y0, x1, y1...) from a
+	 * ByteBuffer at once.
+	 *
+	 * @param data
+	 *            the ByteBuffer (little endian)
+	 * @param position
+	 *            the position of the first coordinate in the ByteBuffer
+	 * @param numberOfPoints
+	 *            the number of points to read
+	 * @param available
+	 *            the number of bytes available from the position
+	 *
+	 * @return the coordinates of the points
+	 * @throws IOException
+	 *             if there are not enough bytes available
+	 */
+	private double[] readCoordinates(final ByteBuffer data,
+			final int position, final int numberOfPoints, final int available)
+			throws IOException {
+		if (numberOfPoints < 0
+				|| numberOfPoints > available
+						/ (2 * SHPParameters.SHP_DOUBLE_LENGTH)) {
+			throw new IOException("Unexpected data length read");
+		}
+
+		final double[] output = new double[2 * numberOfPoints];
+
+		final ByteBuffer coordinates = data.duplicate();
+		coordinates.position(position);
+		coordinates.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(output);
 
 		return output;
 	}
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.shp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shapefile.model.MultiPoint;
+import com.jummyshapefile.shapefile.model.NullShape;
+import com.jummyshapefile.shapefile.model.PackedGeometry;
+import com.jummyshapefile.shapefile.model.Point;
+import com.jummyshapefile.shapefile.model.Polygon;
+import com.jummyshapefile.shapefile.model.Polyline;
+
+/**
+ * Class that writes a geometry as the content of a record of a SHP file (the
+ * inverse of SHPGeometryReader).
+ * <p>
+ * Takes into account only the following shape types (defined by the ESRI
+ * Shapefile format):
+ * <ul>
+ * <li>0 Null shape
+ * <li>1 Point
+ * <li>3 Polyline
+ * <li>5 Polygon
+ * <li>8 MultiPoint
+ * </ul>
+ * The MBR written for each geometry is computed from its coordinates.
+ *
+ * @see SHPGeometryReader
+ * @see Geometry
+ * @see PackedGeometry
+ */
+public class SHPGeometryWriter {
+	/**
+	 * Returns the shape type of a Geometry.
+	 *
+	 * @param geometry
+	 *            the Geometry (null for a null shape)
+	 * @return the shape type of the Geometry
+	 * @throws UnsupportedOperationException
+	 *             if the Geometry cannot be written to a SHP file
+	 *
+	 * @see Geometry
+	 */
+	public static int getShapeType(final Geometry geometry) {
+		int output = 0;
+
+		if (geometry == null || geometry instanceof NullShape) {
+			output = 0;
+		} else if (geometry instanceof Point) {
+			output = 1;
+		}
+		// As Polygon extends Polyline, check Polygon first
+		else if (geometry instanceof Polygon) {
+			output = 5;
+		} else if (geometry instanceof Polyline) {
+			output = 3;
+		} else if (geometry instanceof MultiPoint) {
+			output = 8;
+		} else if (geometry instanceof PackedGeometry) {
+			output = ((PackedGeometry) geometry).getShapeType();
+		} else {
+			throw new UnsupportedOperationException(
+					"Geometry not allowed (not implemented): "
+							+ geometry.getClass().getName());
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the length in bytes of the content of the record representing a
+	 * Geometry (including its shape type).
+	 *
+	 * @param geometry
+	 *            the Geometry (null for a null shape)
+	 * @return the length in bytes of the content of the record
+	 * @throws UnsupportedOperationException
+	 *             if the Geometry cannot be written to a SHP file
+	 *
+	 * @see Geometry
+	 */
+	public int getContentLength(final Geometry geometry) {
+		int output = SHPParameters.SHP_RECORDHEADER_SHAPETYPE_SIZE;
+
+		final int shapeType = getShapeType(geometry);
+		switch (shapeType) {
+		case 0:
+			break;
+		case 1:
+			output = SHPParameters.SHP_POINT_LENGTH;
+			break;
+		case 3:
+		case 5:
+			output = SHPParameters.SHP_RECORDBOUNDS_LENGTH + 2
+					* SHPParameters.SHP_INT_LENGTH + getNumParts(geometry)
+					* SHPParameters.SHP_INT_LENGTH + getNumPoints(geometry) * 2
+					* SHPParameters.SHP_DOUBLE_LENGTH;
+			break;
+		case 8:
+			output = SHPParameters.SHP_RECORDBOUNDS_LENGTH
+					+ SHPParameters.SHP_INT_LENGTH + getNumPoints(geometry) * 2
+					* SHPParameters.SHP_DOUBLE_LENGTH;
+			break;
+		default:
+			throw new UnsupportedOperationException(
+					"Geometry type not allowed (not implemented): "
+							+ shapeType);
+		}
+
+		return output;
+	}
+
+	/**
+	 * Writes a Geometry as the content of a record (see getContentLength()).
+	 *
+	 * @param geometry
+	 *            the Geometry (null for a null shape)
+	 * @param data
+	 *            the ByteBuffer to write the content to (from its position,
+	 *            which is advanced); its byte order is changed to little
+	 *            endian
+	 * @throws UnsupportedOperationException
+	 *             if the Geometry cannot be written to a SHP file
+	 *
+	 * @see Geometry
+	 */
+	public void writeGeometry(final Geometry geometry, final ByteBuffer data) {
+		if (data == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
+		}
+
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		final int shapeType = getShapeType(geometry);
+		data.putInt(shapeType);
+
+		switch (shapeType) {
+		case 0:
+			break;
+		case 1:
+			if (geometry instanceof Point) {
+				data.putDouble(((Point) geometry).getX());
+				data.putDouble(((Point) geometry).getY());
+			} else {
+				data.putDouble(((PackedGeometry) geometry).getX(0));
+				data.putDouble(((PackedGeometry) geometry).getY(0));
+			}
+			break;
+		case 3:
+		case 5:
+			if (geometry instanceof Polyline) {
+				writePolyline((Polyline) geometry, data);
+			} else {
+				writePacked((PackedGeometry) geometry, data);
+			}
+			break;
+		case 8:
+			if (geometry instanceof MultiPoint) {
+				writeMultiPoint((MultiPoint) geometry, data);
+			} else {
+				writePacked((PackedGeometry) geometry, data);
+			}
+			break;
+		default:
+			throw new UnsupportedOperationException(
+					"Geometry type not allowed (not implemented): "
+							+ shapeType);
+		}
+	}
+
+	/**
+	 * Writes a polyline or a polygon (after its shape type).
+	 *
+	 * @param polyline
+	 *            the Polyline or Polygon
+	 * @param data
+	 *            the ByteBuffer (little endian)
+	 */
+	private void writePolyline(final Polyline polyline, final ByteBuffer data) {
+		final List<List<Point>> parts = polyline.getParts();
+
+		final double[] bounds = newBounds();
+		if (parts != null) {
+			for (final List<Point> points : parts) {
+				addBounds(points, bounds);
+			}
+		}
+		writeBounds(bounds, data);
+
+		data.putInt(getNumParts(polyline));
+		data.putInt(getNumPoints(polyline));
+		if (parts != null) {
+			int first = 0;
+			for (final List<Point> points : parts) {
+				data.putInt(first);
+				first += points != null ? points.size() : 0;
+			}
+			for (final List<Point> points : parts) {
+				writePoints(points, data);
+			}
+		}
+	}
+
+	/**
+	 * Writes a multipoint (after its shape type).
+	 *
+	 * @param multipoint
+	 *            the MultiPoint
+	 * @param data
+	 *            the ByteBuffer (little endian)
+	 */
+	private void writeMultiPoint(final MultiPoint multipoint,
+			final ByteBuffer data) {
+		final List<Point> points = multipoint.getPoints();
+
+		final double[] bounds = newBounds();
+		addBounds(points, bounds);
+		writeBounds(bounds, data);
+
+		data.putInt(getNumPoints(multipoint));
+		writePoints(points, data);
+	}
+
+	/**
+	 * Writes a PackedGeometry polyline, polygon or multipoint (after its shape
+	 * type).
+	 *
+	 * @param packed
+	 *            the PackedGeometry
+	 * @param data
+	 *            the ByteBuffer (little endian)
+	 */
+	private void writePacked(final PackedGeometry packed, final ByteBuffer data) {
+		final int numPoints = packed.getNumPoints();
+
+		final double[] bounds = newBounds();
+		for (int i = 0; i < numPoints; i++) {
+			addBounds(packed.getX(i), packed.getY(i), bounds);
+		}
+		writeBounds(bounds, data);
+
+		if (packed.getShapeType() != 8) {
+			data.putInt(packed.getNumParts());
+		}
+		data.putInt(numPoints);
+		if (packed.getShapeType() != 8) {
+			for (int i = 0; i < packed.getNumParts(); i++) {
+				data.putInt(packed.getPartStart(i));
+			}
+		}
+		for (int i = 0; i < numPoints; i++) {
+			data.putDouble(packed.getX(i));
+			data.putDouble(packed.getY(i));
+		}
+	}
+
+	/**
+	 * Writes the coordinates of a list of points.
+	 *
+	 * @param points
+	 *            the points (null is written as no points)
+	 * @param data
+	 *            the ByteBuffer (little endian)
+	 */
+	private void writePoints(final List<Point> points, final ByteBuffer data) {
+		if (points != null) {
+			for (final Point point : points) {
+				data.putDouble(point.getX());
+				data.putDouble(point.getY());
+			}
+		}
+	}
+
+	/**
+	 * Returns an empty MBR (minX, minY, maxX, maxY).
+	 *
+	 * @return an empty MBR
+	 */
+	private static double[] newBounds() {
+		return new double[] { Double.POSITIVE_INFINITY,
+				Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+				Double.NEGATIVE_INFINITY };
+	}
+
+	/**
+	 * Expands a MBR to contain a list of points.
+	 *
+	 * @param points
+	 *            the points (null for no points)
+	 * @param bounds
+	 *            the MBR (minX, minY, maxX, maxY)
+	 */
+	private static void addBounds(final List<Point> points,
+			final double[] bounds) {
+		if (points != null) {
+			for (final Point point : points) {
+				addBounds(point.getX(), point.getY(), bounds);
+			}
+		}
+	}
+
+	/**
+	 * Expands a MBR to contain a point.
+	 *
+	 * @param x
+	 *            the X coordinate of the point
+	 * @param y
+	 *            the Y coordinate of the point
+	 * @param bounds
+	 *            the MBR (minX, minY, maxX, maxY)
+	 */
+	private static void addBounds(final double x, final double y,
+			final double[] bounds) {
+		bounds[0] = Math.min(bounds[0], x);
+		bounds[1] = Math.min(bounds[1], y);
+		bounds[2] = Math.max(bounds[2], x);
+		bounds[3] = Math.max(bounds[3], y);
+	}
+
+	/**
+	 * Writes a MBR (0, 0, 0, 0 if it is empty).
+	 *
+	 * @param bounds
+	 *            the MBR (minX, minY, maxX, maxY)
+	 * @param data
+	 *            the ByteBuffer (little endian)
+	 */
+	private static void writeBounds(final double[] bounds,
+			final ByteBuffer data) {
+		final boolean empty = bounds[0] > bounds[2];
+		for (final double bound : bounds) {
+			data.putDouble(empty ? 0 : bound);
+		}
+	}
+
+	/**
+	 * Returns the number of parts of a polyline or a polygon.
+	 *
+	 * @param geometry
+	 *            the Polyline, Polygon or PackedGeometry
+	 * @return the number of parts
+	 */
+	private static int getNumParts(final Geometry geometry) {
+		int output = 0;
+
+		if (geometry instanceof Polyline) {
+			final List<List<Point>> parts = ((Polyline) geometry).getParts();
+			output = parts != null ? parts.size() : 0;
+		} else if (geometry instanceof PackedGeometry) {
+			output = ((PackedGeometry) geometry).getNumParts();
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the number of points of a polyline, a polygon or a multipoint.
+	 *
+	 * @param geometry
+	 *            the Polyline, Polygon, MultiPoint or PackedGeometry
+	 * @return the number of points
+	 */
+	private static int getNumPoints(final Geometry geometry) {
+		int output = 0;
+
+		if (geometry instanceof Polyline) {
+			final List<List<Point>> parts = ((Polyline) geometry).getParts();
+			if (parts != null) {
+				for (final List<Point> points : parts) {
+					output += points != null ? points.size() : 0;
+				}
+			}
+		} else if (geometry instanceof MultiPoint) {
+			final List<Point> points = ((MultiPoint) geometry).getPoints();
+			output = points != null ? points.size() : 0;
+		} else if (geometry instanceof PackedGeometry) {
+			output = ((PackedGeometry) geometry).getNumPoints();
+		}
+
+		return output;
+	}
+}
@@ -53,6 +53,10 @@ public class SHPHeaderReader implements BinaryFileHeaderReader<SHPHeader> {
 		final int read = is.read(headerBytes);
 		if (read == SHPParameters.SHP_HEADER_LENGTH) {
 			header = new SHPHeader();
+			// NOTE: The length stored is in 16-bit words (big endian)
+			header.setFileLength(2L * ByteUtils.readInt(headerBytes,
+					SHPParameters.SHP_HEADER_FILELENGTH_SIZE,
+					SHPParameters.SHP_HEADER_FILELENGTH_OFFSET));
 			header.setShapeType(ByteUtils.readIntLeastSignificantFirst(
 					headerBytes, SHPParameters.SHP_HEADER_SHAPETYPE_SIZE,
 					SHPParameters.SHP_HEADER_SHAPETYPE_OFFSET));
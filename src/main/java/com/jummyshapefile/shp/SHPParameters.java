@@ -19,6 +19,13 @@ package com.jummyshapefile.shp;
 public final class SHPParameters {
 	public static final int SHP_HEADER_LENGTH = 100;
 
+	public static final int SHP_HEADER_FILECODE_OFFSET = 0;
+	public static final int SHP_HEADER_FILECODE = 9994;
+	public static final int SHP_HEADER_FILELENGTH_OFFSET = 24;
+	public static final int SHP_HEADER_FILELENGTH_SIZE = 4;
+	public static final int SHP_HEADER_VERSION_OFFSET = 28;
+	public static final int SHP_HEADER_VERSION = 1000;
+
 	public static final int SHP_HEADER_SHAPETYPE_OFFSET = 32;
 	public static final int SHP_HEADER_SHAPETYPE_SIZE = 4;
 
@@ -51,6 +58,15 @@ public final class SHPParameters {
 	public static final int SHP_RECORDHEADER_SHAPETYPE_OFFSET = 0;
 	public static final int SHP_RECORDHEADER_SHAPECONTENT_OFFSET = 4;
 
+	public static final int SHP_RECORDBOUNDS_LENGTH = 36;
+	public static final int SHP_RECORDBOUNDS_MINX_OFFSET = 4;
+	public static final int SHP_RECORDBOUNDS_MINY_OFFSET = 12;
+	public static final int SHP_RECORDBOUNDS_MAXX_OFFSET = 20;
+	public static final int SHP_RECORDBOUNDS_MAXY_OFFSET = 28;
+	public static final int SHP_POINT_LENGTH = 20;
+	public static final int SHP_POINT_X_OFFSET = 4;
+	public static final int SHP_POINT_Y_OFFSET = 12;
+
 	public static final int SHP_DOUBLE_LENGTH = 8;
 	public static final int SHP_INT_LENGTH = 4;
 }
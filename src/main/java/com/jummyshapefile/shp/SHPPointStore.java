@@ -0,0 +1,514 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.shp;
+
+import java.util.Arrays;
+
+import com.jummyshapefile.index.SpatialIndex;
+
+/**
+ * In-memory store with the coordinates of all the records of a Point SHP file
+ * (shape type 1), loaded in one sequential pass (see SHPFile.loadPoints()).
+ * <p>
+ * The coordinates are stored in a single double[] with the X and Y of each
+ * record interleaved (the record i + 1 at the positions 2 * i and 2 * i + 1),
+ * so each point takes 16 bytes instead of the Entity, SHPRecord,
+ * SHPRecordHeader, Point and SHXRecord objects of a lookup. The coordinates
+ * of null shapes are stored as NaN and flagged as null (see isNull()).
+ * <p>
+ * The points are indexed by a static KD-tree (an int[] with the indexes of
+ * the points, 4 bytes per point, ordered as an implicit balanced tree), used
+ * by the rectangle and nearest neighbour queries. The store is also a
+ * SpatialIndex, so it can be set as the spatial index of the shapefile.
+ * <p>
+ * The arrays returned are not copied, so they must not be modified. Once
+ * loaded, the store can be read concurrently from several threads.
+ *
+ * @see SHPFile#loadPoints()
+ * @see SpatialIndex
+ */
+public class SHPPointStore implements SpatialIndex {
+	// Largest number of points that fit in a double[] with two per point
+	private static final int MAX_RECORDS = (Integer.MAX_VALUE - 8) / 2;
+
+	private double[] coordinates;
+	private int recordCount;
+	private int[] tree;
+	private int treeSize;
+
+	/**
+	 * Creates an empty store for the points of a SHP file.
+	 *
+	 * @param capacity
+	 *            the expected number of records
+	 */
+	SHPPointStore(final int capacity) {
+		coordinates = new double[2 * Math.max(capacity, 16)];
+	}
+
+	/**
+	 * Returns the number of records stored (including null shapes).
+	 *
+	 * @return the number of records stored
+	 */
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Returns the number of points stored (excluding null shapes).
+	 *
+	 * @return the number of points stored
+	 */
+	public int getPointCount() {
+		return treeSize;
+	}
+
+	/**
+	 * Returns the X and Y of all the records interleaved (the record i + 1 at
+	 * the positions 2 * i and 2 * i + 1). The array is not copied and may be
+	 * longer than twice the number of records.
+	 *
+	 * @return the X and Y of all the records interleaved
+	 */
+	public double[] getCoordinates() {
+		return coordinates;
+	}
+
+	/**
+	 * Returns the X of a record.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @return the X of the record (NaN if it is a null shape)
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no record that matches recordNum
+	 */
+	public double getX(final int recordNum) throws IndexOutOfBoundsException {
+		return coordinates[2 * (checkRecordNum(recordNum) - 1)];
+	}
+
+	/**
+	 * Returns the Y of a record.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @return the Y of the record (NaN if it is a null shape)
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no record that matches recordNum
+	 */
+	public double getY(final int recordNum) throws IndexOutOfBoundsException {
+		return coordinates[2 * (checkRecordNum(recordNum) - 1) + 1];
+	}
+
+	/**
+	 * Returns whether a record is a null shape.
+	 *
+	 * @param recordNum
+	 *            the number of the record (1-based)
+	 * @return whether the record is a null shape
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no record that matches recordNum
+	 */
+	public boolean isNull(final int recordNum)
+			throws IndexOutOfBoundsException {
+		return Double.isNaN(getX(recordNum));
+	}
+
+	/**
+	 * Returns the numbers (1-based, in ascending order) of the records whose
+	 * point is inside the given rectangle (including its border).
+	 *
+	 * @param minX
+	 *            the minX of the rectangle
+	 * @param minY
+	 *            the minY of the rectangle
+	 * @param maxX
+	 *            the maxX of the rectangle
+	 * @param maxY
+	 *            the maxY of the rectangle
+	 * @return the numbers of the records whose point is inside the given
+	 *         rectangle
+	 */
+	public int[] query(final double minX, final double minY,
+			final double maxX, final double maxY) {
+		int[] output = new int[16];
+		int found = 0;
+
+		// Triplets of (first, end, axis) of the subtrees to visit
+		int[] stack = new int[3 * 64];
+		int stackSize = 0;
+		if (treeSize > 0) {
+			stack[stackSize++] = 0;
+			stack[stackSize++] = treeSize;
+			stack[stackSize++] = 0;
+		}
+
+		while (stackSize > 0) {
+			final int axis = stack[--stackSize];
+			final int end = stack[--stackSize];
+			final int first = stack[--stackSize];
+
+			final int middle = (first + end) >>> 1;
+			final int point = tree[middle];
+			final double x = coordinates[2 * point];
+			final double y = coordinates[2 * point + 1];
+			if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+				if (found == output.length) {
+					output = grow(output);
+				}
+				output[found++] = point + 1;
+			}
+
+			final double key = axis == 0 ? x : y;
+			if (stackSize + 6 > stack.length) {
+				stack = grow(stack);
+			}
+			if (first < middle && (axis == 0 ? minX : minY) <= key) {
+				stack[stackSize++] = first;
+				stack[stackSize++] = middle;
+				stack[stackSize++] = 1 - axis;
+			}
+			if (middle + 1 < end && (axis == 0 ? maxX : maxY) >= key) {
+				stack[stackSize++] = middle + 1;
+				stack[stackSize++] = end;
+				stack[stackSize++] = 1 - axis;
+			}
+		}
+
+		Arrays.sort(output, 0, found);
+		final int[] result = new int[found];
+		System.arraycopy(output, 0, result, 0, found);
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of the record whose point is the nearest to the
+	 * given coordinates.
+	 *
+	 * @param x
+	 *            the X of the coordinates
+	 * @param y
+	 *            the Y of the coordinates
+	 * @return the number (1-based) of the record whose point is the nearest
+	 *         (-1 if there are no points)
+	 */
+	public int nearest(final double x, final double y) {
+		final int[] output = nearest(x, y, 1);
+
+		return output.length > 0 ? output[0] : -1;
+	}
+
+	/**
+	 * Returns the numbers of the records whose points are the nearest to the
+	 * given coordinates, from the nearest to the farthest.
+	 *
+	 * @param x
+	 *            the X of the coordinates
+	 * @param y
+	 *            the Y of the coordinates
+	 * @param count
+	 *            the number of records to return
+	 * @return the numbers (1-based) of the records whose points are the
+	 *         nearest (less than count if there are not enough points)
+	 */
+	public int[] nearest(final double x, final double y, final int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Invalid count: " + count);
+		}
+
+		final Neighbours neighbours = new Neighbours(Math.min(count,
+				treeSize));
+		if (neighbours.capacity > 0) {
+			nearest(x, y, 0, treeSize, 0, neighbours);
+		}
+
+		return neighbours.toRecordNums();
+	}
+
+	/**
+	 * Stores the point of the next record.
+	 *
+	 * @param x
+	 *            the X of the point (NaN for a null shape)
+	 * @param y
+	 *            the Y of the point (NaN for a null shape)
+	 * @throws UnsupportedOperationException
+	 *             if there are too many records to store
+	 */
+	void add(final double x, final double y)
+			throws UnsupportedOperationException {
+		if (2 * recordCount == coordinates.length) {
+			if (recordCount == MAX_RECORDS) {
+				throw new UnsupportedOperationException(
+						"Too many records to store: " + recordCount);
+			}
+			final double[] larger = new double[2 * Math.min(
+					recordCount + (recordCount >> 1), MAX_RECORDS)];
+			System.arraycopy(coordinates, 0, larger, 0, 2 * recordCount);
+			coordinates = larger;
+		}
+
+		coordinates[2 * recordCount] = x;
+		coordinates[2 * recordCount + 1] = y;
+		recordCount++;
+	}
+
+	/**
+	 * Builds the KD-tree once all the records have been stored.
+	 */
+	void finish() {
+		tree = new int[recordCount];
+		for (int i = 0; i < recordCount; i++) {
+			if (!Double.isNaN(coordinates[2 * i])) {
+				tree[treeSize++] = i;
+			}
+		}
+
+		build(0, treeSize, 0);
+	}
+
+	/**
+	 * Orders a subtree of the KD-tree: its middle position holds the median
+	 * point on the axis, the points before it are not greater and the points
+	 * after it are not smaller (on the axis).
+	 *
+	 * @param first
+	 *            the first position of the subtree (inclusive)
+	 * @param end
+	 *            the last position of the subtree (exclusive)
+	 * @param axis
+	 *            the axis of the subtree (0 for X, 1 for Y)
+	 */
+	private void build(final int first, final int end, final int axis) {
+		if (end - first <= 1) {
+			return;
+		}
+
+		final int middle = (first + end) >>> 1;
+		select(first, end, middle, axis);
+		build(first, middle, 1 - axis);
+		build(middle + 1, end, 1 - axis);
+	}
+
+	/**
+	 * Moves to a position of a range of the KD-tree the point that would be
+	 * there if the range were sorted on an axis (Hoare's selection).
+	 *
+	 * @param first
+	 *            the first position of the range (inclusive)
+	 * @param end
+	 *            the last position of the range (exclusive)
+	 * @param position
+	 *            the position to fill
+	 * @param axis
+	 *            the axis (0 for X, 1 for Y)
+	 */
+	private void select(final int first, final int end, final int position,
+			final int axis) {
+		int low = first;
+		int high = end;
+		while (high - low > 1) {
+			final double pivot = coordinates[2 * tree[(low + high) >>> 1]
+					+ axis];
+			int i = low;
+			int j = high - 1;
+			while (i <= j) {
+				while (coordinates[2 * tree[i] + axis] < pivot) {
+					i++;
+				}
+				while (coordinates[2 * tree[j] + axis] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					final int point = tree[i];
+					tree[i++] = tree[j];
+					tree[j--] = point;
+				}
+			}
+
+			// Positions between j and i hold the pivot
+			if (position <= j) {
+				high = j + 1;
+			} else if (position >= i) {
+				low = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Visits a subtree of the KD-tree looking for the nearest points, first
+	 * the side of the coordinates and then the other side if it may hold a
+	 * nearer point.
+	 *
+	 * @param x
+	 *            the X of the coordinates
+	 * @param y
+	 *            the Y of the coordinates
+	 * @param first
+	 *            the first position of the subtree (inclusive)
+	 * @param end
+	 *            the last position of the subtree (exclusive)
+	 * @param axis
+	 *            the axis of the subtree (0 for X, 1 for Y)
+	 * @param neighbours
+	 *            the nearest points found
+	 */
+	private void nearest(final double x, final double y, final int first,
+			final int end, final int axis, final Neighbours neighbours) {
+		final int middle = (first + end) >>> 1;
+		final int point = tree[middle];
+		final double pointX = coordinates[2 * point];
+		final double pointY = coordinates[2 * point + 1];
+		final double dx = pointX - x;
+		final double dy = pointY - y;
+		neighbours.offer(point, dx * dx + dy * dy);
+
+		final double difference = axis == 0 ? x - pointX : y - pointY;
+		final boolean before = difference < 0;
+		if (before ? first < middle : middle + 1 < end) {
+			nearest(x, y, before ? first : middle + 1, before ? middle : end,
+					1 - axis, neighbours);
+		}
+		if ((before ? middle + 1 < end : first < middle)
+				&& difference * difference < neighbours.getMaxDistance()) {
+			nearest(x, y, before ? middle + 1 : first, before ? end : middle,
+					1 - axis, neighbours);
+		}
+	}
+
+	/**
+	 * Checks that a record number is inside the store.
+	 *
+	 * @param recordNum
+	 *            the number of the record to query
+	 * @return the record number
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no record that matches recordNum
+	 */
+	private int checkRecordNum(final int recordNum)
+			throws IndexOutOfBoundsException {
+		if (recordNum <= 0 || recordNum > recordCount) {
+			throw new IndexOutOfBoundsException("Number of records: "
+					+ recordCount + ". Requested: " + recordNum);
+		}
+
+		return recordNum;
+	}
+
+	/**
+	 * Returns a copy of an array with twice its length.
+	 */
+	private static int[] grow(final int[] array) {
+		final int[] output = new int[array.length * 2];
+		System.arraycopy(array, 0, output, 0, array.length);
+
+		return output;
+	}
+
+	/**
+	 * Bounded max-heap (by squared distance) with the nearest points found.
+	 */
+	private static class Neighbours {
+		private final int capacity;
+		private final int[] points;
+		private final double[] distances;
+		private int size;
+
+		Neighbours(final int capacity) {
+			this.capacity = capacity;
+			this.points = new int[capacity];
+			this.distances = new double[capacity];
+		}
+
+		/**
+		 * Returns the squared distance a point must not exceed to be one of
+		 * the nearest.
+		 */
+		double getMaxDistance() {
+			return size < capacity ? Double.POSITIVE_INFINITY : distances[0];
+		}
+
+		/**
+		 * Keeps a point if it is one of the nearest found.
+		 */
+		void offer(final int point, final double distance) {
+			if (size < capacity) {
+				int child = size++;
+				while (child > 0) {
+					final int parent = (child - 1) >>> 1;
+					if (distances[parent] >= distance) {
+						break;
+					}
+					points[child] = points[parent];
+					distances[child] = distances[parent];
+					child = parent;
+				}
+				points[child] = point;
+				distances[child] = distance;
+			} else if (capacity > 0 && distance < distances[0]) {
+				siftDown(point, distance, size);
+			}
+		}
+
+		/**
+		 * Returns the record numbers of the points, from the nearest to the
+		 * farthest (emptying the heap).
+		 */
+		int[] toRecordNums() {
+			final int[] output = new int[size];
+			while (size > 0) {
+				final int last = --size;
+				output[last] = points[0] + 1;
+				if (last > 0) {
+					siftDown(points[last], distances[last], last);
+				}
+			}
+
+			return output;
+		}
+
+		/**
+		 * Replaces the root of the first positions of the heap.
+		 */
+		private void siftDown(final int point, final double distance,
+				final int length) {
+			int parent = 0;
+			while (true) {
+				int child = 2 * parent + 1;
+				if (child >= length) {
+					break;
+				}
+				if (child + 1 < length && distances[child + 1] > distances[child]) {
+					child++;
+				}
+				if (distances[child] <= distance) {
+					break;
+				}
+				points[parent] = points[child];
+				distances[parent] = distances[child];
+				parent = child;
+			}
+			points[parent] = point;
+			distances[parent] = distance;
+		}
+	}
+}
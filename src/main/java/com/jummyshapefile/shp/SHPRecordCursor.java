@@ -0,0 +1,320 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.shp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+import com.jummyshapefile.shp.model.SHPRecord;
+import com.jummyshapefile.shp.model.SHPRecordHeader;
+
+/**
+ * Forward-only cursor over the records of a SHP file, read sequentially in
+ * file order using the record headers (without the SHX file).
+ * <p>
+ * The file is read in chunks into a single buffer that is reused for every
+ * record (and only grows to hold a record larger than itself), so the memory
+ * used does not depend on the size of the file. Not thread-safe.
+ * <p>
+ * A lenient cursor stops at the first record that is damaged (invalid
+ * length) or truncated (longer than the rest of the file) instead of failing,
+ * so the records before it can be read from partial files.
+ *
+ * @see SHPFile#openCursor()
+ */
+public class SHPRecordCursor implements Closeable {
+	/**
+	 * Default size in bytes of the buffer used to read the file.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final SHPFile shp;
+	private final long end;
+	private ByteBuffer buffer;
+	// Position in the file of the first byte not read into the buffer
+	private long filePosition;
+	private long recordOffset = -1;
+	private boolean lenient;
+	private boolean truncated;
+
+	/**
+	 * Creates a cursor over the records of a SHP file between two positions.
+	 *
+	 * @param shp
+	 *            the SHP file
+	 * @param start
+	 *            the offset in bytes of the first record
+	 * @param end
+	 *            the offset in bytes following the last record
+	 * @param bufferSize
+	 *            the initial size in bytes of the buffer
+	 */
+	SHPRecordCursor(final SHPFile shp, final long start, final long end,
+			final int bufferSize) {
+		if (start < 0 || end < start) {
+			throw new IndexOutOfBoundsException("Requested: " + start + " - "
+					+ end);
+		}
+		if (bufferSize < SHPParameters.SHP_RECORDHEADER_LENGTH) {
+			throw new IllegalArgumentException("Invalid buffer size: "
+					+ bufferSize);
+		}
+
+		this.shp = shp;
+		this.end = end;
+		this.filePosition = start;
+		this.buffer = ByteBuffer.allocate(bufferSize);
+		buffer.flip();
+	}
+
+	/**
+	 * Returns whether there are more records to read.
+	 *
+	 * @return whether there are more records to read
+	 * @throws IOException
+	 *             if there is a problem reading the file
+	 */
+	public boolean hasNext() throws IOException {
+		boolean output = fill(SHPParameters.SHP_RECORDHEADER_LENGTH);
+
+		if (output && lenient) {
+			final int length = getRecordLength();
+			if (length <= 0
+					|| filePosition - buffer.remaining()
+							+ SHPParameters.SHP_RECORDHEADER_LENGTH + length > end) {
+				truncated = true;
+				buffer.position(buffer.limit());
+				filePosition = end;
+				output = false;
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns whether the cursor stops at damaged or truncated records
+	 * (instead of failing).
+	 *
+	 * @return whether the cursor stops at damaged or truncated records
+	 */
+	public boolean isLenient() {
+		return lenient;
+	}
+
+	/**
+	 * Sets whether the cursor stops at damaged or truncated records (instead
+	 * of failing).
+	 *
+	 * @param lenient
+	 *            whether the cursor stops at damaged or truncated records
+	 */
+	public void setLenient(final boolean lenient) {
+		this.lenient = lenient;
+	}
+
+	/**
+	 * Returns whether a lenient cursor has stopped at a damaged or truncated
+	 * record.
+	 *
+	 * @return whether a lenient cursor has stopped at a damaged or truncated
+	 *         record
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Returns the next record of the SHP file. Its geometry is read as set by
+	 * SHPFile.setPackedGeometry().
+	 *
+	 * @return the next record of the SHP file
+	 * @throws NoSuchElementException
+	 *             if there are no more records
+	 * @throws IOException
+	 *             if there is a problem reading the record or the file is
+	 *             truncated
+	 *
+	 * @see SHPRecord
+	 */
+	public SHPRecord next() throws IOException {
+		SHPRecord output = null;
+
+		final int length = startRecord();
+
+		final SHPRecordHeader recordHeader = new SHPRecordHeader();
+		recordHeader.setRecordNum(buffer.getInt(buffer.position()
+				+ SHPParameters.SHP_RECORDHEADER_RECORDNUMBER_OFFSET));
+		recordHeader.setRecordLength(length);
+
+		if (!fill(SHPParameters.SHP_RECORDHEADER_LENGTH + length)) {
+			throw new IOException("Unexpected data length read");
+		}
+
+		final int contentStart = buffer.position()
+				+ SHPParameters.SHP_RECORDHEADER_LENGTH;
+		final ByteBuffer content = buffer.duplicate();
+		content.limit(contentStart + length);
+		content.position(contentStart);
+
+		output = shp.readRecord(content);
+		output.setRecordHeader(recordHeader);
+
+		buffer.position(contentStart + length);
+
+		return output;
+	}
+
+	/**
+	 * Skips the next record of the SHP file without reading its content (the
+	 * part of the record not already buffered is not read at all).
+	 *
+	 * @return the length in bytes of the content of the record skipped
+	 * @throws NoSuchElementException
+	 *             if there are no more records
+	 * @throws IOException
+	 *             if there is a problem reading the record header or the
+	 *             file is truncated
+	 */
+	public int skip() throws IOException {
+		final int output = startRecord();
+
+		final long next = recordOffset + SHPParameters.SHP_RECORDHEADER_LENGTH
+				+ output;
+		if (next > end) {
+			throw new IOException("Unexpected data length read");
+		}
+
+		if (next <= filePosition) {
+			buffer.position(buffer.position()
+					+ SHPParameters.SHP_RECORDHEADER_LENGTH + output);
+		} else {
+			buffer.position(buffer.limit());
+			filePosition = next;
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the offset in bytes of the last record returned by next() or
+	 * skipped by skip().
+	 *
+	 * @return the offset in bytes of the last record returned by next() or
+	 *         skipped by skip() (-1 if none has been)
+	 */
+	public long getRecordOffset() {
+		return recordOffset;
+	}
+
+	/**
+	 * Returns the offset in bytes of the next record to read (the position
+	 * of the cursor in the file).
+	 *
+	 * @return the offset in bytes of the next record to read
+	 */
+	public long getPosition() {
+		return filePosition - buffer.remaining();
+	}
+
+	/**
+	 * Releases the buffer of the cursor. The SHP file is not closed.
+	 */
+	public void close() {
+		buffer = ByteBuffer.allocate(0);
+		filePosition = end;
+	}
+
+	/**
+	 * Checks that there is a next record and returns the length of its
+	 * content (its header is at the position of the buffer).
+	 *
+	 * @return the length in bytes of the content of the next record
+	 * @throws NoSuchElementException
+	 *             if there are no more records
+	 * @throws IOException
+	 *             if there is a problem reading the record header or its
+	 *             length is not valid
+	 */
+	private int startRecord() throws IOException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		final int output = getRecordLength();
+		if (output <= 0) {
+			throw new IOException("Invalid record length: " + output);
+		}
+		recordOffset = filePosition - buffer.remaining();
+
+		return output;
+	}
+
+	/**
+	 * Returns the length of the content of the record whose header is at the
+	 * position of the buffer.
+	 *
+	 * @return the length in bytes of the content of the record
+	 */
+	private int getRecordLength() {
+		// NOTE: The value stored is in 16-bit words
+		return 2 * buffer.getInt(buffer.position()
+				+ SHPParameters.SHP_RECORDHEADER_RECORDLENGTH_OFFSET);
+	}
+
+	/**
+	 * Makes the buffer hold at least the requested number of bytes (from its
+	 * position), reading the next chunk of the file if needed.
+	 *
+	 * @param length
+	 *            the number of bytes requested
+	 * @return whether the buffer holds the requested number of bytes (false
+	 *         if the end of the records is reached before)
+	 * @throws IOException
+	 *             if there is a problem reading the file
+	 */
+	private boolean fill(final int length) throws IOException {
+		if (buffer.remaining() >= length) {
+			return true;
+		}
+		if (filePosition >= end) {
+			return false;
+		}
+
+		if (buffer.capacity() < length) {
+			final ByteBuffer larger = ByteBuffer.allocate(Math.max(length,
+					2 * buffer.capacity()));
+			larger.put(buffer);
+			buffer = larger;
+		} else {
+			buffer.compact();
+		}
+
+		final int toRead = (int) Math.min(buffer.remaining(), end
+				- filePosition);
+		final ByteBuffer dst = buffer.duplicate();
+		dst.limit(dst.position() + toRead);
+		shp.readChunk(filePosition, dst);
+		buffer.position(buffer.position() + toRead);
+		filePosition += toRead;
+		buffer.flip();
+
+		return buffer.remaining() >= length;
+	}
+}
@@ -17,11 +17,14 @@
 package com.jummyshapefile.shp;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
+import com.jummyshapefile.shapefile.model.PackedGeometry;
 import com.jummyshapefile.shp.model.SHPHeader;
 import com.jummyshapefile.shp.model.SHPRecord;
+import com.jummyshapefile.shp.model.SHPRecordBounds;
 import com.jummyshapefile.shp.model.SHPRecordHeader;
-import com.jummyshapefile.utils.ByteUtils;
 
 /**
  * Class that reads a record in a SHP file.
@@ -30,6 +33,7 @@ import com.jummyshapefile.utils.ByteUtils;
  *
  * @see SHPRecord
  * @see SHPRecordHeader
+ * @see SHPRecordBounds
  * @see SHPHeader
  */
 public class SHPRecordReader {
@@ -47,20 +51,43 @@ public class SHPRecordReader {
 	 */
 	public SHPRecordHeader readRecordHeader(final byte[] data)
 			throws IOException {
+		if (data == null) {
+			throw new IllegalArgumentException("The byte array is null");
+		}
+
+		return readRecordHeader(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Returns a SHPRecordHeader object representing the ByteBuffer (the bytes
+	 * are read using absolute positions, so its position is not modified).
+	 *
+	 * @param data
+	 *            the ByteBuffer representing the record header (from its
+	 *            position); its byte order is changed to big endian
+	 *
+	 * @return a SHPRecordHeader object representing the ByteBuffer
+	 * @throws IOException
+	 *             if there is a problem reading the record header
+	 *
+	 * @see SHPRecordHeader
+	 */
+	public SHPRecordHeader readRecordHeader(final ByteBuffer data)
+			throws IOException {
 		SHPRecordHeader output = null;
 
 		if (data == null) {
-			throw new IllegalArgumentException("The byte array is null");
+			throw new IllegalArgumentException("The ByteBuffer is null");
 		}
 
+		data.order(ByteOrder.BIG_ENDIAN);
+
 		output = new SHPRecordHeader();
-		output.setRecordNum(ByteUtils.readInt(data,
-				SHPParameters.SHP_RECORDHEADER_RECORDNUMBER_SIZE,
-				SHPParameters.SHP_RECORDHEADER_RECORDNUMBER_OFFSET));
+		output.setRecordNum(data.getInt(data.position()
+				+ SHPParameters.SHP_RECORDHEADER_RECORDNUMBER_OFFSET));
 		// NOTE: The value returned is in 16-bit words
-		output.setRecordLength(2 * ByteUtils.readInt(data,
-				SHPParameters.SHP_RECORDHEADER_RECORDLENGTH_SIZE,
-				SHPParameters.SHP_RECORDHEADER_RECORDLENGTH_OFFSET));
+		output.setRecordLength(2 * data.getInt(data.position()
+				+ SHPParameters.SHP_RECORDHEADER_RECORDLENGTH_OFFSET));
 
 		return output;
 	}
@@ -78,16 +105,41 @@ public class SHPRecordReader {
 	 * @see SHPRecord
 	 */
 	public SHPRecord readRecord(final byte[] data) throws IOException {
+		if (data == null) {
+			throw new IllegalArgumentException("The byte array is null");
+		}
+
+		return readRecord(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Returns a SHPRecord object representing the content of a record, read
+	 * directly from the ByteBuffer (a view of a memory mapped file is decoded
+	 * without copying it).
+	 *
+	 * @param data
+	 *            the ByteBuffer holding the content of the record (from its
+	 *            position to its limit); its byte order is changed to little
+	 *            endian
+	 *
+	 * @return a SHPRecord object representing the content of the record
+	 * @throws IOException
+	 *             if there is a problem reading the record
+	 *
+	 * @see SHPRecord
+	 */
+	public SHPRecord readRecord(final ByteBuffer data) throws IOException {
 		SHPRecord output = null;
 
 		if (data == null) {
-			throw new IllegalArgumentException("The byte array is null");
+			throw new IllegalArgumentException("The ByteBuffer is null");
 		}
 
+		data.order(ByteOrder.LITTLE_ENDIAN);
+
 		output = new SHPRecord();
-		output.setShapeType(ByteUtils.readIntLeastSignificantFirst(data,
-				SHPParameters.SHP_RECORDHEADER_SHAPETYPE_SIZE,
-				SHPParameters.SHP_RECORDHEADER_SHAPETYPE_OFFSET));
+		output.setShapeType(data.getInt(data.position()
+				+ SHPParameters.SHP_RECORDHEADER_SHAPETYPE_OFFSET));
 
 		final SHPGeometryReader geometryReader = new SHPGeometryReader();
 		output.setGeometry(geometryReader.readGeometry(data,
@@ -95,4 +147,151 @@ public class SHPRecordReader {
 
 		return output;
 	}
+
+	/**
+	 * Returns a SHPRecord object representing the content of a record, whose
+	 * geometry is a PackedGeometry (or a NullShape for a null shape).
+	 *
+	 * @param data
+	 *            the ByteBuffer holding the content of the record (from its
+	 *            position to its limit); its byte order is changed to little
+	 *            endian
+	 *
+	 * @return a SHPRecord object representing the content of the record
+	 * @throws IOException
+	 *             if there is a problem reading the record
+	 *
+	 * @see SHPRecord
+	 * @see PackedGeometry
+	 */
+	public SHPRecord readPackedRecord(final ByteBuffer data)
+			throws IOException {
+		SHPRecord output = null;
+
+		if (data == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
+		}
+
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		if (data.remaining() < SHPParameters.SHP_RECORDHEADER_SHAPETYPE_SIZE) {
+			throw new IOException("Unexpected data length read");
+		}
+
+		output = new SHPRecord();
+		output.setShapeType(data.getInt(data.position()
+				+ SHPParameters.SHP_RECORDHEADER_SHAPETYPE_OFFSET));
+
+		final SHPGeometryReader geometryReader = new SHPGeometryReader();
+		output.setGeometry(geometryReader.readPackedGeometry(data,
+				output.getShapeType()));
+
+		return output;
+	}
+
+	/**
+	 * Returns the WKB (little endian) representing the content of a record,
+	 * transcoded directly from its bytes without decoding the geometry.
+	 *
+	 * @param data
+	 *            the ByteBuffer holding the content of the record (from its
+	 *            position to its limit); its byte order is changed to little
+	 *            endian
+	 *
+	 * @return the WKB representing the content of the record (null for a null
+	 *         shape)
+	 * @throws IOException
+	 *             if there is a problem reading the record
+	 *
+	 * @see SHPGeometryReader#readWKB(ByteBuffer, int)
+	 */
+	public byte[] readRecordWKB(final ByteBuffer data) throws IOException {
+		if (data == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
+		}
+
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		if (data.remaining() < SHPParameters.SHP_RECORDHEADER_SHAPETYPE_SIZE) {
+			throw new IOException("Unexpected data length read");
+		}
+
+		final int shapeType = data.getInt(data.position()
+				+ SHPParameters.SHP_RECORDHEADER_SHAPETYPE_OFFSET);
+
+		final SHPGeometryReader geometryReader = new SHPGeometryReader();
+		return geometryReader.readWKB(data, shapeType);
+	}
+
+	/**
+	 * Returns a SHPRecordBounds object representing the beginning of the
+	 * content of a record (the shape type followed by the MBR, or by the
+	 * coordinates of a point), without decoding the geometry.
+	 * <p>
+	 * The MBR of a null shape is (0, 0, 0, 0), as in its decoded geometry.
+	 *
+	 * @param data
+	 *            the ByteBuffer holding the beginning of the content of the
+	 *            record (from its position to its limit); its byte order is
+	 *            changed to little endian
+	 *
+	 * @return a SHPRecordBounds object representing the beginning of the
+	 *         content of the record
+	 * @throws IOException
+	 *             if the ByteBuffer is too short for the shape type
+	 *
+	 * @see SHPRecordBounds
+	 */
+	public SHPRecordBounds readRecordBounds(final ByteBuffer data)
+			throws IOException {
+		SHPRecordBounds output = null;
+
+		if (data == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
+		}
+
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		final int position = data.position();
+		final int length = data.remaining();
+		if (length < SHPParameters.SHP_RECORDHEADER_SHAPETYPE_SIZE) {
+			throw new IOException("Unexpected data length read");
+		}
+
+		output = new SHPRecordBounds();
+		output.setShapeType(data.getInt(position
+				+ SHPParameters.SHP_RECORDHEADER_SHAPETYPE_OFFSET));
+
+		switch (output.getShapeType()) {
+		case 0:
+			break;
+		case 1:
+		case 11:
+		case 21:
+			if (length < SHPParameters.SHP_POINT_LENGTH) {
+				throw new IOException("Unexpected data length read");
+			}
+			final double x = data.getDouble(position
+					+ SHPParameters.SHP_POINT_X_OFFSET);
+			final double y = data.getDouble(position
+					+ SHPParameters.SHP_POINT_Y_OFFSET);
+			output.setMinX(x);
+			output.setMinY(y);
+			output.setMaxX(x);
+			output.setMaxY(y);
+			break;
+		default:
+			if (length < SHPParameters.SHP_RECORDBOUNDS_LENGTH) {
+				throw new IOException("Unexpected data length read");
+			}
+			output.setMinX(data.getDouble(position
+					+ SHPParameters.SHP_RECORDBOUNDS_MINX_OFFSET));
+			output.setMinY(data.getDouble(position
+					+ SHPParameters.SHP_RECORDBOUNDS_MINY_OFFSET));
+			output.setMaxX(data.getDouble(position
+					+ SHPParameters.SHP_RECORDBOUNDS_MAXX_OFFSET));
+			output.setMaxY(data.getDouble(position
+					+ SHPParameters.SHP_RECORDBOUNDS_MAXY_OFFSET));
+			break;
+		}
+
+		return output;
+	}
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.shp;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.jummyshapefile.binaryfile.AbstractBinaryFileWriter;
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shp.model.SHPHeader;
+
+/**
+ * Class that writes a SHP file, record by record (the inverse of SHPFile).
+ * <p>
+ * The records are numbered from 1 in the order they are written. The MBR of
+ * the file is computed from the MBRs of the records, and written with the
+ * length of the file in the header when the writer is closed.
+ *
+ * @see SHPFile
+ * @see SHPGeometryWriter
+ */
+public class SHPWriter extends AbstractBinaryFileWriter<SHPHeader> {
+	// The lengths are stored as signed 32-bit numbers of 16-bit words
+	private static final long MAX_LENGTH = 2L * Integer.MAX_VALUE;
+
+	private final SHPGeometryWriter geometryWriter = new SHPGeometryWriter();
+	private int numRecords;
+	private boolean empty = true;
+
+	/**
+	 * Creates a writer of a SHP file.
+	 *
+	 * @param os
+	 *            the FileOutputStream representing the SHP file
+	 * @param shapeType
+	 *            the shape type of the file (1, 3, 5 or 8)
+	 * @throws UnsupportedOperationException
+	 *             if the shape type is not supported
+	 * @throws IOException
+	 *             if there is a problem creating the writer
+	 */
+	public SHPWriter(final FileOutputStream os, final int shapeType)
+			throws UnsupportedOperationException, IOException {
+		this(os, shapeType, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a writer of a SHP file.
+	 *
+	 * @param os
+	 *            the FileOutputStream representing the SHP file
+	 * @param shapeType
+	 *            the shape type of the file (1, 3, 5 or 8)
+	 * @param bufferSize
+	 *            the size in bytes of the buffer
+	 * @throws UnsupportedOperationException
+	 *             if the shape type is not supported
+	 * @throws IOException
+	 *             if there is a problem creating the writer
+	 */
+	public SHPWriter(final FileOutputStream os, final int shapeType,
+			final int bufferSize) throws UnsupportedOperationException,
+			IOException {
+		super(os, createHeader(shapeType), SHPParameters.SHP_HEADER_LENGTH,
+				bufferSize);
+	}
+
+	/**
+	 * Returns the number of records written.
+	 *
+	 * @return the number of records written
+	 */
+	public int getNumRecords() {
+		return numRecords;
+	}
+
+	/**
+	 * Checks that a Geometry can be written as the next record of the SHP
+	 * file, without writing it.
+	 *
+	 * @param geometry
+	 *            the Geometry (null for a null shape)
+	 * @return the length in bytes of the content of the record
+	 * @throws IllegalArgumentException
+	 *             if the shape type of the Geometry is not the one of the
+	 *             file (or a null shape)
+	 * @throws UnsupportedOperationException
+	 *             if the class of the Geometry is not supported
+	 * @throws IOException
+	 *             if the file would be too large
+	 *
+	 * @see #write(Geometry)
+	 */
+	public int checkGeometry(final Geometry geometry)
+			throws IllegalArgumentException, IOException {
+		final int shapeType = SHPGeometryWriter.getShapeType(geometry);
+		if (shapeType != 0 && shapeType != header.getShapeType()) {
+			throw new IllegalArgumentException("Shape type not allowed in a "
+					+ header.getShapeType() + " file: " + shapeType);
+		}
+
+		final int output = geometryWriter.getContentLength(geometry);
+		if (getLength() + SHPParameters.SHP_RECORDHEADER_LENGTH + output > MAX_LENGTH) {
+			throw new IOException("The SHP file would be too large");
+		}
+
+		return output;
+	}
+
+	/**
+	 * Writes a Geometry as the next record of the SHP file.
+	 *
+	 * @param geometry
+	 *            the Geometry (null for a null shape)
+	 * @return the length in bytes of the content of the record written
+	 * @throws IllegalArgumentException
+	 *             if the shape type of the Geometry is not the one of the
+	 *             file (or a null shape)
+	 * @throws UnsupportedOperationException
+	 *             if the class of the Geometry is not supported
+	 * @throws IOException
+	 *             if there is a problem writing the record or the file would
+	 *             be too large
+	 *
+	 * @see Geometry
+	 */
+	public int write(final Geometry geometry) throws IllegalArgumentException,
+			IOException {
+		final int output = checkGeometry(geometry);
+		final int shapeType = SHPGeometryWriter.getShapeType(geometry);
+		final int length = SHPParameters.SHP_RECORDHEADER_LENGTH + output;
+
+		final ByteBuffer data = reserve(length);
+		data.order(ByteOrder.BIG_ENDIAN);
+		data.putInt(++numRecords);
+		// NOTE: The length is stored in 16-bit words
+		data.putInt(output / 2);
+
+		final int content = data.position();
+		geometryWriter.writeGeometry(geometry, data);
+
+		// The MBR of the record was just written after its shape type (the
+		// records without points do not count)
+		if (shapeType == 1) {
+			final double x = data.getDouble(content
+					+ SHPParameters.SHP_POINT_X_OFFSET);
+			final double y = data.getDouble(content
+					+ SHPParameters.SHP_POINT_Y_OFFSET);
+			addBounds(x, y, x, y);
+		} else if (shapeType != 0
+				&& data.getInt(content + SHPParameters.SHP_RECORDBOUNDS_LENGTH
+						+ (shapeType == 8 ? 0 : SHPParameters.SHP_INT_LENGTH)) > 0) {
+			addBounds(data.getDouble(content
+					+ SHPParameters.SHP_RECORDBOUNDS_MINX_OFFSET),
+					data.getDouble(content
+							+ SHPParameters.SHP_RECORDBOUNDS_MINY_OFFSET),
+					data.getDouble(content
+							+ SHPParameters.SHP_RECORDBOUNDS_MAXX_OFFSET),
+					data.getDouble(content
+							+ SHPParameters.SHP_RECORDBOUNDS_MAXY_OFFSET));
+		}
+
+		return output;
+	}
+
+	@Override
+	protected void writeHeader(final ByteBuffer data) {
+		data.order(ByteOrder.BIG_ENDIAN);
+		data.putInt(SHPParameters.SHP_HEADER_FILECODE_OFFSET,
+				SHPParameters.SHP_HEADER_FILECODE);
+		// NOTE: The length is stored in 16-bit words
+		data.putInt(SHPParameters.SHP_HEADER_FILELENGTH_OFFSET,
+				(int) (getLength() / 2));
+
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		data.putInt(SHPParameters.SHP_HEADER_VERSION_OFFSET,
+				SHPParameters.SHP_HEADER_VERSION);
+		data.putInt(SHPParameters.SHP_HEADER_SHAPETYPE_OFFSET,
+				header.getShapeType());
+		data.putDouble(SHPParameters.SHP_HEADER_MBRMINX_OFFSET,
+				header.getMinX());
+		data.putDouble(SHPParameters.SHP_HEADER_MBRMINY_OFFSET,
+				header.getMinY());
+		data.putDouble(SHPParameters.SHP_HEADER_MBRMAXX_OFFSET,
+				header.getMaxX());
+		data.putDouble(SHPParameters.SHP_HEADER_MBRMAXY_OFFSET,
+				header.getMaxY());
+	}
+
+	/**
+	 * Expands the MBR of the file to contain the MBR of a record.
+	 *
+	 * @param minX
+	 *            the minimum X of the record
+	 * @param minY
+	 *            the minimum Y of the record
+	 * @param maxX
+	 *            the maximum X of the record
+	 * @param maxY
+	 *            the maximum Y of the record
+	 */
+	private void addBounds(final double minX, final double minY,
+			final double maxX, final double maxY) {
+		if (empty) {
+			header.setMinX(minX);
+			header.setMinY(minY);
+			header.setMaxX(maxX);
+			header.setMaxY(maxY);
+			empty = false;
+		} else {
+			header.setMinX(Math.min(header.getMinX(), minX));
+			header.setMinY(Math.min(header.getMinY(), minY));
+			header.setMaxX(Math.max(header.getMaxX(), maxX));
+			header.setMaxY(Math.max(header.getMaxY(), maxY));
+		}
+	}
+
+	/**
+	 * Returns the header of a SHP file with a given shape type (checked
+	 * before the superclass constructor reserves the header).
+	 *
+	 * @param shapeType
+	 *            the shape type of the file
+	 * @return the header of the SHP file
+	 * @throws UnsupportedOperationException
+	 *             if the shape type is not supported
+	 */
+	private static SHPHeader createHeader(final int shapeType)
+			throws UnsupportedOperationException {
+		if (shapeType != 1 && shapeType != 3 && shapeType != 5
+				&& shapeType != 8) {
+			throw new UnsupportedOperationException(
+					"Geometry type not allowed (not implemented): "
+							+ shapeType);
+		}
+
+		final SHPHeader output = new SHPHeader();
+		output.setShapeType(shapeType);
+
+		return output;
+	}
+}
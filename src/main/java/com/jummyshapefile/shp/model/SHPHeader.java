@@ -26,6 +26,7 @@ import com.jummyshapefile.shp.SHPParameters;
  */
 public class SHPHeader extends BinaryFileHeader {
 	private final int headerSize = SHPParameters.SHP_HEADER_LENGTH;
+	private long fileLength;
 	private int shapeType;
 	private double minX;
 	private double minY;
@@ -45,6 +46,26 @@ public class SHPHeader extends BinaryFileHeader {
 		return headerSize;
 	}
 
+	/**
+	 * Returns the length of the file in bytes, as stored in the header (the
+	 * file may be longer, padded after the last record).
+	 *
+	 * @return the length of the file in bytes
+	 */
+	public long getFileLength() {
+		return fileLength;
+	}
+
+	/**
+	 * Sets the length of the file in bytes.
+	 *
+	 * @param fileLength
+	 *            the length of the file in bytes
+	 */
+	public void setFileLength(final long fileLength) {
+		this.fileLength = fileLength;
+	}
+
 	/**
 	 * Returns the type of the shapes stored.
 	 *
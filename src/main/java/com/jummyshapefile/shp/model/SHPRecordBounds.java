@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jummyshapefile.shp.model;
+
+/**
+ * Represents the shape type and the MBR (Minimum bounding rectangle) of a
+ * record in a SHP file, read without decoding its geometry.
+ * <p>
+ * https://en.m.wikipedia.org/wiki/Shapefile
+ */
+public class SHPRecordBounds {
+	private int shapeType = 0;
+	private double minX;
+	private double minY;
+	private double maxX;
+	private double maxY;
+
+	/**
+	 * Returns the type of the shape of the record.
+	 *
+	 * @return the type of the shape of the record
+	 */
+	public int getShapeType() {
+		return shapeType;
+	}
+
+	/**
+	 * Sets the type of the shape of the record.
+	 *
+	 * @param shapeType
+	 *            the type of the shape of the record
+	 */
+	public void setShapeType(final int shapeType) {
+		this.shapeType = shapeType;
+	}
+
+	/**
+	 * Returns the min X of the MBR (Minimum bounding rectangle) of the record.
+	 *
+	 * @return the min X of the MBR (Minimum bounding rectangle) of the record
+	 */
+	public double getMinX() {
+		return minX;
+	}
+
+	/**
+	 * Sets the min X of the MBR (Minimum bounding rectangle) of the record.
+	 *
+	 * @param minX
+	 *            the min X of the MBR (Minimum bounding rectangle) of the
+	 *            record
+	 */
+	public void setMinX(final double minX) {
+		this.minX = minX;
+	}
+
+	/**
+	 * Returns the min Y of the MBR (Minimum bounding rectangle) of the record.
+	 *
+	 * @return the min Y of the MBR (Minimum bounding rectangle) of the record
+	 */
+	public double getMinY() {
+		return minY;
+	}
+
+	/**
+	 * Sets the min Y of the MBR (Minimum bounding rectangle) of the record.
+	 *
+	 * @param minY
+	 *            the min Y of the MBR (Minimum bounding rectangle) of the
+	 *            record
+	 */
+	public void setMinY(final double minY) {
+		this.minY = minY;
+	}
+
+	/**
+	 * Returns the max X of the MBR (Minimum bounding rectangle) of the record.
+	 *
+	 * @return the max X of the MBR (Minimum bounding rectangle) of the record
+	 */
+	public double getMaxX() {
+		return maxX;
+	}
+
+	/**
+	 * Sets the max X of the MBR (Minimum bounding rectangle) of the record.
+	 *
+	 * @param maxX
+	 *            the max X of the MBR (Minimum bounding rectangle) of the
+	 *            record
+	 */
+	public void setMaxX(final double maxX) {
+		this.maxX = maxX;
+	}
+
+	/**
+	 * Returns the max Y of the MBR (Minimum bounding rectangle) of the record.
+	 *
+	 * @return the max Y of the MBR (Minimum bounding rectangle) of the record
+	 */
+	public double getMaxY() {
+		return maxY;
+	}
+
+	/**
+	 * Sets the max Y of the MBR (Minimum bounding rectangle) of the record.
+	 *
+	 * @param maxY
+	 *            the max Y of the MBR (Minimum bounding rectangle) of the
+	 *            record
+	 */
+	public void setMaxY(final double maxY) {
+		this.maxY = maxY;
+	}
+
+	@Override
+	public String toString() {
+		return shapeType + ": [" + minX + ", " + minY + ", " + maxX + ", "
+				+ maxY + "]";
+	}
+}
@@ -17,22 +17,172 @@
 package com.jummyshapefile.shx;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import com.jummyshapefile.binaryfile.AbstractBinaryFile;
+import com.jummyshapefile.shp.SHPRecordCursor;
 import com.jummyshapefile.shx.model.SHXHeader;
 import com.jummyshapefile.shx.model.SHXRecord;
 
 /**
  * Class representing a SHX file resource.
  * <p>
+ * The whole index can be loaded into memory (8 bytes per record) using
+ * loadIndex(). Once loaded, the offset and length of the records are read
+ * from memory, without any I/O.
+ * <p>
+ * If the SHX file is missing or damaged, the index can be rebuilt from the
+ * record headers of the SHP file using loadIndex(SHPRecordCursor), without
+ * opening the SHX file.
+ * <p>
  * https://en.m.wikipedia.org/wiki/Shapefile
  */
 public class SHXFile extends AbstractBinaryFile<SHXHeader> {
+	// Offset (high 32 bits) and length (low 32 bits) in bytes of each record
+	private volatile long[] index;
+
 	@Override
 	public void init() {
 		headerReader = new SHXHeaderReader();
 	}
 
+	/**
+	 * Returns the number of records stored in the SHX file.
+	 *
+	 * @return the number of records stored in the SHX file
+	 * @throws IOException
+	 *             if there is a problem querying the size of the file
+	 */
+	public int getRecordCount() throws IOException {
+		final long[] loaded = index;
+		if (loaded != null) {
+			return loaded.length;
+		}
+		checkOpen();
+
+		return (int) ((source.size() - header.getHeaderSize()) / header
+				.getRecordSize());
+	}
+
+	/**
+	 * Loads the offset and length of every record into memory, reading the
+	 * whole SHX file at once. Should be called right after opening the file.
+	 *
+	 * @throws IOException
+	 *             if there is a problem reading the records
+	 */
+	public void loadIndex() throws IOException {
+		final int recordCount = getRecordCount();
+		final ByteBuffer dataRead = read(header.getHeaderSize(), recordCount
+				* header.getRecordSize());
+
+		final long[] output = new long[recordCount];
+		int position = dataRead.position();
+		for (int i = 0; i < recordCount; i++) {
+			// NOTE: The values stored are in 16-bit words (big endian)
+			// (widened to long as they can exceed 2 GB once in bytes)
+			final long offset = 2L * dataRead.getInt(position
+					+ SHXParameters.SHX_RECORD_RECORDOFFSET_OFFSET);
+			final long length = 2L * dataRead.getInt(position
+					+ SHXParameters.SHX_RECORD_RECORDLENGTH_OFFSET);
+			output[i] = (offset << 32) | (length & 0xFFFFFFFFL);
+			position += header.getRecordSize();
+		}
+
+		index = output;
+	}
+
+	/**
+	 * Rebuilds the offset and length of every record from the record headers
+	 * of the SHP file, read sequentially through a cursor (the content of the
+	 * records is skipped). The SHX file is not read, so it does not need to be
+	 * open.
+	 *
+	 * @param cursor
+	 *            the cursor over all the records of the SHP file (a lenient
+	 *            cursor stops at the first damaged or truncated record)
+	 * @throws IOException
+	 *             if there is a problem reading the SHP file
+	 *
+	 * @see SHPRecordCursor
+	 */
+	public void loadIndex(final SHPRecordCursor cursor) throws IOException {
+		if (cursor == null) {
+			throw new IllegalArgumentException("The SHPRecordCursor is null");
+		}
+
+		long[] entries = new long[1024];
+		int recordCount = 0;
+		while (cursor.hasNext()) {
+			final int length = cursor.skip();
+			if (recordCount == entries.length) {
+				final long[] larger = new long[2 * entries.length];
+				System.arraycopy(entries, 0, larger, 0, recordCount);
+				entries = larger;
+			}
+			entries[recordCount++] = (cursor.getRecordOffset() << 32)
+					| (length & 0xFFFFFFFFL);
+		}
+
+		final long[] output = new long[recordCount];
+		System.arraycopy(entries, 0, output, 0, recordCount);
+
+		index = output;
+	}
+
+	/**
+	 * Returns whether the offset and length of every record have been loaded
+	 * into memory.
+	 *
+	 * @return whether the offset and length of every record have been loaded
+	 *         into memory
+	 */
+	public boolean isIndexLoaded() {
+		return index != null;
+	}
+
+	/**
+	 * Returns the offset in the SHP file of a record (defined by recordNum).
+	 *
+	 * @param recordNum
+	 *            the number of the record to query
+	 * @return the offset in the SHP file of the record
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no record that matches recordNum
+	 * @throws IOException
+	 *             if there is a problem reading the record
+	 */
+	public long getOffsetAt(final int recordNum)
+			throws IndexOutOfBoundsException, IOException {
+		final long[] loaded = index;
+		if (loaded == null) {
+			return getRecordAt(recordNum).getOffset();
+		}
+
+		return loaded[checkRecordNum(recordNum, loaded) - 1] >>> 32;
+	}
+
+	/**
+	 * Returns the length in the SHP file of a record (defined by recordNum).
+	 *
+	 * @param recordNum
+	 *            the number of the record to query
+	 * @return the length in the SHP file of the record
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no record that matches recordNum
+	 * @throws IOException
+	 *             if there is a problem reading the record
+	 */
+	public int getLengthAt(final int recordNum)
+			throws IndexOutOfBoundsException, IOException {
+		final long[] loaded = index;
+		if (loaded == null) {
+			return getRecordAt(recordNum).getLength();
+		}
+
+		return (int) loaded[checkRecordNum(recordNum, loaded) - 1];
+	}
+
 	/**
 	 * Returns a DBFRecord object representing a record of the DBF file (defined
 	 * by recordNum).
@@ -56,20 +206,59 @@ public class SHXFile extends AbstractBinaryFile<SHXHeader> {
 			throw new IndexOutOfBoundsException("Requested: " + recordNum);
 		}
 
-		mfis.reset();
-		mfis.skip(header.getHeaderSize() + (recordNum - 1)
-				* header.getRecordSize());
-
-		final byte[] dataRead = new byte[header.getRecordSize()];
-		final int bytesRead = mfis.read(dataRead);
+		final long[] loaded = index;
+		if (loaded != null) {
+			final long entry = loaded[checkRecordNum(recordNum, loaded) - 1];
+			output = new SHXRecord();
+			output.setRecordNum(recordNum);
+			output.setOffset(entry >>> 32);
+			output.setLength((int) entry);
 
-		if (bytesRead != header.getRecordSize()) {
-			throw new IOException("Unexpected data length read");
+			return output;
 		}
+		checkOpen();
+
+		final ByteBuffer dataRead = read(header.getHeaderSize()
+				+ (long) (recordNum - 1) * header.getRecordSize(),
+				header.getRecordSize());
 
 		final SHXRecordReader recordReader = new SHXRecordReader();
 		output = recordReader.readRecord(recordNum, dataRead);
 
 		return output;
 	}
+
+	/**
+	 * Checks that the SHX file is open when its index is not loaded.
+	 *
+	 * @throws IllegalStateException
+	 *             if the SHX file is not open
+	 */
+	private void checkOpen() throws IllegalStateException {
+		if (source == null) {
+			throw new IllegalStateException(
+					"The SHX file is not open and its index is not loaded");
+		}
+	}
+
+	/**
+	 * Checks that a record number is inside the loaded index.
+	 *
+	 * @param recordNum
+	 *            the number of the record to query
+	 * @param loaded
+	 *            the loaded index
+	 * @return the record number
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no record that matches recordNum
+	 */
+	private int checkRecordNum(final int recordNum, final long[] loaded)
+			throws IndexOutOfBoundsException {
+		if (recordNum <= 0 || recordNum > loaded.length) {
+			throw new IndexOutOfBoundsException("Number of records: "
+					+ loaded.length + ". Requested: " + recordNum);
+		}
+
+		return recordNum;
+	}
 }
@@ -20,6 +20,12 @@ public final class SHXParameters {
 	public static final int SHX_HEADER_LENGTH = 100;
 	public static final int SHX_RECORD_LENGTH = 8;
 
+	public static final int SHX_HEADER_FILECODE_OFFSET = 0;
+	public static final int SHX_HEADER_FILECODE = 9994;
+	public static final int SHX_HEADER_FILELENGTH_OFFSET = 24;
+	public static final int SHX_HEADER_VERSION_OFFSET = 28;
+	public static final int SHX_HEADER_VERSION = 1000;
+
 	public static final int SHX_HEADER_SHAPETYPE_OFFSET = 32;
 	public static final int SHX_HEADER_SHAPETYPE_SIZE = 4;
 
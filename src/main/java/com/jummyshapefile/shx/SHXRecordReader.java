@@ -17,11 +17,12 @@
 package com.jummyshapefile.shx;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import com.jummyshapefile.dbf.model.DBFHeader;
 import com.jummyshapefile.shx.model.SHXHeader;
 import com.jummyshapefile.shx.model.SHXRecord;
-import com.jummyshapefile.utils.ByteUtils;
 
 /**
  * Class that reads a record in a SHX file.
@@ -46,22 +47,44 @@ public class SHXRecordReader {
 	 */
 	public SHXRecord readRecord(final int recordNum, final byte[] data)
 			throws IOException {
+		if (data == null) {
+			throw new IllegalArgumentException("The byte array is null");
+		}
+
+		return readRecord(recordNum, ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Returns a SHXRecord object representing the ByteBuffer (the bytes are
+	 * read using absolute positions, so its position is not modified).
+	 *
+	 * @param data
+	 *            the ByteBuffer representing the record (from its position);
+	 *            its byte order is changed to big endian
+	 * @return a SHXRecord object representing the ByteBuffer
+	 * @throws IOException
+	 *             if there is a problem reading the record
+	 *
+	 * @see SHXRecord
+	 */
+	public SHXRecord readRecord(final int recordNum, final ByteBuffer data)
+			throws IOException {
 		SHXRecord output = null;
 
 		if (data == null) {
-			throw new IllegalArgumentException("The byte array is null");
+			throw new IllegalArgumentException("The ByteBuffer is null");
 		}
 
+		data.order(ByteOrder.BIG_ENDIAN);
+
 		output = new SHXRecord();
 		output.setRecordNum(recordNum);
-		// NOTE: The value returned is in 16-bit words
-		output.setOffset(2 * ByteUtils.readInt(data,
-				SHXParameters.SHX_RECORD_RECORDOFFSET_SIZE,
-				SHXParameters.SHX_RECORD_RECORDOFFSET_OFFSET));
-		// NOTE: The value returned is in 16-bit words
-		output.setLength(2 * ByteUtils.readInt(data,
-				SHXParameters.SHX_RECORD_RECORDLENGTH_SIZE,
-				SHXParameters.SHX_RECORD_RECORDLENGTH_OFFSET));
+		// NOTE: The value returned is in 16-bit words (big endian)
+		output.setOffset(2L * data.getInt(data.position()
+				+ SHXParameters.SHX_RECORD_RECORDOFFSET_OFFSET));
+		// NOTE: The value returned is in 16-bit words (big endian)
+		output.setLength((int) (2L * data.getInt(data.position()
+				+ SHXParameters.SHX_RECORD_RECORDLENGTH_OFFSET)));
 
 		return output;
 	}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.shx;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.jummyshapefile.binaryfile.AbstractBinaryFileWriter;
+import com.jummyshapefile.shx.model.SHXHeader;
+
+/**
+ * Class that writes a SHX file, record by record (the inverse of SHXFile).
+ * <p>
+ * The shape type and the MBR of the header (the same as in the SHP file) can
+ * be set using getHeader() before closing the writer.
+ *
+ * @see SHXFile
+ */
+public class SHXWriter extends AbstractBinaryFileWriter<SHXHeader> {
+	private int numRecords;
+
+	/**
+	 * Creates a writer of a SHX file.
+	 *
+	 * @param os
+	 *            the FileOutputStream representing the SHX file
+	 * @param shapeType
+	 *            the shape type of the SHP file
+	 * @throws IOException
+	 *             if there is a problem creating the writer
+	 */
+	public SHXWriter(final FileOutputStream os, final int shapeType)
+			throws IOException {
+		this(os, shapeType, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a writer of a SHX file.
+	 *
+	 * @param os
+	 *            the FileOutputStream representing the SHX file
+	 * @param shapeType
+	 *            the shape type of the SHP file
+	 * @param bufferSize
+	 *            the size in bytes of the buffer
+	 * @throws IOException
+	 *             if there is a problem creating the writer
+	 */
+	public SHXWriter(final FileOutputStream os, final int shapeType,
+			final int bufferSize) throws IOException {
+		super(os, new SHXHeader(), SHXParameters.SHX_HEADER_LENGTH,
+				bufferSize);
+
+		header.setShapeType(shapeType);
+	}
+
+	/**
+	 * Returns the number of records written.
+	 *
+	 * @return the number of records written
+	 */
+	public int getNumRecords() {
+		return numRecords;
+	}
+
+	/**
+	 * Writes the next record of the SHX file.
+	 *
+	 * @param offset
+	 *            the offset in bytes of the record in the SHP file
+	 * @param length
+	 *            the length in bytes of the content of the record in the SHP
+	 *            file
+	 * @throws IOException
+	 *             if there is a problem writing the record
+	 */
+	public void write(final long offset, final int length) throws IOException {
+		if (offset < 0 || length < 0) {
+			throw new IndexOutOfBoundsException("Requested: " + length
+					+ " bytes @ " + offset);
+		}
+
+		final ByteBuffer data = reserve(SHXParameters.SHX_RECORD_LENGTH);
+		data.order(ByteOrder.BIG_ENDIAN);
+		// NOTE: The offset and the length are stored in 16-bit words
+		data.putInt((int) (offset / 2));
+		data.putInt(length / 2);
+
+		numRecords++;
+	}
+
+	@Override
+	protected void writeHeader(final ByteBuffer data) {
+		data.order(ByteOrder.BIG_ENDIAN);
+		data.putInt(SHXParameters.SHX_HEADER_FILECODE_OFFSET,
+				SHXParameters.SHX_HEADER_FILECODE);
+		// NOTE: The length is stored in 16-bit words
+		data.putInt(SHXParameters.SHX_HEADER_FILELENGTH_OFFSET,
+				(int) (getLength() / 2));
+
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		data.putInt(SHXParameters.SHX_HEADER_VERSION_OFFSET,
+				SHXParameters.SHX_HEADER_VERSION);
+		data.putInt(SHXParameters.SHX_HEADER_SHAPETYPE_OFFSET,
+				header.getShapeType());
+		data.putDouble(SHXParameters.SHX_HEADER_MBRMINX_OFFSET,
+				header.getMinX());
+		data.putDouble(SHXParameters.SHX_HEADER_MBRMINY_OFFSET,
+				header.getMinY());
+		data.putDouble(SHXParameters.SHX_HEADER_MBRMAXX_OFFSET,
+				header.getMaxX());
+		data.putDouble(SHXParameters.SHX_HEADER_MBRMAXY_OFFSET,
+				header.getMaxY());
+	}
+}
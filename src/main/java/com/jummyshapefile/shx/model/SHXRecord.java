@@ -23,7 +23,7 @@ package com.jummyshapefile.shx.model;
  */
 public class SHXRecord {
 	private int recordNum;
-	private int offset;
+	private long offset;
 	private int length;
 
 	/**
@@ -50,7 +50,7 @@ public class SHXRecord {
 	 *
 	 * @return the record offset in the SHP file
 	 */
-	public int getOffset() {
+	public long getOffset() {
 		return offset;
 	}
 
@@ -60,7 +60,7 @@ public class SHXRecord {
 	 * @param offset
 	 *            the record offset in the SHP file
 	 */
-	public void setOffset(final int offset) {
+	public void setOffset(final long offset) {
 		this.offset = offset;
 	}
 
@@ -17,11 +17,48 @@
 package com.jummyshapefile.utils;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Utility class to work with bytes.
+ * <p>
+ * None of the methods copies the bytes read, so they can be used for every
+ * coordinate of a geometry without creating garbage. To read several values
+ * from the same byte array, an ordered ByteBuffer view (see wrap()) and its
+ * absolute get methods can be used instead.
  */
 public final class ByteUtils {
+	// Significant digits of an integer that is always an exact double
+	private static final int MAX_EXACT_DIGITS = 15;
+
+	// Powers of ten that are exact doubles
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	// 2^63, the first double out of the range of a long
+	private static final double LONG_RANGE = 9223372036854775808d;
+
+	/**
+	 * Returns a ByteBuffer view of the byte array (without copying it) with
+	 * the given byte order.
+	 *
+	 * @param bytes
+	 *            the byte array
+	 * @param order
+	 *            the byte order of the view (ByteOrder.LITTLE_ENDIAN for
+	 *            least significant first)
+	 * @return a ByteBuffer view of the byte array
+	 */
+	public static final ByteBuffer wrap(final byte[] bytes,
+			final ByteOrder order) {
+		if (bytes == null) {
+			throw new IllegalArgumentException("The byte array is null");
+		}
+
+		return ByteBuffer.wrap(bytes).order(order);
+	}
+
 	/**
 	 * Returns an int representing the bytes.
 	 *
@@ -41,11 +78,12 @@ public final class ByteUtils {
 			return output;
 		}
 
-		final byte[] intBytes = new byte[length];
-		for (int i = 0; i < intBytes.length; i++) {
-			intBytes[i] = bytes[offset + i];
+		// Only the first 4 bytes of the chunk fit in an int
+		output = 0;
+		for (int i = 0; i < length && i < 4; i++) {
+			output <<= 8;
+			output |= bytes[offset + i] & 0xFF;
 		}
-		output = ByteUtils.toInt(intBytes, 0);
 
 		return output;
 	}
@@ -69,11 +107,12 @@ public final class ByteUtils {
 			return output;
 		}
 
-		final byte[] intBytes = new byte[length];
-		for (int i = 0; i < intBytes.length; i++) {
-			intBytes[i] = bytes[offset + length - i - 1];
+		// Only the last 4 bytes of the chunk fit in an int
+		output = 0;
+		for (int i = 0; i < length && i < 4; i++) {
+			output <<= 8;
+			output |= bytes[offset + length - i - 1] & 0xFF;
 		}
-		output = ByteUtils.toInt(intBytes, 0);
 
 		return output;
 	}
@@ -97,11 +136,7 @@ public final class ByteUtils {
 			return output;
 		}
 
-		final byte[] rowCountBytes = new byte[length];
-		for (int i = 0; i < rowCountBytes.length; i++) {
-			rowCountBytes[i] = bytes[offset + i];
-		}
-		output = new String(rowCountBytes);
+		output = new String(bytes, offset, length);
 
 		return output;
 	}
@@ -125,11 +160,7 @@ public final class ByteUtils {
 			return output;
 		}
 
-		final byte[] doubleBytes = new byte[length];
-		for (int i = 0; i < doubleBytes.length; i++) {
-			doubleBytes[i] = bytes[offset + i];
-		}
-		output = ByteBuffer.wrap(doubleBytes).getDouble();
+		output = Double.longBitsToDouble(toLong(bytes, length, offset, false));
 
 		return output;
 	}
@@ -153,36 +184,295 @@ public final class ByteUtils {
 			return output;
 		}
 
-		final byte[] doubleBytes = new byte[length];
-		for (int i = 0; i < doubleBytes.length; i++) {
-			doubleBytes[i] = bytes[offset + length - i - 1];
-		}
-		output = ByteBuffer.wrap(doubleBytes).getDouble();
+		output = Double.longBitsToDouble(toLong(bytes, length, offset, true));
 
 		return output;
 	}
 
 	/**
-	 * Returns the integer representation of an array of bytes from a given
-	 * offset.
+	 * Returns whether a chunk of ASCII text is empty (only spaces or NUL
+	 * characters) or filled with asterisks (as dBase stores the numbers that
+	 * overflow the field).
 	 *
 	 * @param bytes
-	 *            an array of bytes
+	 *            the byte array
+	 * @param length
+	 *            the length of the chunk
 	 * @param offset
 	 *            the offset of the chunk
-	 * @return the integer representation bytes
+	 * @return whether the chunk is empty or filled with asterisks
 	 */
-	private static final int toInt(final byte[] bytes, final int offset) {
-		int output = 0;
+	public static final boolean isBlank(final byte[] bytes, final int length,
+			final int offset) {
+		boolean output = true;
 
 		if (bytes == null) {
 			return output;
 		}
 
-		for (int i = 0; i < 4 && i + offset < bytes.length; i++) {
+		for (int i = offset; i < offset + length && output; i++) {
+			output = bytes[i] == ' ' || bytes[i] == 0 || bytes[i] == '*';
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns a long representing a chunk of ASCII text with an integer
+	 * number (surrounded by optional spaces), parsed without creating a
+	 * String. A number with decimals or an exponent is truncated.
+	 *
+	 * @param bytes
+	 *            the byte array
+	 * @param length
+	 *            the length of the chunk
+	 * @param offset
+	 *            the offset of the chunk
+	 * @return a long representing the chunk
+	 * @throws NumberFormatException
+	 *             if the chunk is not a number or it is out of the range of
+	 *             a long
+	 */
+	public static final long parseLong(final byte[] bytes, final int length,
+			final int offset) throws NumberFormatException {
+		long output = 0;
+
+		if (bytes == null) {
+			throw new IllegalArgumentException("The byte array is null");
+		}
+
+		int i = skipSpaces(bytes, offset, offset + length);
+		final int end = trimSpaces(bytes, i, offset + length);
+
+		final boolean negative = i < end && bytes[i] == '-';
+		if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+			i++;
+		}
+
+		final int digitsStart = i;
+		// 18 digits always fit in a long
+		while (i < end && i - digitsStart < 18 && bytes[i] >= '0'
+				&& bytes[i] <= '9') {
+			output = output * 10 + (bytes[i] - '0');
+			i++;
+		}
+
+		if (i == end && i > digitsStart) {
+			output = negative ? -output : output;
+		} else {
+			// Decimals, exponent, too many digits or not a number
+			final String text = new String(bytes, offset, length).trim();
+			if (text.indexOf('.') < 0 && text.indexOf('e') < 0
+					&& text.indexOf('E') < 0) {
+				output = Long.parseLong(text.startsWith("+") ? text
+						.substring(1) : text);
+			} else {
+				final double value = Double.parseDouble(text);
+				// The cast would saturate the values out of range
+				if (!(value >= -LONG_RANGE && value < LONG_RANGE)) {
+					throw new NumberFormatException(
+							"Out of the range of a long: " + text);
+				}
+				output = (long) value;
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns a double representing a chunk of ASCII text with a decimal
+	 * number (surrounded by optional spaces), parsed without creating a
+	 * String. The result is the same as Double.parseDouble().
+	 * <p>
+	 * Numbers with up to 15 significant digits and small exponents (those
+	 * stored in DBF files) are computed as an integer multiplied or divided
+	 * by a power of ten, which are both exact doubles, so the result is
+	 * correctly rounded. Other numbers fall back to Double.parseDouble().
+	 *
+	 * @param bytes
+	 *            the byte array
+	 * @param length
+	 *            the length of the chunk
+	 * @param offset
+	 *            the offset of the chunk
+	 * @return a double representing the chunk
+	 * @throws NumberFormatException
+	 *             if the chunk is not a number
+	 */
+	public static final double parseDouble(final byte[] bytes,
+			final int length, final int offset) throws NumberFormatException {
+		double output = 0d;
+
+		if (bytes == null) {
+			throw new IllegalArgumentException("The byte array is null");
+		}
+
+		int i = skipSpaces(bytes, offset, offset + length);
+		final int end = trimSpaces(bytes, i, offset + length);
+
+		final boolean negative = i < end && bytes[i] == '-';
+		if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int zeros = 0;
+		int scale = 0;
+		boolean point = false;
+		boolean anyDigit = false;
+		boolean valid = true;
+		for (; i < end && valid; i++) {
+			final byte b = bytes[i];
+			if (b >= '0' && b <= '9') {
+				anyDigit = true;
+				if (point && b == '0') {
+					// Decimal zeros count only if followed by other digits
+					zeros++;
+					continue;
+				}
+				for (; zeros > 0 && valid; zeros--) {
+					if (mantissa > 0) {
+						digits++;
+					}
+					mantissa *= 10;
+					scale--;
+					valid = digits <= MAX_EXACT_DIGITS;
+				}
+				// Leading zeros are not significant
+				if (mantissa > 0 || b != '0') {
+					digits++;
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if (point) {
+					scale--;
+				}
+				valid = valid && digits <= MAX_EXACT_DIGITS;
+			} else if (b == '.' && !point) {
+				point = true;
+			} else if ((b == 'e' || b == 'E') && anyDigit && i < end - 1) {
+				break;
+			} else {
+				valid = false;
+			}
+		}
+
+		if (valid && i < end) {
+			// Exponent
+			i++;
+			final boolean negativeExponent = bytes[i] == '-';
+			if (bytes[i] == '-' || bytes[i] == '+') {
+				i++;
+			}
+			int exponent = 0;
+			final int exponentStart = i;
+			for (; i < end && valid; i++) {
+				valid = bytes[i] >= '0' && bytes[i] <= '9'
+						&& exponent < POWERS_OF_TEN.length;
+				exponent = exponent * 10 + (bytes[i] - '0');
+			}
+			valid = valid && i > exponentStart;
+			scale += negativeExponent ? -exponent : exponent;
+		}
+
+		if (valid && anyDigit && Math.abs(scale) < POWERS_OF_TEN.length) {
+			if (scale < 0) {
+				output = mantissa / POWERS_OF_TEN[-scale];
+			} else {
+				output = mantissa * POWERS_OF_TEN[scale];
+			}
+			output = negative ? -output : output;
+		} else {
+			output = Double.parseDouble(new String(bytes, offset, length)
+					.trim());
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the index of the first byte that is not a space (or a NUL
+	 * character) in a range of a byte array.
+	 *
+	 * @param bytes
+	 *            the byte array
+	 * @param start
+	 *            the start of the range (inclusive)
+	 * @param end
+	 *            the end of the range (exclusive)
+	 * @return the index of the first byte that is not a space
+	 */
+	private static final int skipSpaces(final byte[] bytes, final int start,
+			final int end) {
+		int output = start;
+
+		while (output < end && (bytes[output] == ' ' || bytes[output] == 0)) {
+			output++;
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the index after the last byte that is not a space (or a NUL
+	 * character) in a range of a byte array.
+	 *
+	 * @param bytes
+	 *            the byte array
+	 * @param start
+	 *            the start of the range (inclusive)
+	 * @param end
+	 *            the end of the range (exclusive)
+	 * @return the index after the last byte that is not a space
+	 */
+	private static final int trimSpaces(final byte[] bytes, final int start,
+			final int end) {
+		int output = end;
+
+		while (output > start
+				&& (bytes[output - 1] == ' ' || bytes[output - 1] == 0)) {
+			output--;
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the long representation of the first 8 bytes of a chunk of an
+	 * array of bytes (or of the last 8 bytes, if the least significant byte
+	 * comes first), without copying the chunk.
+	 *
+	 * @param bytes
+	 *            an array of bytes
+	 * @param length
+	 *            the length of the chunk
+	 * @param offset
+	 *            the offset of the chunk
+	 * @param leastSignificantFirst
+	 *            whether the least significant byte comes first
+	 * @return the long representation of the bytes
+	 * @throws IndexOutOfBoundsException
+	 *             if the chunk is shorter than 8 bytes
+	 */
+	private static final long toLong(final byte[] bytes, final int length,
+			final int offset, final boolean leastSignificantFirst) {
+		long output = 0;
+
+		if (length < 8) {
+			throw new IndexOutOfBoundsException("Requested: 8 bytes. Length: "
+					+ length);
+		}
+
+		for (int i = 0; i < 8; i++) {
 			output <<= 8;
-			output |= bytes[i] & 0xFF;
+			if (leastSignificantFirst) {
+				output |= bytes[offset + length - i - 1] & 0xFFL;
+			} else {
+				output |= bytes[offset + i] & 0xFFL;
+			}
 		}
+
 		return output;
 	}
 }
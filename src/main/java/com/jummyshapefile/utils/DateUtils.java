@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.utils;
+
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+/**
+ * Utility class to work with dates stored as ASCII text (YYYYMMDD, as in the
+ * D fields of DBF files) without SimpleDateFormat.
+ * <p>
+ * Dates are represented as epoch days (the number of days since 1970-01-01 in
+ * the proleptic Gregorian calendar). Thread-safe, as no formatter or calendar
+ * is shared.
+ */
+public final class DateUtils {
+	/**
+	 * The value returned for a date that cannot be parsed.
+	 */
+	public static final int INVALID_DATE = Integer.MIN_VALUE;
+
+	// Length of a date stored as YYYYMMDD
+	private static final int DATE_LENGTH = 8;
+
+	/**
+	 * Returns the epoch day of a date stored as YYYYMMDD (surrounded by
+	 * optional spaces), parsed without creating any object.
+	 *
+	 * @param bytes
+	 *            the byte array
+	 * @param length
+	 *            the length of the chunk
+	 * @param offset
+	 *            the offset of the chunk
+	 * @return the epoch day of the date (INVALID_DATE if the chunk is empty or
+	 *         is not a valid date)
+	 */
+	public static int parseEpochDay(final byte[] bytes, final int length,
+			final int offset) {
+		int output = INVALID_DATE;
+
+		if (bytes == null) {
+			throw new IllegalArgumentException("The byte array is null");
+		}
+
+		int start = offset;
+		int end = offset + length;
+		while (start < end && bytes[start] == ' ') {
+			start++;
+		}
+		while (end > start && (bytes[end - 1] == ' ' || bytes[end - 1] == 0)) {
+			end--;
+		}
+
+		if (end - start == DATE_LENGTH) {
+			final int year = parseDigits(bytes, start, 4);
+			final int month = parseDigits(bytes, start + 4, 2);
+			final int day = parseDigits(bytes, start + 6, 2);
+
+			if (year >= 0 && month >= 1 && month <= 12 && day >= 1
+					&& day <= getDaysInMonth(year, month)) {
+				output = toEpochDay(year, month, day);
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the epoch day of a date.
+	 *
+	 * @param year
+	 *            the year
+	 * @param month
+	 *            the month (1-12)
+	 * @param day
+	 *            the day of the month (1-31)
+	 * @return the epoch day of the date
+	 */
+	public static int toEpochDay(final int year, final int month,
+			final int day) {
+		// Years starting in March, so the leap day is the last one
+		final int y = month <= 2 ? year - 1 : year;
+		final int era = (y >= 0 ? y : y - 399) / 400;
+		final int yearOfEra = y - era * 400;
+		final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2)
+				/ 5 + day - 1;
+		final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+				+ dayOfYear;
+
+		// 719468 days between 0000-03-01 and 1970-01-01
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/**
+	 * Returns the date (year, month and day) of an epoch day.
+	 *
+	 * @param epochDay
+	 *            the epoch day
+	 * @return an array with the year, the month (1-12) and the day of the
+	 *         month (1-31)
+	 */
+	public static int[] fromEpochDay(final int epochDay) {
+		final int days = epochDay + 719468;
+		final int era = (days >= 0 ? days : days - 146096) / 146097;
+		final int dayOfEra = days - era * 146097;
+		final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+				- dayOfEra / 146096) / 365;
+		final int dayOfYear = dayOfEra
+				- (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		final int mp = (5 * dayOfYear + 2) / 153;
+		final int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		final int month = mp < 10 ? mp + 3 : mp - 9;
+		final int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		return new int[] { year, month, day };
+	}
+
+	/**
+	 * Returns a Date representing the midnight (in the default time zone) of an
+	 * epoch day.
+	 *
+	 * @param epochDay
+	 *            the epoch day
+	 * @return a Date representing the midnight of the epoch day
+	 */
+	public static Date toDate(final int epochDay) {
+		final int[] date = fromEpochDay(epochDay);
+
+		return toDate(date[0], date[1], date[2]);
+	}
+
+	/**
+	 * Returns a Date representing the midnight (in the default time zone) of a
+	 * date. Out of range months and days are rolled over to the following
+	 * months or years (as SimpleDateFormat does when lenient).
+	 *
+	 * @param year
+	 *            the year
+	 * @param month
+	 *            the month (1-12)
+	 * @param day
+	 *            the day of the month (1-31)
+	 * @return a Date representing the midnight of the date
+	 */
+	public static Date toDate(final int year, final int month, final int day) {
+		// A new calendar for each call, as calendars are not thread-safe
+		return new GregorianCalendar(year, month - 1, day).getTime();
+	}
+
+	/**
+	 * Returns the number of days of a month.
+	 *
+	 * @param year
+	 *            the year
+	 * @param month
+	 *            the month (1-12)
+	 * @return the number of days of the month
+	 */
+	public static int getDaysInMonth(final int year, final int month) {
+		int output = 31;
+
+		if (month == 2) {
+			final boolean leap = year % 4 == 0
+					&& (year % 100 != 0 || year % 400 == 0);
+			output = leap ? 29 : 28;
+		} else if (month == 4 || month == 6 || month == 9 || month == 11) {
+			output = 30;
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the number represented by a chunk of ASCII digits.
+	 *
+	 * @param bytes
+	 *            the byte array
+	 * @param offset
+	 *            the offset of the chunk
+	 * @param length
+	 *            the number of digits
+	 * @return the number represented by the digits (-1 if there is any byte
+	 *         that is not a digit)
+	 */
+	private static int parseDigits(final byte[] bytes, final int offset,
+			final int length) {
+		int output = 0;
+
+		for (int i = offset; i < offset + length && output >= 0; i++) {
+			if (bytes[i] >= '0' && bytes[i] <= '9') {
+				output = output * 10 + (bytes[i] - '0');
+			} else {
+				output = -1;
+			}
+		}
+
+		return output;
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Formats doubles as decimal text into a reusable char array, without
+ * creating any object for the usual values:
+ * <ul>
+ * <li>By default, with the shortest decimal representation that reads back
+ * as the same double, exactly as Double.toString() for the values written in
+ * plain notation (absolute values from 0.001 to 10^7). Other values fall back
+ * to Double.toString().
+ * <li>With a fixed precision, rounded (half up) to a number of decimals
+ * without trailing zeros.
+ * </ul>
+ * Not thread-safe.
+ *
+ * @see WKTWriter
+ * @see GeoJSONWriter
+ */
+final class DoubleFormatter {
+	private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1000L,
+			10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+			10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+			100000000000000L, 1000000000000000L, 10000000000000000L,
+			100000000000000000L, 1000000000000000000L };
+	// Largest integer represented exactly by a double (2^53)
+	private static final double MAX_EXACT = 9007199254740992d;
+
+	/**
+	 * The largest precision allowed.
+	 */
+	static final int MAX_PRECISION = POWERS_OF_TEN.length - 1;
+
+	// Sign, 19 digits, point and 18 decimals
+	private char[] chars = new char[40];
+	private int length;
+	private int precision = -1;
+
+	/**
+	 * Returns the number of decimals of the doubles formatted.
+	 *
+	 * @return the number of decimals of the doubles formatted (-1 for the
+	 *         shortest representation that reads back as the same double)
+	 */
+	int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Sets the number of decimals of the doubles formatted.
+	 *
+	 * @param precision
+	 *            the number of decimals of the doubles formatted (0-18, or -1
+	 *            for the shortest representation that reads back as the same
+	 *            double)
+	 */
+	void setPrecision(final int precision) {
+		if (precision < -1 || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("Invalid precision: "
+					+ precision);
+		}
+
+		this.precision = precision;
+	}
+
+	/**
+	 * Returns the chars of the last double formatted (from the first one).
+	 *
+	 * @return the chars of the last double formatted
+	 */
+	char[] getChars() {
+		return chars;
+	}
+
+	/**
+	 * Formats a double using the precision of the formatter.
+	 *
+	 * @param value
+	 *            the double
+	 * @return the number of chars of the double (see getChars())
+	 */
+	int format(final double value) {
+		final double abs = Math.abs(value);
+		length = 0;
+
+		if (precision >= 0) {
+			final double scaled = abs * POWERS_OF_TEN[precision];
+			if (scaled < MAX_EXACT) {
+				final long unscaled = (long) (scaled + 0.5);
+				if (value < 0 && unscaled != 0) {
+					chars[length++] = '-';
+				}
+				appendDecimal(unscaled, precision, false);
+			} else if (Double.isNaN(value) || Double.isInfinite(value)) {
+				appendString(Double.toString(value));
+			} else {
+				appendString(BigDecimal.valueOf(value)
+						.setScale(precision, RoundingMode.HALF_UP)
+						.stripTrailingZeros().toPlainString());
+			}
+		} else {
+			// Shortest number of decimals that reads back as the same double
+			int decimals = -1;
+			long unscaled = 0;
+			if (abs >= 1e-3 && abs < 1e7) {
+				for (int i = 0; i < POWERS_OF_TEN.length && decimals < 0; i++) {
+					final double scaled = abs * POWERS_OF_TEN[i];
+					if (scaled >= MAX_EXACT) {
+						break;
+					}
+					unscaled = Math.round(scaled);
+					// Both values are exact, and the division is correctly
+					// rounded, as when parsing the decimal
+					if (unscaled / (double) POWERS_OF_TEN[i] == abs) {
+						decimals = i;
+					}
+				}
+			}
+
+			if (decimals >= 0) {
+				if (value < 0) {
+					chars[length++] = '-';
+				}
+				appendDecimal(unscaled, decimals, true);
+			} else if (value == 0) {
+				appendString(1 / value < 0 ? "-0.0" : "0.0");
+			} else {
+				appendString(Double.toString(value));
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Appends a non negative decimal number, given its digits and its number
+	 * of decimals, without trailing zeros in its decimals.
+	 *
+	 * @param unscaled
+	 *            the digits of the number
+	 * @param decimals
+	 *            the number of decimals
+	 * @param pointZero
+	 *            whether an integer is written with ".0"
+	 */
+	private void appendDecimal(final long unscaled, final int decimals,
+			final boolean pointZero) {
+		long integer = unscaled / POWERS_OF_TEN[decimals];
+		long fraction = unscaled % POWERS_OF_TEN[decimals];
+
+		// Integer part, from its last digit
+		int digits = 1;
+		for (long i = integer; i >= 10; i /= 10) {
+			digits++;
+		}
+		for (int i = length + digits - 1; i >= length; i--) {
+			chars[i] = (char) ('0' + integer % 10);
+			integer /= 10;
+		}
+		length += digits;
+
+		if (fraction > 0) {
+			// Skip the trailing zeros
+			int fractionDigits = decimals;
+			while (fraction % 10 == 0) {
+				fraction /= 10;
+				fractionDigits--;
+			}
+
+			chars[length++] = '.';
+			for (int i = length + fractionDigits - 1; i >= length; i--) {
+				chars[i] = (char) ('0' + fraction % 10);
+				fraction /= 10;
+			}
+			length += fractionDigits;
+		} else if (pointZero) {
+			chars[length++] = '.';
+			chars[length++] = '0';
+		}
+	}
+
+	/**
+	 * Appends a String (growing the char array if needed).
+	 *
+	 * @param s
+	 *            the String
+	 */
+	private void appendString(final String s) {
+		if (length + s.length() > chars.length) {
+			final char[] grown = new char[length + s.length()];
+			System.arraycopy(chars, 0, grown, 0, length);
+			chars = grown;
+		}
+
+		s.getChars(0, s.length(), chars, length);
+		length += s.length();
+	}
+}
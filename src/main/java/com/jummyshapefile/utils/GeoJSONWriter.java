@@ -0,0 +1,803 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.utils;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import com.jummyshapefile.dbf.model.DBFField;
+import com.jummyshapefile.shapefile.model.Entity;
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shapefile.model.MultiPoint;
+import com.jummyshapefile.shapefile.model.PackedGeometry;
+import com.jummyshapefile.shapefile.model.Point;
+import com.jummyshapefile.shapefile.model.Polygon;
+import com.jummyshapefile.shapefile.model.Polyline;
+
+/**
+ * Writes a GeoJSON FeatureCollection feature by feature to a Writer or to an
+ * OutputStream (as UTF-8), so the memory used does not depend on the number
+ * of features:
+ *
+ * <pre>
+ * writer.writeStart();
+ * writer.writeFeature(entity);
+ * ...
+ * writer.writeEnd();
+ * </pre>
+ * <p>
+ * Each Entity is written as a Feature whose id is its record number. The
+ * geometries are mapped as in their WKT (see WKTUtils): a Polyline is a
+ * LineString (or a MultiLineString if it has several parts), a Polygon is a
+ * Polygon whose rings are its parts (or a MultiPolygon if it has several outer
+ * rings), and a null shape is a null geometry. The coordinates are written as
+ * they are (GeoJSON expects WGS84 longitudes and latitudes, so the shapefile
+ * must use that projection to be standard).
+ * <p>
+ * The rings of a Polygon are grouped by their orientation, as in shapefiles:
+ * each clockwise ring (and the first one) starts a polygon, and the other
+ * rings are holes of the polygon started before them. The orientation is not
+ * normalized: the rings are written as stored in the shapefile (outer rings
+ * clockwise), not counterclockwise as RFC 7946 recommends.
+ * <p>
+ * The DBF fields are written as properties: numbers as JSON numbers (NaN and
+ * infinite values as null), dates as "yyyy-MM-dd" strings and other values as
+ * strings.
+ * <p>
+ * The coordinates are formatted without creating any object, as in a
+ * WKTWriter, optionally with a fixed precision. The chars are written
+ * through a small buffer, drained when it is full and by writeEnd() and
+ * flush(). Not thread-safe.
+ *
+ * @see Entity
+ * @see WKTWriter
+ */
+public class GeoJSONWriter implements Flushable {
+	/**
+	 * Size in chars of the buffer.
+	 */
+	public static final int BUFFER_SIZE = 8192;
+
+	// Largest integer represented exactly by a double (2^53)
+	private static final double MAX_EXACT = 9007199254740992d;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Writer writer;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private final DoubleFormatter formatter = new DoubleFormatter();
+	private final DoubleFormatter propertyFormatter = new DoubleFormatter();
+	private final Calendar calendar = new GregorianCalendar();
+	private int count;
+	private int numFeatures = -1;
+
+	/**
+	 * Creates a writer of GeoJSON to a Writer.
+	 *
+	 * @param writer
+	 *            the destination of the GeoJSON
+	 */
+	public GeoJSONWriter(final Writer writer) {
+		if (writer == null) {
+			throw new IllegalArgumentException("The Writer is null");
+		}
+
+		this.writer = writer;
+	}
+
+	/**
+	 * Creates a writer of GeoJSON to an OutputStream (encoded as UTF-8).
+	 *
+	 * @param stream
+	 *            the destination of the GeoJSON
+	 */
+	public GeoJSONWriter(final OutputStream stream) {
+		if (stream == null) {
+			throw new IllegalArgumentException("The OutputStream is null");
+		}
+
+		this.writer = new OutputStreamWriter(stream, Charset.forName("UTF-8"));
+	}
+
+	/**
+	 * Returns the number of decimals of the coordinates written.
+	 *
+	 * @return the number of decimals of the coordinates written (-1 for the
+	 *         shortest representation that reads back as the same double)
+	 */
+	public int getPrecision() {
+		return formatter.getPrecision();
+	}
+
+	/**
+	 * Sets the number of decimals of the coordinates written. The coordinates
+	 * are rounded (half up) and written without trailing zeros.
+	 *
+	 * @param precision
+	 *            the number of decimals of the coordinates written (0-18, or
+	 *            -1 for the shortest representation that reads back as the
+	 *            same double)
+	 */
+	public void setPrecision(final int precision) {
+		formatter.setPrecision(precision);
+	}
+
+	/**
+	 * Returns the number of features written since writeStart().
+	 *
+	 * @return the number of features written (-1 if the FeatureCollection is
+	 *         not started)
+	 */
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	/**
+	 * Writes the beginning of the FeatureCollection.
+	 *
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	public void writeStart() throws IOException {
+		if (numFeatures >= 0) {
+			throw new IllegalStateException(
+					"The FeatureCollection is already started");
+		}
+
+		append("{\"type\":\"FeatureCollection\",\"features\":[");
+		numFeatures = 0;
+	}
+
+	/**
+	 * Writes an Entity as a Feature of the FeatureCollection.
+	 *
+	 * @param entity
+	 *            the Entity
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 *
+	 * @see Entity
+	 */
+	public void writeFeature(final Entity entity) throws IOException {
+		if (entity == null) {
+			throw new IllegalArgumentException("The entity is null");
+		}
+		if (numFeatures < 0) {
+			throw new IllegalStateException(
+					"The FeatureCollection is not started");
+		}
+
+		if (numFeatures > 0) {
+			append(',');
+		}
+		append("{\"type\":\"Feature\",\"id\":");
+		append(Integer.toString(entity.getRecordNum()));
+		append(",\"geometry\":");
+		writeGeometry(entity.getGeometry());
+		append(",\"properties\":");
+		writeProperties(entity.getData());
+		append('}');
+
+		numFeatures++;
+	}
+
+	/**
+	 * Writes the end of the FeatureCollection and flushes the destination.
+	 *
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	public void writeEnd() throws IOException {
+		if (numFeatures < 0) {
+			throw new IllegalStateException(
+					"The FeatureCollection is not started");
+		}
+
+		append("]}");
+		numFeatures = -1;
+
+		flush();
+	}
+
+	/**
+	 * Writes the buffered chars to the destination and flushes it.
+	 *
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	public void flush() throws IOException {
+		drain();
+		writer.flush();
+	}
+
+	/**
+	 * Writes the GeoJSON geometry object representing a Geometry (null if it
+	 * cannot be represented as GeoJSON).
+	 *
+	 * @param geometry
+	 *            the Geometry
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writeGeometry(final Geometry geometry) throws IOException {
+		if (geometry instanceof Point) {
+			final Point point = (Point) geometry;
+			append("{\"type\":\"Point\",\"coordinates\":");
+			writeCoordinates(point.getX(), point.getY());
+			append('}');
+		}
+		// As Polygon extends Polyline, check Polygon first
+		else if (geometry instanceof Polygon) {
+			final List<List<Point>> parts = ((Polygon) geometry).getParts();
+			if (parts == null || isEmpty(parts)) {
+				append("{\"type\":\"Polygon\",\"coordinates\":[]");
+			} else if (!hasSeveralPolygons(parts)) {
+				append("{\"type\":\"Polygon\",\"coordinates\":");
+				writeParts(parts);
+			} else {
+				append("{\"type\":\"MultiPolygon\",\"coordinates\":");
+				writePolygons(parts);
+			}
+			append('}');
+		} else if (geometry instanceof Polyline) {
+			final List<List<Point>> parts = ((Polyline) geometry).getParts();
+			if (parts == null || isEmpty(parts)) {
+				append("{\"type\":\"LineString\",\"coordinates\":[]");
+			} else if (parts.size() == 1) {
+				append("{\"type\":\"LineString\",\"coordinates\":");
+				writePoints(parts.get(0));
+			} else {
+				append("{\"type\":\"MultiLineString\",\"coordinates\":");
+				writeParts(parts);
+			}
+			append('}');
+		} else if (geometry instanceof MultiPoint) {
+			final List<Point> points = ((MultiPoint) geometry).getPoints();
+			append("{\"type\":\"MultiPoint\",\"coordinates\":");
+			writePoints(points);
+			append('}');
+		} else if (geometry instanceof PackedGeometry) {
+			writePacked((PackedGeometry) geometry);
+		} else {
+			append("null");
+		}
+	}
+
+	/**
+	 * Writes the GeoJSON geometry object representing a PackedGeometry (null
+	 * if its shape type is not supported).
+	 *
+	 * @param packed
+	 *            the PackedGeometry
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writePacked(final PackedGeometry packed) throws IOException {
+		final int numParts = packed.getNumParts();
+		final int numPoints = packed.getNumPoints();
+
+		switch (packed.getShapeType()) {
+		case 1:
+			append("{\"type\":\"Point\",\"coordinates\":");
+			writeCoordinates(packed.getX(0), packed.getY(0));
+			append('}');
+			break;
+		case 3:
+			if (numParts == 1 && numPoints > 0) {
+				append("{\"type\":\"LineString\",\"coordinates\":");
+				writePoints(packed, 0, numPoints);
+			} else if (numParts > 1 && numPoints > 0) {
+				append("{\"type\":\"MultiLineString\",\"coordinates\":");
+				writeParts(packed);
+			} else {
+				append("{\"type\":\"LineString\",\"coordinates\":[]");
+			}
+			append('}');
+			break;
+		case 5:
+			if (numParts == 0 || numPoints == 0) {
+				append("{\"type\":\"Polygon\",\"coordinates\":[]");
+			} else if (!hasSeveralPolygons(packed)) {
+				append("{\"type\":\"Polygon\",\"coordinates\":");
+				writeParts(packed);
+			} else {
+				append("{\"type\":\"MultiPolygon\",\"coordinates\":");
+				writePolygons(packed);
+			}
+			append('}');
+			break;
+		case 8:
+			append("{\"type\":\"MultiPoint\",\"coordinates\":");
+			writePoints(packed, 0, numPoints);
+			append('}');
+			break;
+		default:
+			append("null");
+			break;
+		}
+	}
+
+	/**
+	 * Writes the parts of a Polyline or a Polygon as an array of arrays of
+	 * positions.
+	 *
+	 * @param parts
+	 *            the parts
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writeParts(final List<List<Point>> parts) throws IOException {
+		append('[');
+		for (int i = 0; i < parts.size(); i++) {
+			if (i > 0) {
+				append(',');
+			}
+			writePoints(parts.get(i));
+		}
+		append(']');
+	}
+
+	/**
+	 * Writes the parts of a PackedGeometry as an array of arrays of positions.
+	 *
+	 * @param packed
+	 *            the PackedGeometry
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writeParts(final PackedGeometry packed) throws IOException {
+		append('[');
+		for (int i = 0; i < packed.getNumParts(); i++) {
+			if (i > 0) {
+				append(',');
+			}
+			writePoints(packed, packed.getPartStart(i), packed.getPartEnd(i));
+		}
+		append(']');
+	}
+
+	/**
+	 * Writes the rings of a Polygon as an array of polygons (arrays of
+	 * rings), each clockwise ring starting a polygon.
+	 *
+	 * @param parts
+	 *            the rings
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writePolygons(final List<List<Point>> parts)
+			throws IOException {
+		append("[[");
+		for (int i = 0; i < parts.size(); i++) {
+			if (i > 0) {
+				append(isClockwise(parts.get(i)) ? "],[" : ",");
+			}
+			writePoints(parts.get(i));
+		}
+		append("]]");
+	}
+
+	/**
+	 * Writes the rings of a PackedGeometry as an array of polygons (arrays of
+	 * rings), each clockwise ring starting a polygon.
+	 *
+	 * @param packed
+	 *            the PackedGeometry
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writePolygons(final PackedGeometry packed)
+			throws IOException {
+		append("[[");
+		for (int i = 0; i < packed.getNumParts(); i++) {
+			final int start = packed.getPartStart(i);
+			final int end = packed.getPartEnd(i);
+			if (i > 0) {
+				append(isClockwise(packed, start, end) ? "],[" : ",");
+			}
+			writePoints(packed, start, end);
+		}
+		append("]]");
+	}
+
+	/**
+	 * Writes a list of points as an array of positions.
+	 *
+	 * @param points
+	 *            the points (null is written as an empty array)
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writePoints(final List<Point> points) throws IOException {
+		append('[');
+		if (points != null) {
+			for (int i = 0; i < points.size(); i++) {
+				if (i > 0) {
+					append(',');
+				}
+				final Point point = points.get(i);
+				writeCoordinates(point.getX(), point.getY());
+			}
+		}
+		append(']');
+	}
+
+	/**
+	 * Writes some points of a PackedGeometry as an array of positions.
+	 *
+	 * @param packed
+	 *            the PackedGeometry
+	 * @param start
+	 *            the index of the first point
+	 * @param end
+	 *            the index following the last point
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writePoints(final PackedGeometry packed, final int start,
+			final int end) throws IOException {
+		append('[');
+		for (int i = start; i < end; i++) {
+			if (i > start) {
+				append(',');
+			}
+			writeCoordinates(packed.getX(i), packed.getY(i));
+		}
+		append(']');
+	}
+
+	/**
+	 * Writes a position (an array with the coordinates of a point).
+	 *
+	 * @param x
+	 *            the X coordinate
+	 * @param y
+	 *            the Y coordinate
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writeCoordinates(final double x, final double y)
+			throws IOException {
+		append('[');
+		writeNumber(formatter, x);
+		append(',');
+		writeNumber(formatter, y);
+		append(']');
+	}
+
+	/**
+	 * Writes the DBF fields of an Entity as the properties object.
+	 *
+	 * @param data
+	 *            the DBF fields (null is written as a null object)
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writeProperties(final List<DBFField> data) throws IOException {
+		if (data == null) {
+			append("null");
+		} else {
+			append('{');
+			boolean first = true;
+			for (final DBFField field : data) {
+				if (field != null && field.getDescriptor() != null) {
+					if (!first) {
+						append(',');
+					}
+					writeString(field.getDescriptor().getName());
+					append(':');
+					writeValue(field.getValue());
+					first = false;
+				}
+			}
+			append('}');
+		}
+	}
+
+	/**
+	 * Writes the value of a DBF field.
+	 *
+	 * @param value
+	 *            the value
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writeValue(final Object value) throws IOException {
+		if (value == null) {
+			append("null");
+		} else if (value instanceof Double || value instanceof Float) {
+			final double number = ((Number) value).doubleValue();
+			if (number == Math.rint(number) && Math.abs(number) < MAX_EXACT) {
+				// Integral values (as in N fields) without decimals
+				append(Long.toString((long) number));
+			} else {
+				writeNumber(propertyFormatter, number);
+			}
+		} else if (value instanceof Number) {
+			append(value.toString());
+		} else if (value instanceof Boolean) {
+			append(value.toString());
+		} else if (value instanceof Date) {
+			calendar.setTime((Date) value);
+			append('"');
+			appendDigits(calendar.get(Calendar.YEAR), 4);
+			append('-');
+			appendDigits(calendar.get(Calendar.MONTH) + 1, 2);
+			append('-');
+			appendDigits(calendar.get(Calendar.DAY_OF_MONTH), 2);
+			append('"');
+		} else {
+			writeString(value.toString());
+		}
+	}
+
+	/**
+	 * Writes a double as a JSON number (null if it is NaN or infinite).
+	 *
+	 * @param doubleFormatter
+	 *            the DoubleFormatter
+	 * @param value
+	 *            the double
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writeNumber(final DoubleFormatter doubleFormatter,
+			final double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			append("null");
+		} else {
+			final int length = doubleFormatter.format(value);
+			append(doubleFormatter.getChars(), 0, length);
+		}
+	}
+
+	/**
+	 * Writes a JSON string, escaping the quotes, the backslashes and the
+	 * control characters.
+	 *
+	 * @param s
+	 *            the String
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writeString(final String s) throws IOException {
+		append('"');
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				append('\\');
+				append(c);
+			} else if (c == '\n') {
+				append("\\n");
+			} else if (c == '\r') {
+				append("\\r");
+			} else if (c == '\t') {
+				append("\\t");
+			} else if (c < 0x20) {
+				append("\\u00");
+				append(HEX[c >> 4]);
+				append(HEX[c & 0xF]);
+			} else {
+				append(c);
+			}
+		}
+		append('"');
+	}
+
+	/**
+	 * Appends a non negative number with a minimum number of digits (padded
+	 * with zeros).
+	 *
+	 * @param number
+	 *            the number
+	 * @param digits
+	 *            the minimum number of digits
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void appendDigits(final int number, final int digits)
+			throws IOException {
+		final String s = Integer.toString(number);
+		for (int i = s.length(); i < digits; i++) {
+			append('0');
+		}
+		append(s);
+	}
+
+	/**
+	 * Returns whether all the parts are null or have no points.
+	 *
+	 * @param parts
+	 *            the parts
+	 * @return whether all the parts are null or have no points
+	 */
+	private static boolean isEmpty(final List<List<Point>> parts) {
+		boolean output = true;
+
+		for (int i = 0; i < parts.size() && output; i++) {
+			final List<Point> points = parts.get(i);
+			output = points == null || points.isEmpty();
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns whether the rings of a Polygon form several polygons (a
+	 * clockwise ring after the first one).
+	 *
+	 * @param parts
+	 *            the rings
+	 * @return whether the rings form several polygons
+	 */
+	private static boolean hasSeveralPolygons(final List<List<Point>> parts) {
+		boolean output = false;
+
+		for (int i = 1; i < parts.size() && !output; i++) {
+			output = isClockwise(parts.get(i));
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns whether the rings of a PackedGeometry form several polygons (a
+	 * clockwise ring after the first one).
+	 *
+	 * @param packed
+	 *            the PackedGeometry
+	 * @return whether the rings form several polygons
+	 */
+	private static boolean hasSeveralPolygons(final PackedGeometry packed) {
+		boolean output = false;
+
+		for (int i = 1; i < packed.getNumParts() && !output; i++) {
+			output = isClockwise(packed, packed.getPartStart(i),
+					packed.getPartEnd(i));
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns whether a ring is clockwise (its signed area, by the shoelace
+	 * formula, is negative).
+	 *
+	 * @param points
+	 *            the points of the ring (may be null)
+	 * @return whether the ring is clockwise
+	 */
+	private static boolean isClockwise(final List<Point> points) {
+		double sum = 0;
+
+		if (points != null) {
+			for (int i = 0; i < points.size(); i++) {
+				final Point point = points.get(i);
+				final Point next = points.get((i + 1) % points.size());
+				sum += point.getX() * next.getY() - next.getX() * point.getY();
+			}
+		}
+
+		return sum < 0;
+	}
+
+	/**
+	 * Returns whether a ring of a PackedGeometry is clockwise (its signed
+	 * area, by the shoelace formula, is negative).
+	 *
+	 * @param packed
+	 *            the PackedGeometry
+	 * @param start
+	 *            the index of the first point of the ring
+	 * @param end
+	 *            the index following the last point of the ring
+	 * @return whether the ring is clockwise
+	 */
+	private static boolean isClockwise(final PackedGeometry packed,
+			final int start, final int end) {
+		double sum = 0;
+
+		for (int i = start; i < end; i++) {
+			final int next = i + 1 < end ? i + 1 : start;
+			sum += packed.getX(i) * packed.getY(next) - packed.getX(next)
+					* packed.getY(i);
+		}
+
+		return sum < 0;
+	}
+
+	/**
+	 * Appends a char to the buffer.
+	 *
+	 * @param c
+	 *            the char
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void append(final char c) throws IOException {
+		if (count == buffer.length) {
+			drain();
+		}
+		buffer[count++] = c;
+	}
+
+	/**
+	 * Appends a String to the buffer.
+	 *
+	 * @param s
+	 *            the String
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void append(final String s) throws IOException {
+		if (count + s.length() > buffer.length) {
+			drain();
+		}
+		if (s.length() > buffer.length) {
+			writer.write(s);
+		} else {
+			s.getChars(0, s.length(), buffer, count);
+			count += s.length();
+		}
+	}
+
+	/**
+	 * Appends some chars to the buffer.
+	 *
+	 * @param chars
+	 *            the char array
+	 * @param offset
+	 *            the offset of the first char
+	 * @param length
+	 *            the number of chars
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void append(final char[] chars, final int offset, final int length)
+			throws IOException {
+		if (count + length > buffer.length) {
+			drain();
+		}
+		if (length > buffer.length) {
+			writer.write(chars, offset, length);
+		} else {
+			System.arraycopy(chars, offset, buffer, count, length);
+			count += length;
+		}
+	}
+
+	/**
+	 * Writes the buffered chars to the destination.
+	 *
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void drain() throws IOException {
+		if (count > 0) {
+			writer.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+}
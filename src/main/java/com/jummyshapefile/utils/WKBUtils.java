@@ -0,0 +1,429 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shapefile.model.MultiPoint;
+import com.jummyshapefile.shapefile.model.PackedGeometry;
+import com.jummyshapefile.shapefile.model.Point;
+import com.jummyshapefile.shapefile.model.Polygon;
+import com.jummyshapefile.shapefile.model.Polyline;
+
+/**
+ * Utility class to work with WKBs (Well-Known Binary, little endian) and
+ * Geometries.
+ * <p>
+ * The geometries are mapped as in their WKT (see WKTUtils): a Polyline is a
+ * LineString (or a MultiLineString if it has several parts), a Polygon is a
+ * Polygon whose rings are its parts and a MultiPoint is a MultiPoint.
+ * <p>
+ * To convert the records of a SHP file without decoding their geometries,
+ * use SHPGeometryReader.readWKB().
+ * 
+ * @see Geometry
+ * @see WKTUtils
+ */
+public final class WKBUtils {
+	/**
+	 * The byte order mark of a little endian (NDR) WKB.
+	 */
+	public static final byte WKB_NDR = 1;
+
+	public static final int WKB_POINT = 1;
+	public static final int WKB_LINESTRING = 2;
+	public static final int WKB_POLYGON = 3;
+	public static final int WKB_MULTIPOINT = 4;
+	public static final int WKB_MULTILINESTRING = 5;
+
+	/**
+	 * The length in bytes of the header of a WKB geometry (byte order and
+	 * geometry type).
+	 */
+	public static final int WKB_HEADER_LENGTH = 5;
+
+	/**
+	 * The length in bytes of the WKB of a Point.
+	 */
+	public static final int WKB_POINT_LENGTH = WKB_HEADER_LENGTH + 16;
+
+	/**
+	 * Returns the WKB representing the given Geometry.
+	 * 
+	 * @param geometry
+	 *            the Geometry to convert to WKB
+	 * @return the WKB representing the given Geometry (null if it is null or
+	 *         it cannot be represented as WKB)
+	 * 
+	 * @see Geometry
+	 */
+	public static byte[] geometry2WKB(final Geometry geometry) {
+		byte[] output = null;
+
+		final int length = getWKBLength(geometry);
+		if (length > 0) {
+			output = new byte[length];
+			geometry2WKB(geometry, ByteBuffer.wrap(output));
+		}
+
+		return output;
+	}
+
+	/**
+	 * Writes the WKB representing the given Geometry to a ByteBuffer (from its
+	 * position, which is advanced), so a single buffer can be reused to
+	 * convert many geometries.
+	 * 
+	 * @param geometry
+	 *            the Geometry to convert to WKB
+	 * @param buffer
+	 *            the ByteBuffer to write the WKB to; its byte order is
+	 *            changed to little endian
+	 * @return the number of bytes written (0 if the Geometry is null or it
+	 *         cannot be represented as WKB)
+	 * @throws java.nio.BufferOverflowException
+	 *             if there is not enough space in the ByteBuffer (see
+	 *             getWKBLength())
+	 * 
+	 * @see Geometry
+	 */
+	public static int geometry2WKB(final Geometry geometry,
+			final ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new IllegalArgumentException("The ByteBuffer is null");
+		}
+
+		final int start = buffer.position();
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (geometry instanceof Point) {
+			final Point point = (Point) geometry;
+			writePoint(buffer, point.getX(), point.getY());
+		}
+		// As Polygon extends Polyline, check Polygon first
+		else if (geometry instanceof Polygon) {
+			final List<List<Point>> parts = ((Polygon) geometry).getParts();
+			writeHeader(buffer, WKB_POLYGON);
+			if (parts == null || isEmpty(parts)) {
+				buffer.putInt(0);
+			} else {
+				buffer.putInt(parts.size());
+				for (final List<Point> part : parts) {
+					writePoints(buffer, part);
+				}
+			}
+		} else if (geometry instanceof Polyline) {
+			final List<List<Point>> parts = ((Polyline) geometry).getParts();
+			if (parts == null || isEmpty(parts)) {
+				writeHeader(buffer, WKB_LINESTRING);
+				buffer.putInt(0);
+			} else if (parts.size() == 1) {
+				writeHeader(buffer, WKB_LINESTRING);
+				writePoints(buffer, parts.get(0));
+			} else {
+				writeHeader(buffer, WKB_MULTILINESTRING);
+				buffer.putInt(parts.size());
+				for (final List<Point> part : parts) {
+					writeHeader(buffer, WKB_LINESTRING);
+					writePoints(buffer, part);
+				}
+			}
+		} else if (geometry instanceof MultiPoint) {
+			final List<Point> points = ((MultiPoint) geometry).getPoints();
+			writeHeader(buffer, WKB_MULTIPOINT);
+			buffer.putInt(points != null ? points.size() : 0);
+			if (points != null) {
+				for (final Point point : points) {
+					writePoint(buffer, point.getX(), point.getY());
+				}
+			}
+		} else if (geometry instanceof PackedGeometry) {
+			writePacked(buffer, (PackedGeometry) geometry);
+		}
+
+		return buffer.position() - start;
+	}
+
+	/**
+	 * Returns the length in bytes of the WKB representing the given Geometry.
+	 * 
+	 * @param geometry
+	 *            the Geometry
+	 * @return the length in bytes of the WKB representing the given Geometry
+	 *         (0 if it is null or it cannot be represented as WKB)
+	 * 
+	 * @see Geometry
+	 */
+	public static int getWKBLength(final Geometry geometry) {
+		int output = 0;
+
+		if (geometry instanceof Point) {
+			output = WKB_POINT_LENGTH;
+		} else if (geometry instanceof Polyline) {
+			final List<List<Point>> parts = ((Polyline) geometry).getParts();
+			output = WKB_HEADER_LENGTH + 4;
+			if (parts != null && !isEmpty(parts)) {
+				if (geometry instanceof Polygon) {
+					for (final List<Point> part : parts) {
+						output += getPointsLength(part);
+					}
+				} else if (parts.size() == 1) {
+					output = WKB_HEADER_LENGTH + getPointsLength(parts.get(0));
+				} else {
+					for (final List<Point> part : parts) {
+						output += WKB_HEADER_LENGTH + getPointsLength(part);
+					}
+				}
+			}
+		} else if (geometry instanceof MultiPoint) {
+			final List<Point> points = ((MultiPoint) geometry).getPoints();
+			output = WKB_HEADER_LENGTH + 4 + WKB_POINT_LENGTH
+					* (points != null ? points.size() : 0);
+		} else if (geometry instanceof PackedGeometry) {
+			final PackedGeometry packed = (PackedGeometry) geometry;
+			output = getWKBLength(packed.getShapeType(), packed.getNumParts(),
+					packed.getNumPoints());
+			if (output > 0 && packed.getNumParts() > 1
+					&& packed.getNumPoints() > 0) {
+				// Parts written as their own number of points
+				for (int i = 0; i < packed.getNumParts(); i++) {
+					final int numPoints = Math.max(packed.getPartEnd(i)
+							- packed.getPartStart(i), 0);
+					output += 16 * numPoints;
+				}
+				output -= 16 * packed.getNumPoints();
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Returns the length in bytes of the WKB representing a geometry of the
+	 * SHP file, from its shape type and its number of parts and points (for
+	 * parts that do not overlap, as in a valid SHP file).
+	 * 
+	 * @param shapeType
+	 *            the shape type (1, 3, 5 or 8)
+	 * @param numParts
+	 *            the number of parts (ignored for points and multipoints)
+	 * @param numPoints
+	 *            the number of points (ignored for points)
+	 * @return the length in bytes of the WKB representing the geometry (0 if
+	 *         the shape type cannot be represented as WKB)
+	 */
+	public static int getWKBLength(final int shapeType, final int numParts,
+			final int numPoints) {
+		int output = 0;
+
+		switch (shapeType) {
+		case 1:
+			output = WKB_POINT_LENGTH;
+			break;
+		case 3:
+			if (numParts == 1 && numPoints > 0) {
+				output = WKB_HEADER_LENGTH + 4 + 16 * numPoints;
+			} else if (numParts > 1 && numPoints > 0) {
+				output = WKB_HEADER_LENGTH + 4 + numParts
+						* (WKB_HEADER_LENGTH + 4) + 16 * numPoints;
+			} else {
+				output = WKB_HEADER_LENGTH + 4;
+			}
+			break;
+		case 5:
+			if (numParts > 0 && numPoints > 0) {
+				output = WKB_HEADER_LENGTH + 4 + numParts * 4 + 16
+						* numPoints;
+			} else {
+				output = WKB_HEADER_LENGTH + 4;
+			}
+			break;
+		case 8:
+			output = WKB_HEADER_LENGTH + 4 + WKB_POINT_LENGTH * numPoints;
+			break;
+		default:
+			break;
+		}
+
+		return output;
+	}
+
+	/**
+	 * Writes the header of a WKB geometry (little endian byte order and
+	 * geometry type).
+	 * 
+	 * @param buffer
+	 *            the ByteBuffer (little endian)
+	 * @param type
+	 *            the WKB geometry type
+	 */
+	public static void writeHeader(final ByteBuffer buffer, final int type) {
+		buffer.put(WKB_NDR);
+		buffer.putInt(type);
+	}
+
+	/**
+	 * Writes the WKB of a PackedGeometry.
+	 * 
+	 * @param buffer
+	 *            the ByteBuffer (little endian)
+	 * @param packed
+	 *            the PackedGeometry
+	 */
+	private static void writePacked(final ByteBuffer buffer,
+			final PackedGeometry packed) {
+		final int numParts = packed.getNumParts();
+		final int numPoints = packed.getNumPoints();
+
+		switch (packed.getShapeType()) {
+		case 1:
+			writePoint(buffer, packed.getX(0), packed.getY(0));
+			break;
+		case 3:
+			if (numParts == 1 && numPoints > 0) {
+				writeHeader(buffer, WKB_LINESTRING);
+				writePoints(buffer, packed, 0, numPoints);
+			} else if (numParts > 1 && numPoints > 0) {
+				writeHeader(buffer, WKB_MULTILINESTRING);
+				buffer.putInt(numParts);
+				for (int i = 0; i < numParts; i++) {
+					writeHeader(buffer, WKB_LINESTRING);
+					writePoints(buffer, packed, packed.getPartStart(i),
+							packed.getPartEnd(i));
+				}
+			} else {
+				writeHeader(buffer, WKB_LINESTRING);
+				buffer.putInt(0);
+			}
+			break;
+		case 5:
+			writeHeader(buffer, WKB_POLYGON);
+			if (numParts > 0 && numPoints > 0) {
+				buffer.putInt(numParts);
+				for (int i = 0; i < numParts; i++) {
+					writePoints(buffer, packed, packed.getPartStart(i),
+							packed.getPartEnd(i));
+				}
+			} else {
+				buffer.putInt(0);
+			}
+			break;
+		case 8:
+			writeHeader(buffer, WKB_MULTIPOINT);
+			buffer.putInt(numPoints);
+			for (int i = 0; i < numPoints; i++) {
+				writePoint(buffer, packed.getX(i), packed.getY(i));
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Writes the WKB of a point.
+	 * 
+	 * @param buffer
+	 *            the ByteBuffer (little endian)
+	 * @param x
+	 *            the X coordinate
+	 * @param y
+	 *            the Y coordinate
+	 */
+	private static void writePoint(final ByteBuffer buffer, final double x,
+			final double y) {
+		writeHeader(buffer, WKB_POINT);
+		buffer.putDouble(x);
+		buffer.putDouble(y);
+	}
+
+	/**
+	 * Writes the number of points of a LineString or a ring followed by their
+	 * coordinates.
+	 * 
+	 * @param buffer
+	 *            the ByteBuffer (little endian)
+	 * @param points
+	 *            the points (null is written as no points)
+	 */
+	private static void writePoints(final ByteBuffer buffer,
+			final List<Point> points) {
+		buffer.putInt(points != null ? points.size() : 0);
+		if (points != null) {
+			for (final Point point : points) {
+				buffer.putDouble(point.getX());
+				buffer.putDouble(point.getY());
+			}
+		}
+	}
+
+	/**
+	 * Writes the number of some points of a PackedGeometry followed by their
+	 * coordinates.
+	 * 
+	 * @param buffer
+	 *            the ByteBuffer (little endian)
+	 * @param packed
+	 *            the PackedGeometry
+	 * @param start
+	 *            the index of the first point
+	 * @param end
+	 *            the index following the last point
+	 */
+	private static void writePoints(final ByteBuffer buffer,
+			final PackedGeometry packed, final int start, final int end) {
+		buffer.putInt(Math.max(end - start, 0));
+		for (int i = start; i < end; i++) {
+			buffer.putDouble(packed.getX(i));
+			buffer.putDouble(packed.getY(i));
+		}
+	}
+
+	/**
+	 * Returns the length in bytes of the number of points of a LineString or a
+	 * ring followed by their coordinates.
+	 * 
+	 * @param points
+	 *            the points (null is written as no points)
+	 * @return the length in bytes of the points
+	 */
+	private static int getPointsLength(final List<Point> points) {
+		return 4 + 16 * (points != null ? points.size() : 0);
+	}
+
+	/**
+	 * Returns whether all the parts of a Polyline or a Polygon are empty.
+	 * 
+	 * @param parts
+	 *            the parts
+	 * @return whether all the parts are empty
+	 */
+	private static boolean isEmpty(final List<List<Point>> parts) {
+		boolean output = true;
+
+		for (int i = 0; i < parts.size() && output; i++) {
+			final List<Point> points = parts.get(i);
+			output = points == null || points.isEmpty();
+		}
+
+		return output;
+	}
+}
@@ -0,0 +1,562 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jummyshapefile.utils;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.List;
+
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shapefile.model.MultiPoint;
+import com.jummyshapefile.shapefile.model.PackedGeometry;
+import com.jummyshapefile.shapefile.model.Point;
+import com.jummyshapefile.shapefile.model.Polygon;
+import com.jummyshapefile.shapefile.model.Polyline;
+
+/**
+ * Writes the WKT representing geometries straight to an Appendable (a
+ * StringBuilder, a Writer...) or to an OutputStream (as ASCII), without
+ * building a String for each geometry.
+ * <p>
+ * The coordinates are formatted without creating any object:
+ * <ul>
+ * <li>By default, with the shortest decimal representation that reads back
+ * as the same double, exactly as Double.toString() (and so as
+ * WKTUtils.geometry2WKT()) for the values written in plain notation
+ * (absolute values from 0.001 to 10^7). Other values fall back to
+ * Double.toString().
+ * <li>With a fixed precision (see setPrecision()), rounded to a number of
+ * decimals without trailing zeros.
+ * </ul>
+ * <p>
+ * The characters are written directly to a StringBuilder, or through a small
+ * buffer to any other destination (the buffer is drained at the end of
+ * every write(), and flush() also flushes the destination). Not
+ * thread-safe.
+ *
+ * @see WKTUtils
+ */
+public class WKTWriter implements Flushable {
+	/**
+	 * Size in chars of the buffer used for destinations other than a
+	 * StringBuilder.
+	 */
+	public static final int BUFFER_SIZE = 8192;
+
+	private final StringBuilder builder;
+	private final Appendable appendable;
+	private final OutputStream stream;
+	private final char[] buffer;
+	private final byte[] bytes;
+	private final DoubleFormatter formatter = new DoubleFormatter();
+	private int count;
+
+	/**
+	 * Creates a writer of WKT to an Appendable.
+	 *
+	 * @param appendable
+	 *            the destination of the WKT
+	 */
+	public WKTWriter(final Appendable appendable) {
+		if (appendable == null) {
+			throw new IllegalArgumentException("The Appendable is null");
+		}
+
+		if (appendable instanceof StringBuilder) {
+			this.builder = (StringBuilder) appendable;
+			this.buffer = null;
+		} else {
+			this.builder = null;
+			this.buffer = new char[BUFFER_SIZE];
+		}
+		this.appendable = appendable;
+		this.stream = null;
+		this.bytes = null;
+	}
+
+	/**
+	 * Creates a writer of WKT to an OutputStream (encoded as ASCII).
+	 *
+	 * @param stream
+	 *            the destination of the WKT
+	 */
+	public WKTWriter(final OutputStream stream) {
+		if (stream == null) {
+			throw new IllegalArgumentException("The OutputStream is null");
+		}
+
+		this.builder = null;
+		this.appendable = null;
+		this.stream = stream;
+		this.buffer = new char[BUFFER_SIZE];
+		this.bytes = new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Returns the number of decimals of the coordinates written.
+	 *
+	 * @return the number of decimals of the coordinates written (-1 for the
+	 *         shortest representation that reads back as the same double)
+	 */
+	public int getPrecision() {
+		return formatter.getPrecision();
+	}
+
+	/**
+	 * Sets the number of decimals of the coordinates written. The coordinates
+	 * are rounded (half up) and written without trailing zeros (nor decimal
+	 * point if they are integers).
+	 *
+	 * @param precision
+	 *            the number of decimals of the coordinates written (0-18, or
+	 *            -1 for the shortest representation that reads back as the
+	 *            same double)
+	 */
+	public void setPrecision(final int precision) {
+		formatter.setPrecision(precision);
+	}
+
+	/**
+	 * Writes the WKT representing a Geometry (the same text returned by
+	 * WKTUtils.geometry2WKT() when using the default precision).
+	 *
+	 * @param geometry
+	 *            the Geometry to convert to WKT
+	 * @return whether the Geometry has been written (false if it is null or
+	 *         it cannot be represented as WKT)
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 *
+	 * @see Geometry
+	 */
+	public boolean write(final Geometry geometry) throws IOException {
+		boolean output = true;
+
+		if (geometry instanceof Point) {
+			writePoint((Point) geometry);
+		}
+		// As Polygon extends Polyline, check Polygon first
+		else if (geometry instanceof Polygon) {
+			writePolygon((Polygon) geometry);
+		} else if (geometry instanceof Polyline) {
+			writePolyline((Polyline) geometry);
+		} else if (geometry instanceof MultiPoint) {
+			writeMultiPoint((MultiPoint) geometry);
+		} else if (geometry instanceof PackedGeometry) {
+			output = writePacked((PackedGeometry) geometry);
+		} else {
+			output = false;
+		}
+
+		drain();
+
+		return output;
+	}
+
+	/**
+	 * Writes the buffered characters to the destination and flushes it (if
+	 * it is Flushable).
+	 *
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	public void flush() throws IOException {
+		drain();
+
+		if (stream != null) {
+			stream.flush();
+		} else if (appendable instanceof Flushable) {
+			((Flushable) appendable).flush();
+		}
+	}
+
+	/**
+	 * Writes the WKT representing a Point.
+	 *
+	 * @param point
+	 *            the Point
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writePoint(final Point point) throws IOException {
+		append("POINT (");
+		writeCoordinates(point.getX(), point.getY());
+		append(')');
+	}
+
+	/**
+	 * Writes the WKT representing a Polyline.
+	 *
+	 * @param polyline
+	 *            the Polyline
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writePolyline(final Polyline polyline) throws IOException {
+		final List<List<Point>> parts = polyline.getParts();
+
+		if (parts == null || isEmpty(parts)) {
+			append("LINESTRING EMPTY");
+		} else if (parts.size() == 1) {
+			append("LINESTRING ");
+			writePoints(parts.get(0), false);
+		} else {
+			append("MULTILINESTRING (");
+			writeParts(parts);
+			append(')');
+		}
+	}
+
+	/**
+	 * Writes the WKT representing a Polygon.
+	 *
+	 * @param polygon
+	 *            the Polygon
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writePolygon(final Polygon polygon) throws IOException {
+		final List<List<Point>> parts = polygon.getParts();
+
+		if (parts == null || isEmpty(parts)) {
+			append("POLYGON EMPTY");
+		} else {
+			append("POLYGON (");
+			writeParts(parts);
+			append(')');
+		}
+	}
+
+	/**
+	 * Writes the WKT representing a MultiPoint.
+	 *
+	 * @param multipoint
+	 *            the MultiPoint
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writeMultiPoint(final MultiPoint multipoint)
+			throws IOException {
+		final List<Point> points = multipoint.getPoints();
+
+		if (points == null) {
+			append("MULTIPOINT EMPTY");
+		} else {
+			append("MULTIPOINT ");
+			writePoints(points, true);
+		}
+	}
+
+	/**
+	 * Writes the WKT representing a PackedGeometry.
+	 *
+	 * @param packed
+	 *            the PackedGeometry
+	 * @return whether the PackedGeometry has been written (false if its shape
+	 *         type is not supported)
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private boolean writePacked(final PackedGeometry packed)
+			throws IOException {
+		boolean output = true;
+		final int numParts = packed.getNumParts();
+
+		switch (packed.getShapeType()) {
+		case 1:
+			append("POINT (");
+			writeCoordinates(packed.getX(0), packed.getY(0));
+			append(')');
+			break;
+		case 3:
+			if (numParts == 1 && packed.getNumPoints() > 0) {
+				append("LINESTRING ");
+				writePoints(packed, 0, packed.getNumPoints(), false);
+			} else if (numParts > 1 && packed.getNumPoints() > 0) {
+				append("MULTILINESTRING (");
+				writeParts(packed);
+				append(')');
+			} else {
+				append("LINESTRING EMPTY");
+			}
+			break;
+		case 5:
+			if (numParts > 0 && packed.getNumPoints() > 0) {
+				append("POLYGON (");
+				writeParts(packed);
+				append(')');
+			} else {
+				append("POLYGON EMPTY");
+			}
+			break;
+		case 8:
+			append("MULTIPOINT ");
+			writePoints(packed, 0, packed.getNumPoints(), true);
+			break;
+		default:
+			output = false;
+			break;
+		}
+
+		return output;
+	}
+
+	/**
+	 * Writes the parts of a Polyline or a Polygon, separated by commas
+	 * (empty parts are skipped, but not their commas).
+	 *
+	 * @param parts
+	 *            the parts
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writeParts(final List<List<Point>> parts) throws IOException {
+		for (int i = 0; i < parts.size(); i++) {
+			final List<Point> points = parts.get(i);
+			if (points != null && points.size() > 0) {
+				writePoints(points, false);
+			}
+			if (i < parts.size() - 1) {
+				append(',');
+			}
+		}
+	}
+
+	/**
+	 * Writes the parts of a PackedGeometry, separated by commas (empty parts
+	 * are skipped, but not their commas).
+	 *
+	 * @param packed
+	 *            the PackedGeometry
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writeParts(final PackedGeometry packed) throws IOException {
+		final int numParts = packed.getNumParts();
+
+		for (int i = 0; i < numParts; i++) {
+			final int start = packed.getPartStart(i);
+			final int end = packed.getPartEnd(i);
+			if (end > start) {
+				writePoints(packed, start, end, false);
+			}
+			if (i < numParts - 1) {
+				append(',');
+			}
+		}
+	}
+
+	/**
+	 * Writes a list of points between parentheses, separated by commas.
+	 *
+	 * @param points
+	 *            the points
+	 * @param enclose
+	 *            whether each point is enclosed between parentheses
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writePoints(final List<Point> points, final boolean enclose)
+			throws IOException {
+		append('(');
+		for (int i = 0; i < points.size(); i++) {
+			final Point point = points.get(i);
+			if (enclose) {
+				append('(');
+			}
+			writeCoordinates(point.getX(), point.getY());
+			if (enclose) {
+				append(')');
+			}
+
+			if (i < points.size() - 1) {
+				append(',');
+			}
+		}
+		append(')');
+	}
+
+	/**
+	 * Writes some points of a PackedGeometry between parentheses, separated
+	 * by commas.
+	 *
+	 * @param packed
+	 *            the PackedGeometry
+	 * @param start
+	 *            the index of the first point
+	 * @param end
+	 *            the index following the last point
+	 * @param enclose
+	 *            whether each point is enclosed between parentheses
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writePoints(final PackedGeometry packed, final int start,
+			final int end, final boolean enclose) throws IOException {
+		append('(');
+		for (int i = start; i < end; i++) {
+			if (enclose) {
+				append('(');
+			}
+			writeCoordinates(packed.getX(i), packed.getY(i));
+			if (enclose) {
+				append(')');
+			}
+
+			if (i < end - 1) {
+				append(',');
+			}
+		}
+		append(')');
+	}
+
+	/**
+	 * Writes the coordinates of a point separated by a space.
+	 *
+	 * @param x
+	 *            the X coordinate
+	 * @param y
+	 *            the Y coordinate
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writeCoordinates(final double x, final double y)
+			throws IOException {
+		writeDouble(x);
+		append(' ');
+		writeDouble(y);
+	}
+
+	/**
+	 * Writes a double using the precision of the writer.
+	 *
+	 * @param value
+	 *            the double
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void writeDouble(final double value) throws IOException {
+		final int length = formatter.format(value);
+		append(formatter.getChars(), 0, length);
+	}
+
+	/**
+	 * Returns whether all the parts are null or have no points.
+	 *
+	 * @param parts
+	 *            the parts
+	 * @return whether all the parts are null or have no points
+	 */
+	private static boolean isEmpty(final List<List<Point>> parts) {
+		boolean output = true;
+
+		for (int i = 0; i < parts.size() && output; i++) {
+			final List<Point> points = parts.get(i);
+			output = points == null || points.isEmpty();
+		}
+
+		return output;
+	}
+
+	/**
+	 * Appends a char to the destination.
+	 *
+	 * @param c
+	 *            the char
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void append(final char c) throws IOException {
+		if (builder != null) {
+			builder.append(c);
+		} else {
+			if (count == buffer.length) {
+				drain();
+			}
+			buffer[count++] = c;
+		}
+	}
+
+	/**
+	 * Appends a String to the destination.
+	 *
+	 * @param s
+	 *            the String
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void append(final String s) throws IOException {
+		if (builder != null) {
+			builder.append(s);
+		} else {
+			for (int i = 0; i < s.length(); i++) {
+				append(s.charAt(i));
+			}
+		}
+	}
+
+	/**
+	 * Appends some chars to the destination.
+	 *
+	 * @param chars
+	 *            the char array
+	 * @param offset
+	 *            the offset of the first char
+	 * @param length
+	 *            the number of chars
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void append(final char[] chars, final int offset, final int length)
+			throws IOException {
+		if (builder != null) {
+			builder.append(chars, offset, length);
+		} else {
+			if (count + length > buffer.length) {
+				drain();
+			}
+			System.arraycopy(chars, offset, buffer, count, length);
+			count += length;
+		}
+	}
+
+	/**
+	 * Writes the buffered chars to the destination.
+	 *
+	 * @throws IOException
+	 *             if there is a problem writing to the destination
+	 */
+	private void drain() throws IOException {
+		if (count > 0) {
+			if (stream != null) {
+				for (int i = 0; i < count; i++) {
+					bytes[i] = (byte) buffer[i];
+				}
+				stream.write(bytes, 0, count);
+			} else if (appendable instanceof Writer) {
+				((Writer) appendable).write(buffer, 0, count);
+			} else {
+				appendable.append(CharBuffer.wrap(buffer, 0, count));
+			}
+			count = 0;
+		}
+	}
+}
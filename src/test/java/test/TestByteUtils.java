@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.jummyshapefile.utils.ByteUtils;
+
+public class TestByteUtils extends TestCase {
+	public void testReadInt() {
+		final Random random = new Random(1L);
+		final byte[] bytes = new byte[64];
+		random.nextBytes(bytes);
+
+		final ByteBuffer big = ByteUtils.wrap(bytes, ByteOrder.BIG_ENDIAN);
+		final ByteBuffer little = ByteUtils.wrap(bytes,
+				ByteOrder.LITTLE_ENDIAN);
+		for (int offset = 0; offset <= bytes.length - 4; offset++) {
+			assertEquals(big.getInt(offset),
+					ByteUtils.readInt(bytes, 4, offset));
+			assertEquals(little.getInt(offset),
+					ByteUtils.readIntLeastSignificantFirst(bytes, 4, offset));
+
+			// Shorter chunks are unsigned
+			assertEquals(big.getShort(offset) & 0xFFFF,
+					ByteUtils.readInt(bytes, 2, offset));
+			assertEquals(little.getShort(offset) & 0xFFFF,
+					ByteUtils.readIntLeastSignificantFirst(bytes, 2, offset));
+			assertEquals(bytes[offset] & 0xFF,
+					ByteUtils.readInt(bytes, 1, offset));
+		}
+	}
+
+	public void testReadDouble() {
+		final Random random = new Random(2L);
+		final byte[] bytes = new byte[64];
+		random.nextBytes(bytes);
+
+		final ByteBuffer big = ByteUtils.wrap(bytes, ByteOrder.BIG_ENDIAN);
+		final ByteBuffer little = ByteUtils.wrap(bytes,
+				ByteOrder.LITTLE_ENDIAN);
+		for (int offset = 0; offset <= bytes.length - 8; offset++) {
+			assertEquals(Double.doubleToRawLongBits(big.getDouble(offset)),
+					Double.doubleToRawLongBits(ByteUtils.readDouble(bytes, 8,
+							offset)));
+			assertEquals(Double.doubleToRawLongBits(little.getDouble(offset)),
+					Double.doubleToRawLongBits(ByteUtils
+							.readDoubleLeastSignificantFirst(bytes, 8, offset)));
+		}
+
+		final byte[] coordinate = new byte[12];
+		ByteUtils.wrap(coordinate, ByteOrder.LITTLE_ENDIAN).putDouble(2,
+				-437717.25);
+		assertEquals(-437717.25,
+				ByteUtils.readDoubleLeastSignificantFirst(coordinate, 8, 2));
+	}
+
+	public void testReadString() {
+		final byte[] bytes = "__NAME  __".getBytes();
+
+		assertEquals("NAME  ", ByteUtils.readString(bytes, 6, 2));
+		assertNull(ByteUtils.readString(null, 6, 2));
+	}
+
+	public void testParseDouble() {
+		final String[] values = { "0", "-0", "3", "  42  ", "-17.5",
+				"+2.25", "0.1", ".5", "5.", "1234567.12345678900",
+				"-0.00000000001", "123456789012345678", "1.7976931348623157E308",
+				"4.9E-324", "1e10", "-2.5E-3", "00012.34000", "0.3000000000000",
+				"9007199254740993", "12345678901234567890.5" };
+		for (final String value : values) {
+			final byte[] bytes = (" " + value + " ").getBytes();
+			assertEquals(value, Double.parseDouble(value.trim()),
+					ByteUtils.parseDouble(bytes, bytes.length, 0));
+		}
+
+		final Random random = new Random(3L);
+		for (int i = 0; i < 10000; i++) {
+			final String value = Long.toString(random.nextLong() % 100000000L)
+					+ "." + Math.abs(random.nextInt() % 100000000);
+			final byte[] bytes = value.getBytes();
+			assertEquals(value, Double.parseDouble(value),
+					ByteUtils.parseDouble(bytes, bytes.length, 0));
+		}
+
+		final String[] invalid = { "", "   ", ".", "-", "1e", "1.2.3", "abc",
+				"1 2" };
+		for (final String value : invalid) {
+			final byte[] bytes = value.getBytes();
+			try {
+				ByteUtils.parseDouble(bytes, bytes.length, 0);
+				fail(value);
+			} catch (final NumberFormatException nfe) {
+				// Expected
+			}
+		}
+	}
+
+	public void testParseLong() {
+		final String[] values = { "0", "-7", "+12", "  123456  ",
+				"9223372036854775807", "-9223372036854775808", "000045" };
+		for (final String value : values) {
+			final byte[] bytes = value.getBytes();
+			final String trimmed = value.trim();
+			assertEquals(Long.parseLong(trimmed.startsWith("+") ? trimmed
+					.substring(1) : trimmed), ByteUtils.parseLong(bytes,
+					bytes.length, 0));
+		}
+
+		final byte[] decimals = " -12.75".getBytes();
+		assertEquals(-12, ByteUtils.parseLong(decimals, decimals.length, 0));
+		final byte[] exponent = "1.5e3".getBytes();
+		assertEquals(1500, ByteUtils.parseLong(exponent, exponent.length, 0));
+
+		// The numbers out of range are not saturated
+		final String[] overflow = { "9223372036854775808",
+				"-9223372036854775809", "99999999999999999999", "1e19",
+				"-9.3e18", "12345678901234567890.5" };
+		for (final String value : overflow) {
+			final byte[] bytes = value.getBytes();
+			try {
+				ByteUtils.parseLong(bytes, bytes.length, 0);
+				fail(value);
+			} catch (final NumberFormatException nfe) {
+				// Expected
+			}
+		}
+
+		final byte[] blank = "  **** ".getBytes();
+		assertTrue(ByteUtils.isBlank(blank, blank.length, 0));
+		assertFalse(ByteUtils.isBlank(decimals, decimals.length, 0));
+	}
+}
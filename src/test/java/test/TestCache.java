@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package test;
+
+import junit.framework.TestCase;
+
+import com.jummyshapefile.cache.CacheStats;
+import com.jummyshapefile.cache.LRUCache;
+
+public class TestCache extends TestCase {
+	public void testEviction() {
+		final LRUCache<String> cache = new LRUCache<String>(100);
+
+		cache.put(1, "a", 40);
+		cache.put(2, "b", 40);
+		assertEquals("a", cache.get(1));
+		// The least recently used value (2) is evicted
+		cache.put(3, "c", 40);
+		assertNull(cache.get(2));
+		assertEquals("a", cache.get(1));
+		assertEquals("c", cache.get(3));
+
+		// Replacing a value updates the size
+		cache.put(3, "d", 60);
+		CacheStats stats = cache.getStats();
+		assertEquals(2, stats.getEntryCount());
+		assertEquals(100, stats.getSize());
+		assertEquals(1, stats.getEvictionCount());
+		assertEquals(3, stats.getHitCount());
+		assertEquals(1, stats.getMissCount());
+		assertEquals(0.75, stats.getHitRate(), 1e-12);
+
+		// Values larger than the cache are not cached
+		cache.put(4, "e", 101);
+		assertNull(cache.get(4));
+		assertEquals("a", cache.get(1));
+
+		// A value needing all the cache evicts everything else
+		cache.put(5, "f", 100);
+		stats = cache.getStats();
+		assertEquals(1, stats.getEntryCount());
+		assertEquals(3, stats.getEvictionCount());
+		assertEquals("f", cache.get(5));
+
+		cache.remove(5);
+		assertEquals(0, cache.getStats().getSize());
+		cache.put(6, "g", 10);
+		cache.clear();
+		assertNull(cache.get(6));
+		assertEquals(0, cache.getStats().getEntryCount());
+	}
+
+	public void testDisabled() {
+		final LRUCache<String> cache = new LRUCache<String>(0);
+
+		cache.put(1, "a", 1);
+		assertNull(cache.get(1));
+		assertEquals(0, cache.getStats().getEntryCount());
+		assertEquals(0, cache.getStats().getHitRate(), 0);
+
+		try {
+			new LRUCache<String>(-1);
+			fail();
+		} catch (final IllegalArgumentException iae) {
+			// Expected
+		}
+		try {
+			cache.put(1, null, 1);
+			fail();
+		} catch (final IllegalArgumentException iae) {
+			// Expected
+		}
+	}
+}
@@ -18,18 +18,27 @@ package test;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
 
 import junit.framework.TestCase;
 
+import com.jummyshapefile.dbf.DBFColumnStore;
 import com.jummyshapefile.dbf.DBFFile;
+import com.jummyshapefile.dbf.DBFRecordCursor;
+import com.jummyshapefile.dbf.DBFWriter;
 import com.jummyshapefile.dbf.model.DBFField;
 import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
 import com.jummyshapefile.dbf.model.DBFHeader;
 import com.jummyshapefile.dbf.model.DBFRecord;
+import com.jummyshapefile.utils.DateUtils;
 import com.jummyshapefile.utils.FileUtils;
 
 public class TestDBF extends TestCase {
@@ -239,4 +248,259 @@ public class TestDBF extends TestCase {
 			FileUtils.closeInputStream(is);
 		}
 	}
+
+	public void testRecordPrimitives() throws IOException, URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(
+				"Polygon.dbf");
+		final File file = new File(resource.toURI());
+		final FileInputStream is = new FileInputStream(file);
+
+		DBFFile dbf = null;
+		try {
+			dbf = new DBFFile();
+			dbf.open(is);
+
+			for (int i = 1; i <= dbf.getRecordCount(); i++) {
+				final DBFRecord record = dbf.getRecordAt(i);
+				// No decoded fields, only the bytes of the record
+				final DBFRecord raw = dbf.getRecordAt(i, new int[0]);
+				assertEquals(0, raw.getFields().size());
+
+				for (int j = 0; j < record.getFields().size(); j++) {
+					final DBFField field = record.getFields().get(j);
+					final String type = field.getDescriptor().getType();
+					if ("N".equals(type) || "F".equals(type)) {
+						final Double value = (Double) field.getValue();
+						assertEquals(value == null, raw.isNull(j));
+						if (value != null) {
+							assertEquals(value.doubleValue(), raw.getDouble(j));
+							assertEquals(value.longValue(), raw.getLong(j));
+						}
+					}
+				}
+			}
+		} finally {
+			dbf.close();
+			FileUtils.closeInputStream(is);
+		}
+	}
+
+	public void testColumnStore() throws IOException, URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(
+				"Polygon.dbf");
+		final File file = new File(resource.toURI());
+		final FileInputStream is = new FileInputStream(file);
+
+		DBFFile dbf = null;
+		try {
+			dbf = new DBFFile();
+			dbf.open(is);
+
+			final DBFColumnStore store = dbf.loadColumns((int[]) null);
+			assertEquals(dbf.getRecordCount(), store.getRecordCount());
+			assertEquals(dbf.getFields().size(), store.getColumnCount());
+			assertEquals(DBFColumnStore.ColumnType.LONG,
+					store.getColumnType(store.getColumnIndex("field1")));
+			assertEquals(DBFColumnStore.ColumnType.DOUBLE,
+					store.getColumnType(store.getColumnIndex("Field3")));
+			assertEquals(DBFColumnStore.ColumnType.STRING,
+					store.getColumnType(store.getColumnIndex("Field5")));
+			assertEquals(DBFColumnStore.ColumnType.DATE,
+					store.getColumnType(store.getColumnIndex("Field6")));
+
+			final Calendar calendar = Calendar.getInstance();
+			for (int row = 0; row < store.getRecordCount(); row++) {
+				final DBFRecord record = dbf.getRecordAt(row + 1);
+				assertEquals(record.isActive(), store.isActive(row));
+
+				for (int column = 0; column < store.getColumnCount(); column++) {
+					final Object value = record.getFields().get(column)
+							.getValue();
+					switch (store.getColumnType(column)) {
+					case LONG:
+						assertEquals(value == null, store.isNull(column, row));
+						if (value != null) {
+							assertEquals(((Double) value).longValue(),
+									store.getLongs(column)[row]);
+						}
+						break;
+					case DOUBLE:
+						assertEquals(value == null, store.isNull(column, row));
+						if (value != null) {
+							assertEquals(((Double) value).doubleValue(),
+									store.getDoubles(column)[row]);
+						}
+						break;
+					case DATE:
+						assertEquals(value == null, store.isNull(column, row));
+						if (value != null) {
+							calendar.setTime((Date) value);
+							assertEquals(DateUtils.toEpochDay(
+									calendar.get(Calendar.YEAR),
+									calendar.get(Calendar.MONTH) + 1,
+									calendar.get(Calendar.DAY_OF_MONTH)),
+									store.getEpochDays(column)[row]);
+						}
+						break;
+					case STRING:
+						assertEquals(value, store.getString(column, row));
+						break;
+					}
+				}
+			}
+
+			final DBFColumnStore projected = dbf.loadColumns("Field5", "Id");
+			assertEquals(2, projected.getColumnCount());
+			assertEquals(0, projected.getColumnIndex("FIELD5"));
+			assertEquals(-1, projected.getColumnIndex("Field1"));
+			assertEquals(store.getLongs(0)[2], projected.getLongs(1)[2]);
+			try {
+				projected.getDoubles(1);
+				fail();
+			} catch (final IllegalArgumentException iae) {
+				// Expected
+			}
+		} finally {
+			dbf.close();
+			FileUtils.closeInputStream(is);
+		}
+	}
+
+	public void testCursor() throws IOException, URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(
+				"Polygon.dbf");
+		final File file = new File(resource.toURI());
+		final FileInputStream is = new FileInputStream(file);
+
+		DBFFile dbf = null;
+		try {
+			dbf = new DBFFile();
+			dbf.open(is);
+			final int recordCount = dbf.getRecordCount();
+
+			// The cursor stops at the last record of the file
+			final DBFRecordCursor cursor = dbf.openCursor(2, recordCount + 3);
+			try {
+				for (int recordNum = 2; recordNum <= recordCount; recordNum++) {
+					assertTrue(cursor.hasNext());
+					assertEquals(recordNum, cursor.getRecordNum());
+
+					final List<DBFField> expected = dbf.getRecordAt(recordNum)
+							.getFields();
+					final List<DBFField> fields = cursor.next();
+					assertEquals(expected.size(), fields.size());
+					for (int i = 0; i < expected.size(); i++) {
+						assertEquals(expected.get(i).getValue(), fields.get(i)
+								.getValue());
+					}
+				}
+				assertFalse(cursor.hasNext());
+			} finally {
+				cursor.close();
+			}
+
+			assertFalse(dbf.openCursor(recordCount + 1, recordCount + 1)
+					.hasNext());
+			try {
+				dbf.openCursor(0, 1);
+				fail();
+			} catch (final IndexOutOfBoundsException ioobe) {
+				// Expected
+			}
+		} finally {
+			dbf.close();
+			FileUtils.closeInputStream(is);
+		}
+	}
+
+	public void testColumnStoreLargeIntegers() throws IOException {
+		final File file = File.createTempFile("jummyshapefile", ".dbf");
+
+		try {
+			final DBFFieldDescriptor descriptor = new DBFFieldDescriptor();
+			descriptor.setName("BIG");
+			descriptor.setType("N");
+			descriptor.setLength(20);
+			descriptor.setDecimalCount(0);
+
+			final DBFField field = new DBFField();
+			field.setDescriptor(descriptor);
+			field.setValue(1e19);
+
+			final DBFWriter writer = new DBFWriter(new FileOutputStream(file),
+					Arrays.asList(descriptor));
+			try {
+				writer.write(Arrays.asList(field));
+			} finally {
+				writer.close();
+			}
+
+			final DBFFile dbf = new DBFFile();
+			final FileInputStream is = new FileInputStream(file);
+			try {
+				dbf.open(is);
+
+				// The integers that may not fit in a long are doubles
+				final DBFColumnStore store = dbf.loadColumns((int[]) null);
+				assertEquals(DBFColumnStore.ColumnType.DOUBLE,
+						store.getColumnType(0));
+				assertEquals(1e19, store.getDoubles(0)[0]);
+
+				try {
+					dbf.getRecordAt(1).getLong(0);
+					fail();
+				} catch (final NumberFormatException nfe) {
+					// Expected
+				}
+			} finally {
+				dbf.close();
+				FileUtils.closeInputStream(is);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testEpochDays() {
+		assertEquals(0, DateUtils.toEpochDay(1970, 1, 1));
+		assertEquals(-1, DateUtils.toEpochDay(1969, 12, 31));
+		assertEquals(11016, DateUtils.toEpochDay(2000, 2, 29));
+
+		final Calendar calendar = Calendar.getInstance(TimeZone
+				.getTimeZone("UTC"));
+		calendar.clear();
+		calendar.set(1850, Calendar.JANUARY, 1);
+		for (int i = 0; i < 100000; i++) {
+			final int year = calendar.get(Calendar.YEAR);
+			final int month = calendar.get(Calendar.MONTH) + 1;
+			final int day = calendar.get(Calendar.DAY_OF_MONTH);
+			final int epochDay = DateUtils.toEpochDay(year, month, day);
+
+			assertEquals(calendar.getTimeInMillis() / 86400000L, epochDay);
+			final int[] date = DateUtils.fromEpochDay(epochDay);
+			assertEquals(year, date[0]);
+			assertEquals(month, date[1]);
+			assertEquals(day, date[2]);
+
+			calendar.add(Calendar.DAY_OF_MONTH, 1);
+		}
+
+		final byte[] bytes = " 20150229 20160229 2016-2-1".getBytes();
+		assertEquals(DateUtils.INVALID_DATE,
+				DateUtils.parseEpochDay(bytes, 9, 0));
+		assertEquals(DateUtils.toEpochDay(2016, 2, 29),
+				DateUtils.parseEpochDay(bytes, 9, 9));
+		assertEquals(DateUtils.INVALID_DATE,
+				DateUtils.parseEpochDay(bytes, 9, 18));
+
+		final Calendar local = Calendar.getInstance();
+		local.clear();
+		local.set(2016, Calendar.FEBRUARY, 29);
+		assertEquals(local.getTime(), DateUtils.toDate(2016, 2, 29));
+		assertEquals(local.getTime(),
+				DateUtils.toDate(DateUtils.toEpochDay(2016, 2, 29)));
+		// Out of range days roll over
+		local.set(2015, Calendar.MARCH, 1);
+		assertEquals(local.getTime(), DateUtils.toDate(2015, 2, 29));
+	}
 }
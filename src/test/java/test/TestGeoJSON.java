@@ -0,0 +1,262 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.jummyshapefile.dbf.model.DBFField;
+import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
+import com.jummyshapefile.shapefile.Shapefile;
+import com.jummyshapefile.shapefile.model.Entity;
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shapefile.model.NullShape;
+import com.jummyshapefile.shapefile.model.PackedGeometry;
+import com.jummyshapefile.shapefile.model.Point;
+import com.jummyshapefile.shapefile.model.Polygon;
+import com.jummyshapefile.utils.DateUtils;
+import com.jummyshapefile.utils.FileUtils;
+import com.jummyshapefile.utils.GeoJSONWriter;
+import com.jummyshapefile.utils.WKTUtils;
+
+public class TestGeoJSON extends TestCase {
+	public void testGeoJSONShapefile() throws IOException, URISyntaxException {
+		final String[] names = { "Point", "Polyline", "Polygon", "MultiPoint" };
+		for (final String name : names) {
+			final URL shpResource = getClass().getClassLoader().getResource(
+					name + ".shp");
+			final File shpFile = new File(shpResource.toURI());
+			final FileInputStream shpIS = new FileInputStream(shpFile);
+			final URL shxResource = getClass().getClassLoader().getResource(
+					name + ".shx");
+			final File shxFile = new File(shxResource.toURI());
+			final FileInputStream shxIS = new FileInputStream(shxFile);
+			final URL dbfResource = getClass().getClassLoader().getResource(
+					name + ".dbf");
+			final File dbfFile = new File(dbfResource.toURI());
+			final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+			Shapefile shapefile = null;
+			try {
+				shapefile = new Shapefile(shpIS, shxIS, dbfIS, null);
+				final int numEntities = shapefile.getNumEntities();
+
+				for (int packed = 0; packed < 2; packed++) {
+					shapefile.setPackedGeometry(packed == 1);
+					final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+					assertEquals(numEntities,
+							shapefile.writeGeoJSON(new GeoJSONWriter(stream)));
+
+					final String json = stream.toString("UTF-8");
+					assertTrue(json
+							.startsWith("{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\",\"id\":1,"));
+					assertTrue(json.endsWith("}]}"));
+					assertEquals(numEntities, json.split("\"Feature\"").length - 1);
+
+					for (int i = 1; i <= numEntities; i++) {
+						final Entity entity = shapefile.getEntityByRecordNumber(
+								i, false);
+						String geometry = wkt2GeoJSON(WKTUtils
+								.geometry2WKT(entity.getGeometry()));
+						Geometry unpacked = entity.getGeometry();
+						if (unpacked instanceof PackedGeometry) {
+							unpacked = ((PackedGeometry) unpacked).toGeometry();
+						}
+						if (unpacked instanceof Polygon) {
+							geometry = groupRings(geometry,
+									((Polygon) unpacked).getParts());
+						}
+						final String feature = "{\"type\":\"Feature\",\"id\":"
+								+ i + ",\"geometry\":" + geometry
+								+ ",\"properties\":{";
+
+						assertTrue(feature, json.contains(feature));
+					}
+					if ("Polygon".equals(name)) {
+						// The second record has two outer rings
+						assertTrue(json.contains("\"id\":2,\"geometry\":"
+								+ "{\"type\":\"MultiPolygon\","));
+					}
+				}
+			} finally {
+				shapefile.close();
+				FileUtils.closeInputStream(dbfIS);
+				FileUtils.closeInputStream(shxIS);
+				FileUtils.closeInputStream(shpIS);
+			}
+		}
+	}
+
+	public void testGeoJSONFeature() throws IOException {
+		final Point point = new Point();
+		point.setX(440539.166);
+		point.setY(-4471192.0);
+
+		final List<DBFField> data = new ArrayList<DBFField>();
+		data.add(createField("NAME", "C", "Café \"A\"\n\\\u0001"));
+		data.add(createField("POP", "N", Double.valueOf(1500)));
+		data.add(createField("AREA", "F", Double.valueOf(0.25)));
+		data.add(createField("NAN", "F", Double.valueOf(Double.NaN)));
+		data.add(createField("EMPTY", "N", null));
+		data.add(createField("DATE", "D", DateUtils.toDate(2001, 2, 3)));
+
+		final Entity entity = new Entity();
+		entity.setRecordNum(7);
+		entity.setGeometry(point);
+		entity.setData(data);
+
+		final StringWriter writer = new StringWriter();
+		final GeoJSONWriter geoJSONWriter = new GeoJSONWriter(writer);
+		geoJSONWriter.setPrecision(2);
+		geoJSONWriter.writeStart();
+		geoJSONWriter.writeFeature(entity);
+
+		final Entity nullShape = new Entity();
+		nullShape.setRecordNum(8);
+		nullShape.setGeometry(new NullShape());
+		nullShape.setData(null);
+		geoJSONWriter.writeFeature(nullShape);
+		assertEquals(2, geoJSONWriter.getNumFeatures());
+		geoJSONWriter.writeEnd();
+
+		final String expected = "{\"type\":\"FeatureCollection\",\"features\":["
+				+ "{\"type\":\"Feature\",\"id\":7,"
+				+ "\"geometry\":{\"type\":\"Point\",\"coordinates\":[440539.17,-4471192]},"
+				+ "\"properties\":{\"NAME\":\"Café \\\"A\\\"\\n\\\\\\u0001\","
+				+ "\"POP\":1500,\"AREA\":0.25,\"NAN\":null,\"EMPTY\":null,"
+				+ "\"DATE\":\"2001-02-03\"}},"
+				+ "{\"type\":\"Feature\",\"id\":8,\"geometry\":null,\"properties\":null}]}";
+		assertEquals(expected, writer.toString());
+
+		// UTF-8 when writing to an OutputStream
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final GeoJSONWriter streamWriter = new GeoJSONWriter(stream);
+		streamWriter.writeStart();
+		streamWriter.writeFeature(entity);
+		streamWriter.writeEnd();
+		assertTrue(stream.toString("UTF-8").contains("Café"));
+
+		try {
+			streamWriter.writeFeature(entity);
+			fail("Feature written after the end");
+		} catch (final IllegalStateException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Converts the WKT of WKTUtils (without empty geometries) to a GeoJSON
+	 * geometry object.
+	 */
+	private static String wkt2GeoJSON(final String wkt) {
+		final String name = wkt.substring(0, wkt.indexOf(' '));
+		String coordinates = wkt.substring(name.length() + 1)
+				.replaceAll("([^ (),]+) ([^ (),]+)", "[$1,$2]")
+				.replace('(', '[').replace(')', ']');
+
+		String type = null;
+		if ("POINT".equals(name)) {
+			type = "Point";
+			coordinates = coordinates.substring(1, coordinates.length() - 1);
+		} else if ("LINESTRING".equals(name)) {
+			type = "LineString";
+		} else if ("MULTILINESTRING".equals(name)) {
+			type = "MultiLineString";
+		} else if ("POLYGON".equals(name)) {
+			type = "Polygon";
+		} else if ("MULTIPOINT".equals(name)) {
+			type = "MultiPoint";
+			coordinates = coordinates.replace("[[[", "[[").replace("]]]", "]]")
+					.replace("]],[[", "],[");
+		}
+
+		return "{\"type\":\"" + type + "\",\"coordinates\":" + coordinates
+				+ "}";
+	}
+
+	/**
+	 * Converts a GeoJSON Polygon (as written by wkt2GeoJSON()) to a
+	 * MultiPolygon if a ring after the first one is clockwise, starting a
+	 * polygon at each clockwise ring.
+	 */
+	private static String groupRings(final String polygon,
+			final List<List<Point>> parts) {
+		boolean multiPolygon = false;
+		for (int i = 1; i < parts.size(); i++) {
+			multiPolygon |= isClockwise(parts.get(i));
+		}
+		if (!multiPolygon) {
+			return polygon;
+		}
+
+		final String prefix = "{\"type\":\"Polygon\",\"coordinates\":[";
+		final String rings = polygon.substring(prefix.length(),
+				polygon.length() - 2);
+		final String[] ring = rings.split("(?<=\\]\\]),(?=\\[\\[)");
+		assertEquals(parts.size(), ring.length);
+
+		final StringBuilder output = new StringBuilder(
+				"{\"type\":\"MultiPolygon\",\"coordinates\":[[");
+		for (int i = 0; i < ring.length; i++) {
+			if (i > 0) {
+				output.append(isClockwise(parts.get(i)) ? "],[" : ",");
+			}
+			output.append(ring[i]);
+		}
+		output.append("]]}");
+
+		return output.toString();
+	}
+
+	/**
+	 * Returns whether a ring is clockwise (negative signed area).
+	 */
+	private static boolean isClockwise(final List<Point> points) {
+		double area = 0;
+		for (int i = 0; i < points.size(); i++) {
+			final Point point = points.get(i);
+			final Point next = points.get((i + 1) % points.size());
+			area += point.getX() * next.getY() - next.getX() * point.getY();
+		}
+
+		return area < 0;
+	}
+
+	private static DBFField createField(final String name, final String type,
+			final Object value) {
+		final DBFFieldDescriptor descriptor = new DBFFieldDescriptor();
+		descriptor.setName(name);
+		descriptor.setType(type);
+
+		final DBFField<Object> output = new DBFField<Object>();
+		output.setDescriptor(descriptor);
+		output.setValue(value);
+
+		return output;
+	}
+}
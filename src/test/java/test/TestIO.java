@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import com.jummyshapefile.io.MappedFileSource;
+import com.jummyshapefile.io.MarkFileInputStream;
+import com.jummyshapefile.io.StreamFileSource;
+import com.jummyshapefile.utils.FileUtils;
+
+public class TestIO extends TestCase {
+	public void testMappedWindows() throws IOException, URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File file = new File(resource.toURI());
+		final FileInputStream streamIS = new FileInputStream(file);
+		final FileInputStream mappedIS = new FileInputStream(file);
+
+		StreamFileSource stream = null;
+		MappedFileSource mapped = null;
+		try {
+			final MarkFileInputStream mfis = new MarkFileInputStream(streamIS);
+			mfis.mark(mfis.available() + 1);
+			stream = new StreamFileSource(mfis);
+			// Small windows so most of the reads span several windows
+			mapped = new MappedFileSource(mappedIS.getChannel(), 64);
+
+			assertEquals(file.length(), mapped.size());
+			assertEquals(stream.size(), mapped.size());
+
+			for (int position = 0; position < file.length() - 100; position += 37) {
+				final ByteBuffer expected = stream.read(position, 100);
+				final ByteBuffer actual = mapped.read(position, 100);
+
+				assertEquals(expected, actual);
+
+				final ByteBuffer filled = ByteBuffer.allocate(100);
+				mapped.read(position, filled);
+				filled.flip();
+
+				assertEquals(expected, filled);
+			}
+		} finally {
+			stream.close();
+			mapped.close();
+			FileUtils.closeInputStream(mappedIS);
+			FileUtils.closeInputStream(streamIS);
+		}
+	}
+
+	public void testMappedOutOfRange() throws IOException, URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File file = new File(resource.toURI());
+		final FileInputStream is = new FileInputStream(file);
+
+		MappedFileSource mapped = null;
+		try {
+			mapped = new MappedFileSource(is.getChannel());
+
+			try {
+				mapped.read(file.length() - 4, 8);
+				fail("Read past the end of the file");
+			} catch (final IOException ioe) {
+				// Expected
+			}
+		} finally {
+			mapped.close();
+			FileUtils.closeInputStream(is);
+		}
+	}
+}
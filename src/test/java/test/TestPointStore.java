@@ -0,0 +1,298 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
+import com.jummyshapefile.shapefile.Shapefile;
+import com.jummyshapefile.shapefile.ShapefileWriter;
+import com.jummyshapefile.shapefile.model.Entity;
+import com.jummyshapefile.shapefile.model.NullShape;
+import com.jummyshapefile.shapefile.model.Point;
+import com.jummyshapefile.shp.SHPFile;
+import com.jummyshapefile.shp.SHPPointStore;
+import com.jummyshapefile.utils.FileUtils;
+
+public class TestPointStore extends TestCase {
+	public void testLoadPoints() throws IOException, URISyntaxException {
+		final FileInputStream shpIS = open("Point.shp");
+		final FileInputStream shxIS = open("Point.shx");
+		final FileInputStream dbfIS = open("Point.dbf");
+
+		Shapefile shapefile = null;
+		try {
+			shapefile = new Shapefile(shpIS, shxIS, dbfIS, null);
+			final int numEntities = shapefile.getNumEntities();
+
+			final SHPPointStore points = shapefile.loadPoints();
+			assertEquals(numEntities, points.getRecordCount());
+			assertEquals(numEntities, points.getPointCount());
+			for (int i = 1; i <= numEntities; i++) {
+				final Point point = (Point) shapefile.getEntityByRecordNumber(
+						i, false).getGeometry();
+				assertEquals(point.getX(), points.getX(i));
+				assertEquals(point.getY(), points.getY(i));
+				assertFalse(points.isNull(i));
+				assertEquals(point.getX(), points.getCoordinates()[2 * i - 2]);
+				assertEquals(point.getY(), points.getCoordinates()[2 * i - 1]);
+
+				// The nearest point to a point is itself
+				assertEquals(i, points.nearest(point.getX(), point.getY()));
+			}
+
+			try {
+				points.getX(numEntities + 1);
+				fail("Record out of the store");
+			} catch (final IndexOutOfBoundsException ioobe) {
+				// Expected
+			}
+
+			// As a spatial index
+			final List<Entity> expected = shapefile.getEntitiesInRectangle(
+					440539.16, 4471192.95, 448629.42, 4476120.37, false);
+			shapefile.setSpatialIndex(points);
+			final List<Entity> actual = shapefile.getEntitiesInRectangle(
+					440539.16, 4471192.95, 448629.42, 4476120.37, false);
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).getRecordNum(), actual.get(i)
+						.getRecordNum());
+			}
+		} finally {
+			shapefile.close();
+			FileUtils.closeInputStream(dbfIS);
+			FileUtils.closeInputStream(shxIS);
+			FileUtils.closeInputStream(shpIS);
+		}
+	}
+
+	public void testLoadPointsNotPoint() throws IOException,
+			URISyntaxException {
+		final FileInputStream shpIS = open("Polygon.shp");
+		final FileInputStream shxIS = open("Polygon.shx");
+		final FileInputStream dbfIS = open("Polygon.dbf");
+
+		Shapefile shapefile = null;
+		try {
+			shapefile = new Shapefile(shpIS, shxIS, dbfIS, null);
+			shapefile.loadPoints();
+			fail("Not a Point shapefile");
+		} catch (final UnsupportedOperationException uoe) {
+			// Expected
+		} finally {
+			shapefile.close();
+			FileUtils.closeInputStream(dbfIS);
+			FileUtils.closeInputStream(shxIS);
+			FileUtils.closeInputStream(shpIS);
+		}
+	}
+
+	public void testLoadPointsFileLength() throws IOException,
+			URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(
+				"Point.shp");
+		final File pointFile = new File(resource.toURI());
+		final byte[] original = new byte[(int) pointFile.length()];
+		final FileInputStream is = new FileInputStream(pointFile);
+		try {
+			int read = 0;
+			while (read < original.length) {
+				read += is.read(original, read, original.length - read);
+			}
+		} finally {
+			FileUtils.closeInputStream(is);
+		}
+		// Header and 5 records of 28 bytes
+		assertEquals(240, original.length);
+
+		// The padding after the length stored in the header is ignored
+		final ByteBuffer padded = ByteBuffer.allocate(original.length + 100);
+		padded.put(original);
+		assertEquals(5, loadPoints(padded.array()).getRecordCount());
+
+		// The last record is too short for a point
+		final ByteBuffer shortRecord = ByteBuffer.allocate(228);
+		shortRecord.put(original, 0, shortRecord.capacity());
+		shortRecord.putInt(24, 228 / 2);
+		shortRecord.putInt(216, 8 / 2);
+		try {
+			loadPoints(shortRecord.array());
+			fail("Truncated record");
+		} catch (final IOException ioe) {
+			assertTrue(ioe.getMessage().startsWith("Truncated record"));
+		}
+
+		// The file is shorter than the length stored in the header
+		try {
+			final ByteBuffer truncated = ByteBuffer.allocate(200);
+			truncated.put(original, 0, truncated.capacity());
+			loadPoints(truncated.array());
+			fail("Truncated file");
+		} catch (final IOException ioe) {
+			assertTrue(ioe.getMessage().startsWith("Truncated SHP file"));
+		}
+	}
+
+	public void testQueries() throws IOException {
+		final int numRecords = 20000;
+		final Random random = new Random(25);
+		final double[] x = new double[numRecords];
+		final double[] y = new double[numRecords];
+
+		final File[] files = { File.createTempFile("jummyshapefile", ".shp"),
+				File.createTempFile("jummyshapefile", ".shx"),
+				File.createTempFile("jummyshapefile", ".dbf") };
+		Shapefile shapefile = null;
+		try {
+			final ShapefileWriter writer = new ShapefileWriter(
+					new FileOutputStream(files[0]), new FileOutputStream(
+							files[1]), new FileOutputStream(files[2]), 1,
+					new ArrayList<DBFFieldDescriptor>());
+			try {
+				for (int i = 0; i < numRecords; i++) {
+					final Entity entity = new Entity();
+					if (i % 100 == 7) {
+						// Null shapes
+						x[i] = Double.NaN;
+						y[i] = Double.NaN;
+						entity.setGeometry(new NullShape());
+					} else {
+						// Repeated coordinates
+						x[i] = i % 10 == 3 ? x[i - 1] : random.nextInt(1000);
+						y[i] = random.nextDouble() * 1000;
+						final Point point = new Point();
+						point.setX(x[i]);
+						point.setY(y[i]);
+						entity.setGeometry(point);
+					}
+					writer.write(entity);
+				}
+			} finally {
+				writer.close();
+			}
+
+			shapefile = new Shapefile(new FileInputStream(files[0]), null,
+					new FileInputStream(files[2]), null);
+			final SHPPointStore points = shapefile.loadPoints();
+			assertEquals(numRecords, points.getRecordCount());
+			assertEquals(numRecords - numRecords / 100, points.getPointCount());
+			assertTrue(points.isNull(8));
+			assertTrue(Double.isNaN(points.getY(8)));
+
+			for (int i = 0; i < 200; i++) {
+				final double minX = random.nextDouble() * 1000;
+				final double minY = random.nextDouble() * 1000;
+				final double maxX = minX + random.nextDouble() * 200;
+				final double maxY = minY + random.nextDouble() * 200;
+
+				final List<Integer> expected = new ArrayList<Integer>();
+				for (int j = 0; j < numRecords; j++) {
+					if (x[j] >= minX && x[j] <= maxX && y[j] >= minY
+							&& y[j] <= maxY) {
+						expected.add(j + 1);
+					}
+				}
+				final int[] actual = points.query(minX, minY, maxX, maxY);
+				assertEquals(expected.size(), actual.length);
+				for (int j = 0; j < actual.length; j++) {
+					assertEquals(expected.get(j).intValue(), actual[j]);
+				}
+
+				// Nearest neighbours, compared by distance (ties in any order)
+				final double px = random.nextDouble() * 1200 - 100;
+				final double py = random.nextDouble() * 1200 - 100;
+				final double[] distances = new double[numRecords];
+				for (int j = 0; j < numRecords; j++) {
+					distances[j] = Double.isNaN(x[j]) ? Double.POSITIVE_INFINITY
+							: (x[j] - px) * (x[j] - px) + (y[j] - py)
+									* (y[j] - py);
+				}
+				final double[] sorted = distances.clone();
+				Arrays.sort(sorted);
+
+				final int[] nearest = points.nearest(px, py, 10);
+				assertEquals(10, nearest.length);
+				for (int j = 0; j < nearest.length; j++) {
+					assertEquals(sorted[j], distances[nearest[j] - 1]);
+				}
+				assertEquals(sorted[0],
+						distances[points.nearest(px, py) - 1]);
+			}
+
+			assertEquals(0, points.query(2000, 2000, 3000, 3000).length);
+			assertEquals(points.getPointCount(), points.query(
+					-Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE,
+					Double.MAX_VALUE).length);
+			assertEquals(points.getPointCount(),
+					points.nearest(0, 0, numRecords).length);
+			assertEquals(0, points.nearest(0, 0, 0).length);
+		} finally {
+			if (shapefile != null) {
+				shapefile.close();
+			}
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	private static SHPPointStore loadPoints(final byte[] data)
+			throws IOException {
+		final File file = File.createTempFile("jummyshapefile", ".shp");
+		try {
+			final FileOutputStream os = new FileOutputStream(file);
+			try {
+				os.write(data);
+			} finally {
+				os.close();
+			}
+
+			final FileInputStream is = new FileInputStream(file);
+			final SHPFile shp = new SHPFile();
+			try {
+				shp.open(is);
+				return shp.loadPoints();
+			} finally {
+				shp.close();
+				FileUtils.closeInputStream(is);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private FileInputStream open(final String name) throws IOException,
+			URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(name);
+
+		return new FileInputStream(new File(resource.toURI()));
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.jummyshapefile.index.PackedRTree;
+import com.jummyshapefile.shapefile.Shapefile;
+import com.jummyshapefile.shapefile.model.Entity;
+import com.jummyshapefile.utils.FileUtils;
+import com.jummyshapefile.utils.GeometryUtils;
+
+public class TestRTree extends TestCase {
+	private static final String[] SHAPEFILES = { "Point", "Polyline",
+			"Polygon", "MultiPoint" };
+
+	public void testEntitiesInRectangle() throws IOException,
+			URISyntaxException {
+		for (final String name : SHAPEFILES) {
+			final FileInputStream shpIS = open(name + ".shp");
+			final FileInputStream shxIS = open(name + ".shx");
+			final FileInputStream dbfIS = open(name + ".dbf");
+
+			Shapefile shapefile = null;
+			try {
+				shapefile = new Shapefile(shpIS, shxIS, dbfIS, null);
+
+				final List<Entity> all = shapefile.getEntitiesInRectangle(
+						-Double.MAX_VALUE, -Double.MAX_VALUE,
+						Double.MAX_VALUE, Double.MAX_VALUE, false);
+				final double[][] rectangles = rectangles(all);
+				final int[][] expected = new int[rectangles.length][];
+				for (int i = 0; i < rectangles.length; i++) {
+					expected[i] = recordNums(shapefile.getEntitiesInRectangle(
+							rectangles[i][0], rectangles[i][1],
+							rectangles[i][2], rectangles[i][3], false));
+				}
+
+				final PackedRTree tree = shapefile.buildSpatialIndex();
+				assertSame(tree, shapefile.getSpatialIndex());
+				assertEquals(all.size(), tree.getNumItems());
+
+				for (int i = 0; i < rectangles.length; i++) {
+					final List<Entity> entities = shapefile
+							.getEntitiesInRectangle(rectangles[i][0],
+									rectangles[i][1], rectangles[i][2],
+									rectangles[i][3], true);
+					assertEquals(name, expected[i].length, entities.size());
+					for (int j = 0; j < entities.size(); j++) {
+						assertEquals(name, expected[i][j], entities.get(j)
+								.getRecordNum());
+						assertNotNull(entities.get(j).getData());
+					}
+				}
+			} finally {
+				shapefile.close();
+				FileUtils.closeInputStream(dbfIS);
+				FileUtils.closeInputStream(shxIS);
+				FileUtils.closeInputStream(shpIS);
+			}
+		}
+	}
+
+	public void testPersistence() throws IOException, URISyntaxException {
+		final FileInputStream shpIS = open("Polygon.shp");
+		final FileInputStream shxIS = open("Polygon.shx");
+		final FileInputStream dbfIS = open("Polygon.dbf");
+
+		final File file = File.createTempFile("Polygon",
+				PackedRTree.FILE_EXTENSION);
+		Shapefile shapefile = null;
+		FileInputStream rtreeIS = null;
+		try {
+			shapefile = new Shapefile(shpIS, shxIS, dbfIS, null);
+			final PackedRTree tree = shapefile.buildSpatialIndex();
+
+			final FileOutputStream os = new FileOutputStream(file);
+			try {
+				tree.write(os);
+			} finally {
+				os.close();
+			}
+
+			rtreeIS = new FileInputStream(file);
+			final PackedRTree mapped = PackedRTree.open(rtreeIS);
+			assertEquals(tree.getNumItems(), mapped.getNumItems());
+			assertEquals(tree.getNodeSize(), mapped.getNodeSize());
+			assertEquals(tree.getNumRecords(), mapped.getNumRecords());
+			assertEquals(tree.getSourceLength(), mapped.getSourceLength());
+			shapefile.setSpatialIndex(mapped);
+
+			final List<Entity> all = shapefile.getEntitiesInRectangle(
+					-Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE,
+					Double.MAX_VALUE, false);
+			final double[][] rectangles = rectangles(all);
+			for (int i = 0; i < rectangles.length; i++) {
+				final int[] expected = tree.query(rectangles[i][0],
+						rectangles[i][1], rectangles[i][2], rectangles[i][3]);
+				final int[] actual = mapped.query(rectangles[i][0],
+						rectangles[i][1], rectangles[i][2], rectangles[i][3]);
+				assertEquals(expected.length, actual.length);
+				for (int j = 0; j < expected.length; j++) {
+					assertEquals(expected[j], actual[j]);
+				}
+			}
+		} finally {
+			shapefile.close();
+			FileUtils.closeInputStream(rtreeIS);
+			FileUtils.closeInputStream(dbfIS);
+			FileUtils.closeInputStream(shxIS);
+			FileUtils.closeInputStream(shpIS);
+			file.delete();
+		}
+	}
+
+	public void testOtherShapefile() throws IOException, URISyntaxException {
+		final FileInputStream shpIS = open("Polygon.shp");
+		final FileInputStream shxIS = open("Polygon.shx");
+		final FileInputStream dbfIS = open("Polygon.dbf");
+		final FileInputStream otherShpIS = open("Polyline.shp");
+		final FileInputStream otherShxIS = open("Polyline.shx");
+		final FileInputStream otherDbfIS = open("Polyline.dbf");
+
+		Shapefile shapefile = null;
+		Shapefile other = null;
+		try {
+			shapefile = new Shapefile(shpIS, shxIS, dbfIS, null);
+			other = new Shapefile(otherShpIS, otherShxIS, otherDbfIS, null);
+			final PackedRTree tree = shapefile.buildSpatialIndex();
+
+			// Same number of records, but another SHP file length
+			assertEquals(tree.getNumRecords(), other.getNumEntities());
+			try {
+				other.setSpatialIndex(tree);
+				fail("Packed R-tree of another shapefile");
+			} catch (final IllegalArgumentException iae) {
+				// Expected
+			}
+			assertNull(other.getSpatialIndex());
+
+			// Trees built from plain arrays only check the number of items
+			final PackedRTree larger = PackedRTree.build(new double[6],
+					new double[6], new double[6], new double[6], new int[] {
+							1, 2, 3, 4, 5, 6 }, 6);
+			try {
+				other.setSpatialIndex(larger);
+				fail("Packed R-tree with more items than records");
+			} catch (final IllegalArgumentException iae) {
+				// Expected
+			}
+		} finally {
+			other.close();
+			shapefile.close();
+			FileUtils.closeInputStream(otherDbfIS);
+			FileUtils.closeInputStream(otherShxIS);
+			FileUtils.closeInputStream(otherShpIS);
+			FileUtils.closeInputStream(dbfIS);
+			FileUtils.closeInputStream(shxIS);
+			FileUtils.closeInputStream(shpIS);
+		}
+	}
+
+	public void testRandomRectangles() {
+		final Random random = new Random(42);
+		final int count = 5000;
+		final double[] minX = new double[count];
+		final double[] minY = new double[count];
+		final double[] maxX = new double[count];
+		final double[] maxY = new double[count];
+		final int[] recordNums = new int[count];
+		for (int i = 0; i < count; i++) {
+			minX[i] = random.nextDouble() * 1000;
+			minY[i] = random.nextDouble() * 1000;
+			maxX[i] = minX[i] + random.nextDouble() * 20;
+			maxY[i] = minY[i] + random.nextDouble() * 20;
+			recordNums[i] = i + 1;
+		}
+
+		final int[] nodeSizes = { 2, 5, PackedRTree.DEFAULT_NODE_SIZE };
+		for (final int nodeSize : nodeSizes) {
+			final PackedRTree tree = PackedRTree.build(minX, minY, maxX, maxY,
+					recordNums, count, nodeSize);
+			for (int q = 0; q < 100; q++) {
+				final double queryMinX = random.nextDouble() * 1000;
+				final double queryMinY = random.nextDouble() * 1000;
+				final double queryMaxX = queryMinX + random.nextDouble() * 100;
+				final double queryMaxY = queryMinY + random.nextDouble() * 100;
+
+				final int[] actual = tree.query(queryMinX, queryMinY,
+						queryMaxX, queryMaxY);
+				int found = 0;
+				for (int i = 0; i < count; i++) {
+					if (GeometryUtils.intersectsRectangle(minX[i], minY[i],
+							maxX[i], maxY[i], queryMinX, queryMinY, queryMaxX,
+							queryMaxY)) {
+						assertTrue(found < actual.length);
+						assertEquals(recordNums[i], actual[found++]);
+					}
+				}
+				assertEquals(found, actual.length);
+			}
+		}
+	}
+
+	public void testEmpty() {
+		final PackedRTree tree = PackedRTree.build(new double[0],
+				new double[0], new double[0], new double[0], new int[0], 0);
+
+		assertEquals(0, tree.getNumItems());
+		assertEquals(0, tree.query(0, 0, 1, 1).length);
+	}
+
+	private FileInputStream open(final String name) throws IOException,
+			URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(name);
+		return new FileInputStream(new File(resource.toURI()));
+	}
+
+	private static double[][] rectangles(final List<Entity> entities) {
+		final double[][] output = new double[entities.size() + 2][];
+		for (int i = 0; i < entities.size(); i++) {
+			final Entity entity = entities.get(i);
+			output[i] = new double[] { entity.getGeometry().getMinX(),
+					entity.getGeometry().getMinY(),
+					entity.getGeometry().getMaxX(),
+					entity.getGeometry().getMaxY() };
+		}
+		output[entities.size()] = new double[] { -Double.MAX_VALUE,
+				-Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+		output[entities.size() + 1] = new double[] { 0, 0, 1, 1 };
+
+		return output;
+	}
+
+	private static int[] recordNums(final List<Entity> entities) {
+		final int[] output = new int[entities.size()];
+		for (int i = 0; i < output.length; i++) {
+			output[i] = entities.get(i).getRecordNum();
+		}
+
+		return output;
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.jummyshapefile.sbn.SBNFile;
+import com.jummyshapefile.sbn.model.SBNHeader;
+import com.jummyshapefile.shapefile.Shapefile;
+import com.jummyshapefile.shapefile.model.Entity;
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.utils.FileUtils;
+
+public class TestSBN extends TestCase {
+	private static final String[] SHAPEFILES = { "Point", "Polyline",
+			"Polygon", "MultiPoint" };
+
+	public void testHeader() throws IOException, URISyntaxException {
+		for (final String name : SHAPEFILES) {
+			final FileInputStream sbnIS = open(name + ".sbn");
+
+			final SBNFile sbn = new SBNFile();
+			try {
+				sbn.open(sbnIS);
+
+				final SBNHeader header = sbn.getHeader();
+				assertNotNull(header);
+				assertEquals(5, header.getShapeCount());
+				assertEquals(188, header.getFileLength());
+				assertTrue(header.getMinX() < header.getMaxX());
+				assertTrue(header.getMinY() < header.getMaxY());
+				assertEquals(5, sbn.getFeatureCount());
+				assertEquals(3, sbn.getNodeCount());
+			} finally {
+				sbn.close();
+				FileUtils.closeInputStream(sbnIS);
+			}
+		}
+	}
+
+	public void testQueryAll() throws IOException, URISyntaxException {
+		for (final String name : SHAPEFILES) {
+			final FileInputStream sbnIS = open(name + ".sbn");
+
+			final SBNFile sbn = new SBNFile();
+			try {
+				sbn.open(sbnIS);
+
+				final SBNHeader header = sbn.getHeader();
+				final int[] recordNums = sbn.query(header.getMinX(),
+						header.getMinY(), header.getMaxX(), header.getMaxY());
+				assertEquals(5, recordNums.length);
+				for (int i = 0; i < recordNums.length; i++) {
+					assertEquals(i + 1, recordNums[i]);
+				}
+			} finally {
+				sbn.close();
+				FileUtils.closeInputStream(sbnIS);
+			}
+		}
+	}
+
+	public void testEntitiesInRectangle() throws IOException,
+			URISyntaxException {
+		final Random random = new Random(7);
+		for (final String name : SHAPEFILES) {
+			final FileInputStream shpIS = open(name + ".shp");
+			final FileInputStream shxIS = open(name + ".shx");
+			final FileInputStream dbfIS = open(name + ".dbf");
+			final FileInputStream sbnIS = open(name + ".sbn");
+
+			Shapefile shapefile = null;
+			try {
+				shapefile = new Shapefile(shpIS, shxIS, dbfIS, null);
+				final List<Entity> all = shapefile.getEntitiesInRectangle(
+						-Double.MAX_VALUE, -Double.MAX_VALUE,
+						Double.MAX_VALUE, Double.MAX_VALUE, false);
+
+				double minX = Double.MAX_VALUE;
+				double minY = Double.MAX_VALUE;
+				double maxX = -Double.MAX_VALUE;
+				double maxY = -Double.MAX_VALUE;
+				for (final Entity entity : all) {
+					final Geometry geometry = entity.getGeometry();
+					minX = Math.min(minX, geometry.getMinX());
+					minY = Math.min(minY, geometry.getMinY());
+					maxX = Math.max(maxX, geometry.getMaxX());
+					maxY = Math.max(maxY, geometry.getMaxY());
+				}
+
+				final double[][] rectangles = new double[all.size() + 50][];
+				for (int i = 0; i < all.size(); i++) {
+					final Geometry geometry = all.get(i).getGeometry();
+					rectangles[i] = new double[] { geometry.getMinX() - 1,
+							geometry.getMinY() - 1, geometry.getMaxX() + 1,
+							geometry.getMaxY() + 1 };
+				}
+				for (int i = all.size(); i < rectangles.length; i++) {
+					final double x = minX + random.nextDouble() * (maxX - minX);
+					final double y = minY + random.nextDouble() * (maxY - minY);
+					rectangles[i] = new double[] { x, y,
+							x + random.nextDouble() * (maxX - minX) / 4,
+							y + random.nextDouble() * (maxY - minY) / 4 };
+				}
+
+				final int[][] expected = new int[rectangles.length][];
+				for (int i = 0; i < rectangles.length; i++) {
+					final List<Entity> entities = shapefile
+							.getEntitiesInRectangle(rectangles[i][0],
+									rectangles[i][1], rectangles[i][2],
+									rectangles[i][3], false);
+					expected[i] = new int[entities.size()];
+					for (int j = 0; j < entities.size(); j++) {
+						expected[i][j] = entities.get(j).getRecordNum();
+					}
+				}
+
+				shapefile.openSBN(sbnIS);
+				assertNotNull(shapefile.getSpatialIndex());
+
+				for (int i = 0; i < rectangles.length; i++) {
+					final List<Entity> entities = shapefile
+							.getEntitiesInRectangle(rectangles[i][0],
+									rectangles[i][1], rectangles[i][2],
+									rectangles[i][3], false);
+					assertEquals(name, expected[i].length, entities.size());
+					for (int j = 0; j < entities.size(); j++) {
+						assertEquals(name, expected[i][j], entities.get(j)
+								.getRecordNum());
+					}
+				}
+			} finally {
+				shapefile.close();
+				FileUtils.closeInputStream(sbnIS);
+				FileUtils.closeInputStream(dbfIS);
+				FileUtils.closeInputStream(shxIS);
+				FileUtils.closeInputStream(shpIS);
+			}
+		}
+	}
+
+	public void testLargeNodes() throws IOException {
+		// More than 100 features in a node span several consecutive bins
+		final int[] nodeCounts = { 250, 120, 30 };
+		int featureCount = 0;
+		for (final int nodeCount : nodeCounts) {
+			featureCount += nodeCount;
+		}
+
+		final Random random = new Random(11);
+		final int[] bounds = new int[featureCount];
+		final int[] ids = new int[featureCount];
+		for (int i = 0; i < featureCount; i++) {
+			final int minX = random.nextInt(256);
+			final int minY = random.nextInt(256);
+			final int maxX = Math.min(minX + random.nextInt(20), 255);
+			final int maxY = Math.min(minY + random.nextInt(20), 255);
+			bounds[i] = minX << 24 | minY << 16 | maxX << 8 | maxY;
+			ids[i] = i + 1;
+		}
+
+		// Cells of 2 x 2 units from (100, 100)
+		final File file = File.createTempFile("jummyshapefile", ".sbn");
+		FileInputStream sbnIS = null;
+		final SBNFile sbn = new SBNFile();
+		try {
+			createSBN(file, 100, 100, 610, 610, bounds, ids, nodeCounts);
+			sbnIS = new FileInputStream(file);
+			sbn.open(sbnIS);
+			assertEquals(featureCount, sbn.getFeatureCount());
+			assertEquals(nodeCounts.length, sbn.getNodeCount());
+			assertEquals(featureCount, sbn.query(100, 100, 610, 610).length);
+
+			for (int q = 0; q < 200; q++) {
+				final double minX = 100 + random.nextDouble() * 510;
+				final double minY = 100 + random.nextDouble() * 510;
+				final double maxX = minX + random.nextDouble() * 60;
+				final double maxY = minY + random.nextDouble() * 60;
+
+				// The rectangle is widened to the cells it touches plus one
+				final int gridMinX = Math.max(
+						(int) Math.floor((minX - 100) / 2) - 1, 0);
+				final int gridMinY = Math.max(
+						(int) Math.floor((minY - 100) / 2) - 1, 0);
+				final int gridMaxX = Math.min(
+						(int) Math.ceil((maxX - 100) / 2) + 1, 255);
+				final int gridMaxY = Math.min(
+						(int) Math.ceil((maxY - 100) / 2) + 1, 255);
+
+				final int[] actual = sbn.query(minX, minY, maxX, maxY);
+				int found = 0;
+				for (int i = 0; i < featureCount; i++) {
+					if ((bounds[i] >>> 24) <= gridMaxX
+							&& ((bounds[i] >>> 16) & 0xFF) <= gridMaxY
+							&& ((bounds[i] >>> 8) & 0xFF) >= gridMinX
+							&& (bounds[i] & 0xFF) >= gridMinY) {
+						assertTrue(found < actual.length);
+						assertEquals(ids[i], actual[found++]);
+					}
+				}
+				assertEquals(found, actual.length);
+			}
+		} finally {
+			sbn.close();
+			FileUtils.closeInputStream(sbnIS);
+			file.delete();
+		}
+	}
+
+	private FileInputStream open(final String name) throws IOException,
+			URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(name);
+		return new FileInputStream(new File(resource.toURI()));
+	}
+
+	/**
+	 * Writes a SBN file whose nodes hold the given features (in order), in
+	 * bins of up to 100 features.
+	 */
+	private static void createSBN(final File sbnFile, final double minX,
+			final double minY, final double maxX, final double maxY,
+			final int[] bounds, final int[] ids, final int[] nodeCounts)
+			throws IOException {
+		int binCount = 0;
+		for (final int nodeCount : nodeCounts) {
+			binCount += (nodeCount + 99) / 100;
+		}
+		final int length = 100 + 8 + 8 * nodeCounts.length + 8 * binCount + 8
+				* bounds.length;
+
+		final ByteBuffer data = ByteBuffer.allocate(length);
+		data.putInt(0, 0x0000270A);
+		data.putInt(24, length / 2);
+		data.putInt(28, bounds.length);
+		data.putDouble(32, minX);
+		data.putDouble(40, minY);
+		data.putDouble(48, maxX);
+		data.putDouble(56, maxY);
+
+		data.position(100);
+		data.putInt(1);
+		data.putInt(8 * nodeCounts.length / 2);
+		int bin = 2;
+		for (final int nodeCount : nodeCounts) {
+			data.putInt(nodeCount > 0 ? bin : 0);
+			data.putInt(nodeCount);
+			bin += (nodeCount + 99) / 100;
+		}
+
+		bin = 2;
+		int feature = 0;
+		for (final int nodeCount : nodeCounts) {
+			for (int first = 0; first < nodeCount; first += 100) {
+				final int binFeatures = Math.min(nodeCount - first, 100);
+				data.putInt(bin++);
+				data.putInt(8 * binFeatures / 2);
+				for (int i = 0; i < binFeatures; i++) {
+					data.putInt(bounds[feature]);
+					data.putInt(ids[feature]);
+					feature++;
+				}
+			}
+		}
+
+		final FileOutputStream os = new FileOutputStream(sbnFile);
+		try {
+			os.write(data.array());
+		} finally {
+			os.close();
+		}
+	}
+}
@@ -21,17 +21,24 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.List;
 
 import junit.framework.TestCase;
 
+import com.jummyshapefile.shapefile.model.Geometry;
 import com.jummyshapefile.shapefile.model.MultiPoint;
+import com.jummyshapefile.shapefile.model.PackedGeometry;
 import com.jummyshapefile.shapefile.model.Point;
 import com.jummyshapefile.shapefile.model.Polygon;
 import com.jummyshapefile.shapefile.model.Polyline;
 import com.jummyshapefile.shp.SHPFile;
+import com.jummyshapefile.shp.SHPGeometryReader;
+import com.jummyshapefile.shp.SHPRecordCursor;
 import com.jummyshapefile.shp.model.SHPHeader;
 import com.jummyshapefile.shp.model.SHPRecord;
+import com.jummyshapefile.shp.model.SHPRecordBounds;
 import com.jummyshapefile.utils.FileUtils;
 
 public class TestSHP extends TestCase {
@@ -49,6 +56,7 @@ public class TestSHP extends TestCase {
 			final SHPHeader header = shp.getHeader();
 
 			assertNotNull(header);
+			assertEquals(file.length(), header.getFileLength());
 		} finally {
 			shp.close();
 			FileUtils.closeInputStream(is);
@@ -460,4 +468,134 @@ public class TestSHP extends TestCase {
 			FileUtils.closeInputStream(is);
 		}
 	}
+
+	public void testRecordBoundsPoint() throws IOException,
+			URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(
+				"Point.shp");
+		final File file = new File(resource.toURI());
+		final FileInputStream is = new FileInputStream(file);
+
+		SHPFile shp = null;
+		try {
+			shp = new SHPFile();
+			shp.open(is);
+
+			final SHPRecord record = shp.getRecord(156, 20);
+			final SHPRecordBounds bounds = shp.getRecordBounds(156, 20);
+			assertEquals(1, bounds.getShapeType());
+
+			final Point point = (Point) record.getGeometry();
+			assertEquals(point.getX(), bounds.getMinX());
+			assertEquals(point.getY(), bounds.getMinY());
+			assertEquals(point.getX(), bounds.getMaxX());
+			assertEquals(point.getY(), bounds.getMaxY());
+		} finally {
+			shp.close();
+			FileUtils.closeInputStream(is);
+		}
+	}
+
+	public void testRecordBoundsPolygon() throws IOException,
+			URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File file = new File(resource.toURI());
+		final FileInputStream is = new FileInputStream(file);
+
+		SHPFile shp = null;
+		try {
+			shp = new SHPFile();
+			shp.open(is);
+
+			final SHPRecord record = shp.getRecord(236, 296);
+			final SHPRecordBounds bounds = shp.getRecordBounds(236, 296);
+			assertEquals(5, bounds.getShapeType());
+
+			final Polygon polygon = (Polygon) record.getGeometry();
+			assertEquals(polygon.getMinX(), bounds.getMinX());
+			assertEquals(polygon.getMinY(), bounds.getMinY());
+			assertEquals(polygon.getMaxX(), bounds.getMaxX());
+			assertEquals(polygon.getMaxY(), bounds.getMaxY());
+		} finally {
+			shp.close();
+			FileUtils.closeInputStream(is);
+		}
+	}
+
+	public void testCursor() throws IOException, URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File file = new File(resource.toURI());
+		final FileInputStream is = new FileInputStream(file);
+
+		SHPFile shp = null;
+		try {
+			shp = new SHPFile();
+			shp.open(is);
+
+			// A buffer smaller than the records forces it to grow
+			final SHPRecordCursor cursor = shp.openCursor(100, file.length(),
+					8);
+			int count = 0;
+			while (cursor.hasNext()) {
+				final SHPRecord record = cursor.next();
+				count++;
+
+				assertEquals(count, record.getRecordHeader().getRecordNum());
+				assertEquals(5, record.getShapeType());
+
+				final SHPRecord expected = shp.getRecord(
+						cursor.getRecordOffset(), record.getRecordHeader()
+								.getRecordLength());
+				assertEquals(expected.getGeometry().toString(), record
+						.getGeometry().toString());
+			}
+			cursor.close();
+
+			assertEquals(5, count);
+		} finally {
+			shp.close();
+			FileUtils.closeInputStream(is);
+		}
+	}
+
+	public void testPartOffsets() throws IOException {
+		final SHPGeometryReader reader = new SHPGeometryReader();
+
+		final Geometry geometry = reader.readPackedGeometry(
+				createPolyline(new int[] { 0, 2 }, 4), 3);
+		assertEquals(2, ((PackedGeometry) geometry).getNumParts());
+
+		final int[][] invalidParts = { { 1 }, { 0, 3, 2 }, { 0, 4 } };
+		for (final int[] parts : invalidParts) {
+			try {
+				reader.readPackedGeometry(createPolyline(parts, 4), 3);
+				fail("Invalid part offsets");
+			} catch (final IOException ioe) {
+				// Expected
+			}
+		}
+	}
+
+	private static ByteBuffer createPolyline(final int[] parts,
+			final int numberOfPoints) {
+		final ByteBuffer output = ByteBuffer.allocate(
+				44 + 4 * parts.length + 16 * numberOfPoints).order(
+				ByteOrder.LITTLE_ENDIAN);
+		output.putInt(3);
+		output.putDouble(0).putDouble(0).putDouble(numberOfPoints)
+				.putDouble(numberOfPoints);
+		output.putInt(parts.length);
+		output.putInt(numberOfPoints);
+		for (final int part : parts) {
+			output.putInt(part);
+		}
+		for (int i = 0; i < numberOfPoints; i++) {
+			output.putDouble(i).putDouble(i);
+		}
+		output.flip();
+
+		return output;
+	}
 }
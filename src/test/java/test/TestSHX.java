@@ -18,12 +18,16 @@ package test;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URISyntaxException;
 import java.net.URL;
 
 import junit.framework.TestCase;
 
+import com.jummyshapefile.shp.SHPFile;
+import com.jummyshapefile.shp.SHPRecordCursor;
 import com.jummyshapefile.shx.SHXFile;
 import com.jummyshapefile.shx.model.SHXHeader;
 import com.jummyshapefile.shx.model.SHXRecord;
@@ -272,7 +276,7 @@ public class TestSHX extends TestCase {
 
 			final SHXRecord record = shx.getRecordAt(3);
 			final int recordLength = record.getLength();
-			final int recordOffset = record.getOffset();
+			final long recordOffset = record.getOffset();
 
 			assertEquals(296, recordLength);
 			assertEquals(540, recordOffset);
@@ -281,4 +285,179 @@ public class TestSHX extends TestCase {
 			FileUtils.closeInputStream(is);
 		}
 	}
+
+	public void testLoadIndex() throws IOException, URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(
+				"Polygon.shx");
+		final File file = new File(resource.toURI());
+		final FileInputStream is = new FileInputStream(file);
+
+		SHXFile shx = null;
+		try {
+			shx = new SHXFile();
+			shx.open(is);
+
+			final int recordCount = shx.getRecordCount();
+			assertEquals(5, recordCount);
+
+			final SHXRecord[] records = new SHXRecord[recordCount + 1];
+			for (int i = 1; i <= recordCount; i++) {
+				records[i] = shx.getRecordAt(i);
+			}
+
+			assertFalse(shx.isIndexLoaded());
+			shx.loadIndex();
+			assertTrue(shx.isIndexLoaded());
+			assertEquals(recordCount, shx.getRecordCount());
+
+			for (int i = 1; i <= recordCount; i++) {
+				assertEquals(records[i].getOffset(), shx.getOffsetAt(i));
+				assertEquals(records[i].getLength(), shx.getLengthAt(i));
+				assertEquals(records[i].toString(), shx.getRecordAt(i)
+						.toString());
+			}
+
+			assertEquals(296, shx.getLengthAt(3));
+			assertEquals(540, shx.getOffsetAt(3));
+
+			try {
+				shx.getOffsetAt(recordCount + 1);
+				fail("Record out of the index");
+			} catch (final IndexOutOfBoundsException ioobe) {
+				// Expected
+			}
+		} finally {
+			shx.close();
+			FileUtils.closeInputStream(is);
+		}
+	}
+
+	public void testLoadIndexFromSHP() throws IOException, URISyntaxException {
+		final URL shxResource = getClass().getClassLoader().getResource(
+				"Polygon.shx");
+		final File shxFile = new File(shxResource.toURI());
+		final FileInputStream shxIS = new FileInputStream(shxFile);
+		final URL shpResource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File shpFile = new File(shpResource.toURI());
+		final FileInputStream shpIS = new FileInputStream(shpFile);
+
+		SHXFile shx = null;
+		SHPFile shp = null;
+		try {
+			shx = new SHXFile();
+			shx.open(shxIS);
+			shp = new SHPFile();
+			shp.open(shpIS);
+
+			// Buffers smaller and larger than the records
+			final int[] bufferSizes = { 8, 100, 64 * 1024 };
+			for (final int bufferSize : bufferSizes) {
+				final SHXFile rebuilt = new SHXFile();
+				try {
+					rebuilt.getRecordCount();
+					fail("Index not loaded");
+				} catch (final IllegalStateException ise) {
+					// Expected
+				}
+
+				final SHPRecordCursor cursor = shp.openCursor(100,
+						shpFile.length(), bufferSize);
+				try {
+					rebuilt.loadIndex(cursor);
+				} finally {
+					cursor.close();
+				}
+
+				assertTrue(rebuilt.isIndexLoaded());
+				assertEquals(shx.getRecordCount(), rebuilt.getRecordCount());
+				for (int i = 1; i <= shx.getRecordCount(); i++) {
+					assertEquals(shx.getOffsetAt(i), rebuilt.getOffsetAt(i));
+					assertEquals(shx.getLengthAt(i), rebuilt.getLengthAt(i));
+				}
+			}
+
+			// A lenient cursor stops at the truncated record
+			final SHPRecordCursor cursor = shp.openCursor(100,
+					shpFile.length() - 1, 8);
+			try {
+				cursor.setLenient(true);
+				final SHXFile rebuilt = new SHXFile();
+				rebuilt.loadIndex(cursor);
+
+				assertTrue(cursor.isTruncated());
+				assertEquals(shx.getRecordCount() - 1, rebuilt.getRecordCount());
+			} finally {
+				cursor.close();
+			}
+
+			final SHPRecordCursor strict = shp.openCursor(100,
+					shpFile.length() - 1, 8);
+			try {
+				new SHXFile().loadIndex(strict);
+				fail("Truncated record");
+			} catch (final IOException ioe) {
+				// Expected
+			} finally {
+				strict.close();
+			}
+		} finally {
+			shp.close();
+			shx.close();
+			FileUtils.closeInputStream(shpIS);
+			FileUtils.closeInputStream(shxIS);
+		}
+	}
+
+	public void testLargeOffsets() throws IOException, URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(
+				"Polygon.shx");
+		final File file = File.createTempFile("jummyshapefile", ".shx");
+
+		try {
+			final FileInputStream copyIS = new FileInputStream(new File(
+					resource.toURI()));
+			final FileOutputStream os = new FileOutputStream(file);
+			try {
+				final byte[] buffer = new byte[4096];
+				int read;
+				while ((read = copyIS.read(buffer)) > 0) {
+					os.write(buffer, 0, read);
+				}
+			} finally {
+				os.close();
+				FileUtils.closeInputStream(copyIS);
+			}
+
+			// The offset of the third record beyond 4 GB once in bytes
+			final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.seek(100 + 2 * 8);
+				raf.writeInt(0x7FFFFFF0);
+			} finally {
+				raf.close();
+			}
+
+			final FileInputStream is = new FileInputStream(file);
+			final SHXFile shx = new SHXFile();
+			try {
+				shx.open(is);
+
+				assertEquals(0xFFFFFFE0L, shx.getRecordAt(3).getOffset());
+				assertEquals(0xFFFFFFE0L, shx.getOffsetAt(3));
+				assertEquals(296, shx.getLengthAt(3));
+
+				shx.loadIndex();
+
+				assertEquals(0xFFFFFFE0L, shx.getRecordAt(3).getOffset());
+				assertEquals(0xFFFFFFE0L, shx.getOffsetAt(3));
+				assertEquals(296, shx.getLengthAt(3));
+			} finally {
+				shx.close();
+				FileUtils.closeInputStream(is);
+			}
+		} finally {
+			file.delete();
+		}
+	}
 }
@@ -18,18 +18,38 @@ package test;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
+import com.jummyshapefile.binaryfile.AccessMode;
+import com.jummyshapefile.cache.CacheStats;
+import com.jummyshapefile.dbf.DBFPredicate;
+import com.jummyshapefile.dbf.DBFWriter;
 import com.jummyshapefile.dbf.model.DBFField;
 import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
+import com.jummyshapefile.shapefile.ConcurrentShapefile;
+import com.jummyshapefile.shapefile.EntityCache;
+import com.jummyshapefile.shapefile.EntitySink;
+import com.jummyshapefile.shapefile.LazyEntity;
+import com.jummyshapefile.shapefile.OffHeapGeometryCache;
 import com.jummyshapefile.shapefile.Shapefile;
+import com.jummyshapefile.shapefile.ShapefileReader;
 import com.jummyshapefile.shapefile.model.Entity;
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shapefile.model.OffHeapGeometry;
 import com.jummyshapefile.utils.FileUtils;
+import com.jummyshapefile.utils.WKTUtils;
 
 public class TestShapefile extends TestCase {
 	public void testProjection() throws IOException, URISyntaxException {
@@ -222,6 +242,63 @@ public class TestShapefile extends TestCase {
 		}
 	}
 
+	public void testEntityProjection() throws IOException,
+			URISyntaxException {
+		final URL shpResource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File shpFile = new File(shpResource.toURI());
+		final FileInputStream shpIS = new FileInputStream(shpFile);
+		final URL shxResource = getClass().getClassLoader().getResource(
+				"Polygon.shx");
+		final File shxFile = new File(shxResource.toURI());
+		final FileInputStream shxIS = new FileInputStream(shxFile);
+		final URL dbfResource = getClass().getClassLoader().getResource(
+				"Polygon.dbf");
+		final File dbfFile = new File(dbfResource.toURI());
+		final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+		Shapefile shapefile = null;
+		try {
+			shapefile = new Shapefile(shpIS, shxIS, dbfIS, null);
+
+			for (int i = 1; i <= shapefile.getNumEntities(); i++) {
+				final List<DBFField> all = shapefile
+						.getEntityDataByRecordNumber(i);
+
+				final Entity entity = shapefile.getEntityByRecordNumber(i,
+						"Field6", "field3", "Id");
+				assertEquals(5, entity.getShapeType());
+				assertNotNull(entity.getGeometry());
+				assertEquals(3, entity.getData().size());
+				assertEquals("Field6", entity.getData().get(0)
+						.getDescriptor().getName());
+				assertEquals(all.get(7).getValue(), entity.getData().get(0)
+						.getValue());
+				assertEquals(all.get(4).getValue(), entity.getData().get(1)
+						.getValue());
+				assertEquals(all.get(0).getValue(), entity.getData().get(2)
+						.getValue());
+
+				final List<DBFField> data = shapefile
+						.getEntityDataByRecordNumber(i, "Field5");
+				assertEquals(1, data.size());
+				assertEquals(all.get(6).getValue(), data.get(0).getValue());
+			}
+
+			try {
+				shapefile.getEntityDataByRecordNumber(1, "Unknown");
+				fail();
+			} catch (final IllegalArgumentException iae) {
+				// Expected
+			}
+		} finally {
+			shapefile.close();
+			FileUtils.closeInputStream(dbfIS);
+			FileUtils.closeInputStream(shxIS);
+			FileUtils.closeInputStream(shpIS);
+		}
+	}
+
 	public void testEntitiesInRectangle() throws IOException,
 			URISyntaxException {
 		final URL shpResource = getClass().getClassLoader().getResource(
@@ -275,4 +352,1081 @@ public class TestShapefile extends TestCase {
 			FileUtils.closeInputStream(shpIS);
 		}
 	}
+
+	public void testEntitiesInRectangleWithPredicates() throws IOException,
+			URISyntaxException {
+		final URL shpResource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File shpFile = new File(shpResource.toURI());
+		final FileInputStream shpIS = new FileInputStream(shpFile);
+		final URL shxResource = getClass().getClassLoader().getResource(
+				"Polygon.shx");
+		final File shxFile = new File(shxResource.toURI());
+		final FileInputStream shxIS = new FileInputStream(shxFile);
+		final URL dbfResource = getClass().getClassLoader().getResource(
+				"Polygon.dbf");
+		final File dbfFile = new File(dbfResource.toURI());
+		final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+		Shapefile shapefile = null;
+		try {
+			shapefile = new Shapefile(shpIS, shxIS, dbfIS, null,
+					AccessMode.MAPPED);
+
+			// Records 1 and 3 intersect the small rectangle
+			final double[][] rectangles = {
+					{ 440539, 4471192, 448629, 4476120 },
+					{ -1e10, -1e10, 1e10, 1e10 } };
+			final DBFPredicate[][] predicates = {
+					{ DBFPredicate.between("Field3", 2, 4.5) },
+					{ DBFPredicate.in("field5", "a1", "a4", "b") },
+					{ DBFPredicate.startsWith("Field5", "a"),
+							DBFPredicate.equalTo("Field1", 2) },
+					{ DBFPredicate.between("Field6", "20020101", "20031231") },
+					{ DBFPredicate.in("Field1", 5, 1, 3),
+							DBFPredicate.between("Field4", 20, 1e10) },
+					{ DBFPredicate.equalTo("Field5", "a") } };
+			final int[][][] expected = { { { 3 }, { 2, 3, 4 } },
+					{ { 1 }, { 1, 4 } }, { {}, { 2 } }, { { 3 }, { 2, 3 } },
+					{ { 3 }, { 3, 5 } }, { {}, {} } };
+
+			for (int index = 0; index < 2; index++) {
+				if (index == 1) {
+					shapefile.buildSpatialIndex();
+				}
+
+				for (int r = 0; r < rectangles.length; r++) {
+					for (int p = 0; p < predicates.length; p++) {
+						final List<Entity> entities = shapefile
+								.getEntitiesInRectangle(rectangles[r][0],
+										rectangles[r][1], rectangles[r][2],
+										rectangles[r][3], p % 2 == 0,
+										predicates[p]);
+
+						final String message = "Index " + index + ", rectangle "
+								+ r + ", predicates " + p;
+						assertEquals(message, expected[p][r].length,
+								entities.size());
+						for (int i = 0; i < entities.size(); i++) {
+							assertEquals(expected[p][r][i], entities.get(i)
+									.getRecordNum());
+							assertNotNull(entities.get(i).getGeometry());
+							assertEquals(p % 2 == 0, entities.get(i)
+									.getData().size() > 0);
+						}
+					}
+				}
+			}
+
+			try {
+				shapefile.getEntitiesInRectangle(0, 0, 1, 1, false,
+						DBFPredicate.equalTo("Unknown", 1));
+				fail();
+			} catch (final IllegalArgumentException iae) {
+				// Expected
+			}
+		} finally {
+			shapefile.close();
+			FileUtils.closeInputStream(dbfIS);
+			FileUtils.closeInputStream(shxIS);
+			FileUtils.closeInputStream(shpIS);
+		}
+	}
+
+	public void testEntitiesInRectangleMapped() throws IOException,
+			URISyntaxException {
+		final URL shpResource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File shpFile = new File(shpResource.toURI());
+		final FileInputStream shpIS = new FileInputStream(shpFile);
+		final URL shxResource = getClass().getClassLoader().getResource(
+				"Polygon.shx");
+		final File shxFile = new File(shxResource.toURI());
+		final FileInputStream shxIS = new FileInputStream(shxFile);
+		final URL dbfResource = getClass().getClassLoader().getResource(
+				"Polygon.dbf");
+		final File dbfFile = new File(dbfResource.toURI());
+		final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+		Shapefile shapefile = null;
+		try {
+			shapefile = new Shapefile(shpIS, shxIS, dbfIS, null,
+					AccessMode.MAPPED);
+			shapefile.loadIndex();
+
+			List<Entity> entities = shapefile.getEntitiesInRectangle(440539,
+					4471192, 448629, 4476120, true);
+			assertTrue(entities.size() == 2);
+
+			final Entity entity = entities.get(0);
+			assertEquals(5, entity.getShapeType());
+			assertEquals(1, entity.getRecordNum());
+			assertNotNull(entity.getGeometry());
+			assertTrue(entity.getData().size() > 0);
+
+			entities = shapefile.getEntitiesInRectangle(10, 10, 200, 200, true);
+			assertTrue(entities.size() == 0);
+		} finally {
+			shapefile.close();
+			FileUtils.closeInputStream(dbfIS);
+			FileUtils.closeInputStream(shxIS);
+			FileUtils.closeInputStream(shpIS);
+		}
+	}
+
+	public void testConcurrentEntities() throws IOException,
+			URISyntaxException, InterruptedException {
+		final URL shpResource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File shpFile = new File(shpResource.toURI());
+		final FileInputStream shpIS = new FileInputStream(shpFile);
+		final URL shxResource = getClass().getClassLoader().getResource(
+				"Polygon.shx");
+		final File shxFile = new File(shxResource.toURI());
+		final FileInputStream shxIS = new FileInputStream(shxFile);
+		final URL dbfResource = getClass().getClassLoader().getResource(
+				"Polygon.dbf");
+		final File dbfFile = new File(dbfResource.toURI());
+		final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+		Shapefile shapefile = null;
+		try {
+			shapefile = new Shapefile(shpIS, shxIS, dbfIS, null,
+					AccessMode.POSITIONAL);
+
+			final int numEntities = shapefile.getNumEntities();
+			final String[] expected = new String[numEntities + 1];
+			for (int i = 1; i <= numEntities; i++) {
+				expected[i] = WKTUtils.geometry2WKT(shapefile
+						.getEntityByRecordNumber(i, false).getGeometry());
+			}
+
+			final Shapefile shared = shapefile;
+			final List<Throwable> errors = new ArrayList<Throwable>();
+			final Thread[] threads = new Thread[8];
+			for (int t = 0; t < threads.length; t++) {
+				threads[t] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (int n = 0; n < 200; n++) {
+								final int recordNum = 1 + n % numEntities;
+								final Entity entity = shared
+										.getEntityByRecordNumber(recordNum,
+												true);
+								final String wkt = WKTUtils
+										.geometry2WKT(entity.getGeometry());
+								if (!expected[recordNum].equals(wkt)
+										|| entity.getData().isEmpty()) {
+									throw new AssertionError("Record "
+											+ recordNum + " corrupted");
+								}
+							}
+						} catch (final Throwable e) {
+							synchronized (errors) {
+								errors.add(e);
+							}
+						}
+					}
+				};
+				threads[t].start();
+			}
+			for (final Thread thread : threads) {
+				thread.join();
+			}
+
+			assertTrue(errors.toString(), errors.isEmpty());
+		} finally {
+			shapefile.close();
+			FileUtils.closeInputStream(dbfIS);
+			FileUtils.closeInputStream(shxIS);
+			FileUtils.closeInputStream(shpIS);
+		}
+	}
+
+	public void testConcurrentShapefile() throws IOException,
+			URISyntaxException, InterruptedException {
+		final URL shpResource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File shpFile = new File(shpResource.toURI());
+		final FileInputStream shpIS = new FileInputStream(shpFile);
+		final URL shxResource = getClass().getClassLoader().getResource(
+				"Polygon.shx");
+		final File shxFile = new File(shxResource.toURI());
+		final FileInputStream shxIS = new FileInputStream(shxFile);
+		final URL dbfResource = getClass().getClassLoader().getResource(
+				"Polygon.dbf");
+		final File dbfFile = new File(dbfResource.toURI());
+		final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+		try {
+			new ConcurrentShapefile(shpIS, shxIS, dbfIS, null,
+					AccessMode.STREAM);
+			fail();
+		} catch (final IllegalArgumentException iae) {
+			// Expected
+		}
+
+		ConcurrentShapefile shapefile = null;
+		try {
+			shapefile = new ConcurrentShapefile(shpIS, shxIS, dbfIS, null,
+					AccessMode.MAPPED);
+
+			final int numEntities = shapefile.getNumEntities();
+			assertEquals(5, numEntities);
+			assertNull(shapefile.getSpatialIndex());
+
+			final List<DBFFieldDescriptor> descriptors = shapefile
+					.getDataFieldDescriptors();
+			descriptors.get(0).setName("Modified");
+			assertEquals("Id", shapefile.getDataFieldDescriptors().get(0)
+					.getName());
+
+			final String[] expected = new String[numEntities + 1];
+			for (int i = 1; i <= numEntities; i++) {
+				final Entity entity = shapefile.getEntityByRecordNumber(i,
+						true);
+				final StringBuilder sb = new StringBuilder(
+						WKTUtils.geometry2WKT(entity.getGeometry()));
+				for (final DBFField field : entity.getData()) {
+					sb.append(';').append(field.getValue());
+				}
+				expected[i] = sb.toString();
+			}
+			final int inRectangle = shapefile.getEntitiesInRectangle(440539,
+					4471192, 448629, 4476120, false).size();
+
+			final ConcurrentShapefile shared = shapefile;
+			final List<Throwable> errors = new ArrayList<Throwable>();
+			final Thread[] threads = new Thread[8];
+			for (int t = 0; t < threads.length; t++) {
+				threads[t] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (int n = 0; n < 200; n++) {
+								final int recordNum = 1 + n % numEntities;
+								final Entity entity = shared
+										.getEntityByRecordNumber(recordNum,
+												true);
+								final StringBuilder sb = new StringBuilder(
+										WKTUtils.geometry2WKT(entity
+												.getGeometry()));
+								for (final DBFField field : entity.getData()) {
+									sb.append(';').append(field.getValue());
+								}
+								final int found = shared
+										.getEntitiesInRectangle(440539,
+												4471192, 448629, 4476120,
+												false).size();
+								if (!expected[recordNum].equals(sb.toString())
+										|| found != inRectangle) {
+									throw new AssertionError("Record "
+											+ recordNum + " corrupted");
+								}
+							}
+						} catch (final Throwable e) {
+							synchronized (errors) {
+								errors.add(e);
+							}
+						}
+					}
+				};
+				threads[t].start();
+			}
+			for (final Thread thread : threads) {
+				thread.join();
+			}
+
+			assertTrue(errors.toString(), errors.isEmpty());
+		} finally {
+			if (shapefile != null) {
+				shapefile.close();
+			}
+			FileUtils.closeInputStream(dbfIS);
+			FileUtils.closeInputStream(shxIS);
+			FileUtils.closeInputStream(shpIS);
+		}
+	}
+
+	public void testEntityCache() throws IOException, URISyntaxException {
+		final URL shpResource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File shpFile = new File(shpResource.toURI());
+		final FileInputStream shpIS = new FileInputStream(shpFile);
+		final URL shxResource = getClass().getClassLoader().getResource(
+				"Polygon.shx");
+		final File shxFile = new File(shxResource.toURI());
+		final FileInputStream shxIS = new FileInputStream(shxFile);
+		final URL dbfResource = getClass().getClassLoader().getResource(
+				"Polygon.dbf");
+		final File dbfFile = new File(dbfResource.toURI());
+		final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+		Shapefile shapefile = null;
+		try {
+			shapefile = new Shapefile(shpIS, shxIS, dbfIS, null,
+					AccessMode.MAPPED);
+
+			final int numEntities = shapefile.getNumEntities();
+			final String[] expected = new String[numEntities + 1];
+			for (int i = 1; i <= numEntities; i++) {
+				expected[i] = WKTUtils.geometry2WKT(shapefile
+						.getEntityByRecordNumber(i, false).getGeometry());
+			}
+
+			final EntityCache cache = new EntityCache(1024 * 1024, 1024 * 1024);
+			shapefile.setEntityCache(cache);
+			assertSame(cache, shapefile.getEntityCache());
+
+			final Entity first = shapefile.getEntityByRecordNumber(1, true);
+			final Entity second = shapefile.getEntityByRecordNumber(1, true);
+			assertSame(first.getGeometry(), second.getGeometry());
+			assertEquals(first.getData().size(), second.getData().size());
+			assertNotSame(first.getData(), second.getData());
+
+			CacheStats stats = cache.getGeometryStats();
+			assertEquals(1, stats.getHitCount());
+			assertEquals(1, stats.getMissCount());
+			assertEquals(1, stats.getEntryCount());
+			assertTrue(stats.getSize() > 0);
+			stats = cache.getDataStats();
+			assertEquals(1, stats.getHitCount());
+			assertEquals(1, stats.getMissCount());
+
+			// Projections use the cached geometry, but not the cached data
+			shapefile.getEntityByRecordNumber(1, "Field5");
+			assertEquals(2, cache.getGeometryStats().getHitCount());
+			assertEquals(1, cache.getDataStats().getHitCount());
+			assertEquals(1, cache.getDataStats().getMissCount());
+
+			for (int i = 1; i <= numEntities; i++) {
+				shapefile.getEntityByRecordNumber(i, true);
+			}
+
+			// Cached entities do not read the files
+			shapefile.close();
+			for (int i = 1; i <= numEntities; i++) {
+				final Entity entity = shapefile
+						.getEntityByRecordNumber(i, true);
+				assertEquals(i, entity.getRecordNum());
+				assertEquals(expected[i],
+						WKTUtils.geometry2WKT(entity.getGeometry()));
+				assertEquals(8, entity.getData().size());
+			}
+
+			// A cache with room for a single geometry evicts the others
+			shapefile = new Shapefile(new FileInputStream(shpFile),
+					new FileInputStream(shxFile),
+					new FileInputStream(dbfFile), null, AccessMode.MAPPED);
+			long maxSize = 0;
+			for (int i = 1; i <= numEntities; i++) {
+				final EntityCache single = new EntityCache(1024 * 1024, 0);
+				shapefile.setEntityCache(single);
+				shapefile.getEntityByRecordNumber(i, false);
+				maxSize = Math.max(maxSize, single.getGeometryStats()
+						.getSize());
+			}
+			final EntityCache small = new EntityCache(maxSize, 0);
+			shapefile.setEntityCache(small);
+			for (int i = 1; i <= numEntities; i++) {
+				shapefile.getEntityByRecordNumber(i, true);
+			}
+			assertEquals(1, small.getGeometryStats().getEntryCount());
+			assertEquals(numEntities - 1, small.getGeometryStats()
+					.getEvictionCount());
+			assertEquals(0, small.getDataStats().getEntryCount());
+		} finally {
+			shapefile.close();
+			FileUtils.closeInputStream(dbfIS);
+			FileUtils.closeInputStream(shxIS);
+			FileUtils.closeInputStream(shpIS);
+		}
+	}
+
+	public void testLazyEntities() throws IOException, URISyntaxException {
+		final URL shpResource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File shpFile = new File(shpResource.toURI());
+		final FileInputStream shpIS = new FileInputStream(shpFile);
+		final URL shxResource = getClass().getClassLoader().getResource(
+				"Polygon.shx");
+		final File shxFile = new File(shxResource.toURI());
+		final FileInputStream shxIS = new FileInputStream(shxFile);
+		final URL dbfResource = getClass().getClassLoader().getResource(
+				"Polygon.dbf");
+		final File dbfFile = new File(dbfResource.toURI());
+		final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+		Shapefile shapefile = null;
+		try {
+			shapefile = new Shapefile(shpIS, shxIS, dbfIS, null,
+					AccessMode.MAPPED);
+
+			final int numEntities = shapefile.getNumEntities();
+			final List<Entity> expected = new ArrayList<Entity>();
+			for (int i = 1; i <= numEntities; i++) {
+				expected.add(shapefile.getEntityByRecordNumber(i, true));
+			}
+
+			assertFalse(shapefile.isLazyEntities());
+			shapefile.setLazyEntities(true);
+			assertTrue(shapefile.isLazyEntities());
+
+			for (int index = 0; index < 2; index++) {
+				if (index == 1) {
+					shapefile.loadIndex();
+				}
+
+				for (int i = 1; i <= numEntities; i++) {
+					final LazyEntity entity = (LazyEntity) shapefile
+							.getEntityByRecordNumber(i, true);
+					assertEquals(i, entity.getRecordNum());
+					assertTrue(entity.getOffset() > 0);
+					assertFalse(entity.isGeometryLoaded());
+					assertFalse(entity.isDataLoaded());
+
+					final Entity eager = expected.get(i - 1);
+					assertEquals(eager.getShapeType(), entity.getShapeType());
+					assertTrue(entity.isGeometryLoaded());
+					final Geometry geometry = entity.getGeometry();
+					assertSame(geometry, entity.getGeometry());
+					assertEquals(WKTUtils.geometry2WKT(eager.getGeometry()),
+							WKTUtils.geometry2WKT(geometry));
+
+					assertFalse(entity.isDataLoaded());
+					final List<DBFField> data = entity.getData();
+					assertTrue(entity.isDataLoaded());
+					assertSame(data, entity.getData());
+					assertEquals(eager.getData().size(), data.size());
+					for (int j = 0; j < data.size(); j++) {
+						assertEquals(eager.getData().get(j).getValue(), data
+								.get(j).getValue());
+					}
+				}
+			}
+
+			// Without data
+			LazyEntity entity = (LazyEntity) shapefile.getEntityByRecordNumber(
+					1, false);
+			assertTrue(entity.isDataLoaded());
+			assertTrue(entity.getData().isEmpty());
+
+			// Projections
+			entity = (LazyEntity) shapefile.getEntityByRecordNumber(1, "Field5");
+			assertFalse(entity.isDataLoaded());
+			assertEquals(1, entity.getData().size());
+			assertEquals("Field5", entity.getData().get(0).getDescriptor()
+					.getName());
+
+			// Rectangle queries only read the MBRs
+			final List<Entity> entities = shapefile.getEntitiesInRectangle(
+					-Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE,
+					Double.MAX_VALUE, true);
+			assertEquals(numEntities, entities.size());
+			for (int i = 0; i < numEntities; i++) {
+				entity = (LazyEntity) entities.get(i);
+				assertFalse(entity.isGeometryLoaded());
+				assertEquals(WKTUtils.geometry2WKT(expected.get(i)
+						.getGeometry()), WKTUtils.geometry2WKT(entity
+						.getGeometry()));
+			}
+
+			// The geometries decoded lazily use the caches
+			final EntityCache cache = new EntityCache(1024 * 1024, 0);
+			shapefile.setEntityCache(cache);
+			final Geometry cached = shapefile.getEntityByRecordNumber(1, false)
+					.getGeometry();
+			assertSame(cached, shapefile.getEntityByRecordNumber(1, false)
+					.getGeometry());
+			assertEquals(1, cache.getGeometryStats().getHitCount());
+		} finally {
+			shapefile.close();
+			FileUtils.closeInputStream(dbfIS);
+			FileUtils.closeInputStream(shxIS);
+			FileUtils.closeInputStream(shpIS);
+		}
+	}
+
+	public void testOffHeapGeometryCache() throws IOException,
+			URISyntaxException {
+		final String[] shapefiles = { "Point", "Polyline", "Polygon",
+				"MultiPoint" };
+
+		for (final String name : shapefiles) {
+			final URL shpResource = getClass().getClassLoader().getResource(
+					name + ".shp");
+			final File shpFile = new File(shpResource.toURI());
+			final FileInputStream shpIS = new FileInputStream(shpFile);
+			final URL shxResource = getClass().getClassLoader().getResource(
+					name + ".shx");
+			final File shxFile = new File(shxResource.toURI());
+			final FileInputStream shxIS = new FileInputStream(shxFile);
+			final URL dbfResource = getClass().getClassLoader().getResource(
+					name + ".dbf");
+			final File dbfFile = new File(dbfResource.toURI());
+			final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+			Shapefile shapefile = null;
+			try {
+				shapefile = new Shapefile(shpIS, shxIS, dbfIS, null,
+						AccessMode.POSITIONAL);
+
+				final int numEntities = shapefile.getNumEntities();
+				final Entity[] expected = new Entity[numEntities + 1];
+				for (int i = 1; i <= numEntities; i++) {
+					expected[i] = shapefile.getEntityByRecordNumber(i, false);
+				}
+
+				for (int packed = 0; packed < 2; packed++) {
+					shapefile.setPackedGeometry(packed == 1);
+
+					final OffHeapGeometryCache cache = new OffHeapGeometryCache(
+							numEntities, 1024 * 1024, 64 * 1024);
+					shapefile.setOffHeapGeometryCache(cache);
+					assertSame(cache, shapefile.getOffHeapGeometryCache());
+
+					for (int n = 0; n < 2; n++) {
+						for (int i = 1; i <= numEntities; i++) {
+							final Entity entity = shapefile
+									.getEntityByRecordNumber(i, false);
+							final Geometry geometry = entity.getGeometry();
+							// The configured geometry types are kept
+							if (packed == 1) {
+								assertTrue(geometry instanceof OffHeapGeometry);
+							} else {
+								assertEquals(expected[i].getGeometry()
+										.getClass(), geometry.getClass());
+							}
+							assertEquals(expected[i].getShapeType(),
+									entity.getShapeType());
+							assertEquals(WKTUtils.geometry2WKT(expected[i]
+									.getGeometry()),
+									WKTUtils.geometry2WKT(geometry));
+							assertEquals(expected[i].getGeometry().getMinX(),
+									geometry.getMinX());
+							assertEquals(expected[i].getGeometry().getMaxY(),
+									geometry.getMaxY());
+						}
+					}
+
+					final CacheStats stats = cache.getStats();
+					assertEquals(numEntities, stats.getHitCount());
+					assertEquals(numEntities, stats.getMissCount());
+					assertEquals(numEntities, stats.getEntryCount());
+					assertEquals(0, stats.getEvictionCount());
+				}
+
+				// Segments with room for a single geometry are dropped
+				int segmentSize = 0;
+				for (int i = 1; i <= numEntities; i++) {
+					segmentSize = Math.max(segmentSize, OffHeapGeometry
+							.getEncodedLength(expected[i].getGeometry()));
+				}
+				final OffHeapGeometryCache small = new OffHeapGeometryCache(
+						numEntities, segmentSize, segmentSize);
+				shapefile.setOffHeapGeometryCache(small);
+				for (int i = 1; i <= numEntities; i++) {
+					final Geometry geometry = shapefile
+							.getEntityByRecordNumber(i, false).getGeometry();
+					assertEquals(WKTUtils.geometry2WKT(expected[i]
+							.getGeometry()), WKTUtils.geometry2WKT(geometry));
+				}
+				final CacheStats stats = small.getStats();
+				assertTrue(stats.getSize() <= stats.getMaxSize());
+				assertTrue(stats.getEntryCount() >= 1);
+				assertEquals(numEntities, stats.getEntryCount()
+						+ stats.getEvictionCount());
+				if (numEntities > stats.getEntryCount()) {
+					assertNull(small.get(1));
+				}
+
+				final OffHeapGeometry view = small.put(numEntities,
+						expected[numEntities].getGeometry());
+				assertEquals(2 * view.getNumPoints(), view.getXY().length);
+				try {
+					view.setXY(new double[0]);
+					fail();
+				} catch (final UnsupportedOperationException uoe) {
+					// Expected
+				}
+			} finally {
+				shapefile.close();
+				FileUtils.closeInputStream(dbfIS);
+				FileUtils.closeInputStream(shxIS);
+				FileUtils.closeInputStream(shpIS);
+			}
+		}
+	}
+
+	public void testReader() throws IOException, URISyntaxException {
+		final URL shpResource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File shpFile = new File(shpResource.toURI());
+		final FileInputStream shpIS = new FileInputStream(shpFile);
+		final URL shxResource = getClass().getClassLoader().getResource(
+				"Polygon.shx");
+		final File shxFile = new File(shxResource.toURI());
+		final FileInputStream shxIS = new FileInputStream(shxFile);
+		final URL dbfResource = getClass().getClassLoader().getResource(
+				"Polygon.dbf");
+		final File dbfFile = new File(dbfResource.toURI());
+		final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+		Shapefile shapefile = null;
+		ShapefileReader reader = null;
+		try {
+			shapefile = new Shapefile(shpIS, shxIS, dbfIS, null);
+			reader = shapefile.openReader(true);
+
+			int count = 0;
+			while (reader.hasNext()) {
+				final Entity entity = reader.next();
+				count++;
+
+				final Entity expected = shapefile.getEntityByRecordNumber(
+						count, true);
+				assertEquals(count, entity.getRecordNum());
+				assertEquals(expected.getShapeType(), entity.getShapeType());
+				assertEquals(WKTUtils.geometry2WKT(expected.getGeometry()),
+						WKTUtils.geometry2WKT(entity.getGeometry()));
+				assertEquals(expected.getData().size(), entity.getData()
+						.size());
+				for (int i = 0; i < expected.getData().size(); i++) {
+					assertEquals(expected.getData().get(i).getValue(), entity
+							.getData().get(i).getValue());
+				}
+			}
+			assertEquals(shapefile.getNumEntities(), count);
+
+			try {
+				reader.next();
+				fail();
+			} catch (final NoSuchElementException nsee) {
+				// Expected
+			}
+		} finally {
+			reader.close();
+			shapefile.close();
+			FileUtils.closeInputStream(dbfIS);
+			FileUtils.closeInputStream(shxIS);
+			FileUtils.closeInputStream(shpIS);
+		}
+	}
+
+	public void testReaderWithShorterDBF() throws IOException,
+			URISyntaxException {
+		final URL shpResource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File shpFile = new File(shpResource.toURI());
+		final URL shxResource = getClass().getClassLoader().getResource(
+				"Polygon.shx");
+		final File shxFile = new File(shxResource.toURI());
+		final URL dbfResource = getClass().getClassLoader().getResource(
+				"Polygon.dbf");
+		final File dbfFile = new File(dbfResource.toURI());
+
+		final File shorterFile = File.createTempFile("jummyshapefile", ".dbf");
+
+		Shapefile shapefile = null;
+		Shapefile shorter = null;
+		ShapefileReader reader = null;
+		try {
+			shapefile = new Shapefile(new FileInputStream(shpFile),
+					new FileInputStream(shxFile), new FileInputStream(dbfFile),
+					null);
+
+			// A copy of the DBF file with only the first 2 records
+			final DBFWriter writer = new DBFWriter(new FileOutputStream(
+					shorterFile), shapefile.getDataFieldDescriptors());
+			try {
+				writer.write(shapefile.getEntityDataByRecordNumber(1));
+				writer.write(shapefile.getEntityDataByRecordNumber(2));
+			} finally {
+				writer.close();
+			}
+
+			shorter = new Shapefile(new FileInputStream(shpFile),
+					new FileInputStream(shxFile), new FileInputStream(
+							shorterFile), null);
+			reader = shorter.openReader(true);
+
+			int count = 0;
+			while (reader.hasNext()) {
+				final Entity entity = reader.next();
+				count++;
+
+				final List<DBFField> expected = shapefile
+						.getEntityDataByRecordNumber(count);
+				if (count <= 2) {
+					assertEquals(expected.size(), entity.getData().size());
+					for (int i = 0; i < expected.size(); i++) {
+						assertEquals(expected.get(i).getValue(), entity
+								.getData().get(i).getValue());
+					}
+				} else {
+					// The entities without DBF record have no data
+					assertTrue(entity.getData().isEmpty());
+				}
+			}
+			assertEquals(shapefile.getNumEntities(), count);
+		} finally {
+			if (reader != null) {
+				reader.close();
+			}
+			if (shorter != null) {
+				shorter.close();
+			}
+			shapefile.close();
+			shorterFile.delete();
+		}
+	}
+
+	public void testWithoutSHX() throws IOException, URISyntaxException {
+		final URL shpResource = getClass().getClassLoader().getResource(
+				"Polygon.shp");
+		final File shpFile = new File(shpResource.toURI());
+		final URL shxResource = getClass().getClassLoader().getResource(
+				"Polygon.shx");
+		final File shxFile = new File(shxResource.toURI());
+		final URL dbfResource = getClass().getClassLoader().getResource(
+				"Polygon.dbf");
+		final File dbfFile = new File(dbfResource.toURI());
+
+		// A copy of the SHP file without the last byte
+		final File truncatedFile = File.createTempFile("jummyshapefile",
+				".shp");
+		final byte[] bytes = new byte[(int) shpFile.length() - 1];
+		final FileInputStream is = new FileInputStream(shpFile);
+		final FileOutputStream os = new FileOutputStream(truncatedFile);
+		try {
+			int read = 0;
+			while (read < bytes.length) {
+				read += is.read(bytes, read, bytes.length - read);
+			}
+			os.write(bytes);
+		} finally {
+			os.close();
+			FileUtils.closeInputStream(is);
+		}
+
+		Shapefile shapefile = null;
+		Shapefile withoutSHX = null;
+		Shapefile truncated = null;
+		try {
+			shapefile = new Shapefile(new FileInputStream(shpFile),
+					new FileInputStream(shxFile), new FileInputStream(dbfFile),
+					null, AccessMode.POSITIONAL);
+			withoutSHX = new Shapefile(new FileInputStream(shpFile), null,
+					new FileInputStream(dbfFile), null, AccessMode.POSITIONAL);
+			final int numEntities = shapefile.getNumEntities();
+			assertEquals(numEntities, withoutSHX.getNumEntities());
+
+			// Sequential reads do not need the index
+			ShapefileReader reader = withoutSHX.openReader(true);
+			try {
+				for (int i = 1; i <= numEntities; i++) {
+					assertTrue(reader.hasNext());
+					assertEquals(WKTUtils.geometry2WKT(shapefile
+							.getEntityByRecordNumber(i, false).getGeometry()),
+							WKTUtils.geometry2WKT(reader.next().getGeometry()));
+				}
+				assertFalse(reader.hasNext());
+			} finally {
+				reader.close();
+			}
+
+			try {
+				withoutSHX.getEntityByRecordNumber(1, false);
+				fail("Index not loaded");
+			} catch (final IllegalStateException ise) {
+				// Expected
+			}
+
+			withoutSHX.loadIndex();
+			for (int i = 1; i <= numEntities; i++) {
+				assertEquals(WKTUtils.geometry2WKT(shapefile
+						.getEntityByRecordNumber(i, false).getGeometry()),
+						WKTUtils.geometry2WKT(withoutSHX
+								.getEntityByRecordNumber(i, false)
+								.getGeometry()));
+			}
+			assertEquals(
+					shapefile.getEntitiesInRectangle(440539.16, 4471192.95,
+							448629.42, 4476120.37, false).size(),
+					withoutSHX.getEntitiesInRectangle(440539.16, 4471192.95,
+							448629.42, 4476120.37, false).size());
+
+			final ExecutorService executor = Executors.newFixedThreadPool(2);
+			try {
+				assertEquals(numEntities,
+						withoutSHX.getEntities(false, executor).size());
+			} finally {
+				executor.shutdown();
+			}
+
+			// The entities before the truncated record can be read
+			truncated = new Shapefile(new FileInputStream(truncatedFile),
+					null, new FileInputStream(dbfFile), null);
+			reader = truncated.openReader(false);
+			int count = 0;
+			try {
+				while (reader.hasNext()) {
+					reader.next();
+					count++;
+				}
+			} finally {
+				reader.close();
+			}
+			assertEquals(numEntities - 1, count);
+
+			truncated.loadIndex();
+			assertEquals(numEntities - 1, truncated.getEntitiesInRectangle(
+					-Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE,
+					Double.MAX_VALUE, false).size());
+			// The DBF records without entity are not looked up
+			final DBFPredicate predicate = DBFPredicate.between("Field1", 1,
+					numEntities);
+			assertEquals(numEntities, shapefile.getEntitiesInRectangle(
+					-Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE,
+					Double.MAX_VALUE, false, predicate).size());
+			assertEquals(numEntities - 1, truncated.getEntitiesInRectangle(
+					-Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE,
+					Double.MAX_VALUE, false, predicate).size());
+		} finally {
+			shapefile.close();
+			if (withoutSHX != null) {
+				withoutSHX.close();
+			}
+			if (truncated != null) {
+				truncated.close();
+			}
+			truncatedFile.delete();
+		}
+	}
+
+	public void testScanEntities() throws IOException, URISyntaxException {
+		final AccessMode[] accessModes = { AccessMode.MAPPED,
+				AccessMode.POSITIONAL, AccessMode.STREAM };
+		for (final AccessMode accessMode : accessModes) {
+			final URL shpResource = getClass().getClassLoader().getResource(
+					"Polyline.shp");
+			final File shpFile = new File(shpResource.toURI());
+			final FileInputStream shpIS = new FileInputStream(shpFile);
+			final URL shxResource = getClass().getClassLoader().getResource(
+					"Polyline.shx");
+			final File shxFile = new File(shxResource.toURI());
+			final FileInputStream shxIS = new FileInputStream(shxFile);
+			final URL dbfResource = getClass().getClassLoader().getResource(
+					"Polyline.dbf");
+			final File dbfFile = new File(dbfResource.toURI());
+			final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+			final ExecutorService executor = Executors.newFixedThreadPool(4);
+			Shapefile shapefile = null;
+			try {
+				shapefile = new Shapefile(shpIS, shxIS, dbfIS, null,
+						accessMode);
+
+				final int numEntities = shapefile.getNumEntities();
+				final String[] expected = new String[numEntities + 1];
+				for (int i = 1; i <= numEntities; i++) {
+					expected[i] = WKTUtils.geometry2WKT(shapefile
+							.getEntityByRecordNumber(i, false).getGeometry());
+				}
+
+				final List<Entity> entities = shapefile.getEntities(true,
+						executor);
+				assertEquals(numEntities, entities.size());
+				for (int i = 0; i < entities.size(); i++) {
+					assertEquals(i + 1, entities.get(i).getRecordNum());
+					assertEquals(expected[i + 1], WKTUtils
+							.geometry2WKT(entities.get(i).getGeometry()));
+					assertFalse(entities.get(i).getData().isEmpty());
+				}
+
+				final String[] received = new String[numEntities + 1];
+				shapefile.scanEntities(false, executor, 2, new EntitySink() {
+					public void accept(final Entity entity) {
+						synchronized (received) {
+							received[entity.getRecordNum()] = WKTUtils
+									.geometry2WKT(entity.getGeometry());
+						}
+					}
+				});
+				for (int i = 1; i <= numEntities; i++) {
+					assertEquals(expected[i], received[i]);
+				}
+			} finally {
+				executor.shutdown();
+				shapefile.close();
+				FileUtils.closeInputStream(dbfIS);
+				FileUtils.closeInputStream(shxIS);
+				FileUtils.closeInputStream(shpIS);
+			}
+		}
+	}
+
+	public void testScanIrregularSHX() throws IOException,
+			URISyntaxException {
+		final URL shpResource = getClass().getClassLoader().getResource(
+				"Polyline.shp");
+		final File shpFile = new File(shpResource.toURI());
+		final URL shxResource = getClass().getClassLoader().getResource(
+				"Polyline.shx");
+		final File shxFile = new File(shxResource.toURI());
+		final URL dbfResource = getClass().getClassLoader().getResource(
+				"Polyline.dbf");
+		final File dbfFile = new File(dbfResource.toURI());
+
+		// Reordered records and a record of the SHP file not indexed
+		final int[][] orders = { { 1, 3, 2, 5, 4 }, { 1, 3, 4, 5 } };
+		for (final int[] order : orders) {
+			final File irregularFile = createSHX(shxFile, order);
+			final ExecutorService executor = Executors.newFixedThreadPool(2);
+			Shapefile shapefile = null;
+			try {
+				shapefile = new Shapefile(new FileInputStream(shpFile),
+						new FileInputStream(irregularFile),
+						new FileInputStream(dbfFile), null,
+						AccessMode.POSITIONAL);
+
+				final String[] expected = new String[order.length + 1];
+				final Object[] expectedData = new Object[order.length + 1];
+				for (int i = 1; i <= order.length; i++) {
+					final Entity entity = shapefile.getEntityByRecordNumber(i,
+							true);
+					expected[i] = WKTUtils.geometry2WKT(entity.getGeometry());
+					expectedData[i] = entity.getData().get(0).getValue();
+				}
+
+				final List<Entity> entities = shapefile.getEntities(true,
+						executor);
+				assertEquals(order.length, entities.size());
+				for (int i = 0; i < entities.size(); i++) {
+					final Entity entity = entities.get(i);
+					assertEquals(i + 1, entity.getRecordNum());
+					assertEquals(expected[i + 1],
+							WKTUtils.geometry2WKT(entity.getGeometry()));
+					assertEquals(expectedData[i + 1], entity.getData().get(0)
+							.getValue());
+				}
+
+				final String[] received = new String[order.length + 1];
+				shapefile.scanEntities(false, executor, 2, new EntitySink() {
+					public void accept(final Entity entity) {
+						synchronized (received) {
+							received[entity.getRecordNum()] = WKTUtils
+									.geometry2WKT(entity.getGeometry());
+						}
+					}
+				});
+				for (int i = 1; i <= order.length; i++) {
+					assertEquals(expected[i], received[i]);
+				}
+			} finally {
+				executor.shutdown();
+				if (shapefile != null) {
+					shapefile.close();
+				}
+				irregularFile.delete();
+			}
+		}
+	}
+
+	public void testScanFailure() throws IOException, URISyntaxException,
+			InterruptedException {
+		final URL shpResource = getClass().getClassLoader().getResource(
+				"Polyline.shp");
+		final File shpFile = new File(shpResource.toURI());
+		final FileInputStream shpIS = new FileInputStream(shpFile);
+		final URL shxResource = getClass().getClassLoader().getResource(
+				"Polyline.shx");
+		final File shxFile = new File(shxResource.toURI());
+		final FileInputStream shxIS = new FileInputStream(shxFile);
+		final URL dbfResource = getClass().getClassLoader().getResource(
+				"Polyline.dbf");
+		final File dbfFile = new File(dbfResource.toURI());
+		final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		Shapefile shapefile = null;
+		try {
+			shapefile = new Shapefile(shpIS, shxIS, dbfIS, null,
+					AccessMode.POSITIONAL);
+
+			try {
+				shapefile.scanEntities(true, executor, 1, new EntitySink() {
+					public void accept(final Entity entity)
+							throws IOException {
+						if (entity.getRecordNum() == 1) {
+							throw new IOException("The sink failed");
+						}
+						try {
+							Thread.sleep(10);
+						} catch (final InterruptedException ie) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+				fail("The failure of the sink should stop the scan");
+			} catch (final IOException ioe) {
+				assertEquals("The sink failed", ioe.getMessage());
+			}
+
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+			// The shared FileChannel must still be open
+			for (int i = 1; i <= shapefile.getNumEntities(); i++) {
+				final Entity entity = shapefile.getEntityByRecordNumber(i,
+						true);
+				assertEquals(i, entity.getRecordNum());
+				assertNotNull(entity.getGeometry());
+				assertFalse(entity.getData().isEmpty());
+			}
+		} finally {
+			executor.shutdownNow();
+			shapefile.close();
+			FileUtils.closeInputStream(dbfIS);
+			FileUtils.closeInputStream(shxIS);
+			FileUtils.closeInputStream(shpIS);
+		}
+	}
+
+	/**
+	 * Creates a copy of a SHX file with its records in the given order
+	 * (1-based record numbers, which may skip some records).
+	 */
+	private static File createSHX(final File shxFile, final int[] order)
+			throws IOException {
+		final byte[] bytes = new byte[(int) shxFile.length()];
+		final FileInputStream is = new FileInputStream(shxFile);
+		try {
+			int read = 0;
+			while (read < bytes.length) {
+				read += is.read(bytes, read, bytes.length - read);
+			}
+		} finally {
+			FileUtils.closeInputStream(is);
+		}
+
+		final ByteBuffer output = ByteBuffer.allocate(100 + 8 * order.length);
+		output.put(bytes, 0, 100);
+		// NOTE: The length is stored in 16-bit words
+		output.putInt(24, output.capacity() / 2);
+		for (final int recordNum : order) {
+			output.put(bytes, 100 + 8 * (recordNum - 1), 8);
+		}
+
+		final File file = File.createTempFile("jummyshapefile", ".shx");
+		final FileOutputStream os = new FileOutputStream(file);
+		try {
+			os.write(output.array());
+		} finally {
+			os.close();
+		}
+
+		return file;
+	}
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.jummyshapefile.binaryfile.AccessMode;
+import com.jummyshapefile.shapefile.Shapefile;
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shapefile.model.MultiPoint;
+import com.jummyshapefile.shapefile.model.NullShape;
+import com.jummyshapefile.shapefile.model.Point;
+import com.jummyshapefile.shapefile.model.Polygon;
+import com.jummyshapefile.shapefile.model.Polyline;
+import com.jummyshapefile.utils.FileUtils;
+import com.jummyshapefile.utils.WKBUtils;
+import com.jummyshapefile.utils.WKTUtils;
+
+public class TestWKB extends TestCase {
+	public void testWKBTranscoding() throws IOException, URISyntaxException {
+		final String[] names = { "Point", "Polyline", "Polygon", "MultiPoint" };
+		for (final String name : names) {
+			final URL shpResource = getClass().getClassLoader().getResource(
+					name + ".shp");
+			final File shpFile = new File(shpResource.toURI());
+			final FileInputStream shpIS = new FileInputStream(shpFile);
+			final URL shxResource = getClass().getClassLoader().getResource(
+					name + ".shx");
+			final File shxFile = new File(shxResource.toURI());
+			final FileInputStream shxIS = new FileInputStream(shxFile);
+			final URL dbfResource = getClass().getClassLoader().getResource(
+					name + ".dbf");
+			final File dbfFile = new File(dbfResource.toURI());
+			final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+			Shapefile shapefile = null;
+			try {
+				shapefile = new Shapefile(shpIS, shxIS, dbfIS, null,
+						AccessMode.MAPPED);
+				final int numEntities = shapefile.getNumEntities();
+				for (int i = 1; i <= numEntities; i++) {
+					shapefile.setPackedGeometry(false);
+					final Geometry geometry = shapefile
+							.getEntityByRecordNumber(i, false).getGeometry();
+					shapefile.setPackedGeometry(true);
+					final Geometry packed = shapefile.getEntityByRecordNumber(
+							i, false).getGeometry();
+					final byte[] wkb = shapefile.getGeometryWKBByRecordNumber(i);
+
+					assertNotNull(wkb);
+					assertEquals(WKBUtils.getWKBLength(geometry), wkb.length);
+					assertTrue(Arrays.equals(WKBUtils.geometry2WKB(geometry),
+							wkb));
+					assertTrue(Arrays.equals(WKBUtils.geometry2WKB(packed),
+							wkb));
+					assertEquals(WKTUtils.geometry2WKT(geometry), wkb2WKT(wkb));
+				}
+
+				shapefile.loadIndex();
+				assertTrue(Arrays.equals(
+						WKBUtils.geometry2WKB(shapefile.getEntityByRecordNumber(
+								numEntities, false).getGeometry()),
+						shapefile.getGeometryWKBByRecordNumber(numEntities)));
+			} finally {
+				shapefile.close();
+				FileUtils.closeInputStream(dbfIS);
+				FileUtils.closeInputStream(shxIS);
+				FileUtils.closeInputStream(shpIS);
+			}
+		}
+	}
+
+	public void testWKBGeometries() {
+		final Point point = createPoint(1.5, -2);
+		final ByteBuffer expected = ByteBuffer.allocate(21).order(
+				ByteOrder.LITTLE_ENDIAN);
+		expected.put((byte) 1).putInt(1).putDouble(1.5).putDouble(-2);
+		assertTrue(Arrays.equals(expected.array(),
+				WKBUtils.geometry2WKB(point)));
+
+		final Polyline polyline = new Polyline();
+		assertEquals("LINESTRING EMPTY",
+				wkb2WKT(WKBUtils.geometry2WKB(polyline)));
+		final List<List<Point>> parts = new ArrayList<List<Point>>();
+		final List<Point> part = new ArrayList<Point>();
+		part.add(createPoint(1, 2));
+		part.add(createPoint(3, 4));
+		parts.add(part);
+		polyline.setParts(parts);
+		assertEquals("LINESTRING (1.0 2.0,3.0 4.0)",
+				wkb2WKT(WKBUtils.geometry2WKB(polyline)));
+		final List<Point> otherPart = new ArrayList<Point>();
+		otherPart.add(createPoint(5, 6));
+		parts.add(otherPart);
+		assertEquals("MULTILINESTRING ((1.0 2.0,3.0 4.0),(5.0 6.0))",
+				wkb2WKT(WKBUtils.geometry2WKB(polyline)));
+
+		final Polygon polygon = new Polygon();
+		assertEquals("POLYGON EMPTY", wkb2WKT(WKBUtils.geometry2WKB(polygon)));
+		polygon.setParts(parts);
+		assertEquals("POLYGON ((1.0 2.0,3.0 4.0),(5.0 6.0))",
+				wkb2WKT(WKBUtils.geometry2WKB(polygon)));
+
+		final MultiPoint multipoint = new MultiPoint();
+		assertEquals("MULTIPOINT EMPTY",
+				wkb2WKT(WKBUtils.geometry2WKB(multipoint)));
+		multipoint.setPoints(part);
+		assertEquals("MULTIPOINT ((1.0 2.0),(3.0 4.0))",
+				wkb2WKT(WKBUtils.geometry2WKB(multipoint)));
+
+		// A single buffer reused for several geometries
+		final ByteBuffer buffer = ByteBuffer.allocate(1024);
+		final int length = WKBUtils.geometry2WKB(polygon, buffer);
+		assertEquals(WKBUtils.getWKBLength(polygon), length);
+		assertEquals(21, WKBUtils.geometry2WKB(point, buffer));
+		assertEquals(length + 21, buffer.position());
+
+		assertNull(WKBUtils.geometry2WKB(null));
+		assertNull(WKBUtils.geometry2WKB(new NullShape()));
+	}
+
+	/**
+	 * Decodes a little endian WKB into the WKT of WKTUtils.
+	 */
+	private static String wkb2WKT(final byte[] wkb) {
+		final ByteBuffer buffer = ByteBuffer.wrap(wkb).order(
+				ByteOrder.LITTLE_ENDIAN);
+		final StringBuilder output = new StringBuilder();
+
+		appendGeometry(buffer, output);
+		assertFalse(buffer.hasRemaining());
+
+		return output.toString();
+	}
+
+	private static void appendGeometry(final ByteBuffer buffer,
+			final StringBuilder output) {
+		assertEquals(1, buffer.get());
+		final int type = buffer.getInt();
+		final String[] names = { null, "POINT", "LINESTRING", "POLYGON",
+				"MULTIPOINT", "MULTILINESTRING" };
+
+		output.append(names[type]).append(' ');
+		if (type == 1) {
+			output.append('(');
+			appendCoordinates(buffer, output);
+			output.append(')');
+		} else {
+			final int count = buffer.getInt();
+			if (count == 0) {
+				output.append("EMPTY");
+			} else if (type == 2) {
+				appendPoints(buffer, output, count);
+			} else {
+				output.append('(');
+				for (int i = 0; i < count; i++) {
+					if (i > 0) {
+						output.append(',');
+					}
+					if (type == 3) {
+						appendPoints(buffer, output, buffer.getInt());
+					} else {
+						final StringBuilder part = new StringBuilder();
+						appendGeometry(buffer, part);
+						// Remove the name of the part
+						output.append(part.substring(part.indexOf(" ") + 1));
+					}
+				}
+				output.append(')');
+			}
+		}
+	}
+
+	private static void appendPoints(final ByteBuffer buffer,
+			final StringBuilder output, final int count) {
+		output.append('(');
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				output.append(',');
+			}
+			appendCoordinates(buffer, output);
+		}
+		output.append(')');
+	}
+
+	private static void appendCoordinates(final ByteBuffer buffer,
+			final StringBuilder output) {
+		output.append(buffer.getDouble()).append(' ')
+				.append(buffer.getDouble());
+	}
+
+	private static Point createPoint(final double x, final double y) {
+		final Point output = new Point();
+		output.setX(x);
+		output.setY(y);
+
+		return output;
+	}
+}
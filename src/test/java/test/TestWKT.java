@@ -1,17 +1,29 @@
 package test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
 import com.jummyshapefile.shapefile.Shapefile;
 import com.jummyshapefile.shapefile.model.Entity;
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shapefile.model.MultiPoint;
+import com.jummyshapefile.shapefile.model.PackedGeometry;
+import com.jummyshapefile.shapefile.model.Point;
+import com.jummyshapefile.shapefile.model.Polygon;
+import com.jummyshapefile.shapefile.model.Polyline;
 import com.jummyshapefile.utils.FileUtils;
 import com.jummyshapefile.utils.WKTUtils;
+import com.jummyshapefile.utils.WKTWriter;
 
 public class TestWKT extends TestCase {
 	public void testWKTPoints() throws IOException, URISyntaxException {
@@ -306,4 +318,198 @@ public class TestWKT extends TestCase {
 			FileUtils.closeInputStream(shpIS);
 		}
 	}
+
+	public void testWKTPacked() throws IOException, URISyntaxException {
+		final String[] names = { "Point", "Polyline", "Polygon", "MultiPoint" };
+		for (final String name : names) {
+			final URL shpResource = getClass().getClassLoader().getResource(
+					name + ".shp");
+			final File shpFile = new File(shpResource.toURI());
+			final FileInputStream shpIS = new FileInputStream(shpFile);
+			final URL shxResource = getClass().getClassLoader().getResource(
+					name + ".shx");
+			final File shxFile = new File(shxResource.toURI());
+			final FileInputStream shxIS = new FileInputStream(shxFile);
+			final URL dbfResource = getClass().getClassLoader().getResource(
+					name + ".dbf");
+			final File dbfFile = new File(dbfResource.toURI());
+			final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+			Shapefile shapefile = null;
+			try {
+				shapefile = new Shapefile(shpIS, shxIS, dbfIS, null);
+				final int numEntities = shapefile.getNumEntities();
+				for (int i = 1; i <= numEntities; i++) {
+					shapefile.setPackedGeometry(false);
+					final Geometry geometry = shapefile
+							.getEntityByRecordNumber(i, false).getGeometry();
+					shapefile.setPackedGeometry(true);
+					final Geometry packed = shapefile.getEntityByRecordNumber(
+							i, false).getGeometry();
+
+					assertTrue(packed instanceof PackedGeometry);
+					assertEquals(geometry.getMinX(), packed.getMinX());
+					assertEquals(geometry.getMinY(), packed.getMinY());
+					assertEquals(geometry.getMaxX(), packed.getMaxX());
+					assertEquals(geometry.getMaxY(), packed.getMaxY());
+					assertEquals(WKTUtils.geometry2WKT(geometry),
+							WKTUtils.geometry2WKT(packed));
+				}
+			} finally {
+				shapefile.close();
+				FileUtils.closeInputStream(dbfIS);
+				FileUtils.closeInputStream(shxIS);
+				FileUtils.closeInputStream(shpIS);
+			}
+		}
+	}
+
+	public void testWKTWriter() throws IOException, URISyntaxException {
+		final String[] names = { "Point", "Polyline", "Polygon", "MultiPoint" };
+		for (final String name : names) {
+			final URL shpResource = getClass().getClassLoader().getResource(
+					name + ".shp");
+			final File shpFile = new File(shpResource.toURI());
+			final FileInputStream shpIS = new FileInputStream(shpFile);
+			final URL shxResource = getClass().getClassLoader().getResource(
+					name + ".shx");
+			final File shxFile = new File(shxResource.toURI());
+			final FileInputStream shxIS = new FileInputStream(shxFile);
+			final URL dbfResource = getClass().getClassLoader().getResource(
+					name + ".dbf");
+			final File dbfFile = new File(dbfResource.toURI());
+			final FileInputStream dbfIS = new FileInputStream(dbfFile);
+
+			Shapefile shapefile = null;
+			try {
+				shapefile = new Shapefile(shpIS, shxIS, dbfIS, null);
+				shapefile.setPackedGeometry(true);
+				final StringBuilder expected = new StringBuilder();
+				final StringWriter writer = new StringWriter();
+				final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+				final WKTWriter charWriter = new WKTWriter(writer);
+				final WKTWriter byteWriter = new WKTWriter(stream);
+				for (int i = 1; i <= shapefile.getNumEntities(); i++) {
+					final Geometry geometry = shapefile.getEntityByRecordNumber(
+							i, false).getGeometry();
+					expected.append(WKTUtils.geometry2WKT(geometry)).append('\n');
+
+					assertTrue(charWriter.write(geometry));
+					assertTrue(byteWriter.write(geometry));
+					writer.write('\n');
+					stream.write('\n');
+				}
+				charWriter.flush();
+				byteWriter.flush();
+
+				assertEquals(expected.toString(), writer.toString());
+				assertEquals(expected.toString(), stream.toString("US-ASCII"));
+			} finally {
+				shapefile.close();
+				FileUtils.closeInputStream(dbfIS);
+				FileUtils.closeInputStream(shxIS);
+				FileUtils.closeInputStream(shpIS);
+			}
+		}
+
+		final Polyline polyline = new Polyline();
+		assertEquals("LINESTRING EMPTY", WKTUtils.geometry2WKT(polyline));
+		final List<List<Point>> parts = new ArrayList<List<Point>>();
+		final List<Point> part = new ArrayList<Point>();
+		part.add(createPoint(1, 2));
+		part.add(createPoint(-0.5, 1e-4));
+		parts.add(part);
+		polyline.setParts(parts);
+		assertEquals("LINESTRING (1.0 2.0,-0.5 1.0E-4)",
+				WKTUtils.geometry2WKT(polyline));
+		final List<Point> otherPart = new ArrayList<Point>();
+		otherPart.add(createPoint(3, 4));
+		otherPart.add(createPoint(5, 6));
+		parts.add(otherPart);
+		assertEquals("MULTILINESTRING ((1.0 2.0,-0.5 1.0E-4),(3.0 4.0,5.0 6.0))",
+				WKTUtils.geometry2WKT(polyline));
+
+		final Polygon polygon = new Polygon();
+		assertEquals("POLYGON EMPTY", WKTUtils.geometry2WKT(polygon));
+		polygon.setParts(parts);
+		assertEquals("POLYGON ((1.0 2.0,-0.5 1.0E-4),(3.0 4.0,5.0 6.0))",
+				WKTUtils.geometry2WKT(polygon));
+
+		final MultiPoint multipoint = new MultiPoint();
+		assertEquals("MULTIPOINT ()", WKTUtils.geometry2WKT(multipoint));
+
+		assertNull(WKTUtils.geometry2WKT(null));
+		assertFalse(new WKTWriter(new StringBuilder()).write(null));
+	}
+
+	public void testWKTDoubles() throws IOException {
+		final Random random = new Random(20151001);
+		final StringBuilder builder = new StringBuilder();
+		final WKTWriter writer = new WKTWriter(builder);
+		final double[] values = { 0.0, -0.0, 1e-3, 9.999e-4, 1e7, 9999999.999,
+				0.1, 0.3, 1.0 / 3, 2.0 / 3, 100, 4479103.865639006,
+				Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN,
+				Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for (int i = 0; i < 500000; i++) {
+			double x;
+			if (i < values.length) {
+				x = values[i];
+			} else if (i % 3 == 0) {
+				// Coordinates with a few decimals, as stored by most tools
+				final double scale = Math.pow(10, random.nextInt(10));
+				x = Math.round((random.nextDouble() - 0.5) * 1e7 * scale)
+						/ scale;
+			} else if (i % 3 == 1) {
+				x = (random.nextDouble() - 0.5) * 2e7;
+			} else {
+				x = Double.longBitsToDouble(random.nextLong());
+			}
+			final double y = random.nextGaussian()
+					* Math.pow(10, random.nextInt(24) - 12);
+
+			builder.setLength(0);
+			writer.write(createPoint(x, y));
+
+			assertEquals("POINT (" + Double.toString(x) + " "
+					+ Double.toString(y) + ")", builder.toString());
+		}
+	}
+
+	public void testWKTPrecision() throws IOException {
+		final StringBuilder builder = new StringBuilder();
+		final WKTWriter writer = new WKTWriter(builder);
+		writer.setPrecision(2);
+
+		assertEquals(2, writer.getPrecision());
+		writer.write(createPoint(440539.166, 1.0));
+		assertEquals("POINT (440539.17 1)", builder.toString());
+
+		builder.setLength(0);
+		writer.write(createPoint(-0.001, 0.125));
+		assertEquals("POINT (0 0.13)", builder.toString());
+
+		builder.setLength(0);
+		writer.write(createPoint(1e20, -2.5e-7));
+		assertEquals("POINT (100000000000000000000 0)", builder.toString());
+
+		builder.setLength(0);
+		writer.setPrecision(0);
+		writer.write(createPoint(4479103.5, -3.49));
+		assertEquals("POINT (4479104 -3)", builder.toString());
+
+		try {
+			writer.setPrecision(19);
+			fail("Invalid precision allowed");
+		} catch (final IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	private static Point createPoint(final double x, final double y) {
+		final Point output = new Point();
+		output.setX(x);
+		output.setY(y);
+
+		return output;
+	}
 }
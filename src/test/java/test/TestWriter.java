@@ -0,0 +1,569 @@
+/*
+ * Copyright 2015 ANTONIO CARLON
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.jummyshapefile.dbf.DBFFile;
+import com.jummyshapefile.dbf.DBFWriter;
+import com.jummyshapefile.dbf.model.DBFField;
+import com.jummyshapefile.dbf.model.DBFFieldDescriptor;
+import com.jummyshapefile.dbf.model.DBFHeader;
+import com.jummyshapefile.dbf.model.DBFRecord;
+import com.jummyshapefile.shapefile.Shapefile;
+import com.jummyshapefile.shapefile.ShapefileWriter;
+import com.jummyshapefile.shapefile.model.Entity;
+import com.jummyshapefile.shapefile.model.Geometry;
+import com.jummyshapefile.shapefile.model.MultiPoint;
+import com.jummyshapefile.shapefile.model.NullShape;
+import com.jummyshapefile.shapefile.model.Point;
+import com.jummyshapefile.shp.SHPFile;
+import com.jummyshapefile.shp.model.SHPHeader;
+import com.jummyshapefile.utils.DateUtils;
+import com.jummyshapefile.utils.FileUtils;
+import com.jummyshapefile.utils.WKTUtils;
+
+public class TestWriter extends TestCase {
+	public void testWriteShapefile() throws IOException, URISyntaxException {
+		final String[] names = { "Point", "Polyline", "Polygon", "MultiPoint" };
+		for (final String name : names) {
+			for (int packed = 0; packed < 2; packed++) {
+				final File shpFile = getResource(name + ".shp");
+				final File shxFile = getResource(name + ".shx");
+				final File[] files = createTempFiles();
+
+				final Shapefile shapefile = openShapefile(shpFile, shxFile,
+						getResource(name + ".dbf"));
+				Shapefile written = null;
+				try {
+					shapefile.setPackedGeometry(packed == 1);
+					final int numEntities = shapefile.getNumEntities();
+
+					final ShapefileWriter writer = new ShapefileWriter(
+							new FileOutputStream(files[0]),
+							new FileOutputStream(files[1]),
+							new FileOutputStream(files[2]), getShapeType(shpFile),
+							shapefile.getDataFieldDescriptors(), 4096);
+					try {
+						for (int i = 1; i <= numEntities; i++) {
+							writer.write(shapefile.getEntityByRecordNumber(i,
+									true));
+						}
+						assertEquals(numEntities, writer.getNumEntities());
+					} finally {
+						writer.close();
+					}
+
+					// The SHP and SHX files are written exactly as the
+					// originals
+					assertTrue(name, Arrays.equals(readFile(shpFile),
+							readFile(files[0])));
+					assertTrue(name, Arrays.equals(readFile(shxFile),
+							readFile(files[1])));
+
+					written = openShapefile(files[0], files[1], files[2]);
+					assertEquals(numEntities, written.getNumEntities());
+					assertEquals(shapefile.getDataFieldDescriptors().size(),
+							written.getDataFieldDescriptors().size());
+					for (int i = 1; i <= numEntities; i++) {
+						final Entity expected = shapefile
+								.getEntityByRecordNumber(i, true);
+						final Entity actual = written.getEntityByRecordNumber(
+								i, true);
+
+						assertEquals(
+								WKTUtils.geometry2WKT(expected.getGeometry()),
+								WKTUtils.geometry2WKT(actual.getGeometry()));
+						assertEquals(expected.getData().size(), actual
+								.getData().size());
+						for (int j = 0; j < expected.getData().size(); j++) {
+							assertEquals(expected.getData().get(j).getValue(),
+									actual.getData().get(j).getValue());
+						}
+					}
+				} finally {
+					shapefile.close();
+					if (written != null) {
+						written.close();
+					}
+					deleteFiles(files);
+				}
+			}
+		}
+	}
+
+	public void testWriteNullShapes() throws IOException {
+		final File[] files = createTempFiles();
+
+		Shapefile written = null;
+		try {
+			final List<DBFFieldDescriptor> fields = new ArrayList<DBFFieldDescriptor>();
+			fields.add(createDescriptor("NAME", "C", 10, 0));
+
+			final ShapefileWriter writer = new ShapefileWriter(
+					new FileOutputStream(files[0]), new FileOutputStream(
+							files[1]), new FileOutputStream(files[2]), 1,
+					fields);
+			try {
+				writer.write(createEntity(new NullShape(), fields, "a"));
+				writer.write(createEntity(createPoint(1, 2), fields, "b"));
+				writer.write(createEntity(null, fields, null));
+				writer.write(createEntity(createPoint(-3, 4), fields, "d"));
+
+				try {
+					writer.write(createEntity(new MultiPoint(), fields, "e"));
+					fail();
+				} catch (final IllegalArgumentException iae) {
+					// Expected
+				}
+			} finally {
+				writer.close();
+			}
+
+			final SHPFile shp = new SHPFile();
+			final FileInputStream is = new FileInputStream(files[0]);
+			try {
+				shp.open(is);
+				final SHPHeader header = shp.getHeader();
+
+				assertEquals(1, header.getShapeType());
+				assertEquals(-3d, header.getMinX());
+				assertEquals(2d, header.getMinY());
+				assertEquals(1d, header.getMaxX());
+				assertEquals(4d, header.getMaxY());
+			} finally {
+				shp.close();
+				FileUtils.closeInputStream(is);
+			}
+
+			written = openShapefile(files[0], files[1], files[2]);
+			assertEquals(4, written.getNumEntities());
+			assertTrue(written.getEntityByRecordNumber(1, false).getGeometry() instanceof NullShape);
+			assertEquals("POINT (1.0 2.0)", WKTUtils.geometry2WKT(written
+					.getEntityByRecordNumber(2, false).getGeometry()));
+			assertTrue(written.getEntityByRecordNumber(3, false).getGeometry() instanceof NullShape);
+			assertEquals("b", written.getEntityDataByRecordNumber(2).get(0)
+					.getValue());
+			assertEquals("", written.getEntityDataByRecordNumber(3).get(0)
+					.getValue());
+		} finally {
+			if (written != null) {
+				written.close();
+			}
+			deleteFiles(files);
+		}
+	}
+
+	public void testWriteRejectedEntity() throws IOException {
+		final File[] files = createTempFiles();
+
+		Shapefile written = null;
+		try {
+			final List<DBFFieldDescriptor> fields = new ArrayList<DBFFieldDescriptor>();
+			fields.add(createDescriptor("ID", "N", 4, 0));
+
+			final ShapefileWriter writer = new ShapefileWriter(
+					new FileOutputStream(files[0]), new FileOutputStream(
+							files[1]), new FileOutputStream(files[2]), 1,
+					fields);
+			try {
+				writer.write(createEntity(createPoint(1, 2), fields, 1));
+				// The data does not fit in the field
+				try {
+					writer.write(createEntity(createPoint(5, 6), fields,
+							123456));
+					fail();
+				} catch (final IllegalArgumentException iae) {
+					// Expected
+				}
+				// The geometry is not of the shape type of the file
+				try {
+					writer.write(createEntity(new MultiPoint(), fields, 2));
+					fail();
+				} catch (final IllegalArgumentException iae) {
+					// Expected
+				}
+				writer.write(createEntity(createPoint(3, 4), fields, 3));
+				assertEquals(2, writer.getNumEntities());
+			} finally {
+				writer.close();
+			}
+
+			final DBFFile dbf = new DBFFile();
+			final FileInputStream is = new FileInputStream(files[2]);
+			try {
+				dbf.open(is);
+				assertEquals(2, dbf.getHeader().getRecordCount());
+			} finally {
+				dbf.close();
+				FileUtils.closeInputStream(is);
+			}
+
+			// The MBR does not contain the rejected point
+			final SHPFile shp = new SHPFile();
+			final FileInputStream shpIS = new FileInputStream(files[0]);
+			try {
+				shp.open(shpIS);
+				assertEquals(3d, shp.getHeader().getMaxX());
+				assertEquals(4d, shp.getHeader().getMaxY());
+			} finally {
+				shp.close();
+				FileUtils.closeInputStream(shpIS);
+			}
+
+			written = openShapefile(files[0], files[1], files[2]);
+			assertEquals(2, written.getNumEntities());
+			assertEquals("POINT (3.0 4.0)", WKTUtils.geometry2WKT(written
+					.getEntityByRecordNumber(2, false).getGeometry()));
+			assertEquals(3d, written.getEntityDataByRecordNumber(2).get(0)
+					.getValue());
+		} finally {
+			if (written != null) {
+				written.close();
+			}
+			deleteFiles(files);
+		}
+	}
+
+	public void testWriteUnsupportedShapeType() throws IOException {
+		final File[] files = createTempFiles();
+		final FileOutputStream[] streams = new FileOutputStream[files.length];
+		try {
+			for (int i = 0; i < files.length; i++) {
+				streams[i] = new FileOutputStream(files[i]);
+			}
+
+			new ShapefileWriter(streams[0], streams[1], streams[2], 2,
+					new ArrayList<DBFFieldDescriptor>());
+			fail("Shape type 2");
+		} catch (final UnsupportedOperationException uoe) {
+			// Expected
+		} finally {
+			for (final FileOutputStream stream : streams) {
+				if (stream != null) {
+					stream.close();
+				}
+			}
+			deleteFiles(files);
+		}
+	}
+
+	public void testWriteDBF() throws IOException {
+		final File file = File.createTempFile("jummyshapefile", ".dbf");
+
+		try {
+			final List<DBFFieldDescriptor> fields = new ArrayList<DBFFieldDescriptor>();
+			fields.add(createDescriptor("ID", "N", 6, 0));
+			fields.add(createDescriptor("VALUE", "F", 12, 3));
+			fields.add(createDescriptor("NAME", "C", 5, 0));
+			fields.add(createDescriptor("DAY", "D", 8, 0));
+
+			final Date day = DateUtils.toDate(16000);
+			final DBFWriter writer = new DBFWriter(new FileOutputStream(file),
+					fields);
+			try {
+				writer.write(createData(fields, 1, 1.0005, "abcdefg", day));
+				writer.write(createData(fields, -25L, -0.0001, "x", null));
+				writer.write(createData(fields, null, Double.NaN, null, day));
+				// Fields by name (ignoring case), the unknown ones ignored
+				final List<DBFField> data = new ArrayList<DBFField>();
+				data.add(createField("value", "F", 123456.7891));
+				data.add(createField("OTHER", "C", "ignored"));
+				data.add(createField("Id", "N", 999999));
+				writer.write(data);
+
+				try {
+					writer.write(createData(fields, 1000000, 0, "", null));
+					fail();
+				} catch (final IllegalArgumentException iae) {
+					// Expected
+				}
+				try {
+					writer.write(createData(fields, "1", 0, "", null));
+					fail();
+				} catch (final IllegalArgumentException iae) {
+					// Expected
+				}
+				assertEquals(4, writer.getNumRecords());
+			} finally {
+				writer.close();
+			}
+			// Header, records and end of file marker
+			assertEquals(32 + 4 * 32 + 1 + 4 * 32 + 1, file.length());
+
+			final DBFFile dbf = new DBFFile();
+			final FileInputStream is = new FileInputStream(file);
+			try {
+				dbf.open(is);
+				final DBFHeader header = dbf.getHeader();
+
+				assertEquals(4, header.getRecordCount());
+				assertEquals(4, header.getFieldCount());
+				assertEquals(32, header.getRecordSize());
+				assertEquals("VALUE", header.getFields().get(1).getName());
+				assertEquals("F", header.getFields().get(1).getType());
+				assertEquals(12, header.getFields().get(1).getLength());
+				assertEquals(3, header.getFields().get(1).getDecimalCount());
+
+				DBFRecord record = dbf.getRecordAt(1);
+				assertEquals(1d, record.getFields().get(0).getValue());
+				assertEquals(1.001d, record.getFields().get(1).getValue());
+				assertEquals("abcde", record.getFields().get(2).getValue());
+				assertEquals(day, record.getFields().get(3).getValue());
+
+				record = dbf.getRecordAt(2);
+				assertEquals(-25d, record.getFields().get(0).getValue());
+				assertEquals(0d, record.getFields().get(1).getValue());
+				assertEquals("x", record.getFields().get(2).getValue());
+				assertNull(record.getFields().get(3).getValue());
+
+				record = dbf.getRecordAt(3);
+				assertNull(record.getFields().get(0).getValue());
+				assertNull(record.getFields().get(1).getValue());
+				assertEquals(day, record.getFields().get(3).getValue());
+
+				record = dbf.getRecordAt(4);
+				assertEquals(999999d, record.getFields().get(0).getValue());
+				assertEquals(123456.789d, record.getFields().get(1).getValue());
+			} finally {
+				dbf.close();
+				FileUtils.closeInputStream(is);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testWriteDBFFields() throws IOException {
+		final String[][] invalid = { { "NAME", "C", "0" },
+				{ "NAME", "C", "255" },
+				{ "NAME", "D", "10" }, { "LONGFIELDNAME", "C", "10" } };
+		for (final String[] field : invalid) {
+			final File file = File.createTempFile("jummyshapefile", ".dbf");
+			final FileOutputStream os = new FileOutputStream(file);
+			try {
+				new DBFWriter(os, Arrays.asList(createDescriptor(field[0],
+						field[1], Integer.parseInt(field[2]), 0)));
+				fail(Arrays.toString(field));
+			} catch (final IllegalArgumentException iae) {
+				// Expected
+			} finally {
+				os.close();
+				file.delete();
+			}
+		}
+
+		// A field type not supported
+		final File unsupportedFile = File.createTempFile("jummyshapefile",
+				".dbf");
+		final FileOutputStream unsupportedOS = new FileOutputStream(
+				unsupportedFile);
+		try {
+			new DBFWriter(unsupportedOS, Arrays.asList(createDescriptor(
+					"NAME", "L", 1, 0)));
+			fail("Field type L");
+		} catch (final UnsupportedOperationException uoe) {
+			// Expected
+		} finally {
+			unsupportedOS.close();
+			unsupportedFile.delete();
+		}
+
+		// A null List and a header longer than 0xFFFF bytes
+		final List<DBFFieldDescriptor> tooMany = new ArrayList<DBFFieldDescriptor>();
+		for (int i = 0; i < 2047; i++) {
+			tooMany.add(createDescriptor("F" + i, "C", 1, 0));
+		}
+		final List<List<DBFFieldDescriptor>> invalidLists = new ArrayList<List<DBFFieldDescriptor>>();
+		invalidLists.add(null);
+		invalidLists.add(tooMany);
+		for (final List<DBFFieldDescriptor> fields : invalidLists) {
+			final File file = File.createTempFile("jummyshapefile", ".dbf");
+			final FileOutputStream os = new FileOutputStream(file);
+			try {
+				new DBFWriter(os, fields);
+				fail();
+			} catch (final IllegalArgumentException iae) {
+				// Expected
+			} finally {
+				os.close();
+				file.delete();
+			}
+		}
+	}
+
+	public void testWriteDBFCharset() throws IOException {
+		final List<DBFFieldDescriptor> fields = new ArrayList<DBFFieldDescriptor>();
+		fields.add(createDescriptor("NAME", "C", 5, 0));
+		final String[] charsets = { "UTF-8", "ISO-8859-1" };
+		// Each text truncated in UTF-8 and in ISO-8859-1
+		final String[][] expected = { { "aaaa ", "\u00f1\u00f1 " },
+				{ "aaaa\u00f1", "\u00f1\u00f1\u00f1  " } };
+
+		for (int i = 0; i < charsets.length; i++) {
+			final Charset charset = Charset.forName(charsets[i]);
+			final File file = File.createTempFile("jummyshapefile", ".dbf");
+			try {
+				final DBFWriter writer = new DBFWriter(new FileOutputStream(
+						file), fields, 1024, charset);
+				try {
+					writer.write(createData(fields, "aaaa\u00f1"));
+					writer.write(createData(fields, "\u00f1\u00f1\u00f1"));
+				} finally {
+					writer.close();
+				}
+
+				// Header, and the text of each record after its deleted flag
+				final byte[] data = readFile(file);
+				final int headerLength = 32 + 32 + 1;
+				for (int j = 0; j < expected[i].length; j++) {
+					assertEquals(charsets[i], expected[i][j], new String(data,
+							headerLength + 6 * j + 1, 5, charset));
+				}
+			} finally {
+				file.delete();
+			}
+		}
+
+		final File file = File.createTempFile("jummyshapefile", ".dbf");
+		final FileOutputStream os = new FileOutputStream(file);
+		try {
+			new DBFWriter(os, fields, 1024, null);
+			fail("Null Charset");
+		} catch (final IllegalArgumentException iae) {
+			// Expected
+		} finally {
+			os.close();
+			file.delete();
+		}
+	}
+
+	private static File[] createTempFiles() throws IOException {
+		return new File[] { File.createTempFile("jummyshapefile", ".shp"),
+				File.createTempFile("jummyshapefile", ".shx"),
+				File.createTempFile("jummyshapefile", ".dbf") };
+	}
+
+	private static void deleteFiles(final File[] files) {
+		for (final File file : files) {
+			file.delete();
+		}
+	}
+
+	private File getResource(final String name) throws URISyntaxException {
+		final URL resource = getClass().getClassLoader().getResource(name);
+		return new File(resource.toURI());
+	}
+
+	private static Shapefile openShapefile(final File shpFile,
+			final File shxFile, final File dbfFile) throws IOException {
+		return new Shapefile(new FileInputStream(shpFile),
+				new FileInputStream(shxFile), new FileInputStream(dbfFile),
+				null);
+	}
+
+	private static int getShapeType(final File shpFile) throws IOException {
+		final SHPFile shp = new SHPFile();
+		final FileInputStream is = new FileInputStream(shpFile);
+		try {
+			shp.open(is);
+			return shp.getHeader().getShapeType();
+		} finally {
+			shp.close();
+			FileUtils.closeInputStream(is);
+		}
+	}
+
+	private static byte[] readFile(final File file) throws IOException {
+		final byte[] output = new byte[(int) file.length()];
+		final FileInputStream is = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < output.length) {
+				read += is.read(output, read, output.length - read);
+			}
+		} finally {
+			FileUtils.closeInputStream(is);
+		}
+
+		return output;
+	}
+
+	private static DBFFieldDescriptor createDescriptor(final String name,
+			final String type, final int length, final int decimalCount) {
+		final DBFFieldDescriptor output = new DBFFieldDescriptor();
+		output.setName(name);
+		output.setType(type);
+		output.setLength(length);
+		output.setDecimalCount(decimalCount);
+
+		return output;
+	}
+
+	private static DBFField createField(final String name, final String type,
+			final Object value) {
+		final DBFField output = new DBFField();
+		output.setDescriptor(createDescriptor(name, type, 1, 0));
+		output.setValue(value);
+
+		return output;
+	}
+
+	private static List<DBFField> createData(
+			final List<DBFFieldDescriptor> fields, final Object... values) {
+		final List<DBFField> output = new ArrayList<DBFField>();
+		for (int i = 0; i < values.length; i++) {
+			final DBFField field = new DBFField();
+			field.setDescriptor(fields.get(i));
+			field.setValue(values[i]);
+			output.add(field);
+		}
+
+		return output;
+	}
+
+	private static Point createPoint(final double x, final double y) {
+		final Point output = new Point();
+		output.setX(x);
+		output.setY(y);
+
+		return output;
+	}
+
+	private static Entity createEntity(
+			final Geometry geometry,
+			final List<DBFFieldDescriptor> fields, final Object value) {
+		final Entity output = new Entity();
+		output.setGeometry(geometry);
+		output.setData(createData(fields, value));
+
+		return output;
+	}
+}